@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree.benchmark;
+
+import com.graphaware.module.timetree.SingleTimeTree;
+import com.graphaware.module.timetree.TimeTreeBackedEvents;
+import com.graphaware.module.timetree.TimedEvents;
+import com.graphaware.module.timetree.domain.Resolution;
+import com.graphaware.module.timetree.domain.TimeInstant;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.neo4j.graphdb.DynamicLabel;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * A generated embedded database used by the benchmarks. Events are spread evenly over {@link #SPAN} starting at
+ * {@link #START} and attached to a {@link SingleTimeTree} with the given {@link Resolution}.
+ */
+public final class BenchmarkDatabase {
+
+    public static final Label EVENT = DynamicLabel.label("Event");
+    public static final RelationshipType AT_TIME = DynamicRelationshipType.withName("AT_TIME");
+    public static final String TIMESTAMP = "timestamp";
+
+    public static final long START = new DateTime(2014, 1, 1, 0, 0, DateTimeZone.UTC).getMillis();
+    public static final long SPAN = 365L * 24 * 60 * 60 * 1000;
+
+    private static final int BATCH_SIZE = 1000;
+
+    private final File directory;
+    private final GraphDatabaseService database;
+
+    private BenchmarkDatabase(File directory, GraphDatabaseService database) {
+        this.directory = directory;
+        this.database = database;
+    }
+
+    /**
+     * Create a new empty database in a temporary directory.
+     *
+     * @return database.
+     */
+    public static BenchmarkDatabase empty() {
+        try {
+            File directory = Files.createTempDirectory("timetree-benchmark").toFile();
+            return new BenchmarkDatabase(directory, new GraphDatabaseFactory().newEmbeddedDatabase(directory.getAbsolutePath()));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Create a new database in a temporary directory and populate it with events.
+     *
+     * @param size       number of events to generate.
+     * @param resolution resolution of the tree to which the events are attached.
+     * @return database.
+     */
+    public static BenchmarkDatabase populated(int size, Resolution resolution) {
+        BenchmarkDatabase result = empty();
+        result.populate(size, resolution);
+        return result;
+    }
+
+    private void populate(int size, Resolution resolution) {
+        TimedEvents timedEvents = new TimeTreeBackedEvents(new SingleTimeTree(database));
+        Random random = new Random(42);
+
+        int created = 0;
+        while (created < size) {
+            try (Transaction tx = database.beginTx()) {
+                for (int i = 0; i < BATCH_SIZE && created < size; i++, created++) {
+                    long timestamp = START + (long) (random.nextDouble() * SPAN);
+                    Node event = database.createNode(EVENT);
+                    event.setProperty(TIMESTAMP, timestamp);
+                    timedEvents.attachEvent(event, AT_TIME, instant(timestamp, resolution));
+                }
+                tx.success();
+            }
+        }
+    }
+
+    /**
+     * Create a UTC time instant.
+     *
+     * @param time       of the instant.
+     * @param resolution of the instant.
+     * @return instant.
+     */
+    public static TimeInstant instant(long time, Resolution resolution) {
+        return TimeInstant.instant(time).with(resolution).with(DateTimeZone.UTC);
+    }
+
+    public GraphDatabaseService getDatabase() {
+        return database;
+    }
+
+    /**
+     * Shut the database down and delete its directory.
+     */
+    public void destroy() {
+        database.shutdown();
+        delete(directory);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree.benchmark;
+
+import com.graphaware.module.timetree.SingleTimeTree;
+import com.graphaware.module.timetree.TimeTreeBackedEvents;
+import com.graphaware.module.timetree.TimedEvents;
+import com.graphaware.module.timetree.domain.Event;
+import com.graphaware.module.timetree.domain.Resolution;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Transaction;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static com.graphaware.module.timetree.benchmark.BenchmarkDatabase.*;
+
+/**
+ * Benchmark of {@link TimeTreeBackedEvents#getEvents(com.graphaware.module.timetree.domain.TimeInstant, com.graphaware.module.timetree.domain.TimeInstant)}
+ * over a small range (one hour at a random position) and a large range (the whole generated year).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GetEventsBenchmark {
+
+    private static final long HOUR = 60 * 60 * 1000;
+
+    @Param({"10000", "100000"})
+    public int size;
+
+    @Param({"DAY", "MINUTE"})
+    public Resolution resolution;
+
+    private BenchmarkDatabase benchmarkDatabase;
+    private GraphDatabaseService database;
+    private TimedEvents timedEvents;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        benchmarkDatabase = BenchmarkDatabase.populated(size, resolution);
+        database = benchmarkDatabase.getDatabase();
+        timedEvents = new TimeTreeBackedEvents(new SingleTimeTree(database));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        benchmarkDatabase.destroy();
+    }
+
+    @Benchmark
+    public List<Event> smallRange() {
+        long start = START + (long) (ThreadLocalRandom.current().nextDouble() * (SPAN - HOUR));
+        return getEvents(start, start + HOUR);
+    }
+
+    @Benchmark
+    public List<Event> largeRange() {
+        return getEvents(START, START + SPAN);
+    }
+
+    private List<Event> getEvents(long start, long end) {
+        List<Event> result;
+        try (Transaction tx = database.beginTx()) {
+            result = timedEvents.getEvents(instant(start, resolution), instant(end, resolution));
+            tx.success();
+        }
+        return result;
+    }
+}
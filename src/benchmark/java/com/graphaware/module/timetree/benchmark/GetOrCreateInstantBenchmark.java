@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree.benchmark;
+
+import com.graphaware.module.timetree.SingleTimeTree;
+import com.graphaware.module.timetree.TimeTree;
+import com.graphaware.module.timetree.domain.Resolution;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.graphaware.module.timetree.benchmark.BenchmarkDatabase.*;
+
+/**
+ * Benchmark of {@link SingleTimeTree#getOrCreateInstant(com.graphaware.module.timetree.domain.TimeInstant)} with
+ * timestamps arriving in order, at random, and all hitting the same bucket.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GetOrCreateInstantBenchmark {
+
+    @Param({"10000", "100000"})
+    public int size;
+
+    @Param({"DAY", "MINUTE", "MILLISECOND"})
+    public Resolution resolution;
+
+    private BenchmarkDatabase benchmarkDatabase;
+    private GraphDatabaseService database;
+    private TimeTree timeTree;
+    private final AtomicLong clock = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        benchmarkDatabase = BenchmarkDatabase.populated(size, resolution);
+        database = benchmarkDatabase.getDatabase();
+        timeTree = new SingleTimeTree(database);
+        clock.set(START + SPAN);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        benchmarkDatabase.destroy();
+    }
+
+    @Benchmark
+    public Node inOrder() {
+        return getOrCreate(clock.addAndGet(1000));
+    }
+
+    @Benchmark
+    public Node random() {
+        return getOrCreate(START + (long) (ThreadLocalRandom.current().nextDouble() * SPAN));
+    }
+
+    @Benchmark
+    public Node hotBucket() {
+        return getOrCreate(START + SPAN / 2);
+    }
+
+    private Node getOrCreate(long time) {
+        Node result;
+        try (Transaction tx = database.beginTx()) {
+            result = timeTree.getOrCreateInstant(instant(time, resolution));
+            tx.success();
+        }
+        return result;
+    }
+}
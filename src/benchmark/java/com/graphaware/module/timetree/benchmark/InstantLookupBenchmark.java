@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree.benchmark;
+
+import com.graphaware.module.timetree.SingleTimeTree;
+import com.graphaware.module.timetree.TimeTree;
+import com.graphaware.module.timetree.domain.Resolution;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static com.graphaware.module.timetree.benchmark.BenchmarkDatabase.*;
+
+/**
+ * Benchmark of {@link TimeTree#getInstantAtOrAfter(com.graphaware.module.timetree.domain.TimeInstant)} and
+ * {@link TimeTree#getInstantAtOrBefore(com.graphaware.module.timetree.domain.TimeInstant)} for random times.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class InstantLookupBenchmark {
+
+    @Param({"10000", "100000"})
+    public int size;
+
+    @Param({"DAY", "MINUTE", "MILLISECOND"})
+    public Resolution resolution;
+
+    private BenchmarkDatabase benchmarkDatabase;
+    private GraphDatabaseService database;
+    private TimeTree timeTree;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        benchmarkDatabase = BenchmarkDatabase.populated(size, resolution);
+        database = benchmarkDatabase.getDatabase();
+        timeTree = new SingleTimeTree(database);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        benchmarkDatabase.destroy();
+    }
+
+    @Benchmark
+    public Node atOrAfter() {
+        Node result;
+        try (Transaction tx = database.beginTx()) {
+            result = timeTree.getInstantAtOrAfter(instant(randomTime(), resolution));
+            tx.success();
+        }
+        return result;
+    }
+
+    @Benchmark
+    public Node atOrBefore() {
+        Node result;
+        try (Transaction tx = database.beginTx()) {
+            result = timeTree.getInstantAtOrBefore(instant(randomTime(), resolution));
+            tx.success();
+        }
+        return result;
+    }
+
+    private long randomTime() {
+        return START + (long) (ThreadLocalRandom.current().nextDouble() * SPAN);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree.benchmark;
+
+import com.graphaware.module.timetree.domain.Resolution;
+import com.graphaware.module.timetree.module.TimeTreeConfiguration;
+import com.graphaware.module.timetree.module.TimeTreeModule;
+import com.graphaware.runtime.GraphAwareRuntime;
+import com.graphaware.runtime.GraphAwareRuntimeFactory;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static com.graphaware.module.timetree.benchmark.BenchmarkDatabase.*;
+
+/**
+ * Benchmark of {@link TimeTreeModule#beforeCommit(com.graphaware.tx.event.improved.api.ImprovedTransactionData)},
+ * i.e. of committing transactions that create a number of events automatically attached to the tree.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ModuleBeforeCommitBenchmark {
+
+    @Param({"10000", "100000"})
+    public int size;
+
+    @Param({"DAY", "MINUTE"})
+    public Resolution resolution;
+
+    @Param({"1", "100"})
+    public int eventsPerTransaction;
+
+    private BenchmarkDatabase benchmarkDatabase;
+    private GraphDatabaseService database;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        benchmarkDatabase = BenchmarkDatabase.populated(size, resolution);
+        database = benchmarkDatabase.getDatabase();
+
+        GraphAwareRuntime runtime = GraphAwareRuntimeFactory.createRuntime(database);
+        runtime.registerModule(new TimeTreeModule("timetree", TimeTreeConfiguration.defaultConfiguration().withResolution(resolution), database));
+        runtime.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        benchmarkDatabase.destroy();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(100)
+    public void createEvents() {
+        for (int i = 0; i < 100 / eventsPerTransaction; i++) {
+            try (Transaction tx = database.beginTx()) {
+                for (int j = 0; j < eventsPerTransaction; j++) {
+                    Node event = database.createNode(EVENT);
+                    event.setProperty(TIMESTAMP, START + (long) (ThreadLocalRandom.current().nextDouble() * SPAN));
+                }
+                tx.success();
+            }
+        }
+    }
+}
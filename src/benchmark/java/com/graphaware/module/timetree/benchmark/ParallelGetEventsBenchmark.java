@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree.benchmark;
+
+import com.graphaware.module.timetree.SingleTimeTree;
+import com.graphaware.module.timetree.TimeTreeBackedEvents;
+import com.graphaware.module.timetree.TimedEvents;
+import com.graphaware.module.timetree.domain.Event;
+import com.graphaware.module.timetree.domain.QueryOptions;
+import com.graphaware.module.timetree.domain.Resolution;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Transaction;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static com.graphaware.module.timetree.benchmark.BenchmarkDatabase.*;
+import static org.neo4j.graphdb.Direction.INCOMING;
+
+/**
+ * Benchmark of parallel range queries for events over the whole generated year, with a growing number of threads.
+ * Parallelism 0 stands for the sequential query, which is the baseline for the speedup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ParallelGetEventsBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int size;
+
+    @Param({"DAY", "MINUTE"})
+    public Resolution resolution;
+
+    @Param({"0", "1", "2", "4", "8"})
+    public int parallelism;
+
+    private BenchmarkDatabase benchmarkDatabase;
+    private GraphDatabaseService database;
+    private ForkJoinPool pool;
+    private TimedEvents timedEvents;
+    private QueryOptions options;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        benchmarkDatabase = BenchmarkDatabase.populated(size, resolution);
+        database = benchmarkDatabase.getDatabase();
+        pool = new ForkJoinPool(Math.max(1, parallelism));
+        timedEvents = new TimeTreeBackedEvents(new SingleTimeTree(database), TIMESTAMP, 0, pool);
+        options = QueryOptions.defaultOptions().withParallel(parallelism > 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+        benchmarkDatabase.destroy();
+    }
+
+    @Benchmark
+    public List<Event> wholeYear() {
+        List<Event> result;
+        try (Transaction tx = database.beginTx()) {
+            result = timedEvents.getEvents(instant(START, resolution), instant(START + SPAN, resolution), null, INCOMING, options);
+            tx.success();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree;
+
+import com.graphaware.module.timetree.domain.Resolution;
+import org.joda.time.DateTimeZone;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.ResourceIterator;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.schema.IndexDefinition;
+import org.neo4j.graphdb.schema.Schema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Absolute keys of time instant nodes, which allow looking up an instant with a single schema index seek instead of a
+ * descent from the root of its tree.
+ * <p/>
+ * The key of an instant is the start of the period it represents in local millis (see
+ * {@link com.graphaware.module.timetree.domain.CalendarFields#toLocal(long, DateTimeZone)}), i.e. it only depends on
+ * the values of the instant and its ancestors and is the same for all time zones. It is stored in the
+ * {@link #BUCKET_PROPERTY} of the instant node and indexed per {@link Resolution} label. Instants of different trees
+ * (with custom roots) representing the same period have the same key, so the index is not unique and every hit must
+ * be checked to belong to the tree being queried.
+ */
+public final class BucketKeys {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BucketKeys.class);
+
+    public static final String BUCKET_PROPERTY = "bucket";
+
+    /**
+     * Compute the key of the instant containing the given local time at the given resolution.
+     *
+     * @param localTime  local millis.
+     * @param resolution of the instant.
+     * @return key.
+     */
+    public static long of(long localTime, Resolution resolution) {
+        return resolution.getDateTimeField(DateTimeZone.UTC).roundFloor(localTime);
+    }
+
+    /**
+     * Compute the key of an existing instant node from its value and the values of its ancestors. Must be called
+     * within a transaction.
+     *
+     * @param instant node, must be attached to a tree.
+     * @return key.
+     */
+    public static long of(Node instant) {
+        return SingleTimeTree.getTimeInstant(instant, DateTimeZone.UTC).getTime();
+    }
+
+    /**
+     * Create the schema indexes on the {@link #BUCKET_PROPERTY} of all {@link Resolution} labels, unless they exist.
+     * Must not be called within a transaction that changes data.
+     *
+     * @param database to create the indexes in.
+     * @return number of created indexes.
+     */
+    public static int createIndexes(GraphDatabaseService database) {
+        int created = 0;
+
+        try (Transaction tx = database.beginTx()) {
+            Schema schema = database.schema();
+            for (Resolution resolution : Resolution.values()) {
+                if (findIndex(schema, resolution.getLabel()) == null) {
+                    schema.indexFor(resolution.getLabel()).on(BUCKET_PROPERTY).create();
+                    created++;
+                }
+            }
+            tx.success();
+        }
+
+        if (created > 0) {
+            LOG.info("Created " + created + " time tree bucket key indexes");
+        }
+
+        return created;
+    }
+
+    /**
+     * Check whether the schema indexes on the {@link #BUCKET_PROPERTY} of all {@link Resolution} labels are online.
+     * Must be called within a transaction.
+     *
+     * @param database to check.
+     * @return true iff all indexes exist and are online.
+     */
+    public static boolean indexesOnline(GraphDatabaseService database) {
+        Schema schema = database.schema();
+
+        for (Resolution resolution : Resolution.values()) {
+            IndexDefinition index = findIndex(schema, resolution.getLabel());
+            if (index == null || schema.getIndexState(index) != Schema.IndexState.ONLINE) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Set the {@link #BUCKET_PROPERTY} of all instant nodes that don't have it, e.g. those created before bucket keys
+     * were enabled. Nodes are updated in batches, each in a separate transaction.
+     *
+     * @param database  containing the trees.
+     * @param batchSize number of nodes updated in a single transaction.
+     * @return number of updated nodes.
+     */
+    public static long backfill(GraphDatabaseService database, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+
+        long updated = 0;
+
+        for (Resolution resolution : Resolution.values()) {
+            List<Long> missing = new ArrayList<>();
+
+            try (Transaction tx = database.beginTx()) {
+                try (ResourceIterator<Node> instants = database.findNodes(resolution.getLabel())) {
+                    while (instants.hasNext()) {
+                        Node instant = instants.next();
+                        if (!instant.hasProperty(BUCKET_PROPERTY)) {
+                            missing.add(instant.getId());
+                        }
+                    }
+                }
+                tx.success();
+            }
+
+            for (int i = 0; i < missing.size(); i += batchSize) {
+                try (Transaction tx = database.beginTx()) {
+                    for (Long id : missing.subList(i, Math.min(i + batchSize, missing.size()))) {
+                        try {
+                            Node instant = database.getNodeById(id);
+                            instant.setProperty(BUCKET_PROPERTY, of(instant));
+                            updated++;
+                        } catch (NotFoundException | IllegalStateException e) {
+                            //removed in the meantime
+                        }
+                    }
+                    tx.success();
+                }
+            }
+        }
+
+        if (updated > 0) {
+            LOG.info("Set bucket keys of " + updated + " time instants");
+        }
+
+        return updated;
+    }
+
+    private static IndexDefinition findIndex(Schema schema, Label label) {
+        for (IndexDefinition index : schema.getIndexes(label)) {
+            for (String key : index.getPropertyKeys()) {
+                if (BUCKET_PROPERTY.equals(key)) {
+                    return index;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private BucketKeys() {
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of a {@link TimeTreeChecker} run on a single tree.
+ * <p/>
+ * Only the first {@link #MAX_VIOLATIONS} violations are described, all of them are counted.
+ */
+public class ConsistencyReport {
+
+    public static final int MAX_VIOLATIONS = 100;
+
+    private final long rootNodeId;
+    private final boolean repair;
+    private final List<String> violations = new ArrayList<>();
+    private long checkedInstants;
+    private long violationCount;
+    private long repairCount;
+
+    /**
+     * Create an empty report.
+     *
+     * @param rootNodeId ID of the root of the checked tree.
+     * @param repair     <code>true</code> iff the check repairs violations.
+     */
+    ConsistencyReport(long rootNodeId, boolean repair) {
+        this.rootNodeId = rootNodeId;
+        this.repair = repair;
+    }
+
+    /**
+     * Record a checked time instant.
+     */
+    void checked() {
+        checkedInstants++;
+    }
+
+    /**
+     * Record a violation.
+     *
+     * @param description of the violation.
+     * @param repaired    <code>true</code> iff the violation has been repaired.
+     */
+    void violation(String description, boolean repaired) {
+        violationCount++;
+
+        if (repaired) {
+            repairCount++;
+        }
+
+        if (violations.size() < MAX_VIOLATIONS) {
+            violations.add(repaired ? description + " (repaired)" : description);
+        }
+    }
+
+    /**
+     * Add the results of a check of a part of the same tree.
+     *
+     * @param other report to add.
+     */
+    void add(ConsistencyReport other) {
+        checkedInstants += other.checkedInstants;
+        violationCount += other.violationCount;
+        repairCount += other.repairCount;
+
+        for (String violation : other.violations) {
+            if (violations.size() >= MAX_VIOLATIONS) {
+                break;
+            }
+            violations.add(violation);
+        }
+    }
+
+    /**
+     * @return ID of the root of the checked tree.
+     */
+    public long getRootNodeId() {
+        return rootNodeId;
+    }
+
+    /**
+     * @return <code>true</code> iff violations have been repaired where possible.
+     */
+    public boolean isRepair() {
+        return repair;
+    }
+
+    /**
+     * @return number of time instants checked.
+     */
+    public long getCheckedInstants() {
+        return checkedInstants;
+    }
+
+    /**
+     * @return number of violations found, including the repaired ones.
+     */
+    public long getViolationCount() {
+        return violationCount;
+    }
+
+    /**
+     * @return number of violations repaired.
+     */
+    public long getRepairCount() {
+        return repairCount;
+    }
+
+    /**
+     * @return descriptions of the first {@link #MAX_VIOLATIONS} violations found.
+     */
+    public List<String> getViolations() {
+        return Collections.unmodifiableList(violations);
+    }
+
+    /**
+     * @return <code>true</code> iff no violations have been found, or all of them have been repaired.
+     */
+    public boolean isConsistent() {
+        return violationCount == repairCount;
+    }
+}
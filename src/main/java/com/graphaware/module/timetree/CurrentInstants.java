@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree;
+
+import com.graphaware.module.timetree.domain.Resolution;
+import com.graphaware.module.timetree.domain.TimeInstant;
+import org.joda.time.DateTimeField;
+import org.joda.time.DateTimeZone;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Cache of the time instants of a single tree that represent the current period, one per time zone and resolution.
+ * <p/>
+ * Most events happen "now", so looking up the current instant in the cache (a volatile read and a node lookup by ID)
+ * saves a descent from the root under the tree's write lock. A cached instant is used until its period ends, after
+ * which the next lookup goes to the tree and caches the instant of the new period.
+ * <p/>
+ * Cached node IDs may become invalid when the transaction that created the node is rolled back or when the node is
+ * removed (possibly through another {@link TimeTree} instance), after which the ID may be reused by another node.
+ * Therefore, a cached node is only returned if it still represents the cached period, which is checked by reading
+ * its ancestors, without locking the tree.
+ */
+class CurrentInstants {
+
+    private final GraphDatabaseService database;
+    private final ConcurrentMap<DateTimeZone, AtomicReferenceArray<CurrentInstant>> instants = new ConcurrentHashMap<>();
+    private final ThreadLocal<Boolean> cachedInTransaction = new ThreadLocal<>();
+
+    CurrentInstants(GraphDatabaseService database) {
+        this.database = database;
+    }
+
+    /**
+     * Get a cached instant. Must be called within a transaction.
+     *
+     * @param timeInstant to get the node for.
+     * @return node representing the time instant, null if it isn't cached.
+     */
+    Node get(TimeInstant timeInstant) {
+        AtomicReferenceArray<CurrentInstant> byResolution = instants.get(timeInstant.getTimezone());
+        if (byResolution == null) {
+            return null;
+        }
+
+        int index = timeInstant.getResolution().ordinal();
+        CurrentInstant current = byResolution.get(index);
+        if (current == null || !current.contains(timeInstant.getTime())) {
+            return null;
+        }
+
+        try {
+            Node node = database.getNodeById(current.nodeId);
+            if (node.hasLabel(timeInstant.getResolution().getLabel())
+                    && SingleTimeTree.getTimeInstant(node, timeInstant.getTimezone()).getTime() == current.start) {
+                return node;
+            }
+        } catch (NotFoundException | IllegalArgumentException | IllegalStateException e) {
+            //removed in the meantime, or the ID has been reused by another node
+        }
+
+        byResolution.compareAndSet(index, current, null);
+        return null;
+    }
+
+    /**
+     * Cache an instant, but only if it represents the current period.
+     *
+     * @param timeInstant represented by the node.
+     * @param node        representing the time instant.
+     */
+    void put(TimeInstant timeInstant, Node node) {
+        Resolution resolution = timeInstant.getResolution();
+        DateTimeField field = resolution.getDateTimeField(timeInstant.getTimezone());
+
+        long start = field.roundFloor(timeInstant.getTime());
+        long end = field.add(start, 1);
+        long now = System.currentTimeMillis();
+
+        if (now < start || now >= end) {
+            return;
+        }
+
+        AtomicReferenceArray<CurrentInstant> byResolution = instants.get(timeInstant.getTimezone());
+        if (byResolution == null) {
+            byResolution = new AtomicReferenceArray<>(Resolution.values().length);
+            AtomicReferenceArray<CurrentInstant> existing = instants.putIfAbsent(timeInstant.getTimezone(), byResolution);
+            if (existing != null) {
+                byResolution = existing;
+            }
+        }
+
+        byResolution.set(resolution.ordinal(), new CurrentInstant(node.getId(), start, end));
+        cachedInTransaction.set(true);
+    }
+
+    /**
+     * Notify the cache that the transaction of the current thread has been committed.
+     */
+    void committed() {
+        cachedInTransaction.remove();
+    }
+
+    /**
+     * Notify the cache that the transaction of the current thread has been rolled back. All cached instants are
+     * forgotten if the transaction has cached any, since they may not exist.
+     */
+    void rolledBack() {
+        if (cachedInTransaction.get() != null) {
+            cachedInTransaction.remove();
+            clear();
+        }
+    }
+
+    /**
+     * Forget all cached instants.
+     */
+    void clear() {
+        instants.clear();
+    }
+
+    /**
+     * ID of a node representing a period, with the bounds of the period.
+     */
+    private static final class CurrentInstant {
+
+        private final long nodeId;
+        private final long start;
+        private final long end;
+
+        private CurrentInstant(long nodeId, long start, long end) {
+            this.nodeId = nodeId;
+            this.start = start;
+            this.end = end;
+        }
+
+        private boolean contains(long time) {
+            return time >= start && time < end;
+        }
+    }
+}
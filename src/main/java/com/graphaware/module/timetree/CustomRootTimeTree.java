@@ -27,7 +27,17 @@ public class CustomRootTimeTree extends SingleTimeTree {
     private final Node root;
 
     public CustomRootTimeTree(Node root) {
-        super(root.getGraphDatabase());
+        this(root, TimeTreeOptions.defaults());
+    }
+
+    /**
+     * Create a time tree with a custom root.
+     *
+     * @param root    of the tree.
+     * @param options optional features of the tree.
+     */
+    public CustomRootTimeTree(Node root, TimeTreeOptions options) {
+        super(root.getGraphDatabase(), options);
         this.root = root;
     }
 
@@ -38,4 +48,20 @@ public class CustomRootTimeTree extends SingleTimeTree {
     protected Node getTimeRoot() {
         return root;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean isTimeRoot(Node node) {
+        return node.getId() == root.getId();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected long getRootKey() {
+        return root.getId();
+    }
 }
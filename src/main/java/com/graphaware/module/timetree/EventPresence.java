@@ -0,0 +1,481 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree;
+
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.graphaware.common.util.PropertyContainerUtils.getInt;
+import static com.graphaware.module.timetree.SingleTimeTree.VALUE_PROPERTY;
+import static com.graphaware.module.timetree.SingleTimeTree.hasEvents;
+import static com.graphaware.module.timetree.domain.TimeTreeRelationshipTypes.CHILD;
+import static com.graphaware.module.timetree.domain.TimeTreeRelationshipTypes.getTimeTreeRelationshipNames;
+import static org.neo4j.graphdb.Direction.INCOMING;
+import static org.neo4j.graphdb.Direction.OUTGOING;
+
+/**
+ * Roll-up of event presence, which allows queries to skip subtrees of a time tree that have no events attached, or no
+ * events with timestamps they are interested in.
+ * <p/>
+ * A time instant node can carry a bitmap in its {@link #NON_EMPTY_PROPERTY}, in which the bit of a child's value (e.g.
+ * 0 - 59 for minutes) is set iff events are attached to the child or any of its descendants. Such a maintained instant
+ * also carries the smallest and the largest timestamp of the events attached to it and its descendants in its
+ * {@link #MIN_TIMESTAMP_PROPERTY} and {@link #MAX_TIMESTAMP_PROPERTY}, which are missing iff there are no such events.
+ * Events without a numeric timestamp make the bounds unlimited.
+ * <p/>
+ * Instants get an empty bitmap when they are created by a tree with event presence enabled; the bitmap and the bounds
+ * are then updated incrementally on attach and detach. Instants without the bitmap (created before the option was
+ * enabled) have all their children visited, as before. The root of a tree has no bitmap, since all of its years are
+ * always visited.
+ * <p/>
+ * Bits are set for events attached with relationships of any type, since queries may ask for any type. Events attached
+ * by other means than {@link TimeTreeBackedEvents} (e.g. by Cypher) are only accounted for while the
+ * {@link com.graphaware.module.timetree.module.TimeTreeModule} runs, which watches relationships of all types, not only
+ * the configured one. Without it, {@link #attached(Node, Long)} must be called for such events, otherwise queries miss
+ * them.
+ * <p/>
+ * A bit may stay set and the bounds may stay wider than needed after events have been detached, e.g. when they are
+ * deleted from the graph without the {@link com.graphaware.module.timetree.module.TimeTreeModule} running, which only
+ * costs a visit of the subtree. A bit is never cleared and the bounds are never narrowed while they are needed,
+ * because the ancestors of an instant are write-locked from the top down, in the same order in which the tree locks
+ * them, before their bitmaps and bounds are read and written.
+ */
+public final class EventPresence {
+
+    public static final String NON_EMPTY_PROPERTY = "nonEmpty";
+    public static final String MIN_TIMESTAMP_PROPERTY = "minTimestamp";
+    public static final String MAX_TIMESTAMP_PROPERTY = "maxTimestamp";
+
+    private static final long[] EMPTY = new long[0];
+    private static final List<String> timeTreeRelationships = getTimeTreeRelationshipNames();
+
+    /**
+     * Give a newly created time instant an empty bitmap, so that its children and bounds are maintained from now on.
+     *
+     * @param instant node without children and events.
+     */
+    public static void initialize(Node instant) {
+        instant.setProperty(NON_EMPTY_PROPERTY, EMPTY);
+    }
+
+    /**
+     * Check whether an instant is maintained, i.e. whether its bitmap and bounds can be relied on.
+     *
+     * @param instant node.
+     * @return true iff maintained.
+     */
+    public static boolean isMaintained(Node instant) {
+        return instant.hasProperty(NON_EMPTY_PROPERTY);
+    }
+
+    /**
+     * Get the bitmap of an instant's children that have events in their subtree.
+     *
+     * @param instant node.
+     * @return bitmap, <code>null</code> if the instant isn't maintained and all its children must be visited.
+     */
+    public static long[] getBitmap(Node instant) {
+        return (long[]) instant.getProperty(NON_EMPTY_PROPERTY, null);
+    }
+
+    /**
+     * Get the smallest timestamp of the events attached to a maintained instant and its descendants.
+     *
+     * @param instant node.
+     * @return timestamp, <code>null</code> if there are no events or the instant isn't maintained.
+     */
+    public static Long getMinTimestamp(Node instant) {
+        return (Long) instant.getProperty(MIN_TIMESTAMP_PROPERTY, null);
+    }
+
+    /**
+     * Get the largest timestamp of the events attached to a maintained instant and its descendants.
+     *
+     * @param instant node.
+     * @return timestamp, <code>null</code> if there are no events or the instant isn't maintained.
+     */
+    public static Long getMaxTimestamp(Node instant) {
+        return (Long) instant.getProperty(MAX_TIMESTAMP_PROPERTY, null);
+    }
+
+    /**
+     * Check whether a child may have events in its subtree, according to the bitmap of its parent.
+     *
+     * @param bitmap of the parent as returned by {@link #getBitmap(Node)}, can be <code>null</code>.
+     * @param child  of the parent.
+     * @return <code>false</code> iff the subtree of the child can be skipped.
+     */
+    public static boolean mayHaveEvents(long[] bitmap, Node child) {
+        return bitmap == null || contains(bitmap, getInt(child, VALUE_PROPERTY));
+    }
+
+    /**
+     * Mark the subtrees of an instant and its ancestors as non-empty and widen their bounds after an event has been
+     * attached to the instant. Must be called within the transaction that attached the event.
+     *
+     * @param instant   the event has been attached to.
+     * @param timestamp of the event, <code>null</code> if it has none.
+     */
+    public static void attached(Node instant, Long timestamp) {
+        if (!instant.hasRelationship(CHILD, INCOMING)) {
+            return;
+        }
+
+        long min = timestamp == null ? Long.MIN_VALUE : timestamp;
+        long max = timestamp == null ? Long.MAX_VALUE : timestamp;
+
+        //bits and bounds on the path can only be reduced by transactions holding the lock of the instant, like this one
+        List<Node> ancestors = ancestorsOf(instant);
+        if (isMarked(instant, ancestors, min, max)) {
+            return;
+        }
+
+        lock(instant, ancestors);
+
+        widen(instant, min, max);
+
+        Node node = instant;
+        for (Node ancestor : ancestors) {
+            long[] bitmap = getBitmap(ancestor);
+            int value = getInt(node, VALUE_PROPERTY);
+
+            if (bitmap != null) {
+                if (contains(bitmap, value) && covers(ancestor, min, max)) {
+                    return;
+                }
+                if (!contains(bitmap, value)) {
+                    ancestor.setProperty(NON_EMPTY_PROPERTY, set(bitmap, value));
+                }
+                widen(ancestor, min, max);
+            }
+
+            node = ancestor;
+        }
+    }
+
+    /**
+     * Check whether the path from an instant up is marked as non-empty and covers the given bounds. Since bits and
+     * bounds are only ever set after those above them, the instant and its first maintained ancestor decide.
+     */
+    private static boolean isMarked(Node instant, List<Node> ancestors, long min, long max) {
+        if (isMaintained(instant) && !covers(instant, min, max)) {
+            return false;
+        }
+
+        Node node = instant;
+        for (Node ancestor : ancestors) {
+            long[] bitmap = getBitmap(ancestor);
+            if (bitmap != null) {
+                return contains(bitmap, getInt(node, VALUE_PROPERTY)) && covers(ancestor, min, max);
+            }
+            node = ancestor;
+        }
+
+        return true;
+    }
+
+    private static boolean covers(Node instant, long min, long max) {
+        Long currentMin = getMinTimestamp(instant);
+        Long currentMax = getMaxTimestamp(instant);
+        return currentMin != null && currentMin <= min && currentMax >= max;
+    }
+
+    private static void widen(Node instant, long min, long max) {
+        if (!isMaintained(instant)) {
+            return;
+        }
+
+        Long currentMin = getMinTimestamp(instant);
+        Long currentMax = getMaxTimestamp(instant);
+
+        if (currentMin == null || min < currentMin) {
+            instant.setProperty(MIN_TIMESTAMP_PROPERTY, min);
+        }
+        if (currentMax == null || max > currentMax) {
+            instant.setProperty(MAX_TIMESTAMP_PROPERTY, max);
+        }
+    }
+
+    /**
+     * Clear the bits of an instant and its ancestors whose subtrees have no events left after an event has been
+     * detached from the instant, and repair their bounds. Must be called within the transaction that detached the
+     * event.
+     *
+     * @param instant           the event has been detached from.
+     * @param timestampProperty property of the event nodes that stores their timestamp.
+     * @param timestamp         of the detached event, <code>null</code> if it had none or it isn't known, in which case
+     *                          the bounds are recomputed.
+     */
+    public static void detached(Node instant, String timestampProperty, Long timestamp) {
+        if (!instant.hasRelationship(CHILD, INCOMING)) {
+            return;
+        }
+
+        //instants get their bitmaps when created, so a tree without them can be left alone without locking
+        List<Node> ancestors = ancestorsOf(instant);
+        if (!isMaintained(instant) && !isMaintained(ancestors)) {
+            return;
+        }
+
+        lock(instant, ancestors);
+        repair(instant, ancestors, timestampProperty, timestamp);
+    }
+
+    /**
+     * Clear the bit of a child removed from the tree, and of the ancestors left without events by the removal. Must be
+     * called within the transaction that removed the child.
+     *
+     * @param parent of the removed child, which had no events.
+     * @param value  of the removed child.
+     */
+    public static void childRemoved(Node parent, int value) {
+        if (!isMaintained(parent)) {
+            return;
+        }
+
+        List<Node> ancestors = parent.hasRelationship(CHILD, INCOMING) ? ancestorsOf(parent) : new ArrayList<Node>();
+        List<Node> locked = new ArrayList<>(ancestors);
+        locked.add(0, parent);
+        lock(parent, locked);
+
+        long[] bitmap = getBitmap(parent);
+        if (!contains(bitmap, value)) {
+            return;
+        }
+
+        parent.setProperty(NON_EMPTY_PROPERTY, unset(bitmap, value));
+        repair(parent, ancestors, null, null);
+    }
+
+    /**
+     * Repair the bits and bounds of a locked instant and its ancestors, from the bottom up, as long as they change.
+     *
+     * @param instant           to start from.
+     * @param ancestors         of the instant, from the parent up.
+     * @param timestampProperty property of the event nodes that stores their timestamp, <code>null</code> to only
+     *                          remove the bounds of emptied instants.
+     * @param timestamp         of a detached event, <code>null</code> if unknown.
+     */
+    private static void repair(Node instant, List<Node> ancestors, String timestampProperty, Long timestamp) {
+        Node node = instant;
+        for (int i = 0; ; i++) {
+            boolean empty = isEmpty(node);
+            boolean narrowed = narrow(node, empty, timestampProperty, timestamp);
+
+            if (i == ancestors.size()) {
+                return;
+            }
+
+            Node parent = ancestors.get(i);
+            long[] bitmap = getBitmap(parent);
+            int value = getInt(node, VALUE_PROPERTY);
+            boolean cleared = false;
+
+            if (empty && bitmap != null && contains(bitmap, value)) {
+                parent.setProperty(NON_EMPTY_PROPERTY, unset(bitmap, value));
+                cleared = true;
+            }
+
+            if (!narrowed && !cleared) {
+                return;
+            }
+
+            node = parent;
+        }
+    }
+
+    /**
+     * Narrow the bounds of a locked instant after events have been detached from its subtree.
+     *
+     * @return true iff the bounds have changed.
+     */
+    private static boolean narrow(Node instant, boolean empty, String timestampProperty, Long timestamp) {
+        Long min = getMinTimestamp(instant);
+        Long max = getMaxTimestamp(instant);
+
+        if (min == null) {
+            return false;
+        }
+
+        if (empty) {
+            instant.removeProperty(MIN_TIMESTAMP_PROPERTY);
+            instant.removeProperty(MAX_TIMESTAMP_PROPERTY);
+            return true;
+        }
+
+        //only the removal of an event at a bound can narrow it
+        if (timestampProperty == null || (timestamp != null && timestamp != min.longValue() && timestamp != max.longValue())) {
+            return false;
+        }
+
+        long[] bounds = computeBounds(instant, timestampProperty);
+        if (bounds == null || (bounds[0] == min && bounds[1] == max)) {
+            return false;
+        }
+
+        instant.setProperty(MIN_TIMESTAMP_PROPERTY, bounds[0]);
+        instant.setProperty(MAX_TIMESTAMP_PROPERTY, bounds[1]);
+        return true;
+    }
+
+    /**
+     * Compute the bounds of a non-empty instant from the timestamps of its own events and the bounds of its children.
+     *
+     * @return min and max, <code>null</code> if they cannot be computed because a non-empty child isn't maintained.
+     */
+    private static long[] computeBounds(Node instant, String timestampProperty) {
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+
+        for (Relationship relationship : instant.getRelationships()) {
+            if (timeTreeRelationships.contains(relationship.getType().name())) {
+                continue;
+            }
+
+            Object timestamp = relationship.getOtherNode(instant).getProperty(timestampProperty, null);
+            if (!(timestamp instanceof Number)) {
+                return new long[]{Long.MIN_VALUE, Long.MAX_VALUE};
+            }
+
+            min = Math.min(min, ((Number) timestamp).longValue());
+            max = Math.max(max, ((Number) timestamp).longValue());
+        }
+
+        long[] bitmap = getBitmap(instant);
+        for (Relationship relationship : instant.getRelationships(CHILD, OUTGOING)) {
+            Node child = relationship.getEndNode();
+            if (!mayHaveEvents(bitmap, child)) {
+                continue;
+            }
+
+            if (!isMaintained(child)) {
+                return null;
+            }
+
+            Long childMin = getMinTimestamp(child);
+            if (childMin != null) {
+                min = Math.min(min, childMin);
+                max = Math.max(max, getMaxTimestamp(child));
+            }
+        }
+
+        return min <= max ? new long[]{min, max} : null;
+    }
+
+    private static boolean isEmpty(Node instant) {
+        long[] bitmap = getBitmap(instant);
+
+        if (bitmap == null && instant.hasRelationship(CHILD, OUTGOING)) {
+            return false;
+        }
+
+        return (bitmap == null || isEmpty(bitmap)) && !hasEvents(instant);
+    }
+
+    private static boolean isMaintained(List<Node> ancestors) {
+        for (Node ancestor : ancestors) {
+            if (isMaintained(ancestor)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Get the ancestors of an instant, excluding the root of the tree.
+     *
+     * @param instant node, must be attached to a tree.
+     * @return ancestors, from the parent up.
+     */
+    private static List<Node> ancestorsOf(Node instant) {
+        List<Node> result = new ArrayList<>();
+
+        Node node = instant.getSingleRelationship(CHILD, INCOMING).getStartNode();
+        Relationship toParent = node.getSingleRelationship(CHILD, INCOMING);
+        while (toParent != null) {
+            result.add(node);
+            node = toParent.getStartNode();
+            toParent = node.getSingleRelationship(CHILD, INCOMING);
+        }
+
+        return result;
+    }
+
+    /**
+     * Write-lock the given ancestors from the top down, until the end of the current transaction.
+     *
+     * @param instant   any node of the tree, to get the database from.
+     * @param ancestors to lock, from the bottom up.
+     */
+    private static void lock(Node instant, List<Node> ancestors) {
+        try (Transaction tx = instant.getGraphDatabase().beginTx()) {
+            for (int i = ancestors.size() - 1; i >= 0; i--) {
+                tx.acquireWriteLock(ancestors.get(i));
+            }
+            tx.success();
+        }
+    }
+
+    static boolean contains(long[] bitmap, int value) {
+        int word = value >>> 6;
+        return word < bitmap.length && (bitmap[word] & (1L << value)) != 0;
+    }
+
+    /**
+     * Set a bit in a bitmap.
+     *
+     * @param bitmap to set the bit in, not modified.
+     * @param value  of the child to set the bit of.
+     * @return new bitmap, grown if needed.
+     */
+    public static long[] set(long[] bitmap, int value) {
+        int word = value >>> 6;
+        long[] result = Arrays.copyOf(bitmap, Math.max(bitmap.length, word + 1));
+        result[word] |= 1L << value;
+        return result;
+    }
+
+    static long[] unset(long[] bitmap, int value) {
+        int word = value >>> 6;
+        if (word >= bitmap.length) {
+            return bitmap;
+        }
+
+        long[] result = Arrays.copyOf(bitmap, bitmap.length);
+        result[word] &= ~(1L << value);
+        return result;
+    }
+
+    private static boolean isEmpty(long[] bitmap) {
+        for (long word : bitmap) {
+            if (word != 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private EventPresence() {
+    }
+}
@@ -0,0 +1,408 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree;
+
+import com.graphaware.module.timetree.domain.Event;
+import com.graphaware.module.timetree.domain.QueryOptions;
+import com.graphaware.module.timetree.domain.TimeInstant;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.graphaware.module.timetree.domain.TimeTreeRelationshipTypes.NEXT;
+import static com.graphaware.module.timetree.domain.ValidationUtils.validateRange;
+import static org.neo4j.graphdb.Direction.INCOMING;
+import static org.neo4j.graphdb.Direction.OUTGOING;
+
+/**
+ * Events of many time trees with custom roots (e.g. one per tenant or device), merged into a single time-ordered result.
+ * <p/>
+ * Each tree is traversed bucket by bucket, i.e. time instant by time instant at the resolution of the query, and the
+ * buckets of all trees are merged k-way by their start time. Events of buckets that start at the same time are ordered
+ * by their timestamp property. With a limit, the merge stops as soon as enough events have been found.
+ * <p/>
+ * With the parallel option, trees are traversed in parallel on a bounded thread pool, each in its own transaction. Each
+ * tree then stops after it has produced enough events to satisfy the limit on its own.
+ */
+public class MultiRootEvents {
+
+    private static final String DEFAULT_TIMESTAMP_PROPERTY = "timestamp";
+
+    private final GraphDatabaseService database;
+    private final String timestampProperty;
+    private final int parallelism;
+    private ExecutorService executor;
+
+    public MultiRootEvents(GraphDatabaseService database) {
+        this(database, DEFAULT_TIMESTAMP_PROPERTY, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param database          containing the trees.
+     * @param timestampProperty property of the event nodes that stores a <code>long</code> timestamp.
+     * @param parallelism       maximum number of trees traversed in parallel by parallel queries.
+     */
+    public MultiRootEvents(GraphDatabaseService database, String timestampProperty, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+
+        this.database = database;
+        this.timestampProperty = timestampProperty;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Get events attached to all time instants in the specified range (inclusive) and their children, in all trees with
+     * the specified roots. Must be called within a transaction.
+     *
+     * @param rootNodeIds       IDs of the roots of the trees.
+     * @param startTime         time instant representing the start of the interval (inclusive).
+     * @param endTime           time instant representing the end of the interval (inclusive).
+     * @param relationshipTypes of the relationships between the event and the time instants, <code>null</code> for all.
+     * @param direction         of the relationships between the time instants and the events from the time instants' point of view.
+     * @param options           of the query.
+     * @return events, in chronological order (or reverse-chronological order if the options say so).
+     */
+    public List<Event> getEvents(Collection<Long> rootNodeIds, TimeInstant startTime, TimeInstant endTime, Set<RelationshipType> relationshipTypes, Direction direction, QueryOptions options) {
+        validateRange(startTime, endTime);
+
+        Query query = new Query(startTime, endTime, relationshipTypes, direction, options);
+
+        List<Iterator<Bucket>> buckets = new ArrayList<>();
+        if (options.isParallel() && rootNodeIds.size() > 1) {
+            buckets.addAll(traverseInParallel(rootNodeIds, query));
+        } else {
+            for (Long rootNodeId : rootNodeIds) {
+                buckets.add(new BucketIterator(database.getNodeById(rootNodeId), query));
+            }
+        }
+
+        return merge(buckets, options);
+    }
+
+    private List<Event> merge(List<Iterator<Bucket>> iterators, QueryOptions options) {
+        final int sign = options.isDescending() ? -1 : 1;
+
+        PriorityQueue<PeekingIterator> queue = new PriorityQueue<>(Math.max(1, iterators.size()), new Comparator<PeekingIterator>() {
+            @Override
+            public int compare(PeekingIterator i1, PeekingIterator i2) {
+                return sign * Long.compare(i1.peek().start, i2.peek().start);
+            }
+        });
+
+        for (Iterator<Bucket> iterator : iterators) {
+            if (iterator.hasNext()) {
+                queue.add(new PeekingIterator(iterator));
+            }
+        }
+
+        List<Event> result = new ArrayList<>();
+        List<TimestampedEvent> sameStart = new ArrayList<>();
+
+        while (!queue.isEmpty() && !isFull(result, options)) {
+            long start = queue.peek().peek().start;
+
+            //all buckets starting at the same time, from different trees
+            sameStart.clear();
+            while (!queue.isEmpty() && queue.peek().peek().start == start) {
+                PeekingIterator iterator = queue.poll();
+                sameStart.addAll(iterator.next().events);
+                if (iterator.hasNext()) {
+                    queue.add(iterator);
+                }
+            }
+
+            Collections.sort(sameStart, TimestampedEvent.order(options.isDescending()));
+
+            for (TimestampedEvent event : sameStart) {
+                if (isFull(result, options)) {
+                    break;
+                }
+                result.add(event.event);
+            }
+        }
+
+        return result;
+    }
+
+    private static boolean isFull(Collection<?> events, QueryOptions options) {
+        return options.getLimit() > 0 && events.size() >= options.getLimit();
+    }
+
+    private List<Iterator<Bucket>> traverseInParallel(Collection<Long> rootNodeIds, final Query query) {
+        List<Future<List<Bucket>>> futures = new ArrayList<>();
+
+        for (final Long rootNodeId : rootNodeIds) {
+            futures.add(getExecutor().submit(new Callable<List<Bucket>>() {
+                @Override
+                public List<Bucket> call() {
+                    List<Bucket> result = new ArrayList<>();
+                    int events = 0;
+
+                    try (Transaction tx = database.beginTx()) {
+                        BucketIterator iterator = new BucketIterator(database.getNodeById(rootNodeId), query);
+                        while (iterator.hasNext() && (query.options.getLimit() == 0 || events < query.options.getLimit())) {
+                            Bucket bucket = iterator.next();
+                            result.add(bucket);
+                            events += bucket.events.size();
+                        }
+                        tx.success();
+                    }
+
+                    return result;
+                }
+            }));
+        }
+
+        List<Iterator<Bucket>> result = new ArrayList<>();
+        try {
+            for (Future<List<Bucket>> future : futures) {
+                result.add(future.get().iterator());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while querying time trees", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            for (Future<List<Bucket>> future : futures) {
+                future.cancel(true);
+            }
+        }
+
+        return result;
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "TimeTree-MultiRoot-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        return executor;
+    }
+
+    /**
+     * Stop the threads used by parallel queries, if any.
+     */
+    public synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Parameters of a single query.
+     */
+    private final class Query {
+
+        private final TimeInstant startTime;
+        private final TimeInstant endTime;
+        private final Set<RelationshipType> types;
+        private final Direction direction;
+        private final QueryOptions options;
+
+        private Query(TimeInstant startTime, TimeInstant endTime, Set<RelationshipType> types, Direction direction, QueryOptions options) {
+            this.startTime = startTime;
+            this.endTime = endTime;
+            this.types = types;
+            this.direction = direction;
+            this.options = options;
+        }
+    }
+
+    /**
+     * Events attached to a single time instant (and its children) of a single tree, ordered by their timestamp.
+     */
+    private static final class Bucket {
+
+        private final long start;
+        private final List<TimestampedEvent> events;
+
+        private Bucket(long start, List<TimestampedEvent> events) {
+            this.start = start;
+            this.events = events;
+        }
+    }
+
+    /**
+     * Lazily produces {@link Bucket}s of a single tree in the query's order. Must be used within a transaction.
+     */
+    private final class BucketIterator implements Iterator<Bucket> {
+
+        private final Query query;
+        private final TimeTreeBackedEvents timedEvents;
+        private final Node last;
+        private Node next;
+
+        private BucketIterator(Node root, Query query) {
+            this.query = query;
+            TimeTree timeTree = new CustomRootTimeTree(root);
+            this.timedEvents = new TimeTreeBackedEvents(timeTree, timestampProperty, 0);
+
+            Node startTimeNode = timeTree.getInstantAtOrAfter(query.startTime);
+            Node endTimeNode = timeTree.getInstantAtOrBefore(query.endTime);
+
+            if (startTimeNode == null || endTimeNode == null || startOf(startTimeNode) > startOf(endTimeNode)) {
+                this.next = null;
+                this.last = null;
+            } else {
+                this.next = query.options.isDescending() ? endTimeNode : startTimeNode;
+                this.last = query.options.isDescending() ? startTimeNode : endTimeNode;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Bucket next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+
+            Node instant = next;
+            long start = startOf(instant);
+
+            if (instant.equals(last)) {
+                next = null;
+            } else {
+                Relationship toNext = instant.getSingleRelationship(NEXT, query.options.isDescending() ? INCOMING : OUTGOING);
+                next = toNext == null ? null : toNext.getOtherNode(instant);
+            }
+
+            List<TimestampedEvent> events = new ArrayList<>();
+            for (Event event : timedEvents.getEventsAttachedToNodeAndChildren(instant, query.types, query.direction)) {
+                Long timestamp = timedEvents.getTimestamp(event.getNode());
+
+                if (timestamp != null && query.options.isExactBoundaries()
+                        && (timestamp < query.startTime.getTime() || timestamp > query.endTime.getTime())) {
+                    continue;
+                }
+
+                events.add(new TimestampedEvent(event, timestamp != null ? timestamp : start));
+            }
+
+            Collections.sort(events, TimestampedEvent.order(query.options.isDescending()));
+
+            return new Bucket(start, events);
+        }
+
+        private long startOf(Node instant) {
+            return SingleTimeTree.getTimeInstant(instant, query.startTime.getTimezone()).getTime();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Iterator that allows looking at the next element without consuming it.
+     */
+    private static final class PeekingIterator {
+
+        private final Iterator<Bucket> iterator;
+        private Bucket peeked;
+
+        private PeekingIterator(Iterator<Bucket> iterator) {
+            this.iterator = iterator;
+        }
+
+        private Bucket peek() {
+            if (peeked == null) {
+                peeked = iterator.next();
+            }
+            return peeked;
+        }
+
+        private Bucket next() {
+            Bucket result = peek();
+            peeked = null;
+            return result;
+        }
+
+        private boolean hasNext() {
+            return peeked != null || iterator.hasNext();
+        }
+    }
+
+    /**
+     * An {@link Event} with the timestamp it is ordered by.
+     */
+    private static final class TimestampedEvent {
+
+        private static final Comparator<TimestampedEvent> EARLIEST_FIRST = new Comparator<TimestampedEvent>() {
+            @Override
+            public int compare(TimestampedEvent e1, TimestampedEvent e2) {
+                return Long.compare(e1.timestamp, e2.timestamp);
+            }
+        };
+
+        private static final Comparator<TimestampedEvent> LATEST_FIRST = Collections.reverseOrder(EARLIEST_FIRST);
+
+        private final Event event;
+        private final long timestamp;
+
+        private TimestampedEvent(Event event, long timestamp) {
+            this.event = event;
+            this.timestamp = timestamp;
+        }
+
+        private static Comparator<TimestampedEvent> order(boolean descending) {
+            return descending ? LATEST_FIRST : EARLIEST_FIRST;
+        }
+    }
+}
@@ -0,0 +1,410 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree;
+
+import com.graphaware.module.timetree.domain.Resolution;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent, memory-mapped index from (tree, resolution, bucket key) to the ID of the time instant node, which
+ * survives restarts, so that time instants can be found without a descent from the root of their tree right after
+ * startup. Lookups read the mapped file directly, i.e. hit the OS page cache without any deserialization.
+ * <p/>
+ * The index is an open-addressing hash table with linear probing, stored in a single file with a header. Trees are
+ * identified by the ID of their custom root node, or {@link #DEFAULT_TREE} for the tree with the default root; bucket
+ * keys are those of {@link BucketKeys#of(long, Resolution)}.
+ * <p/>
+ * The index is a cache: entries are not transactional and may point to nodes that have been removed or never
+ * committed, so every hit must be validated against the database. The header records whether the file has been
+ * closed cleanly, protected by a checksum. A file that hasn't been closed cleanly (or is corrupted or missing) is
+ * replaced by an empty one and {@link #isStale()} returns true, so that it can be rebuilt.
+ * <p/>
+ * This class is thread-safe.
+ */
+public class SidecarIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SidecarIndex.class);
+
+    public static final long DEFAULT_TREE = -1;
+
+    private static final long MAGIC = 0x5454534944454331L; //TTSIDEC1
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 32;
+    private static final int INITIAL_CAPACITY = 1 << 16;
+    private static final double MAX_LOAD = 0.7;
+
+    //header
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 8;
+    private static final int CAPACITY_OFFSET = 12;
+    private static final int SIZE_OFFSET = 16;
+    private static final int TOMBSTONES_OFFSET = 20;
+    private static final int CLEAN_OFFSET = 24;
+    private static final int CHECKSUM_OFFSET = 32;
+
+    //slot
+    private static final int ROOT_OFFSET = 0;
+    private static final int BUCKET_OFFSET = 8;
+    private static final int NODE_OFFSET = 16;
+    private static final int STATE_OFFSET = 24;
+    private static final int RESOLUTION_OFFSET = 28;
+
+    private static final int EMPTY = 0;
+    private static final int FULL = 1;
+    private static final int REMOVED = 2;
+
+    private final File file;
+    private final boolean stale;
+
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int size;
+    private int tombstones;
+    private boolean closed = false;
+
+    /**
+     * Open an index, creating the file if it doesn't exist.
+     *
+     * @param file of the index.
+     * @return index.
+     * @throws IOException in case the file cannot be created or mapped.
+     */
+    public static SidecarIndex open(File file) throws IOException {
+        return new SidecarIndex(file);
+    }
+
+    private SidecarIndex(File file) throws IOException {
+        this.file = file;
+
+        boolean valid = file.exists() && isValid(file);
+        if (!valid) {
+            if (file.exists()) {
+                LOG.warn("Time tree sidecar index " + file + " hasn't been closed cleanly or is corrupted, it will be rebuilt");
+            }
+            create(file, INITIAL_CAPACITY);
+        }
+
+        this.stale = !valid;
+
+        map();
+        buffer.putInt(CLEAN_OFFSET, 0);
+        buffer.force();
+    }
+
+    /**
+     * Was the index stale (i.e. empty, not closed cleanly, or corrupted) when opened? If so, it should be rebuilt by
+     * putting all time instants of all trees into it.
+     *
+     * @return true iff stale.
+     */
+    public boolean isStale() {
+        return stale;
+    }
+
+    /**
+     * Get the ID of a time instant node.
+     *
+     * @param rootKey    ID of the custom root of the tree, {@link #DEFAULT_TREE} for the default one.
+     * @param resolution of the instant.
+     * @param bucket     key of the instant, see {@link BucketKeys#of(long, Resolution)}.
+     * @return node ID, -1 if not found.
+     */
+    public synchronized long get(long rootKey, Resolution resolution, long bucket) {
+        if (closed) {
+            return -1;
+        }
+
+        int slot = find(rootKey, resolution, bucket);
+        return slot < 0 ? -1 : buffer.getLong(offset(slot) + NODE_OFFSET);
+    }
+
+    /**
+     * Put the ID of a time instant node into the index, replacing the previous one, if any.
+     *
+     * @param rootKey    ID of the custom root of the tree, {@link #DEFAULT_TREE} for the default one.
+     * @param resolution of the instant.
+     * @param bucket     key of the instant, see {@link BucketKeys#of(long, Resolution)}.
+     * @param nodeId     ID of the instant node.
+     */
+    public synchronized void put(long rootKey, Resolution resolution, long bucket, long nodeId) {
+        if (closed) {
+            return;
+        }
+
+        int existing = find(rootKey, resolution, bucket);
+        if (existing >= 0) {
+            buffer.putLong(offset(existing) + NODE_OFFSET, nodeId);
+            return;
+        }
+
+        if (size + tombstones + 1 > capacity * MAX_LOAD) {
+            resize(size + 1 > capacity * MAX_LOAD / 2 ? capacity * 2 : capacity);
+        }
+
+        int slot = index(rootKey, resolution, bucket);
+        while (state(slot) == FULL) {
+            slot = (slot + 1) & (capacity - 1);
+        }
+
+        if (state(slot) == REMOVED) {
+            tombstones--;
+        }
+
+        write(slot, rootKey, resolution, bucket, nodeId);
+        size++;
+        writeCounts();
+    }
+
+    /**
+     * Remove a time instant from the index.
+     *
+     * @param rootKey    ID of the custom root of the tree, {@link #DEFAULT_TREE} for the default one.
+     * @param resolution of the instant.
+     * @param bucket     key of the instant, see {@link BucketKeys#of(long, Resolution)}.
+     */
+    public synchronized void remove(long rootKey, Resolution resolution, long bucket) {
+        if (closed) {
+            return;
+        }
+
+        int slot = find(rootKey, resolution, bucket);
+        if (slot >= 0) {
+            buffer.putInt(offset(slot) + STATE_OFFSET, REMOVED);
+            size--;
+            tombstones++;
+            writeCounts();
+        }
+    }
+
+    /**
+     * Remove all time instants of a tree with bucket keys in the given range from the index, at all resolutions.
+     * Scans the whole index.
+     *
+     * @param rootKey ID of the custom root of the tree, {@link #DEFAULT_TREE} for the default one.
+     * @param from    lowest bucket key to remove, inclusive.
+     * @param to      highest bucket key to remove, exclusive.
+     */
+    public synchronized void removeRange(long rootKey, long from, long to) {
+        if (closed) {
+            return;
+        }
+
+        for (int slot = 0; slot < capacity; slot++) {
+            int offset = offset(slot);
+            if (state(slot) == FULL && buffer.getLong(offset + ROOT_OFFSET) == rootKey) {
+                long bucket = buffer.getLong(offset + BUCKET_OFFSET);
+                if (bucket >= from && bucket < to) {
+                    buffer.putInt(offset + STATE_OFFSET, REMOVED);
+                    size--;
+                    tombstones++;
+                }
+            }
+        }
+
+        writeCounts();
+    }
+
+    /**
+     * Get the number of entries in the index.
+     *
+     * @return size.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Flush the index to disk and mark it as closed cleanly. No more entries are added or returned afterwards.
+     */
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+
+        buffer.putInt(CLEAN_OFFSET, 1);
+        buffer.putLong(CHECKSUM_OFFSET, checksum(buffer));
+        buffer.force();
+        closed = true;
+    }
+
+    private int find(long rootKey, Resolution resolution, long bucket) {
+        int slot = index(rootKey, resolution, bucket);
+
+        while (true) {
+            int state = state(slot);
+            if (state == EMPTY) {
+                return -1;
+            }
+
+            int offset = offset(slot);
+            if (state == FULL
+                    && buffer.getLong(offset + BUCKET_OFFSET) == bucket
+                    && buffer.getLong(offset + ROOT_OFFSET) == rootKey
+                    && buffer.getInt(offset + RESOLUTION_OFFSET) == resolution.ordinal()) {
+                return slot;
+            }
+
+            slot = (slot + 1) & (capacity - 1);
+        }
+    }
+
+    private int index(long rootKey, Resolution resolution, long bucket) {
+        long hash = (rootKey * 31 + bucket) * 31 + resolution.ordinal();
+
+        //murmur3 finalizer
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+
+        return (int) hash & (capacity - 1);
+    }
+
+    private int state(int slot) {
+        return buffer.getInt(offset(slot) + STATE_OFFSET);
+    }
+
+    private static int offset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private void write(int slot, long rootKey, Resolution resolution, long bucket, long nodeId) {
+        int offset = offset(slot);
+        buffer.putLong(offset + ROOT_OFFSET, rootKey);
+        buffer.putLong(offset + BUCKET_OFFSET, bucket);
+        buffer.putLong(offset + NODE_OFFSET, nodeId);
+        buffer.putInt(offset + RESOLUTION_OFFSET, resolution.ordinal());
+        buffer.putInt(offset + STATE_OFFSET, FULL);
+    }
+
+    private void writeCounts() {
+        buffer.putInt(SIZE_OFFSET, size);
+        buffer.putInt(TOMBSTONES_OFFSET, tombstones);
+    }
+
+    /**
+     * Rehash all entries into a new file with the given capacity, which then replaces the current one. Also gets rid
+     * of tombstones.
+     */
+    private void resize(int newCapacity) {
+        File resized = new File(file.getPath() + ".resize");
+
+        try {
+            create(resized, newCapacity);
+
+            //the old mapping is released when garbage collected
+            MappedByteBuffer old = buffer;
+            int oldCapacity = capacity;
+
+            buffer = map(resized);
+            capacity = newCapacity;
+            size = 0;
+            tombstones = 0;
+
+            for (int slot = 0; slot < oldCapacity; slot++) {
+                int offset = offset(slot);
+                if (old.getInt(offset + STATE_OFFSET) == FULL) {
+                    long rootKey = old.getLong(offset + ROOT_OFFSET);
+                    long bucket = old.getLong(offset + BUCKET_OFFSET);
+                    Resolution resolution = Resolution.values()[old.getInt(offset + RESOLUTION_OFFSET)];
+
+                    int newSlot = index(rootKey, resolution, bucket);
+                    while (state(newSlot) != EMPTY) {
+                        newSlot = (newSlot + 1) & (capacity - 1);
+                    }
+                    write(newSlot, rootKey, resolution, bucket, old.getLong(offset + NODE_OFFSET));
+                    size++;
+                }
+            }
+
+            writeCounts();
+            buffer.putInt(CLEAN_OFFSET, 0);
+            buffer.force();
+
+            if (!resized.renameTo(file)) {
+                throw new IOException("Could not replace " + file + " by " + resized);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not resize time tree sidecar index " + file, e);
+        }
+    }
+
+    private void map() throws IOException {
+        buffer = map(file);
+        capacity = buffer.getInt(CAPACITY_OFFSET);
+        size = buffer.getInt(SIZE_OFFSET);
+        tombstones = buffer.getInt(TOMBSTONES_OFFSET);
+    }
+
+    private static MappedByteBuffer map(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+            //the mapping remains valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        }
+    }
+
+    private static void create(File file, int capacity) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(0);
+            raf.setLength(HEADER_SIZE + (long) capacity * SLOT_SIZE);
+            raf.seek(MAGIC_OFFSET);
+            raf.writeLong(MAGIC);
+            raf.writeInt(VERSION);
+            raf.writeInt(capacity);
+        }
+    }
+
+    private static boolean isValid(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            if (raf.length() < HEADER_SIZE) {
+                return false;
+            }
+
+            byte[] header = new byte[HEADER_SIZE];
+            raf.readFully(header);
+
+            ByteBuffer wrapped = ByteBuffer.wrap(header);
+            int capacity = wrapped.getInt(CAPACITY_OFFSET);
+
+            return wrapped.getLong(MAGIC_OFFSET) == MAGIC
+                    && wrapped.getInt(VERSION_OFFSET) == VERSION
+                    && capacity > 0 && (capacity & (capacity - 1)) == 0
+                    && raf.length() == HEADER_SIZE + (long) capacity * SLOT_SIZE
+                    && wrapped.getInt(CLEAN_OFFSET) == 1
+                    && wrapped.getLong(CHECKSUM_OFFSET) == checksum(wrapped);
+        }
+    }
+
+    private static long checksum(ByteBuffer header) {
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < CHECKSUM_OFFSET; i++) {
+            crc.update(header.get(i));
+        }
+        return crc.getValue();
+    }
+}
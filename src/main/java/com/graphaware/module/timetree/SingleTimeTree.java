@@ -17,18 +17,30 @@
 package com.graphaware.module.timetree;
 
 import com.graphaware.common.util.IterableUtils;
+import com.graphaware.module.timetree.domain.CalendarFields;
 import com.graphaware.module.timetree.domain.Resolution;
 import com.graphaware.module.timetree.domain.TimeInstant;
+import com.graphaware.module.timetree.domain.TimeInstantIterator;
 import com.graphaware.module.timetree.domain.TimeTreeLabels;
-import org.joda.time.DateTime;
+import com.graphaware.module.timetree.domain.TimeTreeRelationshipTypes;
+import com.graphaware.module.timetree.metrics.TimeTreeMetrics;
+import org.joda.time.DateTimeZone;
+import org.joda.time.chrono.ISOChronology;
 import org.neo4j.graphdb.*;
 import org.neo4j.graphdb.event.TransactionData;
 import org.neo4j.graphdb.event.TransactionEventHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.LinkedList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.locks.*;
 
 import static com.graphaware.common.util.PropertyContainerUtils.getInt;
@@ -37,6 +49,8 @@ import static com.graphaware.module.timetree.domain.Resolution.YEAR;
 import static com.graphaware.module.timetree.domain.Resolution.findForNode;
 import static com.graphaware.module.timetree.domain.TimeTreeLabels.TimeTreeRoot;
 import static com.graphaware.module.timetree.domain.TimeTreeRelationshipTypes.*;
+import static com.graphaware.module.timetree.domain.ValidationUtils.validateRange;
+import static org.neo4j.graphdb.Direction.BOTH;
 import static org.neo4j.graphdb.Direction.INCOMING;
 import static org.neo4j.graphdb.Direction.OUTGOING;
 
@@ -49,8 +63,19 @@ public class SingleTimeTree implements TimeTree {
 
     protected static final String VALUE_PROPERTY = "value";
 
+    private static final int DEFAULT_REMOVAL_BATCH_SIZE = 10000;
+
     private final GraphDatabaseService database;
     private final ReentrantLock rootLock = new ReentrantLock();
+    private final TimeTreeMetrics metrics = TimeTreeMetrics.getInstance();
+    private final TimeTreeStats stats;
+    private final TransactionEventHandler<CommitState> transactionHandler;
+    private final ThreadLocal<Uncommitted> uncommitted = new ThreadLocal<>();
+    private final CurrentInstants currentInstants;
+    private final boolean bucketKeys;
+    private final SidecarIndex sidecarIndex;
+    private final boolean eventPresence;
+    private volatile boolean bucketIndexesOnline = false;
 
     /**
      * Constructor for time tree.
@@ -58,27 +83,50 @@ public class SingleTimeTree implements TimeTree {
      * @param database to talk to.
      */
     public SingleTimeTree(GraphDatabaseService database) {
+        this(database, TimeTreeOptions.defaults());
+    }
+
+    /**
+     * Constructor for time tree.
+     *
+     * @param database to talk to.
+     * @param options  optional features of the tree.
+     */
+    public SingleTimeTree(GraphDatabaseService database, TimeTreeOptions options) {
         this.database = database;
+        this.currentInstants = new CurrentInstants(database);
+        this.stats = TimeTreeStats.getInstance(database);
+        this.bucketKeys = options.isBucketKeys();
+        this.sidecarIndex = options.getSidecarIndex();
+        this.eventPresence = options.isEventPresence();
 
-        database.registerTransactionEventHandler(new TransactionEventHandler<Boolean>() {
+        this.transactionHandler = new TransactionEventHandler<CommitState>() {
             @Override
-            public Boolean beforeCommit(TransactionData transactionData) throws Exception {
+            public CommitState beforeCommit(TransactionData transactionData) throws Exception {
+                TimeTreeStats.Changes changes = committedChanges(transactionData);
+
                 if (!rootLock.isLocked()) {
-                    return false;
+                    return new CommitState(false, changes);
                 }
 
                 for (Node node : transactionData.createdNodes()) {
                     if (node.hasLabel(TimeTreeRoot)) {
-                        return true;
+                        return new CommitState(true, changes);
                     }
                 }
 
-                return false;
+                return new CommitState(false, changes);
             }
 
             @Override
-            public void afterCommit(TransactionData transactionData, Boolean rootCreated) {
-                if (rootCreated) {
+            public void afterCommit(TransactionData transactionData, CommitState state) {
+                currentInstants.committed();
+
+                if (state.changes != null) {
+                    stats.record(getRootKey(), state.changes);
+                }
+
+                if (state.rootCreated) {
                     if (rootLock.isHeldByCurrentThread()) {
                         rootLock.unlock();
                     }
@@ -86,14 +134,31 @@ public class SingleTimeTree implements TimeTree {
             }
 
             @Override
-            public void afterRollback(TransactionData transactionData, Boolean rootCreated) {
-                if (rootCreated) {
+            public void afterRollback(TransactionData transactionData, CommitState state) {
+                //instants cached by the rolled back transaction may not exist, its changes aren't recorded in the stats
+                currentInstants.rolledBack();
+
+                if (state != null && state.rootCreated) {
                     if (rootLock.isHeldByCurrentThread()) {
                         rootLock.unlock();
                     }
                 }
             }
-        });
+        };
+
+        database.registerTransactionEventHandler(transactionHandler);
+    }
+
+    /**
+     * Stop listening to the transactions of the database. Must be called once the tree isn't needed anymore, otherwise
+     * the database keeps it for good. The tree must not be used afterwards.
+     */
+    public void shutdown() {
+        try {
+            database.unregisterTransactionEventHandler(transactionHandler);
+        } catch (IllegalStateException e) {
+            //already shut down
+        }
     }
 
     /**
@@ -125,13 +190,28 @@ public class SingleTimeTree implements TimeTree {
      */
     @Override
     public List<Node> getInstants(TimeInstant startTime, TimeInstant endTime) {
-        List<Node> result = new LinkedList<>();
+        TimeInstantIterator iterator = new TimeInstantIterator(startTime, endTime);
+        List<Node> result = new ArrayList<>();
+        Node previous = null;
+
+        try (Transaction tx = database.beginTx()) {
+            Node timeRoot = getTimeRoot();
+            lockRoot(tx, timeRoot);
+
+            while (iterator.hasNext()) {
+                long localTime = CalendarFields.toLocal(iterator.next(), iterator.getTimezone());
 
-        for (TimeInstant instant : TimeInstant.getInstants(startTime, endTime)) {
-            Node toAdd = getInstant(instant);
-            if (toAdd != null) {
-                result.add(toAdd);
+                Descent descent = Descent.start(metrics);
+                Node toAdd = getInstant(timeRoot, localTime, iterator.getResolution(), RETURN_NULL, descent);
+                descent.finish();
+
+                if (toAdd != null && !toAdd.equals(previous)) {
+                    result.add(toAdd);
+                    previous = toAdd;
+                }
             }
+
+            tx.success();
         }
 
         return result;
@@ -142,18 +222,36 @@ public class SingleTimeTree implements TimeTree {
      */
     @Override
     public Node getOrCreateInstant(TimeInstant timeInstant) {
+        long start = metrics.now();
         Node instant;
 
         try (Transaction tx = database.beginTx()) {
-            DateTime dateTime = new DateTime(timeInstant.getTime(), timeInstant.getTimezone());
+            instant = currentInstants.get(timeInstant);
 
-            Node timeRoot = getTimeRoot();
-            tx.acquireWriteLock(timeRoot);
-            instant = getOrCreateInstant(timeRoot, dateTime, timeInstant.getResolution());
+            if (instant == null) {
+                long localTime = CalendarFields.toLocal(timeInstant.getTime(), timeInstant.getTimezone());
+
+                instant = findWithoutLocking(localTime, timeInstant.getResolution());
+
+                if (instant == null) {
+                    Node timeRoot = getTimeRoot();
+                    lockRoot(tx, timeRoot);
+
+                    Descent descent = Descent.start(metrics);
+                    instant = getOrCreateInstant(timeRoot, localTime, timeInstant.getResolution(), descent);
+                    descent.finish();
+
+                    putInSidecar(localTime, timeInstant.getResolution(), instant);
+                }
+
+                currentInstants.put(timeInstant, instant);
+            }
 
             tx.success();
         }
 
+        metrics.getOrCreateInstant().stop(start);
+
         return instant;
     }
 
@@ -162,10 +260,32 @@ public class SingleTimeTree implements TimeTree {
      */
     @Override
     public List<Node> getOrCreateInstants(TimeInstant startTime, TimeInstant endTime) {
-        List<Node> result = new LinkedList<>();
+        TimeInstantIterator iterator = new TimeInstantIterator(startTime, endTime);
+        List<Node> result = new ArrayList<>();
+        Node previous = null;
+
+        try (Transaction tx = database.beginTx()) {
+            Node timeRoot = getTimeRoot();
+            lockRoot(tx, timeRoot);
+
+            while (iterator.hasNext()) {
+                long start = metrics.now();
+                long localTime = CalendarFields.toLocal(iterator.next(), iterator.getTimezone());
+
+                Descent descent = Descent.start(metrics);
+                Node toAdd = getOrCreateInstant(timeRoot, localTime, iterator.getResolution(), descent);
+                descent.finish();
+
+                //the same local time can occur twice when clocks go back
+                if (!toAdd.equals(previous)) {
+                    result.add(toAdd);
+                    previous = toAdd;
+                }
 
-        for (TimeInstant instant : TimeInstant.getInstants(startTime, endTime)) {
-            result.add(getOrCreateInstant(instant));
+                metrics.getOrCreateInstant().stop(start);
+            }
+
+            tx.success();
         }
 
         return result;
@@ -188,7 +308,9 @@ public class SingleTimeTree implements TimeTree {
             }
         }
 
+        long start = metrics.now();
         rootLock.lock();
+        metrics.rootLockWait().stop(start);
 
         timeTreeRoot = IterableUtils.getSingleOrNull(database.findNodes(TimeTreeRoot));
 
@@ -207,12 +329,22 @@ public class SingleTimeTree implements TimeTree {
         Node instant;
 
         try (Transaction tx = database.beginTx()) {
-            DateTime dateTime = new DateTime(timeInstant.getTime(), timeInstant.getTimezone());
+            long localTime = CalendarFields.toLocal(timeInstant.getTime(), timeInstant.getTimezone());
 
-            Node timeRoot = getTimeRoot();
-            tx.acquireWriteLock(timeRoot);
+            instant = findWithoutLocking(localTime, timeInstant.getResolution());
 
-            instant = getInstant(timeRoot, dateTime, timeInstant.getResolution(), childNotFoundPolicy);
+            if (instant == null) {
+                Node timeRoot = getTimeRoot();
+                lockRoot(tx, timeRoot);
+
+                Descent descent = Descent.start(metrics);
+                instant = getInstant(timeRoot, localTime, timeInstant.getResolution(), childNotFoundPolicy, descent);
+                descent.finish();
+
+                if (instant != null && RETURN_NULL.equals(childNotFoundPolicy)) {
+                    putInSidecar(localTime, timeInstant.getResolution(), instant);
+                }
+            }
 
             tx.success();
         }
@@ -220,7 +352,158 @@ public class SingleTimeTree implements TimeTree {
         return instant;
     }
 
-    private Node getInstant(Node parent, DateTime dateTime, Resolution targetResolution, ChildNotFoundPolicy childNotFoundPolicy) {
+    /**
+     * Find an existing instant of this tree in the {@link SidecarIndex} or by its {@link BucketKeys bucket key},
+     * without locking the tree. Must be called within a transaction.
+     *
+     * @param localTime  local millis.
+     * @param resolution of the instant.
+     * @return instant, null if not found.
+     */
+    private Node findWithoutLocking(long localTime, Resolution resolution) {
+        Node instant = findInSidecar(localTime, resolution);
+
+        if (instant == null) {
+            instant = findByBucketKey(localTime, resolution);
+            if (instant != null) {
+                putInSidecar(localTime, resolution, instant);
+            }
+        }
+
+        return instant;
+    }
+
+    /**
+     * Find an existing instant of this tree in the {@link SidecarIndex}. Must be called within a transaction.
+     * <p/>
+     * The index isn't transactional, so the found node is only returned if it still represents the instant, which is
+     * checked by reading its ancestors. Otherwise, the entry is removed.
+     *
+     * @param localTime  local millis.
+     * @param resolution of the instant.
+     * @return instant, null if there is no sidecar index or the instant isn't found.
+     */
+    private Node findInSidecar(long localTime, Resolution resolution) {
+        if (sidecarIndex == null) {
+            return null;
+        }
+
+        long bucket = BucketKeys.of(localTime, resolution);
+        long nodeId = sidecarIndex.get(getRootKey(), resolution, bucket);
+        if (nodeId < 0) {
+            return null;
+        }
+
+        try {
+            Node node = database.getNodeById(nodeId);
+            if (node.hasLabel(resolution.getLabel()) && BucketKeys.of(node) == bucket && belongsToThisTree(node, resolution)) {
+                return node;
+            }
+        } catch (NotFoundException | IllegalArgumentException | IllegalStateException e) {
+            //removed in the meantime, never committed, or the ID has been reused by another node
+        }
+
+        sidecarIndex.remove(getRootKey(), resolution, bucket);
+        return null;
+    }
+
+    private void putInSidecar(long localTime, Resolution resolution, Node instant) {
+        if (sidecarIndex != null) {
+            sidecarIndex.put(getRootKey(), resolution, BucketKeys.of(localTime, resolution), instant.getId());
+        }
+    }
+
+    /**
+     * Remove instants of this tree from the {@link SidecarIndex}, if there is one.
+     *
+     * @param from lowest bucket key to remove, inclusive.
+     * @param to   highest bucket key to remove, exclusive.
+     */
+    private void removeFromSidecar(long from, long to) {
+        if (sidecarIndex != null) {
+            sidecarIndex.removeRange(getRootKey(), from, to);
+        }
+    }
+
+    /**
+     * Get the key of this tree in the {@link SidecarIndex}.
+     *
+     * @return key.
+     */
+    protected long getRootKey() {
+        return SidecarIndex.DEFAULT_TREE;
+    }
+
+    /**
+     * Find an existing instant of this tree by its {@link BucketKeys bucket key}, without locking the tree. Must be
+     * called within a transaction.
+     *
+     * @param localTime  local millis.
+     * @param resolution of the instant.
+     * @return instant, null if bucket keys are disabled, their indexes aren't online yet, or the instant isn't found
+     * (possibly because it has been created before bucket keys were enabled and has no key yet).
+     */
+    private Node findByBucketKey(long localTime, Resolution resolution) {
+        if (!bucketKeys) {
+            return null;
+        }
+
+        //without the index, the lookup would be a label scan
+        if (!bucketIndexesOnline) {
+            if (!BucketKeys.indexesOnline(database)) {
+                return null;
+            }
+            bucketIndexesOnline = true;
+        }
+
+        try (ResourceIterator<Node> candidates = database.findNodes(resolution.getLabel(), BucketKeys.BUCKET_PROPERTY, BucketKeys.of(localTime, resolution))) {
+            while (candidates.hasNext()) {
+                Node candidate = candidates.next();
+                if (belongsToThisTree(candidate, resolution)) {
+                    return candidate;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private boolean belongsToThisTree(Node instant, Resolution resolution) {
+        Node ancestor = instant;
+        for (int i = 0; i <= resolution.ordinal(); i++) {
+            Relationship parentRelationship = ancestor.getSingleRelationship(CHILD, INCOMING);
+            if (parentRelationship == null) {
+                return false;
+            }
+            ancestor = parentRelationship.getStartNode();
+        }
+
+        return isTimeRoot(ancestor);
+    }
+
+    /**
+     * Is the given node the root of this tree?
+     *
+     * @param node to check, the parent of a year node.
+     * @return true iff the node is the root of this tree.
+     */
+    protected boolean isTimeRoot(Node node) {
+        return node.hasLabel(TimeTreeRoot);
+    }
+
+    /**
+     * Acquire a write lock on the root of the tree, recording the time spent waiting for it.
+     *
+     * @param tx       current transaction.
+     * @param timeRoot root of the tree.
+     */
+    private void lockRoot(Transaction tx, Node timeRoot) {
+        long start = metrics.now();
+        tx.acquireWriteLock(timeRoot);
+        metrics.rootLockWait().stop(start);
+    }
+
+    private Node getInstant(Node parent, long localTime, Resolution targetResolution, ChildNotFoundPolicy childNotFoundPolicy, Descent descent) {
         Resolution currentResolution = currentResolution(parent);
 
         if (targetResolution.equals(currentResolution)) {
@@ -229,25 +512,25 @@ public class SingleTimeTree implements TimeTree {
 
         Resolution newCurrentResolution = childResolution(parent);
 
-        Node child = findChild(parent, dateTime.get(newCurrentResolution.getDateTimeFieldType()), RETURN_NULL);
+        Node child = findChild(parent, CalendarFields.get(localTime, newCurrentResolution), RETURN_NULL, descent);
 
         if (child == null) {
             switch (childNotFoundPolicy) {
                 case RETURN_NULL:
                     return null;
                 case RETURN_NEXT:
-                    return getInstantViaClosestChild(parent, dateTime, targetResolution, childNotFoundPolicy, newCurrentResolution, FIRST);
+                    return getInstantViaClosestChild(parent, localTime, targetResolution, childNotFoundPolicy, newCurrentResolution, FIRST, descent);
                 case RETURN_PREVIOUS:
-                    return getInstantViaClosestChild(parent, dateTime, targetResolution, childNotFoundPolicy, newCurrentResolution, LAST);
+                    return getInstantViaClosestChild(parent, localTime, targetResolution, childNotFoundPolicy, newCurrentResolution, LAST, descent);
             }
         }
 
         //recursion
-        return getInstant(child, dateTime, targetResolution, childNotFoundPolicy);
+        return getInstant(child, localTime, targetResolution, childNotFoundPolicy, descent);
     }
 
-    private Node getInstantViaClosestChild(Node parent, DateTime dateTime, Resolution targetResolution, ChildNotFoundPolicy childNotFoundPolicy, Resolution newCurrentResolution, RelationshipType relationshipType) {
-        Node closestChild = findChild(parent, dateTime.get(newCurrentResolution.getDateTimeFieldType()), childNotFoundPolicy);
+    private Node getInstantViaClosestChild(Node parent, long localTime, Resolution targetResolution, ChildNotFoundPolicy childNotFoundPolicy, Resolution newCurrentResolution, RelationshipType relationshipType, Descent descent) {
+        Node closestChild = findChild(parent, CalendarFields.get(localTime, newCurrentResolution), childNotFoundPolicy, descent);
         if (closestChild == null) {
             return null;
         }
@@ -296,11 +579,12 @@ public class SingleTimeTree implements TimeTree {
      * nodes on the way down from parent (recursively).
      *
      * @param parent           parent node on path to desired instant node.
-     * @param dateTime         time instant.
+     * @param localTime        time instant in local millis, see {@link CalendarFields#toLocal(long, org.joda.time.DateTimeZone)}.
      * @param targetResolution target child resolution. Recursion stops when at this level.
+     * @param descent          collecting the number of visited nodes.
      * @return node representing the time instant at the desired resolution level.
      */
-    private Node getOrCreateInstant(Node parent, DateTime dateTime, Resolution targetResolution) {
+    private Node getOrCreateInstant(Node parent, long localTime, Resolution targetResolution, Descent descent) {
         Resolution currentResolution = currentResolution(parent);
 
         if (targetResolution.equals(currentResolution)) {
@@ -309,10 +593,10 @@ public class SingleTimeTree implements TimeTree {
 
         Resolution newCurrentResolution = childResolution(parent);
 
-        Node child = findOrCreateChild(parent, dateTime.get(newCurrentResolution.getDateTimeFieldType()));
+        Node child = findOrCreateChild(parent, CalendarFields.get(localTime, newCurrentResolution), descent);
 
         //recursion
-        return getOrCreateInstant(child, dateTime, targetResolution);
+        return getOrCreateInstant(child, localTime, targetResolution, descent);
     }
 
     /**
@@ -322,15 +606,23 @@ public class SingleTimeTree implements TimeTree {
      * @param parent              parent of the node to be found.
      * @param value               value of the node to be found.
      * @param childNotFoundPolicy what to do when child isn't found?
+     * @param descent             collecting the number of visited nodes.
      * @return child node, or a value specified by the given {@link ChildNotFoundPolicy}.
      */
-    private Node findChild(Node parent, int value, ChildNotFoundPolicy childNotFoundPolicy) {
+    private Node findChild(Node parent, int value, ChildNotFoundPolicy childNotFoundPolicy, Descent descent) {
+        Node child = scanChildren(parent, value, childNotFoundPolicy, descent);
+        descent.childFound();
+        return child;
+    }
+
+    private Node scanChildren(Node parent, int value, ChildNotFoundPolicy childNotFoundPolicy, Descent descent) {
         Relationship firstRelationship = parent.getSingleRelationship(FIRST, OUTGOING);
         if (firstRelationship == null) {
             return null;
         }
 
         Node existingChild = firstRelationship.getEndNode();
+        descent.visit();
         while (getInt(existingChild, VALUE_PROPERTY) < value && parent(existingChild).getId() == parent.getId()) {
             Relationship nextRelationship = existingChild.getSingleRelationship(NEXT, OUTGOING);
 
@@ -357,6 +649,7 @@ public class SingleTimeTree implements TimeTree {
             }
 
             existingChild = nextRelationship.getEndNode();
+            descent.visit();
         }
 
         if (getInt(existingChild, VALUE_PROPERTY) == value) {
@@ -379,17 +672,25 @@ public class SingleTimeTree implements TimeTree {
     /**
      * Find a child node with value equal to the given value. If no such child exists, create one.
      *
-     * @param parent parent of the node to be found or created.
-     * @param value  value of the node to be found or created.
+     * @param parent  parent of the node to be found or created.
+     * @param value   value of the node to be found or created.
+     * @param descent collecting the number of visited nodes.
      * @return child node.
      */
-    private Node findOrCreateChild(Node parent, int value) {
+    private Node findOrCreateChild(Node parent, int value, Descent descent) {
+        Node child = scanOrCreateChild(parent, value, descent);
+        descent.childFound();
+        return child;
+    }
+
+    private Node scanOrCreateChild(Node parent, int value, Descent descent) {
         Relationship firstRelationship = parent.getSingleRelationship(FIRST, OUTGOING);
         if (firstRelationship == null) {
             return createFirstChildEver(parent, value);
         }
 
         Node existingChild = firstRelationship.getEndNode();
+        descent.visit();
         boolean isFirst = true;
         while (getInt(existingChild, VALUE_PROPERTY) < value && parent(existingChild).getId() == parent.getId()) {
             isFirst = false;
@@ -400,6 +701,7 @@ public class SingleTimeTree implements TimeTree {
             }
 
             existingChild = nextRelationship.getEndNode();
+            descent.visit();
         }
 
         if (getInt(existingChild, VALUE_PROPERTY) == value) {
@@ -538,7 +840,17 @@ public class SingleTimeTree implements TimeTree {
 
         Node child = database.createNode(TimeTreeLabels.getChild(parent));
         child.setProperty(VALUE_PROPERTY, value);
+        metrics.nodesCreated().increment();
         parent.createRelationshipTo(child, CHILD);
+        uncommitted().created.add(child.getId());
+
+        if (bucketKeys) {
+            child.setProperty(BucketKeys.BUCKET_PROPERTY, BucketKeys.of(child));
+        }
+
+        if (eventPresence) {
+            EventPresence.initialize(child);
+        }
 
         if (previous != null) {
             Relationship nextRelationship = previous.getSingleRelationship(NEXT, OUTGOING);
@@ -560,17 +872,442 @@ public class SingleTimeTree implements TimeTree {
      */
     @Override
     public void removeAll() {
-        removeChildren(getTimeRoot());
+        removeAll(DEFAULT_REMOVAL_BATCH_SIZE);
     }
 
-    private void removeChildren(Node root) {
-        for (Relationship relationship : root.getRelationships(OUTGOING)) {
-            relationship.delete();
-            if (relationship.isType(CHILD)) {
-                removeChildren(relationship.getEndNode());
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The tree is removed iteratively, bottom-up, i.e. a node is only removed once all its children have been removed.
+     * The root is removed last, so that an interrupted removal can be resumed by calling this method again.
+     */
+    @Override
+    public long removeAll(int batchSize) {
+        validateBatchSize(batchSize);
+        currentInstants.clear();
+        removeFromSidecar(Long.MIN_VALUE, Long.MAX_VALUE);
+
+        long removed;
+
+        Batch batch = new Batch(batchSize);
+        try {
+            Node root = getTimeRoot();
+            batch.lock(root);
+
+            //only the tree's own relationships are removed from the root, which may be a custom node
+            removed = removeSubtree(root, OUTGOING, false, batch);
+
+            batch.success();
+        } finally {
+            batch.close();
+        }
+
+        LOG.info("Removed " + removed + " time tree nodes.");
+
+        return removed;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The range is first unlinked from the rest of the tree, with a single splice of the {@link TimeTreeRelationshipTypes#NEXT}
+     * chain per level, and detached from the parents that remain, all in the first batch. It is then removed bottom-up.
+     * If the removal is interrupted after the first batch, the rest of the range stays detached from the tree.
+     */
+    @Override
+    public long removeInstants(TimeInstant startTime, TimeInstant endTime, boolean deleteEvents) {
+        return removeInstants(startTime, endTime, deleteEvents, DEFAULT_REMOVAL_BATCH_SIZE);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long removeInstants(TimeInstant startTime, TimeInstant endTime, boolean deleteEvents, int batchSize) {
+        validateRange(startTime, endTime);
+        validateBatchSize(batchSize);
+        currentInstants.clear();
+
+        long removed = 0;
+
+        Batch batch = new Batch(batchSize);
+        try {
+            Node root = getTimeRoot();
+            batch.lock(root);
+
+            Node first = getInstantAtOrAfter(startTime);
+            Node last = getInstantAtOrBefore(endTime);
+
+            if (first != null && last != null && !first.equals(next(last))) {
+                //ancestors emptied by the removal may stay in the sidecar index, they won't be found there anyway
+                removeFromSidecar(BucketKeys.of(first), findForNode(last).getDateTimeField(DateTimeZone.UTC).add(BucketKeys.of(last), 1));
+
+                spliceDescendants(first, last);
+
+                //segments to remove, from the finest level up
+                List<Node[]> segments = new ArrayList<>();
+                Node[] segment = new Node[]{first, last};
+                while (segment != null) {
+                    segments.add(segment);
+                    segment = unlink(segment[0], segment[1]);
+                }
+
+                for (Node[] toRemove : segments) {
+                    Node current = toRemove[0];
+                    while (current != null) {
+                        Node following = current.equals(toRemove[1]) ? null : next(current);
+                        removed += removeSubtree(current, BOTH, deleteEvents, batch);
+                        current = following;
+                    }
+                }
+            }
+
+            batch.success();
+        } finally {
+            batch.close();
+        }
+
+        LOG.info("Removed " + removed + " time tree nodes.");
+
+        return removed;
+    }
+
+    /**
+     * Unlink a contiguous segment of nodes at the same level from the {@link TimeTreeRelationshipTypes#NEXT} chain of
+     * that level, re-point {@link TimeTreeRelationshipTypes#FIRST} and {@link TimeTreeRelationshipTypes#LAST} of
+     * their parents, which remain in the tree, and delete the {@link TimeTreeRelationshipTypes#CHILD} relationships
+     * from those parents to the segment. Once the whole range has been unlinked, no removed node can be reached from
+     * the root (nor found by its bucket key), so that the removal can be committed in batches and lookups or a crash
+     * between them don't see a half-removed range. The segment's other relationships are left to be removed with its nodes.
+     *
+     * @param first first node of the segment.
+     * @param last  last node of the segment.
+     * @return first and last node of the segment of parents that have no children left after the removal of the given
+     * segment, <code>null</code> if there are none.
+     */
+    private Node[] unlink(Node first, Node last) {
+        Node previous = previous(first);
+        Node next = next(last);
+
+        splice(first, last);
+
+        Node firstParent = parent(first);
+        Node lastParent = parent(last);
+
+        boolean startsAtFirst = first.equals(firstChild(firstParent));
+        boolean endsAtLast = last.equals(lastChild(lastParent));
+        boolean sameParent = firstParent.equals(lastParent);
+
+        boolean firstParentEmptied = startsAtFirst && (!sameParent || endsAtLast);
+        boolean lastParentEmptied = endsAtLast && (!sameParent || startsAtFirst);
+
+        if (sameParent) {
+            if (!firstParentEmptied) {
+                if (startsAtFirst) {
+                    relink(firstParent, FIRST, next);
+                }
+                if (endsAtLast) {
+                    relink(firstParent, LAST, previous);
+                }
+            }
+        } else {
+            if (!firstParentEmptied) {
+                relink(firstParent, LAST, previous);
+            }
+            if (!lastParentEmptied) {
+                relink(lastParent, FIRST, next);
             }
         }
-        root.delete();
+
+        //the root is never removed here
+        boolean years = findForNode(first).equals(YEAR);
+
+        if (years || !firstParentEmptied) {
+            detach(firstParent, first, last, true);
+        }
+
+        if (!sameParent && !lastParentEmptied) {
+            detach(lastParent, last, first, false);
+        }
+
+        if (years) {
+            if (firstParentEmptied) {
+                firstParent.getSingleRelationship(FIRST, OUTGOING).delete();
+                firstParent.getSingleRelationship(LAST, OUTGOING).delete();
+            }
+            return null;
+        }
+
+        if (sameParent) {
+            return firstParentEmptied ? new Node[]{firstParent, firstParent} : null;
+        }
+
+        if (!firstParentEmptied && !lastParentEmptied && lastParent.equals(next(firstParent))) {
+            return null;
+        }
+
+        return new Node[]{firstParentEmptied ? firstParent : next(firstParent), lastParentEmptied ? lastParent : previous(lastParent)};
+    }
+
+    /**
+     * Delete the {@link TimeTreeRelationshipTypes#CHILD} relationships from a parent to the nodes of a segment, walking
+     * the segment from one of its ends for as long as the nodes are children of the parent.
+     *
+     * @param parent  to detach the nodes from.
+     * @param from    node to start at.
+     * @param to      node at the other end of the segment.
+     * @param forward <code>true</code> to walk along {@link TimeTreeRelationshipTypes#NEXT}, false to walk against it.
+     */
+    private void detach(Node parent, Node from, Node to, boolean forward) {
+        Node current = from;
+        while (current != null) {
+            Relationship toParent = current.getSingleRelationship(CHILD, INCOMING);
+            if (toParent == null || !toParent.getStartNode().equals(parent)) {
+                return;
+            }
+
+            toParent.delete();
+            current = current.equals(to) ? null : forward ? next(current) : previous(current);
+        }
+    }
+
+    /**
+     * Unlink the descendants of a contiguous segment of nodes from the {@link TimeTreeRelationshipTypes#NEXT} chains of
+     * their levels. Their parents are all in the segment, so no {@link TimeTreeRelationshipTypes#FIRST} or
+     * {@link TimeTreeRelationshipTypes#LAST} needs re-pointing.
+     *
+     * @param first first node of the segment.
+     * @param last  last node of the segment.
+     */
+    private void spliceDescendants(Node first, Node last) {
+        while (true) {
+            Node firstChild = null;
+            for (Node current = first; current != null && firstChild == null; current = current.equals(last) ? null : next(current)) {
+                firstChild = firstChild(current);
+            }
+
+            if (firstChild == null) {
+                return;
+            }
+
+            Node lastChild = null;
+            for (Node current = last; current != null && lastChild == null; current = current.equals(first) ? null : previous(current)) {
+                lastChild = lastChild(current);
+            }
+
+            splice(firstChild, lastChild);
+
+            first = firstChild;
+            last = lastChild;
+        }
+    }
+
+    /**
+     * Cut a contiguous segment of nodes out of the {@link TimeTreeRelationshipTypes#NEXT} chain of their level,
+     * connecting its neighbours to each other.
+     *
+     * @param first first node of the segment.
+     * @param last  last node of the segment.
+     */
+    private void splice(Node first, Node last) {
+        Relationship toFirst = first.getSingleRelationship(NEXT, INCOMING);
+        Relationship fromLast = last.getSingleRelationship(NEXT, OUTGOING);
+
+        if (toFirst != null) {
+            toFirst.delete();
+        }
+
+        if (fromLast != null) {
+            fromLast.delete();
+        }
+
+        if (toFirst != null && fromLast != null) {
+            toFirst.getStartNode().createRelationshipTo(fromLast.getEndNode(), NEXT);
+        }
+    }
+
+    private void relink(Node parent, RelationshipType type, Node child) {
+        parent.getSingleRelationship(type, OUTGOING).delete();
+        parent.createRelationshipTo(child, type);
+    }
+
+    /**
+     * Remove a node and all its descendants, bottom-up.
+     *
+     * @param top          node to remove.
+     * @param direction    of the top node's relationships to remove. All relationships of its descendants are removed.
+     * @param deleteEvents true to delete nodes attached to removed nodes by other than time tree relationships, false to
+     *                     only remove the relationships.
+     * @param batch        batch to perform the removal in.
+     * @return number of removed time tree nodes.
+     */
+    private long removeSubtree(Node top, Direction direction, boolean deleteEvents, Batch batch) {
+        long removed = 0;
+
+        Deque<Node> path = new ArrayDeque<>();
+        path.push(top);
+
+        while (!path.isEmpty()) {
+            Node node = path.peek();
+
+            Iterator<Relationship> children = node.getRelationships(CHILD, OUTGOING).iterator();
+            if (children.hasNext()) {
+                path.push(children.next().getEndNode());
+                continue;
+            }
+
+            for (Relationship relationship : node.getRelationships(path.size() == 1 ? direction : BOTH)) {
+                if (deleteEvents && !isTimeTreeRelationship(relationship)) {
+                    deleteEvent(relationship.getOtherNode(node), batch);
+                } else {
+                    relationship.delete();
+                    batch.operation();
+                }
+
+                if (batch.isFull()) {
+                    break;
+                }
+            }
+
+            if (!batch.isFull()) {
+                instantRemoved(node);
+                node.delete();
+                path.pop();
+                removed++;
+                batch.operation();
+            }
+
+            batch.commitIfFull();
+        }
+
+        return removed;
+    }
+
+    /**
+     * Record the removal of a node of this tree for the {@link TimeTreeStats}, unless it is the root.
+     *
+     * @param node to be removed.
+     */
+    private void instantRemoved(Node node) {
+        Resolution resolution = resolutionOf(node);
+        if (resolution != null) {
+            uncommitted().removed.put(node.getId(), resolution);
+        }
+    }
+
+    /**
+     * Record an event being attached to a time instant of this tree for the {@link TimeTreeStats}.
+     *
+     * @param instant the event has been attached to.
+     */
+    void eventAttached(Node instant) {
+        uncommitted().attached.add(instant.getId());
+    }
+
+    private Uncommitted uncommitted() {
+        Uncommitted result = uncommitted.get();
+        if (result == null) {
+            result = new Uncommitted();
+            uncommitted.set(result);
+        }
+        return result;
+    }
+
+    /**
+     * Get the changes of the {@link TimeTreeStats} made by a transaction about to be committed, from what has been
+     * recorded by the current thread. Records of transactions rolled back without being committed (which don't notify
+     * transaction event handlers) are left out, because their nodes and relationships aren't part of the transaction.
+     *
+     * @param transactionData of the transaction about to be committed.
+     * @return changes, null if nothing has been recorded.
+     */
+    private TimeTreeStats.Changes committedChanges(TransactionData transactionData) {
+        Uncommitted recorded = uncommitted.get();
+        uncommitted.remove();
+
+        if (recorded == null) {
+            return null;
+        }
+
+        Set<Long> createdNodes = new HashSet<>();
+        for (Node node : transactionData.createdNodes()) {
+            createdNodes.add(node.getId());
+        }
+
+        Set<Long> deletedNodes = new HashSet<>();
+        for (Node node : transactionData.deletedNodes()) {
+            deletedNodes.add(node.getId());
+        }
+
+        Set<Long> connectedNodes = new HashSet<>();
+        for (Relationship relationship : transactionData.createdRelationships()) {
+            connectedNodes.add(relationship.getStartNode().getId());
+            connectedNodes.add(relationship.getEndNode().getId());
+        }
+
+        TimeTreeStats.Changes changes = new TimeTreeStats.Changes();
+
+        for (long id : recorded.created) {
+            if (!createdNodes.contains(id) || deletedNodes.contains(id)) {
+                continue;
+            }
+
+            Node instant = database.getNodeById(id);
+            Resolution resolution = resolutionOf(instant);
+            Relationship parent = instant.getSingleRelationship(CHILD, INCOMING);
+            if (resolution != null && parent != null) {
+                changes.instantCreated(resolution, parent.getStartNode().getDegree(CHILD, OUTGOING));
+            }
+        }
+
+        for (Map.Entry<Long, Resolution> removed : recorded.removed.entrySet()) {
+            if (deletedNodes.contains(removed.getKey()) && !createdNodes.contains(removed.getKey())) {
+                changes.instantRemoved(removed.getValue());
+            }
+        }
+
+        for (long id : recorded.attached) {
+            if (!connectedNodes.contains(id) || deletedNodes.contains(id)) {
+                continue;
+            }
+
+            Node instant = database.getNodeById(id);
+            Resolution resolution = resolutionOf(instant);
+            if (resolution != null) {
+                changes.eventAttached(resolution, TimeTreeStats.eventDegree(instant));
+            }
+        }
+
+        return changes;
+    }
+
+    private static Resolution resolutionOf(Node node) {
+        for (Resolution resolution : Resolution.values()) {
+            if (node.hasLabel(resolution.getLabel())) {
+                return resolution;
+            }
+        }
+        return null;
+    }
+
+    private void deleteEvent(Node event, Batch batch) {
+        for (Relationship relationship : event.getRelationships()) {
+            relationship.delete();
+            batch.operation();
+        }
+
+        event.delete();
+        batch.operation();
+    }
+
+    private static boolean isTimeTreeRelationship(Relationship relationship) {
+        return relationship.isType(CHILD) || relationship.isType(NEXT) || relationship.isType(FIRST) || relationship.isType(LAST);
+    }
+
+    private static void validateBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive, was " + batchSize);
+        }
     }
 
     /**
@@ -578,55 +1315,218 @@ public class SingleTimeTree implements TimeTree {
      */
     @Override
     public void removeInstant(Node instantNode) {
+        removeInstant(instantNode, null);
+    }
+
+    /**
+     * Remove a time instant without children and events, and its ancestors left with no children and no events.
+     *
+     * @param instantNode to remove.
+     * @param keep        ancestor, at which the removal of ancestors stops, null to stop at the root.
+     * @return number of removed nodes.
+     */
+    private long removeInstant(Node instantNode, Node keep) {
         if (instantNode.hasRelationship(CHILD, OUTGOING)) {
             LOG.warn("Cannot remove " + instantNode + ". It still has children.");
-            return;
+            return 0;
+        }
+
+        if (hasEvents(instantNode)) {
+            LOG.warn("Cannot remove " + instantNode + ". It still has events attached.");
+            return 0;
+        }
+
+        currentInstants.clear();
+
+        if (sidecarIndex != null && instantNode.hasRelationship(CHILD, INCOMING)) {
+            sidecarIndex.remove(getRootKey(), findForNode(instantNode), BucketKeys.of(instantNode));
         }
 
+        Relationship toParent = instantNode.getSingleRelationship(CHILD, INCOMING);
+        Node parent = toParent == null ? null : toParent.getStartNode();
+        int value = parent == null ? 0 : getInt(instantNode, VALUE_PROPERTY);
+
+        Node previous = previous(instantNode);
+        Node next = next(instantNode);
+
+        splice(instantNode, instantNode);
+
         Relationship first = instantNode.getSingleRelationship(FIRST, INCOMING);
+        if (first != null) {
+            first.delete();
+            if (next != null && parent(next).equals(parent)) {
+                parent.createRelationshipTo(next, FIRST);
+            }
+        }
+
         Relationship last = instantNode.getSingleRelationship(LAST, INCOMING);
+        if (last != null) {
+            last.delete();
+            if (previous != null && parent(previous).equals(parent)) {
+                parent.createRelationshipTo(previous, LAST);
+            }
+        }
+
+        if (toParent != null) {
+            toParent.delete();
+        }
+
+        for (Relationship relationship : instantNode.getRelationships(OUTGOING)) {
+            relationship.delete();
+        }
+
+        instantRemoved(instantNode);
+        instantNode.delete();
+
+        //parents that still have children or events are kept
+        if (parent != null && !parent.equals(keep) && !parent.hasRelationship(CHILD, OUTGOING) && !hasEvents(parent)) {
+            return 1 + removeInstant(parent, keep);
+        } else if (parent != null) {
+            EventPresence.childRemoved(parent, value);
+        }
+
+        return 1;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long compactInstant(Node instantNode) {
+        long removed = 0;
+        currentInstants.clear();
+
+        try (Transaction tx = database.beginTx()) {
+            lockRoot(tx, getTimeRoot());
 
-        Relationship prev = instantNode.getSingleRelationship(NEXT, INCOMING);
-        Relationship next = instantNode.getSingleRelationship(NEXT, OUTGOING);
+            List<Node> leaves = new ArrayList<>();
+            Deque<Node> toVisit = new ArrayDeque<>();
+            toVisit.push(instantNode);
 
-        if (prev != null && next != null) {  // middle
-            if (last != null) {
-                last.getStartNode().createRelationshipTo(prev.getStartNode(), LAST);
-                last.delete();
+            while (!toVisit.isEmpty()) {
+                Node node = toVisit.pop();
+
+                if (!node.equals(instantNode)) {
+                    moveEvents(node, instantNode);
+                }
+
+                boolean hasChildren = false;
+                for (Relationship child : node.getRelationships(CHILD, OUTGOING)) {
+                    toVisit.push(child.getEndNode());
+                    hasChildren = true;
+                }
+
+                if (!hasChildren && !node.equals(instantNode)) {
+                    leaves.add(node);
+                }
             }
-            if (first != null) {
-                first.getStartNode().createRelationshipTo(next.getEndNode(), FIRST);
-                first.delete();
+
+            for (Node leaf : leaves) {
+                removed += removeInstant(leaf, instantNode);
             }
 
-            prev.getStartNode().createRelationshipTo(next.getEndNode(), NEXT);
-            prev.delete();
-            next.delete();
-        } else if (first != null && next != null) { // beginning
-            first.getStartNode().createRelationshipTo(next.getEndNode(), FIRST);
-            first.delete();
-            next.delete();
-        } else if (prev != null && last != null) { // end
-            last.getStartNode().createRelationshipTo(prev.getStartNode(), LAST);
-            last.delete();
-            prev.delete();
+            tx.success();
         }
 
+        return removed;
+    }
+
+    /**
+     * Re-attach all events of a node to another node, with relationships of the same type, direction, and properties.
+     * Events already attached to the other node by a relationship of the same type and direction are only detached.
+     *
+     * @param from node to detach the events from.
+     * @param to   node to attach the events to.
+     */
+    private void moveEvents(Node from, Node to) {
+        for (Relationship relationship : from.getRelationships()) {
+            if (isTimeTreeRelationship(relationship)) {
+                continue;
+            }
+
+            Node event = relationship.getOtherNode(from);
+            boolean outgoing = relationship.getStartNode().equals(from);
 
-        if (instantNode.hasRelationship(FIRST, OUTGOING)) {
-            instantNode.getSingleRelationship(FIRST, OUTGOING).delete();
+            if (!isAttached(event, to, relationship.getType(), outgoing ? INCOMING : OUTGOING)) {
+                Relationship moved = outgoing ? to.createRelationshipTo(event, relationship.getType()) : event.createRelationshipTo(to, relationship.getType());
+                for (String key : relationship.getPropertyKeys()) {
+                    moved.setProperty(key, relationship.getProperty(key));
+                }
+            }
+
+            relationship.delete();
         }
+    }
 
-        if (instantNode.hasRelationship(LAST, OUTGOING)) {
-            instantNode.getSingleRelationship(LAST, OUTGOING).delete();
+    private boolean isAttached(Node event, Node instantNode, RelationshipType type, Direction direction) {
+        for (Relationship relationship : event.getRelationships(direction, type)) {
+            if (relationship.getOtherNode(event).equals(instantNode)) {
+                return true;
+            }
         }
 
-        if (instantNode.hasRelationship(CHILD, INCOMING)) {
-            Relationship toParent = instantNode.getSingleRelationship(CHILD, INCOMING);
-            toParent.delete();
-            removeInstant(toParent.getStartNode());
+        return false;
+    }
+
+    /**
+     * Check whether a time tree node has events attached, i.e. any relationships other than those of the tree.
+     *
+     * @param node to check.
+     * @return true iff the node has events attached.
+     */
+    static boolean hasEvents(Node node) {
+        for (Relationship relationship : node.getRelationships()) {
+            if (!isTimeTreeRelationship(relationship)) {
+                return true;
+            }
         }
-        instantNode.delete();
+
+        return false;
+    }
+
+    /**
+     * Get the time instant represented by a node of a time tree, i.e. the start of the period it represents.
+     *
+     * @param instantNode node from a time tree, must not be the root.
+     * @param timezone    in which the tree has been built.
+     * @return time instant with the resolution of the node.
+     * @throws IllegalArgumentException in case the given node is not from GraphAware TimeTree or is the root.
+     */
+    public static TimeInstant getTimeInstant(Node instantNode, DateTimeZone timezone) {
+        Resolution resolution = findForNode(instantNode);
+
+        int[] values = {1970, 1, 1, 0, 0, 0, 0};
+        Node current = instantNode;
+        for (int i = resolution.ordinal(); i >= 0; i--) {
+            values[i] = getInt(current, VALUE_PROPERTY);
+            if (i > 0) {
+                current = parent(current);
+            }
+        }
+
+        long localTime = ISOChronology.getInstanceUTC().getDateTimeMillis(values[0], values[1], values[2], values[3], values[4], values[5], values[6]);
+
+        return TimeInstant.instant(timezone.convertLocalToUTC(localTime, false)).with(timezone).with(resolution);
+    }
+
+    private static Node next(Node node) {
+        Relationship next = node.getSingleRelationship(NEXT, OUTGOING);
+        return next == null ? null : next.getEndNode();
+    }
+
+    private static Node previous(Node node) {
+        Relationship previous = node.getSingleRelationship(NEXT, INCOMING);
+        return previous == null ? null : previous.getStartNode();
+    }
+
+    private static Node firstChild(Node node) {
+        Relationship first = node.getSingleRelationship(FIRST, OUTGOING);
+        return first == null ? null : first.getEndNode();
+    }
+
+    private static Node lastChild(Node node) {
+        Relationship last = node.getSingleRelationship(LAST, OUTGOING);
+        return last == null ? null : last.getEndNode();
     }
 
     /**
@@ -650,4 +1550,127 @@ public class SingleTimeTree implements TimeTree {
     private boolean isRoot(Node node) {
         return node.getId() == getTimeRoot().getId();
     }
+
+    /**
+     * IDs of time instants created, removed, or with events attached, by the current thread since its last commit.
+     */
+    private static final class Uncommitted {
+
+        private final Set<Long> created = new HashSet<>();
+        private final Map<Long, Resolution> removed = new HashMap<>();
+        private final Set<Long> attached = new HashSet<>();
+    }
+
+    /**
+     * State of a transaction passed from {@link TransactionEventHandler#beforeCommit(TransactionData)} to the handler's
+     * other methods.
+     */
+    private static final class CommitState {
+
+        private final boolean rootCreated;
+        private final TimeTreeStats.Changes changes;
+
+        private CommitState(boolean rootCreated, TimeTreeStats.Changes changes) {
+            this.rootCreated = rootCreated;
+            this.changes = changes;
+        }
+    }
+
+    /**
+     * A sequence of transactions, each of which is committed once a maximum number of operations has been performed in it.
+     * When created within an existing transaction, all operations are performed in that transaction.
+     */
+    private final class Batch {
+
+        private final int size;
+        private Transaction tx;
+        private Node root;
+        private int operations;
+        private long total;
+
+        private Batch(int size) {
+            this.size = size;
+            this.tx = database.beginTx();
+        }
+
+        void lock(Node root) {
+            this.root = root;
+            lockRoot(tx, root);
+        }
+
+        void operation() {
+            operations++;
+            total++;
+        }
+
+        boolean isFull() {
+            return operations >= size;
+        }
+
+        void commitIfFull() {
+            if (!isFull()) {
+                return;
+            }
+
+            tx.success();
+            tx.close();
+
+            LOG.info("Performed " + total + " time tree removal operations so far...");
+
+            tx = database.beginTx();
+            if (root != null) {
+                lockRoot(tx, root);
+            }
+            operations = 0;
+        }
+
+        void success() {
+            tx.success();
+        }
+
+        void close() {
+            tx.close();
+        }
+    }
+
+    /**
+     * Collects the number of nodes visited during a single descent from the root of the tree to a time instant for
+     * {@link TimeTreeMetrics}. When metrics are disabled, {@link #NONE} is used and nothing is collected.
+     */
+    private static class Descent {
+
+        private static final Descent NONE = new Descent(null);
+
+        private final TimeTreeMetrics metrics;
+        private int visited;
+        private int scanned;
+
+        private Descent(TimeTreeMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        static Descent start(TimeTreeMetrics metrics) {
+            return metrics.isEnabled() ? new Descent(metrics) : NONE;
+        }
+
+        void visit() {
+            if (metrics != null) {
+                visited++;
+                scanned++;
+            }
+        }
+
+        void childFound() {
+            if (metrics != null) {
+                metrics.siblingScan().update(scanned);
+                scanned = 0;
+            }
+        }
+
+        void finish() {
+            if (metrics != null) {
+                metrics.nodesVisited().update(visited);
+            }
+        }
+    }
 }
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree;
+
+import com.graphaware.module.timetree.domain.Resolution;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Snapshot of the {@link TimeTreeStats} of a single tree.
+ */
+public class StatsReport {
+
+    private final Long rootNodeId;
+    private final long roots;
+    private final long recomputed;
+    private final List<Level> levels = new ArrayList<>();
+
+    /**
+     * Create a report.
+     *
+     * @param rootNodeId     ID of the custom root of the tree, <code>null</code> for the tree with the default root.
+     * @param roots          number of trees in the database.
+     * @param recomputed     time of the last exact recompute of the statistics in UTC millis, 0 if there has been none.
+     * @param instants       number of time instants per resolution, indexed by {@link Resolution#ordinal()}.
+     * @param maxFanOut      maximum number of children of a single time instant per resolution.
+     * @param maxEventDegree maximum number of events attached to a single time instant per resolution.
+     */
+    StatsReport(Long rootNodeId, long roots, long recomputed, long[] instants, long[] maxFanOut, long[] maxEventDegree) {
+        this.rootNodeId = rootNodeId;
+        this.roots = roots;
+        this.recomputed = recomputed;
+
+        for (Resolution resolution : Resolution.values()) {
+            int index = resolution.ordinal();
+            long children = index + 1 < instants.length ? instants[index + 1] : 0;
+            levels.add(new Level(resolution.name(), instants[index], maxFanOut[index], instants[index] == 0 ? 0 : (double) children / instants[index], maxEventDegree[index]));
+        }
+    }
+
+    /**
+     * @return ID of the custom root of the tree, <code>null</code> for the tree with the default root.
+     */
+    public Long getRootNodeId() {
+        return rootNodeId;
+    }
+
+    /**
+     * @return number of trees in the database.
+     */
+    public long getRoots() {
+        return roots;
+    }
+
+    /**
+     * @return time of the last exact recompute of the statistics in UTC millis, 0 if there has been none.
+     */
+    public long getRecomputed() {
+        return recomputed;
+    }
+
+    /**
+     * @return statistics per resolution, from years to milliseconds.
+     */
+    public List<Level> getLevels() {
+        return Collections.unmodifiableList(levels);
+    }
+
+    /**
+     * @return total number of time instants in the tree.
+     */
+    public long getInstants() {
+        long result = 0;
+        for (Level level : levels) {
+            result += level.getInstants();
+        }
+        return result;
+    }
+
+    /**
+     * Statistics of the time instants of a single resolution.
+     */
+    public static class Level {
+
+        private final String resolution;
+        private final long instants;
+        private final long maxFanOut;
+        private final double averageFanOut;
+        private final long maxEventDegree;
+
+        private Level(String resolution, long instants, long maxFanOut, double averageFanOut, long maxEventDegree) {
+            this.resolution = resolution;
+            this.instants = instants;
+            this.maxFanOut = maxFanOut;
+            this.averageFanOut = averageFanOut;
+            this.maxEventDegree = maxEventDegree;
+        }
+
+        /**
+         * @return name of the resolution.
+         */
+        public String getResolution() {
+            return resolution;
+        }
+
+        /**
+         * @return number of time instants.
+         */
+        public long getInstants() {
+            return instants;
+        }
+
+        /**
+         * @return maximum number of children of a single time instant.
+         */
+        public long getMaxFanOut() {
+            return maxFanOut;
+        }
+
+        /**
+         * @return average number of children of a time instant.
+         */
+        public double getAverageFanOut() {
+            return averageFanOut;
+        }
+
+        /**
+         * @return maximum number of events attached to a single time instant.
+         */
+        public long getMaxEventDegree() {
+            return maxEventDegree;
+        }
+    }
+}
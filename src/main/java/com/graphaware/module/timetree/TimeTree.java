@@ -87,11 +87,57 @@ public interface TimeTree {
      */
     void removeAll();
 
+    /**
+     * Remove the Complete Index-Tree, like {@link #removeAll()}, committing the removal in batches, so that large trees
+     * can be removed without running out of memory. When called within an existing transaction, everything is removed
+     * in that transaction. An interrupted removal can be resumed by calling this method again.
+     *
+     * @param batchSize maximum number of nodes and relationships removed in a single transaction.
+     * @return number of removed nodes.
+     */
+    long removeAll(int batchSize);
+
+    /**
+     * Remove all time instants in the specified range (inclusive), including all their children, as well as all
+     * instants that have no children left as a result. Events attached to the removed instants are either deleted, or
+     * just detached from the tree. The removal is committed in batches of a default size.
+     *
+     * @param startTime    time instant representing the start of the interval (inclusive).
+     * @param endTime      time instant representing the end of the interval (inclusive).
+     * @param deleteEvents true to delete events attached to the removed instants, false to only detach them.
+     * @return number of removed instant nodes.
+     */
+    long removeInstants(TimeInstant startTime, TimeInstant endTime, boolean deleteEvents);
+
+    /**
+     * Remove all time instants in the specified range (inclusive), like
+     * {@link #removeInstants(TimeInstant, TimeInstant, boolean)}, committing the removal in batches of the given size.
+     * When called within an existing transaction, everything is removed in that transaction.
+     *
+     * @param startTime    time instant representing the start of the interval (inclusive).
+     * @param endTime      time instant representing the end of the interval (inclusive).
+     * @param deleteEvents true to delete events attached to the removed instants, false to only detach them.
+     * @param batchSize    maximum number of nodes and relationships removed in a single transaction.
+     * @return number of removed instant nodes.
+     */
+    long removeInstants(TimeInstant startTime, TimeInstant endTime, boolean deleteEvents, int batchSize);
+
     /**
      * Remove a time instant, this instant must have no events attached and no child-nodes. If it does have any events
-     * or child nodes attached, it will not be removed and a warning will be logged.
+     * or child nodes attached, it will not be removed and a warning will be logged. Parents left with no children and no
+     * events attached are removed as well.
      *
      * @param instantNode finest Resolution TimeInstant
      */
     void removeInstant(Node instantNode);
+
+    /**
+     * Compact a time instant, i.e. re-attach the events of all its descendants to it (with relationships of the same type
+     * and direction) and remove the descendants. The instant itself is kept, even if neither it nor its descendants have
+     * any events attached.
+     *
+     * @param instantNode to compact.
+     * @return number of removed descendants.
+     */
+    long compactInstant(Node instantNode);
 }
@@ -2,13 +2,21 @@ package com.graphaware.module.timetree;
 
 import com.graphaware.common.util.DirectionUtils;
 import com.graphaware.module.timetree.domain.Event;
+import com.graphaware.module.timetree.domain.QueryOptions;
+import com.graphaware.module.timetree.domain.Resolution;
 import com.graphaware.module.timetree.domain.TimeInstant;
+import com.graphaware.module.timetree.metrics.TimeTreeMetrics;
+import org.joda.time.DateTimeZone;
 import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import static com.graphaware.module.timetree.SingleTimeTree.parent;
 import static com.graphaware.module.timetree.domain.TimeTreeRelationshipTypes.*;
@@ -22,12 +30,50 @@ import static org.neo4j.graphdb.Direction.OUTGOING;
  */
 public class TimeTreeBackedEvents implements TimedEvents {
 
+    private static final String DEFAULT_TIMESTAMP_PROPERTY = "timestamp";
+
     private final TimeTree timeTree;
+    private final String timestampProperty;
+    private final int splitThreshold;
+    private final ForkJoinPool pool;
+    private final TimeTreeMetrics metrics = TimeTreeMetrics.getInstance();
 
     private static final List<String> timeTreeRelationships = getTimeTreeRelationshipNames();
 
     public TimeTreeBackedEvents(TimeTree timeTree) {
+        this(timeTree, DEFAULT_TIMESTAMP_PROPERTY, 0);
+    }
+
+    /**
+     * Create events backed by a time tree, which keeps the number of events attached to a single time instant bounded.
+     * Once a time instant has <code>splitThreshold</code> events attached with a relationship type and direction, further
+     * events of that type and direction are attached to its child at the next finer resolution (recursively, down to
+     * milliseconds). Queries read events of both levels, since events of a time instant include those of its children.
+     *
+     * @param timeTree          backing the events.
+     * @param timestampProperty property of the event nodes that stores a <code>long</code> timestamp, used to order events
+     *                          attached to the same time instant.
+     * @param splitThreshold    number of events attached to an instant, after which new events go to its children.
+     *                          0 or less for no limit.
+     */
+    public TimeTreeBackedEvents(TimeTree timeTree, String timestampProperty, int splitThreshold) {
+        this(timeTree, timestampProperty, splitThreshold, null);
+    }
+
+    /**
+     * Create events backed by a time tree, see {@link #TimeTreeBackedEvents(TimeTree, String, int)}.
+     *
+     * @param timeTree          backing the events.
+     * @param timestampProperty property of the event nodes that stores a <code>long</code> timestamp.
+     * @param splitThreshold    number of events attached to an instant, after which new events go to its children.
+     * @param pool              to execute parallel queries on, <code>null</code> for a pool shared by all instances
+     *                          with one thread per available processor.
+     */
+    public TimeTreeBackedEvents(TimeTree timeTree, String timestampProperty, int splitThreshold, ForkJoinPool pool) {
         this.timeTree = timeTree;
+        this.timestampProperty = timestampProperty;
+        this.splitThreshold = splitThreshold;
+        this.pool = pool;
     }
 
     /**
@@ -47,25 +93,123 @@ public class TimeTreeBackedEvents implements TimedEvents {
             throw new IllegalArgumentException("Direction must be INCOMING or OUTGOING!");
         }
 
-        Node instant = timeTree.getOrCreateInstant(timeInstant);
+        long start = metrics.now();
+        try {
+            TimeInstant current = timeInstant;
+            Node instant = timeTree.getOrCreateInstant(current);
+
+            while (true) {
+                if (isAttached(event, relationshipType, direction, instant)) {
+                    return false;
+                }
+
+                if (!isFull(instant, relationshipType, direction, current.getResolution())) {
+                    //the instant may have been full when the event was attached to one of its descendants
+                    if (splitThreshold > 0 && isAttachedBelow(event, relationshipType, direction, instant)) {
+                        return false;
+                    }
+
+                    return attachEvent(event, relationshipType, direction, instant);
+                }
+
+                current = current.with(current.getResolution().getChild());
+                instant = timeTree.getOrCreateInstant(current);
+            }
+        } finally {
+            metrics.attachEvent().stop(start);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean attachInterval(Node event, RelationshipType relationshipType, TimeInstant startTime, TimeInstant endTime) {
+        return attachInterval(event, relationshipType, INCOMING, startTime, endTime);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The split threshold doesn't apply to intervals, since attaching one to a child of a covering instant would change
+     * the period it covers.
+     */
+    @Override
+    public boolean attachInterval(Node event, RelationshipType relationshipType, Direction direction, TimeInstant startTime, TimeInstant endTime) {
+        if (!INCOMING.equals(direction) && !OUTGOING.equals(direction)) {
+            throw new IllegalArgumentException("Direction must be INCOMING or OUTGOING!");
+        }
+
+        long start = metrics.now();
+        try {
+            boolean attached = false;
+
+            for (TimeInstant covering : TimeInstant.getCoveringInstants(startTime, endTime)) {
+                Node instant = timeTree.getOrCreateInstant(covering);
+
+                if (!isAttached(event, relationshipType, direction, instant)) {
+                    attached = attachEvent(event, relationshipType, direction, instant) || attached;
+                }
+            }
+
+            return attached;
+        } finally {
+            metrics.attachEvent().stop(start);
+        }
+    }
+
+    private boolean isAttached(Node event, RelationshipType relationshipType, Direction direction, Node instant) {
+        for (Relationship existing : event.getRelationships(DirectionUtils.reverse(direction), relationshipType)) {
+            if (existing.getOtherNode(event).getId() == instant.getId()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
 
+    /**
+     * Check whether an event is attached to a descendant of a time instant, e.g. because the instant has had events
+     * detached since it was full.
+     */
+    private boolean isAttachedBelow(Node event, RelationshipType relationshipType, Direction direction, Node instant) {
         for (Relationship existing : event.getRelationships(DirectionUtils.reverse(direction), relationshipType)) {
-            if (existing.getEndNode().getId() == instant.getId()) {
-                return false;
+            Node ancestor = existing.getOtherNode(event);
+            Relationship toParent;
+            while ((toParent = ancestor.getSingleRelationship(CHILD, INCOMING)) != null) {
+                ancestor = toParent.getStartNode();
+                if (ancestor.getId() == instant.getId()) {
+                    return true;
+                }
             }
         }
 
+        return false;
+    }
+
+    private boolean isFull(Node instant, RelationshipType relationshipType, Direction direction, Resolution resolution) {
+        return splitThreshold > 0
+                && !Resolution.MILLISECOND.equals(resolution)
+                && instant.getDegree(relationshipType, direction) >= splitThreshold;
+    }
+
+    private boolean attachEvent(Node event, RelationshipType relationshipType, Direction direction, Node instant) {
         if (INCOMING.equals(direction)) {
             event.createRelationshipTo(instant, relationshipType);
-            return true;
+        } else if (OUTGOING.equals(direction)) {
+            instant.createRelationshipTo(event, relationshipType);
+        } else {
+            throw new IllegalStateException("This must never happen - it is a bug");
         }
 
-        if (OUTGOING.equals(direction)) {
-            instant.createRelationshipTo(event, relationshipType);
-            return true;
+        //the instant may maintain event presence even if this tree doesn't create such instants
+        EventPresence.attached(instant, getTimestamp(event));
+
+        if (timeTree instanceof SingleTimeTree) {
+            ((SingleTimeTree) timeTree).eventAttached(instant);
         }
 
-        throw new IllegalStateException("This must never happen - it is a bug");
+        return true;
     }
 
     /**
@@ -97,7 +241,7 @@ public class TimeTreeBackedEvents implements TimedEvents {
      */
     @Override
     public List<Event> getEvents(TimeInstant startTime, TimeInstant endTime, Direction direction) {
-        return getEvents(startTime, endTime, null, INCOMING);
+        return getEvents(startTime, endTime, null, direction);
     }
 
     /**
@@ -113,13 +257,20 @@ public class TimeTreeBackedEvents implements TimedEvents {
      */
     @Override
     public List<Event> getEvents(TimeInstant timeInstant, Set<RelationshipType> types, Direction direction) {
+        long start = metrics.now();
+
         Node instantNode = timeTree.getInstant(timeInstant);
 
+        List<Event> events;
         if (instantNode == null) {
-            return Collections.emptyList();
+            events = Collections.emptyList();
+        } else {
+            events = getEventsAttachedToNodeAndChildren(instantNode, types, direction);
         }
 
-        return getEventsAttachedToNodeAndChildren(instantNode, types, direction);
+        metrics.getEvents().stop(start);
+
+        return events;
     }
 
     /**
@@ -135,77 +286,439 @@ public class TimeTreeBackedEvents implements TimedEvents {
      */
     @Override
     public List<Event> getEvents(TimeInstant startTime, TimeInstant endTime, Set<RelationshipType> types, Direction direction) {
+        return getEvents(startTime, endTime, types, direction, QueryOptions.defaultOptions());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Event> getEvents(TimeInstant startTime, TimeInstant endTime, Set<RelationshipType> types, Direction direction, QueryOptions options) {
         validateRange(startTime, endTime);
 
-        List<Event> events = new LinkedList<>();
+        long start = metrics.now();
 
-        Node startTimeNode = timeTree.getInstantAtOrAfter(startTime);
-        Node endTimeNode = timeTree.getInstantAtOrBefore(endTime);
+        List<Event> events = getEventsInRange(startTime, endTime, types, direction, options);
 
-        if (startTimeNode == null || endTimeNode == null) {
-            return events;
+        metrics.getEvents().stop(start);
+
+        return events;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Event> getLatestEvents(int limit, TimeInstant before, Set<RelationshipType> relationshipTypes) {
+        return getLatestEvents(limit, before, relationshipTypes, INCOMING);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Event> getLatestEvents(int limit, TimeInstant before, Set<RelationshipType> relationshipTypes, Direction direction) {
+        long start = metrics.now();
+
+        List<Event> events = getEventsUpToLimit(limit, before, relationshipTypes, direction, true);
+
+        metrics.getEvents().stop(start);
+
+        return events;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Event> getEarliestEvents(int limit, TimeInstant after, Set<RelationshipType> relationshipTypes) {
+        return getEarliestEvents(limit, after, relationshipTypes, INCOMING);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Event> getEarliestEvents(int limit, TimeInstant after, Set<RelationshipType> relationshipTypes, Direction direction) {
+        long start = metrics.now();
+
+        List<Event> events = getEventsUpToLimit(limit, after, relationshipTypes, direction, false);
+
+        metrics.getEvents().stop(start);
+
+        return events;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Event> getOverlappingEvents(TimeInstant startTime, TimeInstant endTime, Set<RelationshipType> relationshipTypes) {
+        return getOverlappingEvents(startTime, endTime, relationshipTypes, INCOMING);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Event> getOverlappingEvents(TimeInstant startTime, TimeInstant endTime, Set<RelationshipType> relationshipTypes, Direction direction) {
+        validateRange(startTime, endTime);
+
+        long start = metrics.now();
+
+        EventCollector collector = new EventCollector(relationshipTypes, direction, 0);
+        collectCoarserInstants(startTime, endTime, collector);
+        collector.addAll(getEventsInRange(startTime, endTime, relationshipTypes, direction, QueryOptions.defaultOptions()));
+
+        List<Event> events = distinct(collector.getEvents());
+
+        metrics.getEvents().stop(start);
+
+        return events;
+    }
+
+    /**
+     * Collect events attached directly to the time instants of coarser resolutions than the one of a range, which
+     * overlap the range. At each resolution, these are the instant containing the start of the range and the following
+     * ones up to the one containing its end, so only one lookup per resolution is needed.
+     */
+    private void collectCoarserInstants(TimeInstant startTime, TimeInstant endTime, EventCollector collector) {
+        for (Resolution resolution = Resolution.YEAR; !resolution.equals(startTime.getResolution()); resolution = resolution.getChild()) {
+            Node instant = timeTree.getInstantAtOrAfter(startTime.with(resolution));
+
+            while (instant != null && SingleTimeTree.getTimeInstant(instant, startTime.getTimezone()).getTime() <= endTime.getTime()) {
+                collector.collect(instant);
+
+                Relationship next = instant.getSingleRelationship(NEXT, OUTGOING);
+                instant = next == null ? null : next.getEndNode();
+            }
         }
+    }
 
-        events.addAll(getEventsAttachedToNodeAndChildren(startTimeNode, types, direction));
+    /**
+     * Leave out repeated occurrences of events attached to more than one time instant, keeping the first one.
+     */
+    private List<Event> distinct(List<Event> events) {
+        Set<String> seen = new HashSet<>();
+        List<Event> result = new ArrayList<>(events.size());
 
-        if (startTimeNode.getId() == endTimeNode.getId()) {
-            return events;
+        for (Event event : events) {
+            if (seen.add(event.getNode().getId() + ":" + event.getRelationshipType().name() + ":" + event.getDirection())) {
+                result.add(event);
+            }
         }
 
-        Relationship next = startTimeNode.getSingleRelationship(NEXT, OUTGOING);
-        while (next != null && !(next.getEndNode().equals(endTimeNode))) {
-            Node timeInstant = next.getEndNode();
-            events.addAll(getEventsAttachedToNodeAndChildren(timeInstant, types, direction));
-            next = timeInstant.getSingleRelationship(NEXT, OUTGOING);
+        return result;
+    }
+
+    /**
+     * Get at most <code>limit</code> events closest to a boundary, walking the time instants away from it. Since time
+     * instants don't overlap, only the events of a single instant (and its children) have to be ordered at a time; they
+     * are ordered by the timestamp property using a heap bounded by the number of events still missing.
+     *
+     * @param limit     maximum number of events to return.
+     * @param boundary  time to start from (inclusive).
+     * @param types     of the relationships between the events and the time instants, <code>null</code> for all.
+     * @param direction of the relationships between the time instants and the events.
+     * @param latest    <code>true</code> to walk backwards in time, <code>false</code> to walk forwards.
+     * @return events, latest first if <code>latest</code>, earliest first otherwise.
+     */
+    private List<Event> getEventsUpToLimit(int limit, TimeInstant boundary, Set<RelationshipType> types, Direction direction, boolean latest) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit must be positive");
         }
-        events.addAll(getEventsAttachedToNodeAndChildren(endTimeNode, types, direction));
 
-        return events;
+        List<Event> result = new LinkedList<>();
+
+        Node instant = latest ? timeTree.getInstantAtOrBefore(boundary) : timeTree.getInstantAtOrAfter(boundary);
+        Comparator<TimestampedEvent> order = latest ? TimestampedEvent.LATEST_FIRST : TimestampedEvent.EARLIEST_FIRST;
+
+        while (instant != null && result.size() < limit) {
+            int remaining = limit - result.size();
+            long instantStart = SingleTimeTree.getTimeInstant(instant, boundary.getTimezone()).getTime();
+
+            //head of the queue is the worst of the best events found so far
+            PriorityQueue<TimestampedEvent> best = new PriorityQueue<>(Math.min(remaining, 1024) + 1, Collections.reverseOrder(order));
+
+            collectBest(instant, best, remaining, boundary.getTime(), latest, instantStart, types, direction);
+
+            List<TimestampedEvent> sorted = new ArrayList<>(best);
+            Collections.sort(sorted, order);
+            for (TimestampedEvent event : sorted) {
+                result.add(event.getEvent());
+            }
+
+            Relationship next = instant.getSingleRelationship(NEXT, latest ? INCOMING : OUTGOING);
+            instant = next == null ? null : next.getOtherNode(instant);
+        }
+
+        return result;
     }
 
-    private List<Event> getEventsAttachedToNodeAndChildren(Node parent, Set<RelationshipType> types, Direction direction) {
-        List<Event> result = new ArrayList<>();
+    /**
+     * Add events attached to a time instant and its children to a bounded heap of the best events found so far,
+     * children closest to the boundary first. Subtrees are skipped if their {@link EventPresence} bounds show that they
+     * have no events on the right side of the boundary, or none better than the worst event in a full heap.
+     *
+     * @param node         time instant.
+     * @param best         heap of the best events, with the worst one at its head.
+     * @param remaining    maximum size of the heap.
+     * @param boundary     time to start from (inclusive).
+     * @param latest       <code>true</code> iff the latest events are the best.
+     * @param instantStart time used for events without a timestamp.
+     * @param types        of the relationships between the events and the time instants, <code>null</code> for all.
+     * @param direction    of the relationships between the time instants and the events.
+     */
+    private void collectBest(Node node, PriorityQueue<TimestampedEvent> best, int remaining, long boundary, boolean latest, long instantStart, Set<RelationshipType> types, Direction direction) {
+        if (EventPresence.isMaintained(node)) {
+            Long min = EventPresence.getMinTimestamp(node);
+            Long max = EventPresence.getMaxTimestamp(node);
+
+            if (min == null || (latest ? min > boundary : max < boundary)) {
+                return;
+            }
 
-        Relationship firstRelationship = parent.getSingleRelationship(FIRST, OUTGOING);
-        if (firstRelationship == null) {
-            return getEventsAttachedToNode(parent, types, direction);
+            if (best.size() >= remaining && (latest ? max < best.peek().getTimestamp() : min > best.peek().getTimestamp())) {
+                return;
+            }
         }
 
-        Node child = null;
+        EventCollector collector = new EventCollector(types, direction, 0);
+        collector.collect(node);
 
-        while (true) {
-            if (child == null) {
-                child = firstRelationship.getEndNode();
-            } else {
-                Relationship nextRelationship = child.getSingleRelationship(NEXT, OUTGOING);
+        for (Event event : collector.getEvents()) {
+            Long timestamp = getTimestamp(event.getNode());
 
-                if (nextRelationship == null || parent(nextRelationship.getEndNode()).getId() != parent.getId()) {
-                    break;
-                }
+            if (timestamp != null && (latest ? timestamp > boundary : timestamp < boundary)) {
+                continue;
+            }
 
-                child = nextRelationship.getEndNode();
+            best.add(new TimestampedEvent(event, timestamp != null ? timestamp : instantStart));
+            if (best.size() > remaining) {
+                best.poll();
             }
+        }
 
-            result.addAll(getEventsAttachedToNodeAndChildren(child, types, direction));
+        long[] nonEmpty = EventPresence.getBitmap(node);
+        Relationship firstRelationship = node.getSingleRelationship(latest ? LAST : FIRST, OUTGOING);
+        Node child = firstRelationship == null ? null : firstRelationship.getEndNode();
+
+        while (child != null) {
+            if (EventPresence.mayHaveEvents(nonEmpty, child)) {
+                collectBest(child, best, remaining, boundary, latest, instantStart, types, direction);
+            }
+
+            child = nextSibling(node, child, latest);
         }
+    }
+
+    /**
+     * Get the timestamp of an event.
+     *
+     * @param event node.
+     * @return value of the timestamp property, <code>null</code> if the event doesn't have a numeric one.
+     */
+    Long getTimestamp(Node event) {
+        Object timestamp = event.getProperty(timestampProperty, null);
+
+        if (timestamp instanceof Number) {
+            return ((Number) timestamp).longValue();
+        }
+
+        return null;
+    }
 
-        result.addAll(getEventsAttachedToNode(parent, types, direction));
+    private List<Event> getEventsInRange(TimeInstant startTime, TimeInstant endTime, Set<RelationshipType> types, Direction direction, QueryOptions options) {
+        EventCollector collector = new EventCollector(types, direction, options.getLimit());
+
+        Node startTimeNode = timeTree.getInstantAtOrAfter(startTime);
+        Node endTimeNode = timeTree.getInstantAtOrBefore(endTime);
+
+        if (startTimeNode == null || endTimeNode == null || isAfter(startTimeNode, endTimeNode, startTime)) {
+            return collector.getEvents();
+        }
+
+        boolean descending = options.isDescending();
+        Node first = descending ? endTimeNode : startTimeNode;
+        Node last = descending ? startTimeNode : endTimeNode;
+
+        collectEdgeNodeAndChildren(first, startTime, endTime, options, collector);
+
+        if (first.getId() == last.getId()) {
+            return collector.getEvents();
+        }
+
+        if (options.isParallel() && options.getLimit() == 0) {
+            collector.addAll(collectInParallel(first, last, descending, startTime.getTimezone(), types, direction));
+        } else {
+            Direction along = descending ? INCOMING : OUTGOING;
+            Node current = first;
+            Relationship next = current.getSingleRelationship(NEXT, along);
+            while (next != null && !collector.isFull() && !(next.getOtherNode(current).equals(last))) {
+                current = next.getOtherNode(current);
+                collectNodeAndChildren(current, descending, collector);
+                next = current.getSingleRelationship(NEXT, along);
+            }
+        }
+
+        if (!collector.isFull()) {
+            collectEdgeNodeAndChildren(last, startTime, endTime, options, collector);
+        }
+
+        return collector.getEvents();
+    }
+
+    /**
+     * Collect events attached to the instants strictly between the first and the last instant of a range, and their
+     * children. The subtree containing the range is split at year, month and day boundaries into tasks, which are
+     * executed on a fork/join pool, each in its own transaction. Results of the tasks are concatenated in time order.
+     */
+    private List<Event> collectInParallel(Node first, Node last, boolean descending, DateTimeZone timezone, Set<RelationshipType> types, Direction direction) {
+        long firstStart = SingleTimeTree.getTimeInstant(first, timezone).getTime();
+        long lastStart = SingleTimeTree.getTimeInstant(last, timezone).getTime();
+
+        SubtreeTask task = new SubtreeTask(first.getGraphDatabase(), commonAncestor(first, last).getId(), false,
+                Resolution.findForNode(first), Math.min(firstStart, lastStart), Math.max(firstStart, lastStart),
+                descending, timezone, types, direction);
+
+        return (pool != null ? pool : SharedPool.INSTANCE).invoke(task);
+    }
+
+    private Node commonAncestor(Node first, Node last) {
+        Set<Long> ancestors = new HashSet<>();
+        for (Node node = first; node.hasRelationship(CHILD, INCOMING); ) {
+            node = parent(node);
+            ancestors.add(node.getId());
+        }
+
+        Node result = parent(last);
+        while (!ancestors.contains(result.getId())) {
+            result = parent(result);
+        }
 
         return result;
     }
 
-    private List<Event> getEventsAttachedToNode(Node node, Set<RelationshipType> types, Direction direction) {
-        List<Event> result = new LinkedList<>();
+    /**
+     * Check whether the instant found at or after the start of a range is after the one found at or before its end,
+     * which happens when there is no instant in the range.
+     */
+    private boolean isAfter(Node startTimeNode, Node endTimeNode, TimeInstant startTime) {
+        if (startTimeNode.getId() == endTimeNode.getId()) {
+            return false;
+        }
+
+        return SingleTimeTree.getTimeInstant(startTimeNode, startTime.getTimezone()).isAfter(SingleTimeTree.getTimeInstant(endTimeNode, startTime.getTimezone()));
+    }
+
+    /**
+     * Collect events attached to the first or the last time instant of a range and its children. With exact boundaries,
+     * events outside the range are left out, but only if the instant isn't fully contained in the range. Events of the
+     * instants in between never need their timestamp property read, and neither do events of subtrees whose
+     * {@link EventPresence} bounds lie within the range.
+     */
+    private void collectEdgeNodeAndChildren(Node instant, TimeInstant startTime, TimeInstant endTime, QueryOptions options, EventCollector collector) {
+        if (!options.isExactBoundaries() || isContained(instant, startTime, endTime)) {
+            collectNodeAndChildren(instant, options.isDescending(), collector);
+            return;
+        }
+
+        collector.setBounds(startTime.getTime(), endTime.getTime());
+        try {
+            collectNodeAndChildren(instant, options.isDescending(), collector);
+        } finally {
+            collector.clearBounds();
+        }
+    }
+
+    private boolean isContained(Node instant, TimeInstant startTime, TimeInstant endTime) {
+        long instantStart = SingleTimeTree.getTimeInstant(instant, startTime.getTimezone()).getTime();
+        long instantEnd = Resolution.findForNode(instant).getDateTimeField(startTime.getTimezone()).add(instantStart, 1) - 1;
+
+        return instantStart >= startTime.getTime() && instantEnd <= endTime.getTime();
+    }
+
+    /**
+     * Get events attached to a time instant and all its children, children first.
+     *
+     * @param parent    time instant.
+     * @param types     of the relationships between the events and the time instant, <code>null</code> for all.
+     * @param direction of the relationships between the time instant and the events.
+     * @return events.
+     */
+    List<Event> getEventsAttachedToNodeAndChildren(Node parent, Set<RelationshipType> types, Direction direction) {
+        EventCollector collector = new EventCollector(types, direction, 0);
+        collectNodeAndChildren(parent, false, collector);
+        return collector.getEvents();
+    }
+
+    /**
+     * Collect events attached to a time instant and all its children. In ascending order, events of the children (from
+     * FIRST) come before the events of the instant itself, in descending order it is the other way round and children
+     * are visited from LAST. Children without events in their subtree, according to the {@link EventPresence} bitmap
+     * of the instant, are skipped.
+     *
+     * @param parent     time instant.
+     * @param descending <code>true</code> for reverse-chronological order.
+     * @param collector  to collect the events into. The traversal stops as soon as it is full.
+     */
+    private void collectNodeAndChildren(Node parent, boolean descending, EventCollector collector) {
+        if (collector.isBounded() && EventPresence.isMaintained(parent)) {
+            Long min = EventPresence.getMinTimestamp(parent);
+            Long max = EventPresence.getMaxTimestamp(parent);
 
-        for (Relationship rel : node.getRelationships(direction)) {
-            if (!timeTreeRelationships.contains(rel.getType().name())) {
-                if (types == null || contains(types, rel.getType())) {
-                    result.add(new Event(rel.getOtherNode(node), rel.getType(), DirectionUtils.resolveDirection(rel, node)));
+            if (min == null || !collector.overlaps(min, max)) {
+                return;
+            }
+
+            //no need to read the timestamps of the events
+            if (collector.covers(min, max)) {
+                collector.clearBounds();
+                try {
+                    collectNodeAndChildren(parent, descending, collector);
+                } finally {
+                    collector.restoreBounds();
                 }
+                return;
             }
         }
 
-        return result;
+        if (descending) {
+            collector.collect(parent);
+        }
+
+        long[] nonEmpty = EventPresence.getBitmap(parent);
+        Relationship firstRelationship = parent.getSingleRelationship(descending ? LAST : FIRST, OUTGOING);
+        Node child = firstRelationship == null ? null : firstRelationship.getEndNode();
+
+        while (child != null && !collector.isFull()) {
+            if (EventPresence.mayHaveEvents(nonEmpty, child)) {
+                collectNodeAndChildren(child, descending, collector);
+            }
+
+            child = nextSibling(parent, child, descending);
+        }
+
+        if (!descending) {
+            collector.collect(parent);
+        }
+    }
+
+    /**
+     * Get the next child of the same parent.
+     *
+     * @param parent     time instant.
+     * @param child      of the parent.
+     * @param descending <code>true</code> to get the previous child instead.
+     * @return next (previous) child, <code>null</code> if the given one is the last (first) one.
+     */
+    private Node nextSibling(Node parent, Node child, boolean descending) {
+        Relationship nextRelationship = child.getSingleRelationship(NEXT, descending ? INCOMING : OUTGOING);
+        if (nextRelationship == null || parent(nextRelationship.getOtherNode(child)).getId() != parent.getId()) {
+            return null;
+        }
+
+        return nextRelationship.getOtherNode(child);
     }
 
     private boolean contains(Set<RelationshipType> types, RelationshipType toCheck) {
@@ -221,4 +734,244 @@ public class TimeTreeBackedEvents implements TimedEvents {
 
         return false;
     }
+
+    /**
+     * An {@link Event} with the timestamp it is ordered by.
+     */
+    private static final class TimestampedEvent {
+
+        static final Comparator<TimestampedEvent> EARLIEST_FIRST = new Comparator<TimestampedEvent>() {
+            @Override
+            public int compare(TimestampedEvent e1, TimestampedEvent e2) {
+                return Long.compare(e1.timestamp, e2.timestamp);
+            }
+        };
+
+        static final Comparator<TimestampedEvent> LATEST_FIRST = Collections.reverseOrder(EARLIEST_FIRST);
+
+        private final Event event;
+        private final long timestamp;
+
+        private TimestampedEvent(Event event, long timestamp) {
+            this.event = event;
+            this.timestamp = timestamp;
+        }
+
+        public Event getEvent() {
+            return event;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+    }
+
+    /**
+     * Collects events attached to time instants up to a limit, optionally leaving out events with a timestamp outside
+     * of given bounds.
+     */
+    private final class EventCollector {
+
+        private final Set<RelationshipType> types;
+        private final Direction direction;
+        private final int limit;
+        private final List<Event> events = new ArrayList<>();
+
+        private boolean bounded;
+        private long from;
+        private long to;
+
+        /**
+         * @param types     of the relationships between the events and the time instants, <code>null</code> for all.
+         * @param direction of the relationships between the time instants and the events.
+         * @param limit     maximum number of events to collect, 0 for no limit.
+         */
+        private EventCollector(Set<RelationshipType> types, Direction direction, int limit) {
+            this.types = types;
+            this.direction = direction;
+            this.limit = limit;
+        }
+
+        void setBounds(long from, long to) {
+            this.bounded = true;
+            this.from = from;
+            this.to = to;
+        }
+
+        void clearBounds() {
+            this.bounded = false;
+        }
+
+        void restoreBounds() {
+            this.bounded = true;
+        }
+
+        boolean isBounded() {
+            return bounded;
+        }
+
+        boolean overlaps(long min, long max) {
+            return min <= to && max >= from;
+        }
+
+        boolean covers(long min, long max) {
+            return min >= from && max <= to;
+        }
+
+        boolean isFull() {
+            return limit > 0 && events.size() >= limit;
+        }
+
+        void collect(Node node) {
+            for (Relationship rel : node.getRelationships(direction)) {
+                if (isFull()) {
+                    return;
+                }
+
+                if (timeTreeRelationships.contains(rel.getType().name())) {
+                    continue;
+                }
+
+                if (types != null && !contains(types, rel.getType())) {
+                    continue;
+                }
+
+                Node event = rel.getOtherNode(node);
+
+                if (bounded) {
+                    Long timestamp = getTimestamp(event);
+                    if (timestamp != null && (timestamp < from || timestamp > to)) {
+                        continue;
+                    }
+                }
+
+                events.add(new Event(event, rel.getType(), DirectionUtils.resolveDirection(rel, node)));
+            }
+        }
+
+        void addAll(List<Event> events) {
+            this.events.addAll(events);
+        }
+
+        List<Event> getEvents() {
+            return events;
+        }
+    }
+
+    /**
+     * Collects events of a subtree of the time tree, restricted to the instants at the resolution of the query that
+     * start strictly within given bounds. Children at year, month and day resolution are collected by forked tasks,
+     * finer ones by this task.
+     */
+    private final class SubtreeTask extends RecursiveTask<List<Event>> {
+
+        private final GraphDatabaseService database;
+        private final long nodeId;
+        private final boolean leaf;
+        private final Resolution resolution;
+        private final long from;
+        private final long to;
+        private final boolean descending;
+        private final DateTimeZone timezone;
+        private final Set<RelationshipType> types;
+        private final Direction direction;
+
+        /**
+         * @param database   to read from.
+         * @param nodeId     ID of the root of the subtree.
+         * @param leaf       <code>true</code> iff the root of the subtree has the resolution of the query.
+         * @param resolution of the query.
+         * @param from       start of the first instant of the range (exclusive).
+         * @param to         start of the last instant of the range (exclusive).
+         * @param descending <code>true</code> for reverse-chronological order.
+         * @param timezone   of the tree.
+         * @param types      of the relationships between the events and the time instants, <code>null</code> for all.
+         * @param direction  of the relationships between the time instants and the events.
+         */
+        private SubtreeTask(GraphDatabaseService database, long nodeId, boolean leaf, Resolution resolution, long from, long to, boolean descending, DateTimeZone timezone, Set<RelationshipType> types, Direction direction) {
+            this.database = database;
+            this.nodeId = nodeId;
+            this.leaf = leaf;
+            this.resolution = resolution;
+            this.from = from;
+            this.to = to;
+            this.descending = descending;
+            this.timezone = timezone;
+            this.types = types;
+            this.direction = direction;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected List<Event> compute() {
+            try (Transaction tx = database.beginTx()) {
+                List<Event> result = collect(database.getNodeById(nodeId));
+                tx.success();
+                return result;
+            }
+        }
+
+        private List<Event> collect(Node node) {
+            if (leaf) {
+                EventCollector collector = new EventCollector(types, direction, 0);
+                collectNodeAndChildren(node, descending, collector);
+                return collector.getEvents();
+            }
+
+            List<SubtreeTask> subtasks = new ArrayList<>();
+
+            long[] nonEmpty = EventPresence.getBitmap(node);
+            Relationship firstRelationship = node.getSingleRelationship(descending ? LAST : FIRST, OUTGOING);
+            Node child = firstRelationship == null ? null : firstRelationship.getEndNode();
+
+            while (child != null) {
+                Resolution childResolution = Resolution.findForNode(child);
+                boolean childLeaf = childResolution == resolution;
+                long start = SingleTimeTree.getTimeInstant(child, timezone).getTime();
+                long end = childResolution.getDateTimeField(timezone).add(start, 1) - 1;
+
+                if (descending ? (childLeaf ? start <= from : end <= from) : start >= to) {
+                    break;
+                }
+
+                if ((childLeaf ? start > from && start < to : end > from && start < to) && EventPresence.mayHaveEvents(nonEmpty, child)) {
+                    SubtreeTask subtask = new SubtreeTask(database, child.getId(), childLeaf, resolution, from, to, descending, timezone, types, direction);
+                    if (isSplitPoint(childResolution)) {
+                        subtask.fork();
+                    } else {
+                        subtask.invoke();
+                    }
+                    subtasks.add(subtask);
+                }
+
+                Relationship nextRelationship = child.getSingleRelationship(NEXT, descending ? INCOMING : OUTGOING);
+                if (nextRelationship == null || parent(nextRelationship.getOtherNode(child)).getId() != node.getId()) {
+                    break;
+                }
+
+                child = nextRelationship.getOtherNode(child);
+            }
+
+            List<Event> result = new ArrayList<>();
+            for (SubtreeTask subtask : subtasks) {
+                result.addAll(subtask.join());
+            }
+
+            return result;
+        }
+
+        private boolean isSplitPoint(Resolution childResolution) {
+            return childResolution == Resolution.YEAR || childResolution == Resolution.MONTH || childResolution == Resolution.DAY;
+        }
+    }
+
+    /**
+     * Pool for parallel queries of instances that haven't been given their own, created when first needed.
+     */
+    private static final class SharedPool {
+
+        private static final ForkJoinPool INSTANCE = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    }
 }
@@ -0,0 +1,467 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree;
+
+import com.graphaware.module.timetree.domain.Resolution;
+import com.graphaware.module.timetree.metrics.TimeTreeMetrics;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.graphaware.common.util.PropertyContainerUtils.getInt;
+import static com.graphaware.module.timetree.SingleTimeTree.VALUE_PROPERTY;
+import static com.graphaware.module.timetree.domain.TimeTreeRelationshipTypes.*;
+import static org.neo4j.graphdb.Direction.INCOMING;
+import static org.neo4j.graphdb.Direction.OUTGOING;
+
+/**
+ * Checker of the structural invariants of a time tree, which {@link SingleTimeTree} relies on but only verifies lazily
+ * when it happens to create a time instant next to a broken part of the tree. The invariants are:
+ * <ul>
+ * <li>every time instant has a value and exactly one parent, and the resolution one level below its parent's</li>
+ * <li>no two children of the same parent have the same value</li>
+ * <li>every parent with children has exactly one FIRST and one LAST relationship, to the child with the lowest and the
+ * highest value, respectively, a parent without children has none</li>
+ * <li>NEXT relationships chain all time instants of each resolution in order, i.e. every time instant is preceded by
+ * its previous sibling or, if it is the first child, by the last child of the closest preceding parent with children</li>
+ * </ul>
+ * All checks only read a parent, its children and their neighbours, so a tree is checked incrementally in transactions
+ * covering a bounded number of time instants each, and its years are checked in parallel. Writes to the tree may carry
+ * on during a check, so a violation that disappears when checked again may have been caused by a concurrent write. A
+ * violation in one resolution may cause follow-up violations in the resolutions below it.
+ * <p/>
+ * In repair mode, every transaction locks the root of the tree, like {@link SingleTimeTree} does when creating time
+ * instants, and years are checked one after the other in chronological order, since the NEXT relationships expected
+ * in a year depend on the previous years. Wrong, missing and superfluous FIRST, LAST and NEXT relationships are
+ * re-created. Missing values, duplicate values, multiple parents and wrong resolutions are only reported, since
+ * repairing them would mean deciding which time instant events belong to.
+ */
+public class TimeTreeChecker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TimeTreeChecker.class);
+
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private final GraphDatabaseService database;
+    private final int batchSize;
+    private final int parallelism;
+    private final TimeTreeMetrics metrics = TimeTreeMetrics.getInstance();
+    private ExecutorService executor;
+
+    public TimeTreeChecker(GraphDatabaseService database) {
+        this(database, DEFAULT_BATCH_SIZE, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a new checker.
+     *
+     * @param database    containing the trees.
+     * @param batchSize   number of time instants checked per transaction.
+     * @param parallelism maximum number of years checked in parallel.
+     */
+    public TimeTreeChecker(GraphDatabaseService database, int batchSize, int parallelism) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+
+        this.database = database;
+        this.batchSize = batchSize;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Check a tree, optionally repairing the violations found. Must not be called within a transaction, since the tree
+     * is checked in transactions of its own.
+     *
+     * @param rootNodeId ID of the root of the tree.
+     * @param repair     <code>true</code> to repair violations where possible.
+     * @return report of the check.
+     * @throws NotFoundException if there is no node with the given ID.
+     */
+    public ConsistencyReport check(long rootNodeId, boolean repair) {
+        long start = metrics.now();
+
+        ConsistencyReport report = new ConsistencyReport(rootNodeId, repair);
+
+        List<Long> years = new ArrayList<>();
+        try (Transaction tx = database.beginTx()) {
+            Node root = database.getNodeById(rootNodeId);
+
+            if (repair) {
+                tx.acquireWriteLock(root);
+            }
+
+            for (Node year : checkChildren(root, Resolution.YEAR, repair, report)) {
+                years.add(year.getId());
+            }
+
+            tx.success();
+        }
+
+        if (repair || parallelism == 1 || years.size() < 2) {
+            for (Long year : years) {
+                report.add(checkYear(rootNodeId, year, repair));
+            }
+        } else {
+            checkInParallel(rootNodeId, years, report);
+        }
+
+        metrics.consistencyViolations().increment(report.getViolationCount());
+        metrics.consistencyRepairs().increment(report.getRepairCount());
+        metrics.consistencyCheck().stop(start);
+
+        if (report.getViolationCount() > 0) {
+            LOG.warn("Time tree rooted at node " + rootNodeId + " has " + report.getViolationCount() + " violations, "
+                    + report.getRepairCount() + " repaired. First ones: " + report.getViolations());
+        }
+
+        return report;
+    }
+
+    private void checkInParallel(final long rootNodeId, List<Long> years, ConsistencyReport report) {
+        List<Future<ConsistencyReport>> futures = new ArrayList<>();
+
+        for (final Long year : years) {
+            futures.add(getExecutor().submit(new Callable<ConsistencyReport>() {
+                @Override
+                public ConsistencyReport call() {
+                    return checkYear(rootNodeId, year, false);
+                }
+            }));
+        }
+
+        try {
+            for (Future<ConsistencyReport> future : futures) {
+                report.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while checking time tree", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            for (Future<ConsistencyReport> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Check the descendants of a year, depth-first in chronological order, in transactions covering at most
+     * <code>batchSize</code> time instants each. Only the IDs of the parents still to be visited are kept between the
+     * transactions.
+     */
+    private ConsistencyReport checkYear(long rootNodeId, long yearId, boolean repair) {
+        ConsistencyReport report = new ConsistencyReport(rootNodeId, repair);
+
+        //pairs of parent ID and the ordinal of the resolution of its children
+        Deque<long[]> parents = new ArrayDeque<>();
+        parents.push(new long[]{yearId, Resolution.MONTH.ordinal()});
+
+        while (!parents.isEmpty()) {
+            try (Transaction tx = database.beginTx()) {
+                if (repair) {
+                    tx.acquireWriteLock(database.getNodeById(rootNodeId));
+                }
+
+                long limit = report.getCheckedInstants() + batchSize;
+                while (!parents.isEmpty() && report.getCheckedInstants() < limit) {
+                    long[] next = parents.pop();
+                    Resolution resolution = Resolution.values()[(int) next[1]];
+
+                    List<Node> children;
+                    try {
+                        children = checkChildren(database.getNodeById(next[0]), resolution, repair, report);
+                    } catch (NotFoundException e) {
+                        //removed in the meantime
+                        continue;
+                    }
+
+                    if (!Resolution.MILLISECOND.equals(resolution)) {
+                        for (int i = children.size() - 1; i >= 0; i--) {
+                            parents.push(new long[]{children.get(i).getId(), resolution.ordinal() + 1});
+                        }
+                    }
+                }
+
+                tx.success();
+            }
+        }
+
+        return report;
+    }
+
+    /**
+     * Check the children of a parent and their FIRST, LAST and NEXT relationships.
+     *
+     * @param parent     time instant or root.
+     * @param resolution expected resolution of the children.
+     * @param repair     <code>true</code> to repair violations where possible.
+     * @param report     to record the results in.
+     * @return children with a value, ordered by it.
+     */
+    private List<Node> checkChildren(Node parent, Resolution resolution, boolean repair, ConsistencyReport report) {
+        List<Node> children = new ArrayList<>();
+
+        for (Relationship relationship : parent.getRelationships(CHILD, OUTGOING)) {
+            Node child = relationship.getEndNode();
+            report.checked();
+
+            if (!child.hasLabel(resolution.getLabel())) {
+                report.violation(child + " is a child of " + parent + " but not a " + resolution, false);
+            }
+
+            int parents = child.getDegree(CHILD, INCOMING);
+            if (parents != 1) {
+                report.violation(child + " has " + parents + " parents", false);
+            }
+
+            if (!child.hasProperty(VALUE_PROPERTY)) {
+                report.violation(child + " has no value", false);
+                continue;
+            }
+
+            children.add(child);
+        }
+
+        Collections.sort(children, new Comparator<Node>() {
+            @Override
+            public int compare(Node n1, Node n2) {
+                return Integer.compare(getInt(n1, VALUE_PROPERTY), getInt(n2, VALUE_PROPERTY));
+            }
+        });
+
+        boolean duplicates = false;
+        for (int i = 1; i < children.size(); i++) {
+            if (getInt(children.get(i - 1), VALUE_PROPERTY) == getInt(children.get(i), VALUE_PROPERTY)) {
+                report.violation(parent + " has more than one child with value " + getInt(children.get(i), VALUE_PROPERTY), false);
+                duplicates = true;
+            }
+        }
+
+        checkEnd(parent, FIRST, children.isEmpty() ? null : children.get(0), repair, report);
+        checkEnd(parent, LAST, children.isEmpty() ? null : children.get(children.size() - 1), repair, report);
+
+        if (duplicates) {
+            //the order of the duplicates is unknown, so their NEXT relationships are left as they are
+            return children;
+        }
+
+        Node predecessor = children.isEmpty() ? null : lastChildOfPrecedingParent(parent);
+        for (Node child : children) {
+            checkPredecessor(child, predecessor, repair, report);
+            predecessor = child;
+        }
+
+        return children;
+    }
+
+    /**
+     * Check the FIRST or LAST relationship of a parent. A relationship to another child with the same value as the
+     * expected one is tolerated, the duplicate value is reported separately.
+     */
+    private void checkEnd(Node parent, RelationshipType type, Node expected, boolean repair, ConsistencyReport report) {
+        List<Relationship> relationships = relationships(parent, type, OUTGOING);
+
+        if (expected == null && relationships.isEmpty()) {
+            return;
+        }
+
+        if (expected != null && relationships.size() == 1) {
+            Node actual = relationships.get(0).getEndNode();
+            if (actual.equals(expected) || (isChild(actual, parent) && actual.hasProperty(VALUE_PROPERTY)
+                    && getInt(actual, VALUE_PROPERTY) == getInt(expected, VALUE_PROPERTY))) {
+                return;
+            }
+        }
+
+        report.violation(parent + " has " + relationships.size() + " " + type + " relationships, expected "
+                + (expected == null ? "none" : "one to " + expected), repair);
+
+        if (repair) {
+            for (Relationship relationship : relationships) {
+                relationship.delete();
+            }
+
+            if (expected != null) {
+                parent.createRelationshipTo(expected, type);
+            }
+        }
+    }
+
+    /**
+     * Check the incoming NEXT relationship of a time instant, and that it has at most one outgoing one. When repairing
+     * superfluous outgoing relationships, all of them are removed; the right one is re-created when its end node is
+     * checked, which happens later, since time instants are checked in chronological order.
+     */
+    private void checkPredecessor(Node instant, Node expected, boolean repair, ConsistencyReport report) {
+        List<Relationship> outgoing = relationships(instant, NEXT, OUTGOING);
+        if (outgoing.size() > 1) {
+            report.violation(instant + " has " + outgoing.size() + " outgoing NEXT relationships", repair);
+
+            if (repair) {
+                for (Relationship relationship : outgoing) {
+                    relationship.delete();
+                }
+            }
+        }
+
+        List<Relationship> incoming = relationships(instant, NEXT, INCOMING);
+
+        if (expected == null && incoming.isEmpty()) {
+            return;
+        }
+
+        if (expected != null && incoming.size() == 1 && incoming.get(0).getStartNode().equals(expected)) {
+            return;
+        }
+
+        report.violation(instant + " has " + incoming.size() + " incoming NEXT relationships, expected "
+                + (expected == null ? "none" : "one from " + expected), repair);
+
+        if (repair) {
+            for (Relationship relationship : incoming) {
+                relationship.delete();
+            }
+
+            if (expected != null) {
+                for (Relationship relationship : expected.getRelationships(NEXT, OUTGOING)) {
+                    relationship.delete();
+                }
+
+                expected.createRelationshipTo(instant, NEXT);
+            }
+        }
+    }
+
+    /**
+     * Find the expected predecessor of the first child of a parent, i.e. the child with the highest value of the
+     * closest parent preceding it (along NEXT) that has children.
+     *
+     * @param parent time instant or root.
+     * @return predecessor, <code>null</code> if there is none.
+     */
+    private Node lastChildOfPrecedingParent(Node parent) {
+        if (!parent.hasRelationship(CHILD, INCOMING)) {
+            //root
+            return null;
+        }
+
+        Node preceding = previous(parent);
+        while (preceding != null) {
+            Node last = null;
+            for (Relationship relationship : preceding.getRelationships(CHILD, OUTGOING)) {
+                Node child = relationship.getEndNode();
+                if (child.hasProperty(VALUE_PROPERTY) && (last == null || getInt(child, VALUE_PROPERTY) > getInt(last, VALUE_PROPERTY))) {
+                    last = child;
+                }
+            }
+
+            if (last != null) {
+                return last;
+            }
+
+            preceding = previous(preceding);
+        }
+
+        return null;
+    }
+
+    /**
+     * Get the time instant preceding the given one along NEXT. If there is more than one, which has been reported
+     * when the given time instant was checked, any of them is returned.
+     */
+    private Node previous(Node node) {
+        for (Relationship relationship : node.getRelationships(NEXT, INCOMING)) {
+            return relationship.getStartNode();
+        }
+
+        return null;
+    }
+
+    private boolean isChild(Node node, Node parent) {
+        for (Relationship relationship : node.getRelationships(CHILD, INCOMING)) {
+            if (relationship.getStartNode().equals(parent)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static List<Relationship> relationships(Node node, RelationshipType type, Direction direction) {
+        List<Relationship> result = new ArrayList<>();
+        for (Relationship relationship : node.getRelationships(type, direction)) {
+            result.add(relationship);
+        }
+        return result;
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "TimeTree-Checker-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        return executor;
+    }
+
+    /**
+     * Stop the threads used by parallel checks, if any.
+     */
+    public synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+}
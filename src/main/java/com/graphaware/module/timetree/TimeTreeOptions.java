@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+
+/**
+ * Optional features of a {@link SingleTimeTree}, shared by all trees of a {@link com.graphaware.module.timetree.module.TimeTreeModule}
+ * (see {@link com.graphaware.module.timetree.module.TimeTreeConfiguration#getTreeOptions(SidecarIndex)}).
+ * <p/>
+ * Change the options by using the fluent with* methods, starting from {@link #defaults()}.
+ */
+public final class TimeTreeOptions {
+
+    private static final TimeTreeOptions DEFAULTS = new TimeTreeOptions(false, null, false);
+
+    private final boolean bucketKeys;
+    private final SidecarIndex sidecarIndex;
+    private final boolean eventPresence;
+
+    /**
+     * Get the default options, i.e. no bucket keys, no sidecar index and no event presence.
+     *
+     * @return default options.
+     */
+    public static TimeTreeOptions defaults() {
+        return DEFAULTS;
+    }
+
+    private TimeTreeOptions(boolean bucketKeys, SidecarIndex sidecarIndex, boolean eventPresence) {
+        this.bucketKeys = bucketKeys;
+        this.sidecarIndex = sidecarIndex;
+        this.eventPresence = eventPresence;
+    }
+
+    /**
+     * Create a new instance of these options with bucket keys enabled or disabled.
+     *
+     * @param bucketKeys <code>true</code> iff created time instants should get a {@link BucketKeys#BUCKET_PROPERTY}
+     *                   and time instants should be looked up by it, once the indexes created by
+     *                   {@link BucketKeys#createIndexes(GraphDatabaseService)} are online.
+     * @return new instance.
+     */
+    public TimeTreeOptions withBucketKeys(boolean bucketKeys) {
+        return new TimeTreeOptions(bucketKeys, sidecarIndex, eventPresence);
+    }
+
+    /**
+     * Create a new instance of these options with a different sidecar index.
+     *
+     * @param sidecarIndex persistent index of time instants, in which instants are looked up before descending from
+     *                     the root, and which is maintained by the tree. <code>null</code> for none.
+     * @return new instance.
+     */
+    public TimeTreeOptions withSidecarIndex(SidecarIndex sidecarIndex) {
+        return new TimeTreeOptions(bucketKeys, sidecarIndex, eventPresence);
+    }
+
+    /**
+     * Create a new instance of these options with event presence enabled or disabled.
+     *
+     * @param eventPresence <code>true</code> iff created time instants should maintain an {@link EventPresence} bitmap
+     *                      of their children, which lets queries skip children without events.
+     * @return new instance.
+     */
+    public TimeTreeOptions withEventPresence(boolean eventPresence) {
+        return new TimeTreeOptions(bucketKeys, sidecarIndex, eventPresence);
+    }
+
+    public boolean isBucketKeys() {
+        return bucketKeys;
+    }
+
+    public SidecarIndex getSidecarIndex() {
+        return sidecarIndex;
+    }
+
+    public boolean isEventPresence() {
+        return eventPresence;
+    }
+}
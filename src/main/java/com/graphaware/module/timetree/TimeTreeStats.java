@@ -0,0 +1,405 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree;
+
+import com.graphaware.common.util.IterableUtils;
+import com.graphaware.module.timetree.domain.Resolution;
+import org.neo4j.graphdb.*;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.graphaware.module.timetree.domain.TimeTreeLabels.TimeTreeRoot;
+import static com.graphaware.module.timetree.domain.TimeTreeRelationshipTypes.*;
+import static org.neo4j.graphdb.Direction.OUTGOING;
+
+/**
+ * Statistics of the time trees in a database for capacity planning, i.e. the number of time instants, the maximum and
+ * average fan-out, and the maximum number of events attached to a single time instant, per resolution, and the number
+ * of trees.
+ * <p/>
+ * The statistics are maintained incrementally, so that reading them doesn't need a scan of the graph. {@link SingleTimeTree}
+ * and {@link TimeTreeBackedEvents} record their changes in memory once their transaction commits, and
+ * {@link #flush(GraphDatabaseService)} periodically adds the recorded changes to a node labelled {@link #STATS_LABEL},
+ * one per tree. Maxima only grow until the next recompute, even when the instants that reached them are removed.
+ * <p/>
+ * Changes made by other means (e.g. Cypher or the batch importer) aren't recorded at all, so the statistics drift from
+ * the graph over time.
+ * {@link #recompute(GraphDatabaseService, long)} replaces the statistics of a tree by exact ones, computed by a traversal
+ * of the whole tree.
+ * <p/>
+ * There is a single instance per database, shared by all trees in it.
+ */
+public final class TimeTreeStats {
+
+    public static final Label STATS_LABEL = DynamicLabel.label("TimeTreeStats");
+
+    private static final String ROOT_KEY_PROPERTY = "rootKey";
+    private static final String INSTANTS_PROPERTY = "instants";
+    private static final String MAX_FAN_OUT_PROPERTY = "maxFanOut";
+    private static final String MAX_EVENT_DEGREE_PROPERTY = "maxEventDegree";
+    private static final String RECOMPUTED_PROPERTY = "recomputed";
+
+    private static final int LEVELS = Resolution.values().length;
+    private static final Map<GraphDatabaseService, TimeTreeStats> INSTANCES = new WeakHashMap<>();
+
+    private final ConcurrentMap<Long, Changes> changes = new ConcurrentHashMap<>();
+
+    /**
+     * Get the statistics of a database.
+     *
+     * @param database to get the statistics for.
+     * @return statistics.
+     */
+    public static TimeTreeStats getInstance(GraphDatabaseService database) {
+        synchronized (INSTANCES) {
+            TimeTreeStats stats = INSTANCES.get(database);
+            if (stats == null) {
+                stats = new TimeTreeStats();
+                INSTANCES.put(database, stats);
+            }
+            return stats;
+        }
+    }
+
+    private TimeTreeStats() {
+    }
+
+    /**
+     * Get the key of a tree, which is the ID of its custom root, or {@link SidecarIndex#DEFAULT_TREE} for the tree with
+     * the default root. Must be called within a transaction.
+     *
+     * @param root of the tree.
+     * @return key.
+     */
+    static long rootKey(Node root) {
+        return root.hasLabel(TimeTreeRoot) ? SidecarIndex.DEFAULT_TREE : root.getId();
+    }
+
+    /**
+     * Get the number of events attached to a time instant, i.e. the number of its relationships that aren't part of
+     * the tree.
+     *
+     * @param instant time instant.
+     * @return number of events.
+     */
+    static int eventDegree(Node instant) {
+        return instant.getDegree() - instant.getDegree(CHILD) - instant.getDegree(NEXT) - instant.getDegree(FIRST) - instant.getDegree(LAST);
+    }
+
+    /**
+     * Record the changes of a tree made by a committed transaction.
+     *
+     * @param rootKey   key of the tree.
+     * @param committed changes.
+     */
+    void record(long rootKey, Changes committed) {
+        Changes tree = changesOf(rootKey);
+        for (int i = 0; i < LEVELS; i++) {
+            tree.instants.addAndGet(i, committed.instants.get(i));
+            max(tree.maxFanOut, i, committed.maxFanOut.get(i));
+            max(tree.maxEventDegree, i, committed.maxEventDegree.get(i));
+        }
+    }
+
+    /**
+     * Add the changes recorded since the last flush to the statistics stored in the database, each tree in a separate
+     * transaction. Changes of a tree that fail to be stored are kept for the next flush.
+     *
+     * @param database to store the statistics in.
+     * @return number of trees, whose statistics have been changed.
+     */
+    public synchronized int flush(GraphDatabaseService database) {
+        int flushed = 0;
+
+        for (Map.Entry<Long, Changes> entry : changes.entrySet()) {
+            Changes tree = entry.getValue();
+
+            long[] instants = drain(tree.instants);
+            long[] maxFanOut = drain(tree.maxFanOut);
+            long[] maxEventDegree = drain(tree.maxEventDegree);
+
+            if (isZero(instants) && isZero(maxFanOut) && isZero(maxEventDegree)) {
+                continue;
+            }
+
+            try (Transaction tx = database.beginTx()) {
+                Node node = getOrCreateStatsNode(database, entry.getKey());
+                tx.acquireWriteLock(node);
+
+                node.setProperty(INSTANTS_PROPERTY, add(getArray(node, INSTANTS_PROPERTY), instants));
+                node.setProperty(MAX_FAN_OUT_PROPERTY, max(getArray(node, MAX_FAN_OUT_PROPERTY), maxFanOut));
+                node.setProperty(MAX_EVENT_DEGREE_PROPERTY, max(getArray(node, MAX_EVENT_DEGREE_PROPERTY), maxEventDegree));
+
+                tx.success();
+            } catch (RuntimeException e) {
+                for (int i = 0; i < LEVELS; i++) {
+                    tree.instants.addAndGet(i, instants[i]);
+                    max(tree.maxFanOut, i, maxFanOut[i]);
+                    max(tree.maxEventDegree, i, maxEventDegree[i]);
+                }
+                throw e;
+            }
+
+            flushed++;
+        }
+
+        return flushed;
+    }
+
+    /**
+     * Replace the statistics of a tree by exact ones, computed by a traversal of the whole tree in a single read
+     * transaction. Changes recorded before the traversal are discarded, changes made during the traversal may be
+     * counted twice.
+     *
+     * @param database   containing the tree.
+     * @param rootNodeId ID of the root of the tree.
+     * @return number of time instants in the tree.
+     * @throws NotFoundException if there is no such root.
+     */
+    public long recompute(GraphDatabaseService database, long rootNodeId) {
+        long rootKey;
+        long[] instants = new long[LEVELS];
+        long[] maxFanOut = new long[LEVELS];
+        long[] maxEventDegree = new long[LEVELS];
+
+        try (Transaction tx = database.beginTx()) {
+            Node root = database.getNodeById(rootNodeId);
+            rootKey = rootKey(root);
+
+            Changes tree = changesOf(rootKey);
+            drain(tree.instants);
+            drain(tree.maxFanOut);
+            drain(tree.maxEventDegree);
+
+            Deque<Node> toVisit = new ArrayDeque<>();
+            toVisit.push(root);
+
+            while (!toVisit.isEmpty()) {
+                Node node = toVisit.pop();
+                boolean isRoot = node.equals(root);
+                int index = isRoot ? -1 : Resolution.findForNode(node).ordinal();
+
+                if (!isRoot) {
+                    instants[index]++;
+                    maxEventDegree[index] = Math.max(maxEventDegree[index], eventDegree(node));
+                }
+
+                long fanOut = 0;
+                for (Relationship child : node.getRelationships(CHILD, OUTGOING)) {
+                    toVisit.push(child.getEndNode());
+                    fanOut++;
+                }
+
+                if (!isRoot) {
+                    maxFanOut[index] = Math.max(maxFanOut[index], fanOut);
+                }
+            }
+
+            tx.success();
+        }
+
+        synchronized (this) {
+            try (Transaction tx = database.beginTx()) {
+                Node node = getOrCreateStatsNode(database, rootKey);
+                tx.acquireWriteLock(node);
+
+                node.setProperty(INSTANTS_PROPERTY, instants);
+                node.setProperty(MAX_FAN_OUT_PROPERTY, maxFanOut);
+                node.setProperty(MAX_EVENT_DEGREE_PROPERTY, maxEventDegree);
+                node.setProperty(RECOMPUTED_PROPERTY, System.currentTimeMillis());
+
+                tx.success();
+            }
+        }
+
+        return sum(instants);
+    }
+
+    /**
+     * Get the statistics of a tree, i.e. the stored ones with the changes recorded since the last flush.
+     *
+     * @param database containing the tree.
+     * @param rootKey  key of the tree, i.e. the ID of its custom root, or {@link SidecarIndex#DEFAULT_TREE} for the
+     *                 tree with the default root.
+     * @return statistics.
+     */
+    public StatsReport getStats(GraphDatabaseService database, long rootKey) {
+        long[] instants = new long[LEVELS];
+        long[] maxFanOut = new long[LEVELS];
+        long[] maxEventDegree = new long[LEVELS];
+        long recomputed = 0;
+
+        Set<Long> trees = new HashSet<>(changes.keySet());
+
+        try (Transaction tx = database.beginTx()) {
+            try (ResourceIterator<Node> nodes = database.findNodes(STATS_LABEL)) {
+                while (nodes.hasNext()) {
+                    Node node = nodes.next();
+                    long key = ((Number) node.getProperty(ROOT_KEY_PROPERTY)).longValue();
+                    trees.add(key);
+
+                    if (key == rootKey) {
+                        instants = getArray(node, INSTANTS_PROPERTY);
+                        maxFanOut = getArray(node, MAX_FAN_OUT_PROPERTY);
+                        maxEventDegree = getArray(node, MAX_EVENT_DEGREE_PROPERTY);
+                        recomputed = ((Number) node.getProperty(RECOMPUTED_PROPERTY, 0L)).longValue();
+                    }
+                }
+            }
+
+            tx.success();
+        }
+
+        Changes tree = changes.get(rootKey);
+        if (tree != null) {
+            for (int i = 0; i < LEVELS; i++) {
+                instants[i] += tree.instants.get(i);
+                maxFanOut[i] = Math.max(maxFanOut[i], tree.maxFanOut.get(i));
+                maxEventDegree[i] = Math.max(maxEventDegree[i], tree.maxEventDegree.get(i));
+            }
+        }
+
+        return new StatsReport(rootKey == SidecarIndex.DEFAULT_TREE ? null : rootKey, trees.size(), recomputed, instants, maxFanOut, maxEventDegree);
+    }
+
+    private Changes changesOf(long rootKey) {
+        Changes tree = changes.get(rootKey);
+        if (tree == null) {
+            tree = new Changes();
+            Changes existing = changes.putIfAbsent(rootKey, tree);
+            if (existing != null) {
+                tree = existing;
+            }
+        }
+        return tree;
+    }
+
+    private static Node getOrCreateStatsNode(GraphDatabaseService database, long rootKey) {
+        Node node = IterableUtils.getSingleOrNull(database.findNodes(STATS_LABEL, ROOT_KEY_PROPERTY, rootKey));
+
+        if (node == null) {
+            node = database.createNode(STATS_LABEL);
+            node.setProperty(ROOT_KEY_PROPERTY, rootKey);
+        }
+
+        return node;
+    }
+
+    private static long[] getArray(Node node, String property) {
+        long[] stored = (long[]) node.getProperty(property, null);
+        return stored != null && stored.length == LEVELS ? stored : new long[LEVELS];
+    }
+
+    private static long[] drain(AtomicLongArray values) {
+        long[] result = new long[LEVELS];
+        for (int i = 0; i < LEVELS; i++) {
+            result[i] = values.getAndSet(i, 0);
+        }
+        return result;
+    }
+
+    private static void max(AtomicLongArray values, int index, long value) {
+        long current = values.get(index);
+        while (value > current && !values.compareAndSet(index, current, value)) {
+            current = values.get(index);
+        }
+    }
+
+    private static long[] add(long[] values, long[] deltas) {
+        for (int i = 0; i < LEVELS; i++) {
+            values[i] += deltas[i];
+        }
+        return values;
+    }
+
+    private static long[] max(long[] values, long[] others) {
+        for (int i = 0; i < LEVELS; i++) {
+            values[i] = Math.max(values[i], others[i]);
+        }
+        return values;
+    }
+
+    private static boolean isZero(long[] values) {
+        for (long value : values) {
+            if (value != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long sum(long[] values) {
+        long result = 0;
+        for (long value : values) {
+            result += value;
+        }
+        return result;
+    }
+
+    /**
+     * Changes of the statistics of a single tree, made by a single transaction or recorded since the last flush, indexed
+     * by {@link Resolution#ordinal()}.
+     */
+    static final class Changes {
+
+        private final AtomicLongArray instants = new AtomicLongArray(LEVELS);
+        private final AtomicLongArray maxFanOut = new AtomicLongArray(LEVELS);
+        private final AtomicLongArray maxEventDegree = new AtomicLongArray(LEVELS);
+
+        /**
+         * Add the creation of a time instant.
+         *
+         * @param resolution   of the created instant.
+         * @param parentFanOut number of children of the parent of the created instant, including the created one.
+         */
+        void instantCreated(Resolution resolution, int parentFanOut) {
+            instants.incrementAndGet(resolution.ordinal());
+
+            //the fan-out of the root is the number of years
+            if (resolution.ordinal() > 0) {
+                max(maxFanOut, resolution.ordinal() - 1, parentFanOut);
+            }
+        }
+
+        /**
+         * Add the removal of a time instant.
+         *
+         * @param resolution of the removed instant.
+         */
+        void instantRemoved(Resolution resolution) {
+            instants.decrementAndGet(resolution.ordinal());
+        }
+
+        /**
+         * Add an event being attached to a time instant.
+         *
+         * @param resolution  of the instant.
+         * @param eventDegree number of events attached to the instant, including the new one.
+         */
+        void eventAttached(Resolution resolution, int eventDegree) {
+            max(maxEventDegree, resolution.ordinal(), eventDegree);
+        }
+    }
+}
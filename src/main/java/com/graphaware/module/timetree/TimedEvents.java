@@ -17,6 +17,7 @@
 package com.graphaware.module.timetree;
 
 import com.graphaware.module.timetree.domain.Event;
+import com.graphaware.module.timetree.domain.QueryOptions;
 import com.graphaware.module.timetree.domain.TimeInstant;
 import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.Node;
@@ -53,6 +54,37 @@ public interface TimedEvents {
      */
     boolean attachEvent(Node event, RelationshipType relationshipType, Direction direction, TimeInstant timeInstant);
 
+    /**
+     * Attach an event with a duration, e.g. a session or an outage, to the minimal set of time instants that cover the
+     * period from the start of one instant to the end of another one, using an incoming relationship (from the time
+     * instants' point of view) of the specified type. The period is represented by one instant per whole year, month,
+     * day, etc. it contains, see {@link TimeInstant#getCoveringInstants(TimeInstant, TimeInstant)}, so the number of
+     * relationships grows with the logarithm of the duration. Time instants that don't exist will be created.
+     *
+     * @param event            event node to be associated with the period.
+     * @param relationshipType type of the relationships between the event node and the time instant nodes.
+     * @param startTime        first time instant of the period (inclusive), its resolution is the finest one used.
+     * @param endTime          last time instant of the period (inclusive).
+     * @return <code>true</code> iff the event was attached to at least one time instant, <code>false</code> iff it was
+     * already attached to all of them.
+     */
+    boolean attachInterval(Node event, RelationshipType relationshipType, TimeInstant startTime, TimeInstant endTime);
+
+    /**
+     * Attach an event with a duration to the minimal set of time instants that cover the period from the start of one
+     * instant to the end of another one, using relationships of the specified direction (from the time instants' point
+     * of view) and the specified type. See {@link #attachInterval(Node, RelationshipType, TimeInstant, TimeInstant)}.
+     *
+     * @param event            event node to be associated with the period.
+     * @param relationshipType type of the relationships between the event node and the time instant nodes.
+     * @param direction        of the relationships between the time instants and the event from the time instants' point of view. Must not be {@link Direction#BOTH}.
+     * @param startTime        first time instant of the period (inclusive), its resolution is the finest one used.
+     * @param endTime          last time instant of the period (inclusive).
+     * @return <code>true</code> iff the event was attached to at least one time instant, <code>false</code> iff it was
+     * already attached to all of them.
+     */
+    boolean attachInterval(Node event, RelationshipType relationshipType, Direction direction, TimeInstant startTime, TimeInstant endTime);
+
     /**
      * Get events attached (using any incoming relationship) to a specific time instant and all its children.
      * If the time instant doesn't exist, it will <b>not</b> be created and an empty list will be returned.
@@ -145,4 +177,102 @@ public interface TimedEvents {
      * resolution before events with lower resolution.
      */
     List<Event> getEvents(TimeInstant startTime, TimeInstant endTime, Set<RelationshipType> relationshipTypes, Direction direction);
+
+    /**
+     * Get events attached (via a relationship of one of the specified types and the scpecified direction) to all time
+     * instants in the specified range (inclusive) and all their children, subject to the given query options.
+     * The time instants that don't exist will <b>not</b> be created.
+     *
+     * @param startTime         Time instant representing the start of the interval (inclusive).
+     * @param endTime           Time instant representing the end of the interval (inclusive).
+     * @param relationshipTypes of the relationships between the event and the time instants.
+     * @param direction         of the relationships between the time instants and the events from the time instants' point of view.
+     * @param options           of the query.
+     * @return events attached to all time instants in the interval and their children. Ordered chronologically with events with higher
+     * resolution before events with lower resolution.
+     */
+    List<Event> getEvents(TimeInstant startTime, TimeInstant endTime, Set<RelationshipType> relationshipTypes, Direction direction, QueryOptions options);
+
+    /**
+     * Get at most <code>limit</code> latest events attached (via an incoming relationship of one of the specified types)
+     * to time instants at or before the specified one and their children. Events attached to the same time instant are
+     * ordered by their timestamp property; events without it are treated as if they happened at the start of the instant.
+     * The cost of the query depends on the limit, not on the age of the events.
+     *
+     * @param limit             maximum number of events to return, must be positive.
+     * @param before            time instant representing the latest time of interest (inclusive).
+     * @param relationshipTypes of the relationships between the event and the time instants, <code>null</code> for all.
+     * @return events, latest first.
+     */
+    List<Event> getLatestEvents(int limit, TimeInstant before, Set<RelationshipType> relationshipTypes);
+
+    /**
+     * Get at most <code>limit</code> latest events attached (via a relationship of one of the specified types and the
+     * specified direction) to time instants at or before the specified one and their children. Events attached to the
+     * same time instant are ordered by their timestamp property; events without it are treated as if they happened at
+     * the start of the instant. The cost of the query depends on the limit, not on the age of the events.
+     *
+     * @param limit             maximum number of events to return, must be positive.
+     * @param before            time instant representing the latest time of interest (inclusive).
+     * @param relationshipTypes of the relationships between the event and the time instants, <code>null</code> for all.
+     * @param direction         of the relationships between the time instants and the events from the time instants' point of view.
+     * @return events, latest first.
+     */
+    List<Event> getLatestEvents(int limit, TimeInstant before, Set<RelationshipType> relationshipTypes, Direction direction);
+
+    /**
+     * Get at most <code>limit</code> earliest events attached (via an incoming relationship of one of the specified types)
+     * to time instants at or after the specified one and their children. Events attached to the same time instant are
+     * ordered by their timestamp property; events without it are treated as if they happened at the start of the instant.
+     * The cost of the query depends on the limit, not on the age of the events.
+     *
+     * @param limit             maximum number of events to return, must be positive.
+     * @param after             time instant representing the earliest time of interest (inclusive).
+     * @param relationshipTypes of the relationships between the event and the time instants, <code>null</code> for all.
+     * @return events, earliest first.
+     */
+    List<Event> getEarliestEvents(int limit, TimeInstant after, Set<RelationshipType> relationshipTypes);
+
+    /**
+     * Get at most <code>limit</code> earliest events attached (via a relationship of one of the specified types and the
+     * specified direction) to time instants at or after the specified one and their children. Events attached to the
+     * same time instant are ordered by their timestamp property; events without it are treated as if they happened at
+     * the start of the instant. The cost of the query depends on the limit, not on the age of the events.
+     *
+     * @param limit             maximum number of events to return, must be positive.
+     * @param after             time instant representing the earliest time of interest (inclusive).
+     * @param relationshipTypes of the relationships between the event and the time instants, <code>null</code> for all.
+     * @param direction         of the relationships between the time instants and the events from the time instants' point of view.
+     * @return events, earliest first.
+     */
+    List<Event> getEarliestEvents(int limit, TimeInstant after, Set<RelationshipType> relationshipTypes, Direction direction);
+
+    /**
+     * Get events attached (via an incoming relationship of one of the specified types) to any time instant whose period
+     * overlaps the specified range (inclusive), i.e. to the time instants in the range and their children, as well as
+     * to the coarser time instants the range is part of. This finds events attached by
+     * {@link #attachInterval(Node, RelationshipType, TimeInstant, TimeInstant)} that overlap the range, even if none of
+     * their time instants lies within it. The time instants that don't exist will <b>not</b> be created.
+     *
+     * @param startTime         Time instant representing the start of the interval (inclusive).
+     * @param endTime           Time instant representing the end of the interval (inclusive).
+     * @param relationshipTypes of the relationships between the event and the time instants, <code>null</code> for all.
+     * @return events, each exactly once. Events attached to coarser time instants than the range come first (coarsest
+     * first), followed by the events of the range ordered as by {@link #getEvents(TimeInstant, TimeInstant, Set)}.
+     */
+    List<Event> getOverlappingEvents(TimeInstant startTime, TimeInstant endTime, Set<RelationshipType> relationshipTypes);
+
+    /**
+     * Get events attached (via a relationship of one of the specified types and the specified direction) to any time
+     * instant whose period overlaps the specified range (inclusive). See
+     * {@link #getOverlappingEvents(TimeInstant, TimeInstant, Set)}.
+     *
+     * @param startTime         Time instant representing the start of the interval (inclusive).
+     * @param endTime           Time instant representing the end of the interval (inclusive).
+     * @param relationshipTypes of the relationships between the event and the time instants, <code>null</code> for all.
+     * @param direction         of the relationships between the time instants and the events from the time instants' point of view.
+     * @return events, each exactly once. Events attached to coarser time instants than the range come first (coarsest
+     * first), followed by the events of the range ordered as by {@link #getEvents(TimeInstant, TimeInstant, Set, Direction)}.
+     */
+    List<Event> getOverlappingEvents(TimeInstant startTime, TimeInstant endTime, Set<RelationshipType> relationshipTypes, Direction direction);
 }
@@ -18,7 +18,10 @@ package com.graphaware.module.timetree.api;
 
 import com.graphaware.api.JsonNode;
 import com.graphaware.module.timetree.*;
+import com.graphaware.common.util.IterableUtils;
 import com.graphaware.module.timetree.domain.TimeInstant;
+import com.graphaware.module.timetree.domain.TimeTreeLabels;
+import com.graphaware.module.timetree.module.TimeTreeRoots;
 import org.neo4j.graphdb.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -44,11 +47,17 @@ public class TimeTreeApi {
 
     private final GraphDatabaseService database;
     private final TimeTree timeTree;
+    private final TimeTreeChecker checker;
+    private final TimeTreeStats stats;
+    private final TimeTreeRoots roots;
 
     @Autowired
-    public TimeTreeApi(GraphDatabaseService database) {
+    public TimeTreeApi(GraphDatabaseService database, TimeTreeChecker checker, TimeTreeRoots roots) {
         this.database = database;
-        this.timeTree = new SingleTimeTree(database);
+        this.timeTree = roots.getDefaultTree();
+        this.checker = checker;
+        this.roots = roots;
+        this.stats = TimeTreeStats.getInstance(database);
     }
 
     @RequestMapping(value = "/single/{time}", method = RequestMethod.GET)
@@ -116,7 +125,7 @@ public class TimeTreeApi {
 
         long id;
         try (Transaction tx = database.beginTx()) {
-            id = new CustomRootTimeTree(database.getNodeById(rootNodeId)).getOrCreateInstant(timeInstant).getId();
+            id = getCustomTree(rootNodeId).getOrCreateInstant(timeInstant).getId();
             tx.success();
         }
 
@@ -145,7 +154,7 @@ public class TimeTreeApi {
 
         List<Node> nodes;
         try (Transaction tx = database.beginTx()) {
-            nodes = new CustomRootTimeTree(database.getNodeById(rootNodeId)).getOrCreateInstants(startTimeInstant, endTimeInstant);
+            nodes = getCustomTree(rootNodeId).getOrCreateInstants(startTimeInstant, endTimeInstant);
             tx.success();
         }
 
@@ -178,6 +187,47 @@ public class TimeTreeApi {
         return getInstantWithCustomRoot(rootNodeId, System.currentTimeMillis(), resolution, timezone);
     }
 
+    @RequestMapping(value = "/check", method = RequestMethod.GET)
+    @ResponseBody
+    public ConsistencyReport check() {
+        return checker.check(getDefaultRootId(), false);
+    }
+
+    @RequestMapping(value = "/repair", method = RequestMethod.POST)
+    @ResponseBody
+    public ConsistencyReport repair() {
+        return checker.check(getDefaultRootId(), true);
+    }
+
+    @RequestMapping(value = "/{rootNodeId}/check", method = RequestMethod.GET)
+    @ResponseBody
+    public ConsistencyReport checkWithCustomRoot(@PathVariable long rootNodeId) {
+        return checker.check(rootNodeId, false);
+    }
+
+    @RequestMapping(value = "/{rootNodeId}/repair", method = RequestMethod.POST)
+    @ResponseBody
+    public ConsistencyReport repairWithCustomRoot(@PathVariable long rootNodeId) {
+        return checker.check(rootNodeId, true);
+    }
+
+    @RequestMapping(value = "/stats", method = RequestMethod.GET)
+    @ResponseBody
+    public StatsReport getStats() {
+        return stats.getStats(database, SidecarIndex.DEFAULT_TREE);
+    }
+
+    @RequestMapping(value = "/{rootNodeId}/stats", method = RequestMethod.GET)
+    @ResponseBody
+    public StatsReport getStatsWithCustomRoot(@PathVariable long rootNodeId) {
+        try (Transaction tx = database.beginTx()) {
+            database.getNodeById(rootNodeId);
+            tx.success();
+        }
+
+        return stats.getStats(database, rootNodeId);
+    }
+
     @ExceptionHandler(IllegalArgumentException.class)
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     @ResponseBody
@@ -194,6 +244,36 @@ public class TimeTreeApi {
         return Collections.singletonMap("message", e.getMessage());
     }
 
+    /**
+     * Get the ID of the root of the default tree.
+     *
+     * @return ID of the root.
+     * @throws NotFoundException if the default tree doesn't exist.
+     */
+    private long getDefaultRootId() {
+        try (Transaction tx = database.beginTx()) {
+            Node root = IterableUtils.getSingleOrNull(database.findNodes(TimeTreeLabels.TimeTreeRoot));
+            tx.success();
+
+            if (root == null) {
+                throw new NotFoundException("There is no time tree root");
+            }
+
+            return root.getId();
+        }
+    }
+
+    /**
+     * Get the tree with a custom root from {@link TimeTreeRoots}, which caches it with the configured options.
+     *
+     * @param rootNodeId ID of the root.
+     * @return tree.
+     * @throws NotFoundException if there is no node with the given ID.
+     */
+    private TimeTree getCustomTree(long rootNodeId) {
+        return roots.getTree(database.getNodeById(rootNodeId));
+    }
+
     private JsonNode[] jsonNodes(List<Node> nodes) {
         List<JsonNode> result = new LinkedList<>();
         for (Node node : nodes) {
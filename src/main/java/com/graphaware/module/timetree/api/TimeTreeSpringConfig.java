@@ -1,10 +1,18 @@
 package com.graphaware.module.timetree.api;
 
+import com.graphaware.module.timetree.MultiRootEvents;
 import com.graphaware.module.timetree.SingleTimeTree;
 import com.graphaware.module.timetree.TimeTree;
 import com.graphaware.module.timetree.TimeTreeBackedEvents;
+import com.graphaware.module.timetree.TimeTreeChecker;
 import com.graphaware.module.timetree.TimedEvents;
+import com.graphaware.module.timetree.module.TimeTreeConfiguration;
+import com.graphaware.module.timetree.module.TimeTreeModule;
+import com.graphaware.module.timetree.module.TimeTreeRoots;
+import com.graphaware.runtime.GraphAwareRuntime;
+import com.graphaware.runtime.RuntimeRegistry;
 import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.NotFoundException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -18,13 +26,62 @@ public class TimeTreeSpringConfig {
     @Autowired
     private GraphDatabaseService database;
 
+    /**
+     * Configuration of the {@link TimeTreeModule} registered with the runtime, so that the APIs attach and query events
+     * like the module does. Without a runtime or with other than exactly one module, the default configuration.
+     *
+     * @return configuration.
+     */
+    @Bean
+    public TimeTreeConfiguration timeTreeConfiguration() {
+        TimeTreeModule module = findModule();
+        return module != null ? module.getConfiguration() : TimeTreeConfiguration.defaultConfiguration();
+    }
+
+    /**
+     * Roots of the {@link TimeTreeModule} registered with the runtime, so that the APIs share its trees and their
+     * configuration. Without a runtime or with other than exactly one module, the trees have default options.
+     *
+     * @return roots.
+     */
+    @Bean
+    public TimeTreeRoots timeTreeRoots() {
+        TimeTreeModule module = findModule();
+        return module != null ? module.getRoots() : new TimeTreeRoots(database, new SingleTimeTree(database));
+    }
+
     @Bean
     public TimeTree timeTree() {
-        return new SingleTimeTree(database);
+        return timeTreeRoots().getDefaultTree();
     }
 
     @Bean
     public TimedEvents timedEvents() {
-        return new TimeTreeBackedEvents(timeTree());
+        TimeTreeConfiguration configuration = timeTreeConfiguration();
+        return new TimeTreeBackedEvents(timeTree(), configuration.getTimestampProperty(), configuration.getSplitThreshold());
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public MultiRootEvents multiRootEvents() {
+        return new MultiRootEvents(database);
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public TimeTreeChecker timeTreeChecker() {
+        return new TimeTreeChecker(database);
+    }
+
+    private TimeTreeModule findModule() {
+        GraphAwareRuntime runtime = RuntimeRegistry.getRuntime(database);
+
+        if (runtime != null) {
+            try {
+                return runtime.getModule(TimeTreeModule.class);
+            } catch (NotFoundException | IllegalStateException e) {
+                //no single module
+            }
+        }
+
+        return null;
     }
 }
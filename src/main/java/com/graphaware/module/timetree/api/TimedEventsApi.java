@@ -19,7 +19,10 @@ package com.graphaware.module.timetree.api;
 import com.graphaware.api.JsonNode;
 import com.graphaware.module.timetree.*;
 import com.graphaware.module.timetree.domain.Event;
+import com.graphaware.module.timetree.domain.QueryOptions;
 import com.graphaware.module.timetree.domain.TimeInstant;
+import com.graphaware.module.timetree.module.TimeTreeConfiguration;
+import com.graphaware.module.timetree.module.TimeTreeRoots;
 import org.neo4j.graphdb.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,11 +45,17 @@ public class TimedEventsApi {
 
     private final GraphDatabaseService database;
     private final TimedEvents timedEvents;
+    private final MultiRootEvents multiRootEvents;
+    private final TimeTreeRoots roots;
+    private final TimeTreeConfiguration configuration;
 
     @Autowired
-    public TimedEventsApi(GraphDatabaseService database, TimedEvents timedEvents) {
+    public TimedEventsApi(GraphDatabaseService database, TimedEvents timedEvents, MultiRootEvents multiRootEvents, TimeTreeRoots roots, TimeTreeConfiguration configuration) {
         this.database = database;
         this.timedEvents = timedEvents;
+        this.multiRootEvents = multiRootEvents;
+        this.roots = roots;
+        this.configuration = configuration;
     }
 
     @RequestMapping(value = "/single/{time}/events", method = RequestMethod.GET)
@@ -117,7 +126,11 @@ public class TimedEventsApi {
             @RequestParam(required = false) String resolution,
             @RequestParam(required = false) String timezone,
             @RequestParam(required = false) Set<String> relationshipTypes,
-            @RequestParam(required = false) String direction) {
+            @RequestParam(required = false) String direction,
+            @RequestParam(required = false, defaultValue = "false") boolean exact,
+            @RequestParam(required = false, defaultValue = "false") boolean descending,
+            @RequestParam(required = false, defaultValue = "0") int limit,
+            @RequestParam(required = false, defaultValue = "false") boolean parallel) {
 
 
         TimeInstant startTimeInstant = TimeInstant.fromValueObject(new TimeInstantVO(startTime, resolution, timezone));
@@ -125,7 +138,7 @@ public class TimedEventsApi {
 
         List<Event> events;
         try (Transaction tx = database.beginTx()) {
-            events = timedEvents.getEvents(startTimeInstant, endTimeInstant, getRelationshipTypes(relationshipTypes), resolveDirection(direction));
+            events = timedEvents.getEvents(startTimeInstant, endTimeInstant, getRelationshipTypes(relationshipTypes), resolveDirection(direction), QueryOptions.defaultOptions().withExactBoundaries(exact).withDescending(descending).withLimit(limit).withParallel(parallel));
             tx.success();
         }
 
@@ -139,6 +152,45 @@ public class TimedEventsApi {
     }
 
 
+    @RequestMapping(value = "/latest/{time}/events", method = RequestMethod.GET)
+    @ResponseBody
+    public List<EventVO> getLatestEvents(
+            @PathVariable long time,
+            @RequestParam int limit,
+            @RequestParam(required = false) String resolution,
+            @RequestParam(required = false) String timezone,
+            @RequestParam(required = false) Set<String> relationshipTypes,
+            @RequestParam(required = false) String direction) {
+
+        return getEventsUpToLimit(timedEvents, time, limit, resolution, timezone, relationshipTypes, direction, true);
+    }
+
+    @RequestMapping(value = "/earliest/{time}/events", method = RequestMethod.GET)
+    @ResponseBody
+    public List<EventVO> getEarliestEvents(
+            @PathVariable long time,
+            @RequestParam int limit,
+            @RequestParam(required = false) String resolution,
+            @RequestParam(required = false) String timezone,
+            @RequestParam(required = false) Set<String> relationshipTypes,
+            @RequestParam(required = false) String direction) {
+
+        return getEventsUpToLimit(timedEvents, time, limit, resolution, timezone, relationshipTypes, direction, false);
+    }
+
+    @RequestMapping(value = "/overlap/{startTime}/{endTime}/events", method = RequestMethod.GET)
+    @ResponseBody
+    public List<EventVO> getOverlappingEvents(
+            @PathVariable long startTime,
+            @PathVariable long endTime,
+            @RequestParam(required = false) String resolution,
+            @RequestParam(required = false) String timezone,
+            @RequestParam(required = false) Set<String> relationshipTypes,
+            @RequestParam(required = false) String direction) {
+
+        return getOverlappingEvents(timedEvents, startTime, endTime, resolution, timezone, relationshipTypes, direction);
+    }
+
     @RequestMapping(value = "/{rootNodeId}/single/{time}/events", method = RequestMethod.GET)
     @ResponseBody
     public List<EventVO> getEventsCustomRoot(
@@ -154,8 +206,7 @@ public class TimedEventsApi {
 
         List<Event> events;
         try (Transaction tx = database.beginTx()) {
-            CustomRootTimeTree timeTree = new CustomRootTimeTree(database.getNodeById(rootNodeId));
-            events = new TimeTreeBackedEvents(timeTree).getEvents(timeInstant, getRelationshipTypes(relationshipTypes), resolveDirection(direction));
+            events = getCustomRootEvents(rootNodeId).getEvents(timeInstant, getRelationshipTypes(relationshipTypes), resolveDirection(direction));
             tx.success();
         }
 
@@ -177,15 +228,51 @@ public class TimedEventsApi {
             @RequestParam(required = false) String resolution,
             @RequestParam(required = false) String timezone,
             @RequestParam(required = false) Set<String> relationshipTypes,
-            @RequestParam(required = false) String direction) {
+            @RequestParam(required = false) String direction,
+            @RequestParam(required = false, defaultValue = "false") boolean exact,
+            @RequestParam(required = false, defaultValue = "false") boolean descending,
+            @RequestParam(required = false, defaultValue = "0") int limit,
+            @RequestParam(required = false, defaultValue = "false") boolean parallel) {
+
+        TimeInstant startTimeInstant = TimeInstant.fromValueObject(new TimeInstantVO(startTime, resolution, timezone));
+        TimeInstant endTimeInstant = TimeInstant.fromValueObject(new TimeInstantVO(endTime, resolution, timezone));
+
+        List<Event> events;
+        try (Transaction tx = database.beginTx()) {
+            events = getCustomRootEvents(rootNodeId).getEvents(startTimeInstant, endTimeInstant, getRelationshipTypes(relationshipTypes), resolveDirection(direction), QueryOptions.defaultOptions().withExactBoundaries(exact).withDescending(descending).withLimit(limit).withParallel(parallel));
+            tx.success();
+        }
+
+        List<EventVO> result;
+        try (Transaction tx = database.beginTx()) {
+            result = convertEvents(events);
+            tx.success();
+        }
+
+        return result;
+    }
+
+    @RequestMapping(value = "/roots/range/{startTime}/{endTime}/events", method = RequestMethod.GET)
+    @ResponseBody
+    public List<EventVO> getEventsMultipleRoots(
+            @PathVariable long startTime,
+            @PathVariable long endTime,
+            @RequestParam List<Long> roots,
+            @RequestParam(required = false) String resolution,
+            @RequestParam(required = false) String timezone,
+            @RequestParam(required = false) Set<String> relationshipTypes,
+            @RequestParam(required = false) String direction,
+            @RequestParam(required = false, defaultValue = "false") boolean exact,
+            @RequestParam(required = false, defaultValue = "false") boolean descending,
+            @RequestParam(required = false, defaultValue = "0") int limit,
+            @RequestParam(required = false, defaultValue = "false") boolean parallel) {
 
         TimeInstant startTimeInstant = TimeInstant.fromValueObject(new TimeInstantVO(startTime, resolution, timezone));
         TimeInstant endTimeInstant = TimeInstant.fromValueObject(new TimeInstantVO(endTime, resolution, timezone));
 
         List<Event> events;
         try (Transaction tx = database.beginTx()) {
-            CustomRootTimeTree timeTree = new CustomRootTimeTree(database.getNodeById(rootNodeId));
-            events = new TimeTreeBackedEvents(timeTree).getEvents(startTimeInstant, endTimeInstant, getRelationshipTypes(relationshipTypes), resolveDirection(direction));
+            events = multiRootEvents.getEvents(roots, startTimeInstant, endTimeInstant, getRelationshipTypes(relationshipTypes), resolveDirection(direction), QueryOptions.defaultOptions().withExactBoundaries(exact).withDescending(descending).withLimit(limit).withParallel(parallel));
             tx.success();
         }
 
@@ -198,6 +285,54 @@ public class TimedEventsApi {
         return result;
     }
 
+    @RequestMapping(value = "/{rootNodeId}/latest/{time}/events", method = RequestMethod.GET)
+    @ResponseBody
+    public List<EventVO> getLatestEventsCustomRoot(
+            @PathVariable long rootNodeId,
+            @PathVariable long time,
+            @RequestParam int limit,
+            @RequestParam(required = false) String resolution,
+            @RequestParam(required = false) String timezone,
+            @RequestParam(required = false) Set<String> relationshipTypes,
+            @RequestParam(required = false) String direction) {
+
+        return getEventsUpToLimit(rootNodeId, time, limit, resolution, timezone, relationshipTypes, direction, true);
+    }
+
+    @RequestMapping(value = "/{rootNodeId}/earliest/{time}/events", method = RequestMethod.GET)
+    @ResponseBody
+    public List<EventVO> getEarliestEventsCustomRoot(
+            @PathVariable long rootNodeId,
+            @PathVariable long time,
+            @RequestParam int limit,
+            @RequestParam(required = false) String resolution,
+            @RequestParam(required = false) String timezone,
+            @RequestParam(required = false) Set<String> relationshipTypes,
+            @RequestParam(required = false) String direction) {
+
+        return getEventsUpToLimit(rootNodeId, time, limit, resolution, timezone, relationshipTypes, direction, false);
+    }
+
+    @RequestMapping(value = "/{rootNodeId}/overlap/{startTime}/{endTime}/events", method = RequestMethod.GET)
+    @ResponseBody
+    public List<EventVO> getOverlappingEventsCustomRoot(
+            @PathVariable long rootNodeId,
+            @PathVariable long startTime,
+            @PathVariable long endTime,
+            @RequestParam(required = false) String resolution,
+            @RequestParam(required = false) String timezone,
+            @RequestParam(required = false) Set<String> relationshipTypes,
+            @RequestParam(required = false) String direction) {
+
+        TimedEvents customRootEvents;
+        try (Transaction tx = database.beginTx()) {
+            customRootEvents = getCustomRootEvents(rootNodeId);
+            tx.success();
+        }
+
+        return getOverlappingEvents(customRootEvents, startTime, endTime, resolution, timezone, relationshipTypes, direction);
+    }
+
     @RequestMapping(value = "{rootNodeId}/single/event", method = RequestMethod.POST)
     @ResponseBody
     public JsonNode attachEvent(@RequestBody TimedEventVO event, @PathVariable long rootNodeId, HttpServletResponse response) {
@@ -208,9 +343,7 @@ public class TimedEventsApi {
             Node eventNode = event.getEvent().getNode().producePropertyContainer(database);
             id = eventNode.getId();
 
-            CustomRootTimeTree timeTree = new CustomRootTimeTree(database.getNodeById(rootNodeId));
-
-            boolean attached = new TimeTreeBackedEvents(timeTree).attachEvent(
+            boolean attached = getCustomRootEvents(rootNodeId).attachEvent(
                     eventNode,
                     DynamicRelationshipType.withName(event.getEvent().getRelationshipType()),
                     resolveDirection(event.getEvent().getDirection()),
@@ -234,6 +367,67 @@ public class TimedEventsApi {
         return result;
     }
 
+    /**
+     * Get events of the tree with a custom root from {@link TimeTreeRoots}, which caches it with the configured options,
+     * with the configured timestamp property and split threshold. Must be called within a transaction.
+     *
+     * @param rootNodeId ID of the root.
+     * @return events.
+     * @throws NotFoundException if there is no node with the given ID.
+     */
+    private TimedEvents getCustomRootEvents(long rootNodeId) {
+        return new TimeTreeBackedEvents(roots.getTree(database.getNodeById(rootNodeId)), configuration.getTimestampProperty(), configuration.getSplitThreshold());
+    }
+
+    private List<EventVO> getEventsUpToLimit(long rootNodeId, long time, int limit, String resolution, String timezone, Set<String> relationshipTypes, String direction, boolean latest) {
+        try (Transaction tx = database.beginTx()) {
+            TimedEvents customRootEvents = getCustomRootEvents(rootNodeId);
+            tx.success();
+            return getEventsUpToLimit(customRootEvents, time, limit, resolution, timezone, relationshipTypes, direction, latest);
+        }
+    }
+
+    private List<EventVO> getEventsUpToLimit(TimedEvents timedEvents, long time, int limit, String resolution, String timezone, Set<String> relationshipTypes, String direction, boolean latest) {
+        TimeInstant timeInstant = TimeInstant.fromValueObject(new TimeInstantVO(time, resolution, timezone));
+
+        List<Event> events;
+        try (Transaction tx = database.beginTx()) {
+            if (latest) {
+                events = timedEvents.getLatestEvents(limit, timeInstant, getRelationshipTypes(relationshipTypes), resolveDirection(direction));
+            } else {
+                events = timedEvents.getEarliestEvents(limit, timeInstant, getRelationshipTypes(relationshipTypes), resolveDirection(direction));
+            }
+            tx.success();
+        }
+
+        List<EventVO> result;
+        try (Transaction tx = database.beginTx()) {
+            result = convertEvents(events);
+            tx.success();
+        }
+
+        return result;
+    }
+
+    private List<EventVO> getOverlappingEvents(TimedEvents timedEvents, long startTime, long endTime, String resolution, String timezone, Set<String> relationshipTypes, String direction) {
+        TimeInstant startTimeInstant = TimeInstant.fromValueObject(new TimeInstantVO(startTime, resolution, timezone));
+        TimeInstant endTimeInstant = TimeInstant.fromValueObject(new TimeInstantVO(endTime, resolution, timezone));
+
+        List<Event> events;
+        try (Transaction tx = database.beginTx()) {
+            events = timedEvents.getOverlappingEvents(startTimeInstant, endTimeInstant, getRelationshipTypes(relationshipTypes), resolveDirection(direction));
+            tx.success();
+        }
+
+        List<EventVO> result;
+        try (Transaction tx = database.beginTx()) {
+            result = convertEvents(events);
+            tx.success();
+        }
+
+        return result;
+    }
+
     private Set<RelationshipType> getRelationshipTypes(Set<String> strings) {
         if (strings == null) {
             return null;
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree.domain;
+
+import org.joda.time.DateTimeZone;
+
+/**
+ * Allocation-free computation of the calendar fields represented by {@link Resolution}s, i.e. the values of the time
+ * instant nodes on the path from the root of the tree to an instant.
+ * <p/>
+ * Fields are computed from "local millis", i.e. the number of milliseconds since 1/1/1970 in the local time of a zone,
+ * obtained by {@link #toLocal(long, DateTimeZone)}. The results are identical to those of Joda's ISO chronology
+ * (proleptic Gregorian calendar), but no {@link org.joda.time.DateTime} is constructed.
+ */
+public final class CalendarFields {
+
+    static final long MILLIS_PER_SECOND = 1000;
+    static final long MILLIS_PER_MINUTE = 60 * MILLIS_PER_SECOND;
+    static final long MILLIS_PER_HOUR = 60 * MILLIS_PER_MINUTE;
+    static final long MILLIS_PER_DAY = 24 * MILLIS_PER_HOUR;
+
+    /**
+     * Convert UTC millis to local millis of the given zone. UTC is short-circuited, other zones use Joda's zone offset
+     * lookup, which is cached per zone.
+     *
+     * @param utcMillis milliseconds since 1/1/1970 UTC.
+     * @param zone      time zone.
+     * @return milliseconds since 1/1/1970 in the local time of the zone.
+     */
+    public static long toLocal(long utcMillis, DateTimeZone zone) {
+        if (zone == null || zone == DateTimeZone.UTC) {
+            return utcMillis;
+        }
+
+        return utcMillis + zone.getOffset(utcMillis);
+    }
+
+    /**
+     * Get the value of the calendar field corresponding to the given resolution.
+     *
+     * @param localMillis milliseconds since 1/1/1970 in local time, see {@link #toLocal(long, DateTimeZone)}.
+     * @param resolution  of the field.
+     * @return value of the field, e.g. day of month for {@link Resolution#DAY}.
+     */
+    public static int get(long localMillis, Resolution resolution) {
+        switch (resolution) {
+            case YEAR:
+                return year(floorDiv(localMillis, MILLIS_PER_DAY));
+            case MONTH:
+                return month(floorDiv(localMillis, MILLIS_PER_DAY));
+            case DAY:
+                return dayOfMonth(floorDiv(localMillis, MILLIS_PER_DAY));
+            case HOUR:
+                return (int) (floorMod(localMillis, MILLIS_PER_DAY) / MILLIS_PER_HOUR);
+            case MINUTE:
+                return (int) (floorMod(localMillis, MILLIS_PER_HOUR) / MILLIS_PER_MINUTE);
+            case SECOND:
+                return (int) (floorMod(localMillis, MILLIS_PER_MINUTE) / MILLIS_PER_SECOND);
+            case MILLISECOND:
+                return (int) floorMod(localMillis, MILLIS_PER_SECOND);
+            default:
+                throw new IllegalArgumentException("Unknown resolution " + resolution + ". This is a bug.");
+        }
+    }
+
+    //civil-from-days conversion, see http://howardhinnant.github.io/date_algorithms.html
+
+    private static int year(long epochDay) {
+        long doy = dayOfYearFromMarch(epochDay);
+        long year = yearOfEra(epochDay) + era(epochDay) * 400;
+        return (int) (monthFromMarch(doy) < 10 ? year : year + 1);
+    }
+
+    private static int month(long epochDay) {
+        long mp = monthFromMarch(dayOfYearFromMarch(epochDay));
+        return (int) (mp < 10 ? mp + 3 : mp - 9);
+    }
+
+    private static int dayOfMonth(long epochDay) {
+        long doy = dayOfYearFromMarch(epochDay);
+        return (int) (doy - (153 * monthFromMarch(doy) + 2) / 5 + 1);
+    }
+
+    private static long era(long epochDay) {
+        long z = epochDay + 719468;
+        return (z >= 0 ? z : z - 146096) / 146097;
+    }
+
+    private static long dayOfEra(long epochDay) {
+        return epochDay + 719468 - era(epochDay) * 146097;
+    }
+
+    private static long yearOfEra(long epochDay) {
+        long doe = dayOfEra(epochDay);
+        return (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+    }
+
+    private static long dayOfYearFromMarch(long epochDay) {
+        long yoe = yearOfEra(epochDay);
+        return dayOfEra(epochDay) - (365 * yoe + yoe / 4 - yoe / 100);
+    }
+
+    private static long monthFromMarch(long dayOfYearFromMarch) {
+        return (5 * dayOfYearFromMarch + 2) / 153;
+    }
+
+    static long floorDiv(long x, long y) {
+        long result = x / y;
+        if ((x % y != 0) && ((x < 0) != (y < 0))) {
+            result--;
+        }
+        return result;
+    }
+
+    static long floorMod(long x, long y) {
+        return x - floorDiv(x, y) * y;
+    }
+
+    private CalendarFields() {
+    }
+}
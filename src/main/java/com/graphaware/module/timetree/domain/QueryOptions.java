@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree.domain;
+
+/**
+ * Options of range queries for events, see {@link com.graphaware.module.timetree.TimedEvents}.
+ */
+public final class QueryOptions {
+
+    private static final QueryOptions DEFAULT = new QueryOptions(false, false, 0, false);
+
+    private final boolean exactBoundaries;
+    private final boolean descending;
+    private final int limit;
+    private final boolean parallel;
+
+    /**
+     * Get default options, i.e. all events attached to the time instants in the range and their children are returned
+     * in chronological order.
+     * <p/>
+     * Change the options by using the fluent with* methods.
+     *
+     * @return default options.
+     */
+    public static QueryOptions defaultOptions() {
+        return DEFAULT;
+    }
+
+    private QueryOptions(boolean exactBoundaries, boolean descending, int limit, boolean parallel) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit must not be negative");
+        }
+
+        this.exactBoundaries = exactBoundaries;
+        this.descending = descending;
+        this.limit = limit;
+        this.parallel = parallel;
+    }
+
+    /**
+     * Create a new instance of these {@link QueryOptions} with different boundary handling.
+     *
+     * @param exactBoundaries <code>true</code> iff events of the first and the last time instant in the range, which
+     *                        happened outside the range according to their timestamp property, should be left out.
+     *                        Events without the timestamp property are never left out.
+     * @return new instance.
+     */
+    public QueryOptions withExactBoundaries(boolean exactBoundaries) {
+        return new QueryOptions(exactBoundaries, descending, limit, parallel);
+    }
+
+    /**
+     * Create a new instance of these {@link QueryOptions} with different order.
+     *
+     * @param descending <code>true</code> iff events should be returned in reverse-chronological order, i.e. time
+     *                   instants are visited from the end of the range and children of each instant from the last one.
+     * @return new instance.
+     */
+    public QueryOptions withDescending(boolean descending) {
+        return new QueryOptions(exactBoundaries, descending, limit, parallel);
+    }
+
+    /**
+     * Create a new instance of these {@link QueryOptions} with different limit. The traversal stops as soon as the
+     * limit is reached, so the cost of a query with a limit depends on the limit rather than on the size of the range.
+     *
+     * @param limit maximum number of events returned, 0 for no limit.
+     * @return new instance.
+     */
+    public QueryOptions withLimit(int limit) {
+        return new QueryOptions(exactBoundaries, descending, limit, parallel);
+    }
+
+    /**
+     * Create a new instance of these {@link QueryOptions} with different parallelism.
+     *
+     * @param parallel <code>true</code> iff independent parts of the query (e.g. different trees, or years, months and
+     *                 days of a range) may be traversed in parallel, each in its own transaction. Changes not yet
+     *                 committed by the calling transaction are therefore not visible to the query. Range queries of a
+     *                 single tree with a limit are always traversed sequentially, since they stop early anyway.
+     * @return new instance.
+     */
+    public QueryOptions withParallel(boolean parallel) {
+        return new QueryOptions(exactBoundaries, descending, limit, parallel);
+    }
+
+    public boolean isExactBoundaries() {
+        return exactBoundaries;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        QueryOptions that = (QueryOptions) o;
+
+        if (exactBoundaries != that.exactBoundaries) return false;
+        if (descending != that.descending) return false;
+        if (limit != that.limit) return false;
+        if (parallel != that.parallel) return false;
+
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        int result = (exactBoundaries ? 1 : 0);
+        result = 31 * result + (descending ? 1 : 0);
+        result = 31 * result + limit;
+        result = 31 * result + (parallel ? 1 : 0);
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "QueryOptions{exactBoundaries=" + exactBoundaries + ", descending=" + descending + ", limit=" + limit + ", parallel=" + parallel + "}";
+    }
+}
@@ -16,7 +16,10 @@
 
 package com.graphaware.module.timetree.domain;
 
+import org.joda.time.DateTimeField;
 import org.joda.time.DateTimeFieldType;
+import org.joda.time.DateTimeZone;
+import org.joda.time.chrono.ISOChronology;
 import org.neo4j.graphdb.Label;
 import org.neo4j.graphdb.Node;
 import org.slf4j.Logger;
@@ -65,6 +68,17 @@ public enum Resolution {
         return dateTimeFieldType;
     }
 
+    /**
+     * Get the {@link DateTimeField} corresponding to this resolution level in the given time zone. The field can be used
+     * to round and increment instants (in UTC millis) without constructing any date-time objects.
+     *
+     * @param timezone time zone.
+     * @return field.
+     */
+    public DateTimeField getDateTimeField(DateTimeZone timezone) {
+        return dateTimeFieldType.getField(ISOChronology.getInstance(timezone));
+    }
+
     /**
      * Get the resolution one level below this resolution.
      *
@@ -16,16 +16,13 @@
 package com.graphaware.module.timetree.domain;
 
 import com.graphaware.module.timetree.api.TimeInstantVO;
-import org.joda.time.DateTime;
+import org.joda.time.DateTimeField;
 import org.joda.time.DateTimeZone;
-import org.joda.time.MutableDateTime;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.TimeZone;
 
 import static com.graphaware.module.timetree.domain.Resolution.DAY;
-import static com.graphaware.module.timetree.domain.ValidationUtils.validateRange;
 
 /**
  * An instant of time.
@@ -33,7 +30,7 @@ import static com.graphaware.module.timetree.domain.ValidationUtils.validateRang
 public class TimeInstant {
 
     private static final Resolution DEFAULT_RESOLUTION = DAY;
-    private static final DateTimeZone DEFAULT_TIME_ZONE = DateTimeZone.forTimeZone(TimeZone.getTimeZone("UTC"));
+    private static final DateTimeZone DEFAULT_TIME_ZONE = TimeZones.forId("UTC");
 
     private final long time;
     private final DateTimeZone timezone;
@@ -45,7 +42,7 @@ public class TimeInstant {
      * @return time instant representing now.
      */
     public static TimeInstant now() {
-        return instant(DateTime.now().getMillis());
+        return instant(System.currentTimeMillis());
     }
 
     /**
@@ -79,15 +76,13 @@ public class TimeInstant {
     }
 
     /**
-     * Create an instant immediately following the current one, i.e. with its resolution unit incremented by 1.
+     * Create an instant immediately following the current one, i.e. with its resolution unit incremented by 1 in the
+     * instant's time zone.
      *
      * @return next instant.
      */
     public TimeInstant next() {
-        MutableDateTime time = new MutableDateTime(getTime());
-        time.add(getResolution().getDateTimeFieldType().getDurationType(), 1);
-
-        return new TimeInstant(time.getMillis(), getTimezone(), getResolution());
+        return new TimeInstant(getResolution().getDateTimeField(getTimezone()).add(getTime(), 1), getTimezone(), getResolution());
     }
 
     private TimeInstant(long time, DateTimeZone timezone, Resolution resolution) {
@@ -130,9 +125,7 @@ public class TimeInstant {
      * @return true iff this instant is after the given one.
      */
     public boolean isAfter(TimeInstant timeInstant) {
-        DateTime thisTime = new DateTime(getTime());
-        DateTime thatTime = new DateTime(timeInstant.getTime());
-        return thisTime.isAfter(thatTime);
+        return getTime() > timeInstant.getTime();
     }
 
     /**
@@ -148,25 +141,78 @@ public class TimeInstant {
 
     /**
      * Get instants between two instants (inclusive). Both instants provided to this method must have the same resolution
-     * and start instant must not have happened after end instant.
+     * and start instant must not have happened after end instant. The returned instants represent the start of each
+     * resolution unit, from the one containing the start instant to the one containing the end instant.
+     * <p/>
+     * Prefer {@link TimeInstantIterator} where possible, it does not allocate anything per instant.
      *
      * @param startTime start.
      * @param endTime   end.
      * @return all instants in between with the same resolution as the start and end instant.
      */
     public static List<TimeInstant> getInstants(TimeInstant startTime, TimeInstant endTime) {
-        validateRange(startTime, endTime);
+        TimeInstantIterator iterator = new TimeInstantIterator(startTime, endTime);
 
-        List<TimeInstant> result = new LinkedList<>();
+        List<TimeInstant> result = new ArrayList<>();
 
-        while (!startTime.isAfter(endTime)) {
-            result.add(new TimeInstant(startTime.getTime(), startTime.getTimezone(), startTime.getResolution()));
-            startTime = startTime.next();
+        while (iterator.hasNext()) {
+            result.add(new TimeInstant(iterator.next(), iterator.getTimezone(), iterator.getResolution()));
         }
 
         return result;
     }
 
+    /**
+     * Get the minimal set of instants that together cover the period from the start of one instant to the end of
+     * another one, i.e. <code>[start, end)</code> in millis, with no two instants overlapping. Like in a segment tree,
+     * every whole year, month, day, etc. in the period is represented by a single instant of that resolution, so that
+     * the number of instants grows with the logarithm of the period's length rather than linearly. Only the parts of
+     * the period that don't fill a whole unit of a resolution are covered by instants of finer resolutions, down to the
+     * resolution of the given instants.
+     *
+     * @param startTime first instant of the period (inclusive).
+     * @param endTime   last instant of the period (inclusive). Must have the same resolution and time zone as the start.
+     * @return covering instants, in chronological order.
+     */
+    public static List<TimeInstant> getCoveringInstants(TimeInstant startTime, TimeInstant endTime) {
+        ValidationUtils.validateRange(startTime, endTime);
+
+        DateTimeField field = startTime.getResolution().getDateTimeField(startTime.getTimezone());
+
+        List<TimeInstant> result = new ArrayList<>();
+        cover(field.roundFloor(startTime.getTime()), field.add(field.roundFloor(endTime.getTime()), 1), Resolution.YEAR, startTime.getResolution(), startTime.getTimezone(), result);
+        return result;
+    }
+
+    private static void cover(long from, long to, Resolution resolution, Resolution finest, DateTimeZone timezone, List<TimeInstant> result) {
+        if (from >= to) {
+            return;
+        }
+
+        DateTimeField field = resolution.getDateTimeField(timezone);
+
+        if (resolution.equals(finest)) {
+            for (long time = from; time < to; time = field.add(time, 1)) {
+                result.add(new TimeInstant(time, timezone, resolution));
+            }
+            return;
+        }
+
+        long firstWhole = field.roundCeiling(from);
+        long lastWhole = field.roundFloor(to);
+
+        if (firstWhole >= lastWhole) {
+            cover(from, to, resolution.getChild(), finest, timezone, result);
+            return;
+        }
+
+        cover(from, firstWhole, resolution.getChild(), finest, timezone, result);
+        for (long time = firstWhole; time < lastWhole; time = field.add(time, 1)) {
+            result.add(new TimeInstant(time, timezone, resolution));
+        }
+        cover(lastWhole, to, resolution.getChild(), finest, timezone, result);
+    }
+
     /**
      * Create an instant from its corresponding value object.
      *
@@ -181,7 +227,7 @@ public class TimeInstant {
         }
 
         if (vo.getTimezone() != null) {
-            instant = instant.with(DateTimeZone.forTimeZone(TimeZone.getTimeZone(vo.getTimezone())));
+            instant = instant.with(TimeZones.forId(vo.getTimezone()));
         }
 
         return instant;
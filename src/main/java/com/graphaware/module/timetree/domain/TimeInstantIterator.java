@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree.domain;
+
+import org.joda.time.DateTimeField;
+import org.joda.time.DateTimeZone;
+
+import java.util.NoSuchElementException;
+
+import static com.graphaware.module.timetree.domain.ValidationUtils.validateRange;
+
+/**
+ * An iterator over the time instants between two {@link TimeInstant}s (inclusive), producing the start of each instant
+ * (in UTC millis) as a primitive <code>long</code>. Nothing is allocated per step.
+ * <p/>
+ * The first instant produced is the one containing the start time, the last is the one containing the end time. Instants
+ * are computed in the time zone of the start and end time, so months, days, etc. are stepped over correctly across
+ * daylight saving time transitions.
+ */
+public final class TimeInstantIterator {
+
+    private final DateTimeField field;
+    private final DateTimeZone timezone;
+    private final Resolution resolution;
+    private final long last;
+    private long next;
+
+    /**
+     * Create a new iterator. Both instants provided must have the same resolution and time zone and start instant must
+     * not have happened after end instant.
+     *
+     * @param startTime start.
+     * @param endTime   end.
+     */
+    public TimeInstantIterator(TimeInstant startTime, TimeInstant endTime) {
+        validateRange(startTime, endTime);
+
+        this.timezone = startTime.getTimezone();
+        this.resolution = startTime.getResolution();
+        this.field = resolution.getDateTimeField(timezone);
+        this.next = field.roundFloor(startTime.getTime());
+        this.last = field.roundFloor(endTime.getTime());
+    }
+
+    /**
+     * @return true iff there is another time instant.
+     */
+    public boolean hasNext() {
+        return next <= last;
+    }
+
+    /**
+     * Get the next time instant.
+     *
+     * @return start of the next time instant in UTC millis from 1/1/1970.
+     * @throws NoSuchElementException if there are no more instants.
+     */
+    public long next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        long result = next;
+        next = field.roundFloor(field.add(next, 1));
+
+        //guard against a zone transition mapping the next instant back onto the current one
+        if (next <= result) {
+            next = field.roundCeiling(result + 1);
+        }
+
+        return result;
+    }
+
+    /**
+     * @return time zone of the produced instants.
+     */
+    public DateTimeZone getTimezone() {
+        return timezone;
+    }
+
+    /**
+     * @return resolution of the produced instants.
+     */
+    public Resolution getResolution() {
+        return resolution;
+    }
+}
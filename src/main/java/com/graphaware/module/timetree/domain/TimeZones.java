@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree.domain;
+
+import org.joda.time.DateTimeZone;
+
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Interned {@link DateTimeZone}s, so that resolving a zone by its ID (e.g. on every REST request) does not have to go
+ * through {@link TimeZone#getTimeZone(String)} and {@link DateTimeZone#forTimeZone(TimeZone)} each time.
+ */
+public final class TimeZones {
+
+    private static final int MAX_CACHED_ZONES = 1024;
+
+    private static final ConcurrentMap<String, DateTimeZone> ZONES = new ConcurrentHashMap<>();
+
+    /**
+     * Get a time zone by its ID. The semantics are the same as those of
+     * <code>DateTimeZone.forTimeZone(TimeZone.getTimeZone(id))</code>, i.e. unknown IDs resolve to GMT.
+     *
+     * @param id of the zone, as understood by {@link TimeZone#getTimeZone(String)}.
+     * @return zone.
+     */
+    public static DateTimeZone forId(String id) {
+        DateTimeZone zone = ZONES.get(id);
+
+        if (zone == null) {
+            zone = DateTimeZone.forTimeZone(TimeZone.getTimeZone(id));
+
+            //do not let arbitrary user input grow the cache without bounds
+            if (ZONES.size() < MAX_CACHED_ZONES) {
+                DateTimeZone existing = ZONES.putIfAbsent(id, zone);
+                if (existing != null) {
+                    zone = existing;
+                }
+            }
+        }
+
+        return zone;
+    }
+
+    private TimeZones() {
+    }
+}
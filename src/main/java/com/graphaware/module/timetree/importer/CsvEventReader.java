@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree.importer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link EventReader} reading events from CSV with a header line. Every line is an event; the timestamp column holds
+ * the timestamp in UTC millis, the (optional) root column holds the ID of the custom root node (empty for the default
+ * tree), and all other non-empty columns become String properties of the event node, named after the header.
+ * <p/>
+ * Fields are separated by commas and may be enclosed in double quotes, in which case they may contain commas and
+ * escaped (doubled) double quotes, but not line breaks.
+ */
+public class CsvEventReader implements EventReader {
+
+    private final BufferedReader reader;
+    private final String timestampColumn;
+    private final String rootColumn;
+
+    private String[] header;
+    private int timestampIndex = -1;
+    private int rootIndex = -1;
+    private int lineNumber = 0;
+
+    /**
+     * Create a new reader.
+     *
+     * @param reader          to read CSV from.
+     * @param timestampColumn name of the column holding the timestamp.
+     * @param rootColumn      name of the column holding the custom root node ID, <code>null</code> if all events go to
+     *                        the default tree.
+     */
+    public CsvEventReader(Reader reader, String timestampColumn, String rootColumn) {
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        this.timestampColumn = timestampColumn;
+        this.rootColumn = rootColumn;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public EventRecord next() throws IOException {
+        if (header == null) {
+            readHeader();
+        }
+
+        String line;
+        do {
+            line = reader.readLine();
+            lineNumber++;
+            if (line == null) {
+                return null;
+            }
+        } while (line.trim().isEmpty());
+
+        List<String> fields = parse(line);
+        if (fields.size() != header.length) {
+            throw new IllegalArgumentException("Line " + lineNumber + " has " + fields.size() + " fields, header has " + header.length);
+        }
+
+        long timestamp;
+        try {
+            timestamp = Long.parseLong(fields.get(timestampIndex).trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Line " + lineNumber + " has an invalid timestamp: " + fields.get(timestampIndex));
+        }
+
+        Long rootNodeId = null;
+        if (rootIndex >= 0 && !fields.get(rootIndex).trim().isEmpty()) {
+            try {
+                rootNodeId = Long.parseLong(fields.get(rootIndex).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Line " + lineNumber + " has an invalid root node ID: " + fields.get(rootIndex));
+            }
+        }
+
+        Map<String, Object> properties = new HashMap<>();
+        for (int i = 0; i < header.length; i++) {
+            if (i != timestampIndex && i != rootIndex && !fields.get(i).isEmpty()) {
+                properties.put(header[i], fields.get(i));
+            }
+        }
+
+        return new EventRecord(timestamp, rootNodeId, properties);
+    }
+
+    private void readHeader() throws IOException {
+        String line = reader.readLine();
+        lineNumber++;
+
+        if (line == null) {
+            throw new IllegalArgumentException("CSV input has no header");
+        }
+
+        header = parse(line).toArray(new String[0]);
+        for (int i = 0; i < header.length; i++) {
+            header[i] = header[i].trim();
+            if (header[i].equals(timestampColumn)) {
+                timestampIndex = i;
+            }
+            if (header[i].equals(rootColumn)) {
+                rootIndex = i;
+            }
+        }
+
+        if (timestampIndex < 0) {
+            throw new IllegalArgumentException("CSV header has no " + timestampColumn + " column");
+        }
+    }
+
+    private List<String> parse(String line) {
+        List<String> result = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                result.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+
+        if (quoted) {
+            throw new IllegalArgumentException("Line " + lineNumber + " has an unterminated quoted field");
+        }
+
+        result.add(field.toString());
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree.importer;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A source of {@link EventRecord}s for the {@link TimeTreeImporter}.
+ */
+public interface EventReader extends Closeable {
+
+    /**
+     * Read the next event.
+     *
+     * @return next event, <code>null</code> if there are no more events.
+     * @throws IOException              in case the input cannot be read.
+     * @throws IllegalArgumentException in case the input is malformed.
+     */
+    EventRecord next() throws IOException;
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree.importer;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * An event read by an {@link EventReader} to be imported by the {@link TimeTreeImporter}.
+ */
+public final class EventRecord {
+
+    private final long timestamp;
+    private final Long rootNodeId;
+    private final Map<String, Object> properties;
+
+    /**
+     * Create a new event record.
+     *
+     * @param timestamp  of the event in UTC millis.
+     * @param rootNodeId ID of the custom root node of the tree the event should be attached to, <code>null</code> for
+     *                   the default tree.
+     * @param properties of the event node, values must be Neo4j property values.
+     */
+    public EventRecord(long timestamp, Long rootNodeId, Map<String, Object> properties) {
+        this.timestamp = timestamp;
+        this.rootNodeId = rootNodeId;
+        this.properties = properties == null ? Collections.<String, Object>emptyMap() : properties;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public Long getRootNodeId() {
+        return rootNodeId;
+    }
+
+    public Map<String, Object> getProperties() {
+        return properties;
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree.importer;
+
+import com.graphaware.module.timetree.domain.CalendarFields;
+import org.joda.time.DateTimeZone;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * External sort of {@link EventRecord}s into the order, in which the {@link TimeTreeImporter} builds trees, i.e. by
+ * the ID of the root node (default tree first) and then by local time, which is the order of the time instants in a
+ * tree.
+ * <p/>
+ * At most a chunk of events is held on the heap. Full chunks are sorted and spilled to temporary files, which are
+ * merged when the sorted events are read.
+ */
+class EventSorter implements Closeable {
+
+    private static final long DEFAULT_TREE = -1;
+
+    private static final byte STRING = 0;
+    private static final byte INT = 1;
+    private static final byte LONG = 2;
+    private static final byte DOUBLE = 3;
+    private static final byte BOOLEAN = 4;
+
+    private static final Comparator<SortKey> ORDER = new Comparator<SortKey>() {
+        @Override
+        public int compare(SortKey o1, SortKey o2) {
+            int result = Long.compare(o1.rootKey, o2.rootKey);
+            if (result == 0) {
+                result = Long.compare(o1.localTime, o2.localTime);
+            }
+            if (result == 0) {
+                result = Long.compare(o1.event.getTimestamp(), o2.event.getTimestamp());
+            }
+            return result;
+        }
+    };
+
+    private final DateTimeZone timezone;
+    private final int chunkSize;
+    private final File tempDirectory;
+
+    private final List<SortKey> buffer = new ArrayList<>();
+    private final List<File> chunks = new ArrayList<>();
+    private final List<Closeable> openChunks = new ArrayList<>();
+
+    /**
+     * Create a new sorter.
+     *
+     * @param timezone      of the trees.
+     * @param chunkSize     maximum number of events held on the heap.
+     * @param tempDirectory for spilled chunks, <code>null</code> for the system default.
+     */
+    EventSorter(DateTimeZone timezone, int chunkSize, File tempDirectory) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+
+        this.timezone = timezone;
+        this.chunkSize = chunkSize;
+        this.tempDirectory = tempDirectory;
+    }
+
+    /**
+     * Add an event to be sorted.
+     *
+     * @param event to add.
+     * @throws IOException in case a chunk cannot be spilled.
+     */
+    void add(EventRecord event) throws IOException {
+        buffer.add(new SortKey(event));
+
+        if (buffer.size() >= chunkSize) {
+            spill();
+        }
+    }
+
+    /**
+     * Get the added events in sorted order. No more events can be added afterwards.
+     *
+     * @return sorted events.
+     * @throws IOException in case the chunks cannot be read.
+     */
+    EventReader sorted() throws IOException {
+        if (chunks.isEmpty()) {
+            Collections.sort(buffer, ORDER);
+            final Iterator<SortKey> iterator = buffer.iterator();
+
+            return new EventReader() {
+                @Override
+                public EventRecord next() {
+                    return iterator.hasNext() ? iterator.next().event : null;
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+
+        if (!buffer.isEmpty()) {
+            spill();
+        }
+
+        final PriorityQueue<ChunkCursor> cursors = new PriorityQueue<>(chunks.size(), new Comparator<ChunkCursor>() {
+            @Override
+            public int compare(ChunkCursor o1, ChunkCursor o2) {
+                return ORDER.compare(o1.current, o2.current);
+            }
+        });
+
+        for (File chunk : chunks) {
+            DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(chunk), 1 << 16));
+            openChunks.add(input);
+            ChunkCursor cursor = new ChunkCursor(input);
+            if (cursor.advance()) {
+                cursors.add(cursor);
+            }
+        }
+
+        return new EventReader() {
+            @Override
+            public EventRecord next() throws IOException {
+                ChunkCursor cursor = cursors.poll();
+                if (cursor == null) {
+                    return null;
+                }
+
+                EventRecord result = cursor.current.event;
+                if (cursor.advance()) {
+                    cursors.add(cursor);
+                }
+                return result;
+            }
+
+            @Override
+            public void close() throws IOException {
+                EventSorter.this.close();
+            }
+        };
+    }
+
+    private void spill() throws IOException {
+        Collections.sort(buffer, ORDER);
+
+        File chunk = File.createTempFile("timetree-import-", ".chunk", tempDirectory);
+        chunk.deleteOnExit();
+        chunks.add(chunk);
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(chunk), 1 << 16))) {
+            output.writeInt(buffer.size());
+            for (SortKey key : buffer) {
+                write(key.event, output);
+            }
+        }
+
+        buffer.clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        for (Closeable chunk : openChunks) {
+            chunk.close();
+        }
+        openChunks.clear();
+
+        for (File chunk : chunks) {
+            chunk.delete();
+        }
+        chunks.clear();
+
+        buffer.clear();
+    }
+
+    private static void write(EventRecord event, DataOutput output) throws IOException {
+        output.writeLong(event.getTimestamp());
+        output.writeLong(event.getRootNodeId() == null ? DEFAULT_TREE : event.getRootNodeId());
+        output.writeInt(event.getProperties().size());
+
+        for (Map.Entry<String, Object> property : event.getProperties().entrySet()) {
+            output.writeUTF(property.getKey());
+            Object value = property.getValue();
+
+            if (value instanceof String) {
+                byte[] bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+                output.writeByte(STRING);
+                output.writeInt(bytes.length);
+                output.write(bytes);
+            } else if (value instanceof Integer) {
+                output.writeByte(INT);
+                output.writeInt((Integer) value);
+            } else if (value instanceof Long) {
+                output.writeByte(LONG);
+                output.writeLong((Long) value);
+            } else if (value instanceof Double) {
+                output.writeByte(DOUBLE);
+                output.writeDouble((Double) value);
+            } else if (value instanceof Boolean) {
+                output.writeByte(BOOLEAN);
+                output.writeBoolean((Boolean) value);
+            } else {
+                throw new IllegalArgumentException("Unsupported value of property " + property.getKey() + ": " + value);
+            }
+        }
+    }
+
+    private static EventRecord read(DataInput input) throws IOException {
+        long timestamp = input.readLong();
+        long root = input.readLong();
+        int size = input.readInt();
+
+        Map<String, Object> properties = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            String key = input.readUTF();
+            byte type = input.readByte();
+
+            switch (type) {
+                case STRING:
+                    byte[] bytes = new byte[input.readInt()];
+                    input.readFully(bytes);
+                    properties.put(key, new String(bytes, StandardCharsets.UTF_8));
+                    break;
+                case INT:
+                    properties.put(key, input.readInt());
+                    break;
+                case LONG:
+                    properties.put(key, input.readLong());
+                    break;
+                case DOUBLE:
+                    properties.put(key, input.readDouble());
+                    break;
+                case BOOLEAN:
+                    properties.put(key, input.readBoolean());
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown property type " + type + " in a spilled chunk. This is a bug.");
+            }
+        }
+
+        return new EventRecord(timestamp, root == DEFAULT_TREE ? null : root, properties);
+    }
+
+    /**
+     * An event with its position in the sorted order.
+     */
+    private final class SortKey {
+
+        private final long rootKey;
+        private final long localTime;
+        private final EventRecord event;
+
+        private SortKey(EventRecord event) {
+            this.rootKey = event.getRootNodeId() == null ? DEFAULT_TREE : event.getRootNodeId();
+            this.localTime = CalendarFields.toLocal(event.getTimestamp(), timezone);
+            this.event = event;
+        }
+    }
+
+    /**
+     * Position in a spilled chunk.
+     */
+    private final class ChunkCursor {
+
+        private final DataInputStream input;
+        private int remaining;
+        private SortKey current;
+
+        private ChunkCursor(DataInputStream input) throws IOException {
+            this.input = input;
+            this.remaining = input.readInt();
+        }
+
+        private boolean advance() throws IOException {
+            if (remaining == 0) {
+                current = null;
+                return false;
+            }
+
+            remaining--;
+            current = new SortKey(read(input));
+            return true;
+        }
+    }
+}
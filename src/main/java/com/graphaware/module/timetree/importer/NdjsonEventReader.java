@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree.importer;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link EventReader} reading events from newline-delimited JSON. Every line is a JSON object representing an event;
+ * the timestamp field holds the timestamp in UTC millis, the (optional) root field holds the ID of the custom root
+ * node (absent or <code>null</code> for the default tree), and all other non-null fields become properties of the
+ * event node. Only strings, numbers and booleans are supported as property values.
+ */
+public class NdjsonEventReader implements EventReader {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final BufferedReader reader;
+    private final String timestampField;
+    private final String rootField;
+
+    private int lineNumber = 0;
+
+    /**
+     * Create a new reader.
+     *
+     * @param reader         to read JSON from.
+     * @param timestampField name of the field holding the timestamp.
+     * @param rootField      name of the field holding the custom root node ID, <code>null</code> if all events go to
+     *                       the default tree.
+     */
+    public NdjsonEventReader(Reader reader, String timestampField, String rootField) {
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        this.timestampField = timestampField;
+        this.rootField = rootField;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public EventRecord next() throws IOException {
+        String line;
+        do {
+            line = reader.readLine();
+            lineNumber++;
+            if (line == null) {
+                return null;
+            }
+        } while (line.trim().isEmpty());
+
+        Map<String, Object> json;
+        try {
+            json = MAPPER.readValue(line, Map.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Line " + lineNumber + " is not a JSON object: " + e.getMessage());
+        }
+
+        Object timestamp = json.get(timestampField);
+        if (!(timestamp instanceof Integer || timestamp instanceof Long)) {
+            throw new IllegalArgumentException("Line " + lineNumber + " has a missing or invalid " + timestampField + ": " + timestamp);
+        }
+
+        Long rootNodeId = null;
+        if (rootField != null && json.get(rootField) != null) {
+            Object root = json.get(rootField);
+            if (!(root instanceof Integer || root instanceof Long)) {
+                throw new IllegalArgumentException("Line " + lineNumber + " has an invalid " + rootField + ": " + root);
+            }
+            rootNodeId = ((Number) root).longValue();
+        }
+
+        Map<String, Object> properties = new HashMap<>();
+        for (Map.Entry<String, Object> entry : json.entrySet()) {
+            String key = entry.getKey();
+            Object value = entry.getValue();
+
+            if (key.equals(timestampField) || key.equals(rootField) || value == null) {
+                continue;
+            }
+
+            if (!(value instanceof String || value instanceof Integer || value instanceof Long || value instanceof Double || value instanceof Boolean)) {
+                throw new IllegalArgumentException("Line " + lineNumber + " has an unsupported value of " + key + ": " + value);
+            }
+
+            properties.put(key, value);
+        }
+
+        return new EventRecord(((Number) timestamp).longValue(), rootNodeId, properties);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,381 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree.importer;
+
+import com.graphaware.module.timetree.BucketKeys;
+import com.graphaware.module.timetree.EventPresence;
+import com.graphaware.module.timetree.SingleTimeTree;
+import com.graphaware.module.timetree.domain.CalendarFields;
+import com.graphaware.module.timetree.domain.Resolution;
+import com.graphaware.module.timetree.module.TimeTreeConfiguration;
+import org.joda.time.DateTimeZone;
+import org.neo4j.graphdb.DynamicLabel;
+import org.neo4j.graphdb.Label;
+import org.neo4j.unsafe.batchinsert.BatchInserter;
+import org.neo4j.unsafe.batchinsert.BatchInserters;
+import org.neo4j.unsafe.batchinsert.BatchRelationship;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.graphaware.module.timetree.domain.TimeTreeLabels.TimeTreeRoot;
+import static com.graphaware.module.timetree.domain.TimeTreeRelationshipTypes.*;
+import static org.neo4j.graphdb.Direction.INCOMING;
+import static org.neo4j.graphdb.Direction.OUTGOING;
+
+/**
+ * Offline bulk importer of events into time trees, using Neo4j's {@link BatchInserter}, i.e. bypassing transactions
+ * (and the tree's root lock) altogether. The database must not be running during the import.
+ * <p/>
+ * Events are read from an {@link EventReader}, sorted into the order of the trees' time instants (see
+ * {@link EventSorter}, which keeps at most a chunk of events on the heap), and written in a single pass: a tree's
+ * instants are created in order together with their {@link com.graphaware.module.timetree.domain.TimeTreeRelationshipTypes#CHILD},
+ * {@link com.graphaware.module.timetree.domain.TimeTreeRelationshipTypes#FIRST},
+ * {@link com.graphaware.module.timetree.domain.TimeTreeRelationshipTypes#LAST} and
+ * {@link com.graphaware.module.timetree.domain.TimeTreeRelationshipTypes#NEXT} relationships, and every event node is
+ * created and attached to its instant as soon as the instant exists.
+ * <p/>
+ * The resulting trees are the same as those built by {@link SingleTimeTree} and
+ * {@link com.graphaware.module.timetree.TimeTreeBackedEvents} when attaching the events one by one with the resolution,
+ * time zone, relationship type, direction and bucket keys of the given {@link TimeTreeConfiguration}. Event nodes get the
+ * configured timestamp property and, if attached to a custom root, the configured custom root property, so that the
+ * {@link com.graphaware.module.timetree.module.TimeTreeModule} treats them like events it attached itself.
+ * <p/>
+ * The trees must not exist before the import, i.e. there must be no default tree in the database if any events go to
+ * it, and custom root nodes must not have any children. The configured split threshold is not applied; all events are
+ * attached at the configured resolution.
+ */
+public class TimeTreeImporter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TimeTreeImporter.class);
+
+    public static final int DEFAULT_CHUNK_SIZE = 1000000;
+
+    private static final String VALUE_PROPERTY = "value"; //same as in SingleTimeTree
+
+    private final BatchInserter inserter;
+    private final TimeTreeConfiguration configuration;
+    private final Label eventLabel;
+    private final int chunkSize;
+    private final File tempDirectory;
+
+    /**
+     * Create a new importer with {@link #DEFAULT_CHUNK_SIZE} and the system temporary directory for spilled events.
+     *
+     * @param inserter      to write with.
+     * @param configuration of the trees.
+     * @param eventLabel    label of the created event nodes.
+     */
+    public TimeTreeImporter(BatchInserter inserter, TimeTreeConfiguration configuration, Label eventLabel) {
+        this(inserter, configuration, eventLabel, DEFAULT_CHUNK_SIZE, null);
+    }
+
+    /**
+     * Create a new importer.
+     *
+     * @param inserter      to write with.
+     * @param configuration of the trees.
+     * @param eventLabel    label of the created event nodes.
+     * @param chunkSize     maximum number of events held on the heap while sorting.
+     * @param tempDirectory for events spilled while sorting, <code>null</code> for the system default.
+     */
+    public TimeTreeImporter(BatchInserter inserter, TimeTreeConfiguration configuration, Label eventLabel, int chunkSize, File tempDirectory) {
+        if (!INCOMING.equals(configuration.getDirection()) && !OUTGOING.equals(configuration.getDirection())) {
+            throw new IllegalArgumentException("Direction must be INCOMING or OUTGOING!");
+        }
+
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+
+        if (configuration.getSplitThreshold() > 0) {
+            LOG.warn("Split threshold " + configuration.getSplitThreshold() + " is ignored by the importer, all events will be attached at " + configuration.getResolution());
+        }
+
+        this.inserter = inserter;
+        this.configuration = configuration;
+        this.eventLabel = eventLabel;
+        this.chunkSize = chunkSize;
+        this.tempDirectory = tempDirectory;
+    }
+
+    /**
+     * Import all events from the given reader. The reader is closed afterwards.
+     *
+     * @param reader of events.
+     * @return number of imported events.
+     * @throws IOException              in case the events cannot be read or sorted.
+     * @throws IllegalArgumentException in case the input is malformed or refers to a non-existing root node.
+     * @throws IllegalStateException    in case a custom root already has a tree.
+     */
+    public long importEvents(EventReader reader) throws IOException {
+        try (EventSorter sorter = new EventSorter(configuration.getTimeZone(), chunkSize, tempDirectory)) {
+            try (EventReader input = reader) {
+                EventRecord event;
+                while ((event = input.next()) != null) {
+                    if (event.getRootNodeId() != null && event.getRootNodeId() < 0) {
+                        throw new IllegalArgumentException("Invalid root node ID " + event.getRootNodeId());
+                    }
+                    sorter.add(event);
+                }
+            }
+
+            return write(sorter.sorted());
+        }
+    }
+
+    /**
+     * Import events from a CSV (<code>.csv</code>) or newline-delimited JSON (any other extension) file into a
+     * database that isn't running, using the default {@link TimeTreeConfiguration} unless resolution and time zone
+     * are specified. Event nodes are labelled <code>Event</code>; the timestamp and custom root ID are read from the
+     * columns (fields) named after the configured timestamp and custom root properties.
+     * <p/>
+     * Usage: <code>TimeTreeImporter &lt;storeDir&gt; &lt;file&gt; [resolution] [timezone]</code>
+     *
+     * @param args arguments.
+     * @throws IOException in case the file cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 4) {
+            System.err.println("Usage: TimeTreeImporter <storeDir> <file> [resolution] [timezone]");
+            System.exit(1);
+        }
+
+        TimeTreeConfiguration configuration = TimeTreeConfiguration.defaultConfiguration();
+        if (args.length > 2) {
+            configuration = configuration.withResolution(Resolution.valueOf(args[2].toUpperCase()));
+        }
+        if (args.length > 3) {
+            configuration = configuration.withTimeZone(DateTimeZone.forID(args[3]));
+        }
+
+        File file = new File(args[1]);
+        Reader input = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+
+        EventReader reader = file.getName().toLowerCase().endsWith(".csv")
+                ? new CsvEventReader(input, configuration.getTimestampProperty(), configuration.getCustomTimeTreeRootProperty())
+                : new NdjsonEventReader(input, configuration.getTimestampProperty(), configuration.getCustomTimeTreeRootProperty());
+
+        BatchInserter inserter = BatchInserters.inserter(args[0]);
+        try {
+            new TimeTreeImporter(inserter, configuration, DynamicLabel.label("Event")).importEvents(reader);
+        } finally {
+            inserter.shutdown();
+        }
+    }
+
+    private long write(EventReader sorted) throws IOException {
+        long events = 0;
+        int trees = 0;
+        TreeBuilder tree = null;
+
+        try (EventReader input = sorted) {
+            EventRecord event;
+            while ((event = input.next()) != null) {
+                if (tree == null || !tree.isFor(event.getRootNodeId())) {
+                    if (tree != null) {
+                        tree.finish();
+                    }
+                    tree = new TreeBuilder(event.getRootNodeId());
+                    trees++;
+                }
+
+                attach(createEvent(event), tree.instant(CalendarFields.toLocal(event.getTimestamp(), configuration.getTimeZone())));
+                tree.attached(event.getTimestamp());
+                events++;
+            }
+        }
+
+        if (tree != null) {
+            tree.finish();
+        }
+
+        LOG.info("Imported " + events + " events into " + trees + " time trees");
+
+        return events;
+    }
+
+    private long createEvent(EventRecord event) {
+        Map<String, Object> properties = new HashMap<>(event.getProperties());
+        properties.put(configuration.getTimestampProperty(), event.getTimestamp());
+
+        if (event.getRootNodeId() != null) {
+            properties.put(configuration.getCustomTimeTreeRootProperty(), event.getRootNodeId());
+        }
+
+        return inserter.createNode(properties, eventLabel);
+    }
+
+    private void attach(long event, long instant) {
+        if (INCOMING.equals(configuration.getDirection())) {
+            inserter.createRelationship(event, instant, configuration.getRelationshipType(), null);
+        } else {
+            inserter.createRelationship(instant, event, configuration.getRelationshipType(), null);
+        }
+    }
+
+    /**
+     * Builder of a single tree from time instants visited in order. Holds the path from the root to the last visited
+     * instant; index 0 is the root, index i the instant at the i-th resolution (1 being {@link Resolution#YEAR}).
+     */
+    private class TreeBuilder {
+
+        private final Long rootNodeId;
+        private final int depth = configuration.getResolution().ordinal() + 1;
+        private final long[] path = new long[depth + 1];
+        private final int[] values = new int[depth + 1];
+        private final long[][] nonEmpty = new long[depth + 1][];
+        private final long[] minTimestamps = new long[depth + 1];
+        private final long[] maxTimestamps = new long[depth + 1];
+        private int pathLength = 0;
+
+        private TreeBuilder(Long rootNodeId) {
+            this.rootNodeId = rootNodeId;
+
+            if (rootNodeId == null) {
+                LOG.info("Creating time tree root");
+                path[0] = inserter.createNode(Collections.<String, Object>emptyMap(), TimeTreeRoot);
+                return;
+            }
+
+            if (!inserter.nodeExists(rootNodeId)) {
+                throw new IllegalArgumentException("Root node with ID " + rootNodeId + " does not exist");
+            }
+
+            for (BatchRelationship relationship : inserter.getRelationships(rootNodeId)) {
+                if (relationship.getStartNode() == rootNodeId && CHILD.name().equals(relationship.getType().name())) {
+                    throw new IllegalStateException("Root node with ID " + rootNodeId + " already has a time tree");
+                }
+            }
+
+            path[0] = rootNodeId;
+        }
+
+        private boolean isFor(Long rootNodeId) {
+            return this.rootNodeId == null ? rootNodeId == null : this.rootNodeId.equals(rootNodeId);
+        }
+
+        /**
+         * Get the instant at the configured resolution for the given local time, creating it and its missing ancestors.
+         * Must be called with non-decreasing local times.
+         *
+         * @param localTime local millis.
+         * @return ID of the instant node.
+         */
+        private long instant(long localTime) {
+            int level = 1;
+            while (level <= pathLength && values[level] == CalendarFields.get(localTime, Resolution.values()[level - 1])) {
+                level++;
+            }
+
+            if (level > depth) {
+                return path[depth];
+            }
+
+            //instants at this level and below are finished
+            close(level);
+
+            for (int i = level; i <= depth; i++) {
+                Resolution resolution = Resolution.values()[i - 1];
+                int value = CalendarFields.get(localTime, resolution);
+
+                Map<String, Object> properties = new HashMap<>();
+                properties.put(VALUE_PROPERTY, value);
+                if (configuration.isBucketKeys()) {
+                    properties.put(BucketKeys.BUCKET_PROPERTY, BucketKeys.of(localTime, resolution));
+                }
+                if (configuration.isEventPresence()) {
+                    //every imported instant has events in its subtree, its bitmap and bounds are written when it is closed
+                    if (i > 1) {
+                        nonEmpty[i - 1] = EventPresence.set(nonEmpty[i - 1], value);
+                    }
+                    nonEmpty[i] = new long[0];
+                    minTimestamps[i] = Long.MAX_VALUE;
+                    maxTimestamps[i] = Long.MIN_VALUE;
+                }
+
+                long instant = inserter.createNode(properties, resolution.getLabel());
+                inserter.createRelationship(path[i - 1], instant, CHILD, null);
+
+                //parent is new (or the root of a new tree)
+                if (i > level || i > pathLength) {
+                    inserter.createRelationship(path[i - 1], instant, FIRST, null);
+                }
+
+                //previous instant at the same level, possibly with a different parent
+                if (i <= pathLength) {
+                    inserter.createRelationship(path[i], instant, NEXT, null);
+                }
+
+                path[i] = instant;
+                values[i] = value;
+            }
+
+            pathLength = depth;
+
+            return path[depth];
+        }
+
+        /**
+         * Record the timestamp of an event attached to the last visited instant.
+         *
+         * @param timestamp of the event.
+         */
+        private void attached(long timestamp) {
+            for (int i = 1; i <= pathLength; i++) {
+                minTimestamps[i] = Math.min(minTimestamps[i], timestamp);
+                maxTimestamps[i] = Math.max(maxTimestamps[i], timestamp);
+            }
+        }
+
+        /**
+         * Finish the tree.
+         */
+        private void finish() {
+            close(1);
+
+            if (pathLength > 0) {
+                inserter.createRelationship(path[0], path[1], LAST, null);
+            }
+        }
+
+        /**
+         * Link the instants on the path from the given level down with their last children and, if configured, write
+         * their {@link EventPresence} bitmaps and bounds.
+         *
+         * @param level from which instants are finished.
+         */
+        private void close(int level) {
+            for (int i = level; i <= pathLength; i++) {
+                if (i < pathLength) {
+                    inserter.createRelationship(path[i], path[i + 1], LAST, null);
+                }
+
+                if (configuration.isEventPresence()) {
+                    inserter.setNodeProperty(path[i], EventPresence.NON_EMPTY_PROPERTY, nonEmpty[i]);
+                    inserter.setNodeProperty(path[i], EventPresence.MIN_TIMESTAMP_PROPERTY, minTimestamps[i]);
+                    inserter.setNodeProperty(path[i], EventPresence.MAX_TIMESTAMP_PROPERTY, maxTimestamps[i]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.timetree.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free counter. Increments are ignored when the owning {@link TimeTreeMetrics} are disabled.
+ */
+public class Counter implements CounterMBean {
+
+    private final TimeTreeMetrics metrics;
+    private final AtomicLong count = new AtomicLong();
+
+    Counter(TimeTreeMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Increment the counter by one.
+     */
+    public void increment() {
+        increment(1);
+    }
+
+    /**
+     * Increment the counter by the given amount.
+     *
+     * @param amount to increment by.
+     */
+    public void increment(long amount) {
+        if (metrics.isEnabled()) {
+            count.addAndGet(amount);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Set the counter back to 0.
+     */
+    void reset() {
+        count.set(0);
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A value that is set rather than accumulated. Updates are ignored when the owning {@link TimeTreeMetrics} are disabled.
+ */
+public class Gauge implements GaugeMBean {
+
+    private final TimeTreeMetrics metrics;
+    private final AtomicLong value = new AtomicLong();
+
+    Gauge(TimeTreeMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Set the value.
+     *
+     * @param value to set.
+     */
+    public void set(long value) {
+        if (metrics.isEnabled()) {
+            this.value.set(value);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getValue() {
+        return value.get();
+    }
+
+    /**
+     * Set the value back to 0.
+     */
+    void reset() {
+        value.set(0);
+    }
+}
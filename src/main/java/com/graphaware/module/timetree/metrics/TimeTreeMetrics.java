@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Metrics of the hot paths of {@link com.graphaware.module.timetree.SingleTimeTree} and
+ * {@link com.graphaware.module.timetree.TimeTreeBackedEvents}, exposed over JMX under the
+ * <code>com.graphaware.timetree</code> domain.
+ * <p/>
+ * All metrics are lock-free and cheap enough to be left on in production. They can be switched off completely by
+ * setting the <code>com.graphaware.module.timetree.metrics.enabled</code> system property to <code>false</code>,
+ * by the <code>metrics</code> setting of {@link com.graphaware.module.timetree.module.TimeTreeModuleBootstrapper},
+ * over JMX, or by calling {@link #setEnabled(boolean)}. When disabled, no clock is read and nothing is recorded.
+ */
+public final class TimeTreeMetrics implements TimeTreeMetricsMBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TimeTreeMetrics.class);
+
+    public static final String ENABLED_PROPERTY = "com.graphaware.module.timetree.metrics.enabled";
+    private static final String DOMAIN = "com.graphaware.timetree";
+
+    private static final TimeTreeMetrics INSTANCE = new TimeTreeMetrics();
+
+    private volatile boolean enabled = Boolean.parseBoolean(System.getProperty(ENABLED_PROPERTY, "true"));
+
+    private final Timer getOrCreateInstant = new Timer(this);
+    private final Timer attachEvent = new Timer(this);
+    private final Timer getEvents = new Timer(this);
+    private final Timer rootLockWait = new Timer(this);
+    private final Histogram nodesVisited = new Histogram(this);
+    private final Histogram siblingScan = new Histogram(this);
+    private final Counter nodesCreated = new Counter(this);
+    private final Counter retentionPurged = new Counter(this);
+    private final Gauge retentionLag = new Gauge(this);
+    private final Timer consistencyCheck = new Timer(this);
+    private final Counter consistencyViolations = new Counter(this);
+    private final Counter consistencyRepairs = new Counter(this);
+
+    private final Map<String, Object> beans = new LinkedHashMap<>();
+
+    static {
+        INSTANCE.register();
+    }
+
+    /**
+     * Get the metrics.
+     *
+     * @return metrics.
+     */
+    public static TimeTreeMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    private TimeTreeMetrics() {
+        beans.put("Metrics", this);
+        beans.put("GetOrCreateInstant", getOrCreateInstant);
+        beans.put("AttachEvent", attachEvent);
+        beans.put("GetEvents", getEvents);
+        beans.put("RootLockWait", rootLockWait);
+        beans.put("NodesVisitedPerDescent", nodesVisited);
+        beans.put("SiblingScanLength", siblingScan);
+        beans.put("NodesCreated", nodesCreated);
+        beans.put("RetentionPurged", retentionPurged);
+        beans.put("RetentionLag", retentionLag);
+        beans.put("ConsistencyCheck", consistencyCheck);
+        beans.put("ConsistencyViolations", consistencyViolations);
+        beans.put("ConsistencyRepairs", consistencyRepairs);
+    }
+
+    /**
+     * Get the current time in nanoseconds to be passed to {@link Timer#stop(long)} later, or 0 when metrics are
+     * disabled, in which case the clock isn't read at all.
+     *
+     * @return now.
+     */
+    public long now() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void reset() {
+        getOrCreateInstant.reset();
+        attachEvent.reset();
+        getEvents.reset();
+        rootLockWait.reset();
+        nodesVisited.reset();
+        siblingScan.reset();
+        nodesCreated.reset();
+        retentionPurged.reset();
+        retentionLag.reset();
+        consistencyCheck.reset();
+        consistencyViolations.reset();
+        consistencyRepairs.reset();
+    }
+
+    /**
+     * @return duration of {@link com.graphaware.module.timetree.TimeTree#getOrCreateInstant(com.graphaware.module.timetree.domain.TimeInstant)} in microseconds.
+     */
+    public Timer getOrCreateInstant() {
+        return getOrCreateInstant;
+    }
+
+    /**
+     * @return duration of {@link com.graphaware.module.timetree.TimedEvents} attachEvent methods in microseconds.
+     */
+    public Timer attachEvent() {
+        return attachEvent;
+    }
+
+    /**
+     * @return duration of {@link com.graphaware.module.timetree.TimedEvents} getEvents methods in microseconds.
+     */
+    public Timer getEvents() {
+        return getEvents;
+    }
+
+    /**
+     * @return time spent waiting for the lock on the tree root in microseconds.
+     */
+    public Timer rootLockWait() {
+        return rootLockWait;
+    }
+
+    /**
+     * @return number of nodes visited per descent from the root to a time instant.
+     */
+    public Histogram nodesVisited() {
+        return nodesVisited;
+    }
+
+    /**
+     * @return number of siblings visited when looking for a child of a node.
+     */
+    public Histogram siblingScan() {
+        return siblingScan;
+    }
+
+    /**
+     * @return number of time instant nodes created.
+     */
+    public Counter nodesCreated() {
+        return nodesCreated;
+    }
+
+    /**
+     * @return number of time instant nodes removed by the retention job.
+     */
+    public Counter retentionPurged() {
+        return retentionPurged;
+    }
+
+    /**
+     * @return how far (in ms) the oldest time instant kept in the tree lags behind the retention horizon, 0 if
+     * everything older than the horizon has been removed.
+     */
+    public Gauge retentionLag() {
+        return retentionLag;
+    }
+
+    /**
+     * @return duration of {@link com.graphaware.module.timetree.TimeTreeChecker} runs in microseconds.
+     */
+    public Timer consistencyCheck() {
+        return consistencyCheck;
+    }
+
+    /**
+     * @return number of violations of time tree invariants found by {@link com.graphaware.module.timetree.TimeTreeChecker}.
+     */
+    public Counter consistencyViolations() {
+        return consistencyViolations;
+    }
+
+    /**
+     * @return number of violations of time tree invariants repaired by {@link com.graphaware.module.timetree.TimeTreeChecker}.
+     */
+    public Counter consistencyRepairs() {
+        return consistencyRepairs;
+    }
+
+    private void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            for (Map.Entry<String, Object> bean : beans.entrySet()) {
+                ObjectName name = new ObjectName(DOMAIN + ":type=Metrics,name=" + bean.getKey());
+                if (!server.isRegistered(name)) {
+                    server.registerMBean(bean.getValue(), name);
+                }
+            }
+        } catch (Exception e) {
+            LOG.warn("Could not register TimeTree metrics with JMX", e);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.timetree.metrics;
+
+/**
+ * A {@link Histogram} of durations, recorded in microseconds.
+ */
+public class Timer extends Histogram {
+
+    Timer(TimeTreeMetrics metrics) {
+        super(metrics);
+    }
+
+    /**
+     * Record the time elapsed since the given start.
+     *
+     * @param startNanos start, obtained from {@link TimeTreeMetrics#now()}.
+     */
+    public void stop(long startNanos) {
+        if (metrics.isEnabled()) {
+            update((System.nanoTime() - startNanos) / 1000);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree.module;
+
+import com.graphaware.module.timetree.BucketKeys;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Background job of the {@link TimeTreeModule} that creates the bucket key indexes and sets the bucket keys of time
+ * instants created before bucket keys were enabled, see {@link BucketKeys}. Until the indexes are online, time
+ * instants are looked up by a descent from the root.
+ * <p/>
+ * The job is scheduled repeatedly, so that it is retried if it fails (e.g. because the database hasn't started yet),
+ * but only does its work until the first successful run.
+ */
+public class BucketKeysJob implements Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BucketKeysJob.class);
+
+    static final long RETRY_INTERVAL = 10 * 1000;
+    private static final int BATCH_SIZE = 1000;
+
+    private final GraphDatabaseService database;
+    private volatile boolean done = false;
+
+    /**
+     * Create a new job.
+     *
+     * @param database to index.
+     */
+    public BucketKeysJob(GraphDatabaseService database) {
+        this.database = database;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void run() {
+        if (done) {
+            return;
+        }
+
+        try {
+            index();
+        } catch (Exception e) {
+            LOG.warn("Time tree bucket key indexing failed, will retry in " + RETRY_INTERVAL + " ms", e);
+        }
+    }
+
+    /**
+     * Create the indexes, unless they exist, and set the missing bucket keys.
+     *
+     * @return number of time instants, whose bucket keys have been set.
+     */
+    public long index() {
+        BucketKeys.createIndexes(database);
+        long updated = BucketKeys.backfill(database, BATCH_SIZE);
+        done = true;
+        return updated;
+    }
+}
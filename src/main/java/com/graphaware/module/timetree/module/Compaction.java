@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree.module;
+
+import com.graphaware.module.timetree.domain.Resolution;
+import org.joda.time.Period;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Compaction (down-sampling) policy of the {@link TimeTreeModule}. For each configured resolution, time instants at
+ * that resolution older than a threshold get the events of all their descendants re-attached to them, and the
+ * descendants are removed. For example, with thresholds <code>HOUR: 1 day</code> and <code>DAY: 30 days</code>, events
+ * older than a day are attached to hours, and events older than 30 days to days.
+ * <p/>
+ * Compacted periods can then only be queried at the resolution they have been compacted to, or a coarser one.
+ * <p/>
+ * Compaction runs incrementally: every run visits at most {@link #getInstantsPerRun()} instants per tree and threshold.
+ */
+public final class Compaction {
+
+    private static final int DEFAULT_INSTANTS_PER_RUN = 100;
+    private static final long DEFAULT_INTERVAL = 60 * 1000;
+
+    private final Map<Resolution, Period> thresholds;
+    private final int instantsPerRun;
+    private final long interval;
+
+    /**
+     * Create a compaction policy with a single threshold and default settings, i.e. 100 instants per tree and threshold
+     * are visited per run, and it runs every minute.
+     * <p/>
+     * Change the policy by using the fluent with* methods.
+     *
+     * @param resolution to compact to.
+     * @param olderThan  age of the instants at the given resolution that get compacted, e.g. <code>Period.days(30)</code>.
+     * @return policy.
+     */
+    public static Compaction of(Resolution resolution, Period olderThan) {
+        return new Compaction(Collections.<Resolution, Period>emptyMap(), DEFAULT_INSTANTS_PER_RUN, DEFAULT_INTERVAL).with(resolution, olderThan);
+    }
+
+    private Compaction(Map<Resolution, Period> thresholds, int instantsPerRun, long interval) {
+        if (instantsPerRun < 1 || interval < 1) {
+            throw new IllegalArgumentException("Compaction instants per run and interval must be positive");
+        }
+
+        this.thresholds = thresholds.isEmpty() ? new EnumMap<Resolution, Period>(Resolution.class) : new EnumMap<>(thresholds);
+        this.instantsPerRun = instantsPerRun;
+        this.interval = interval;
+    }
+
+    /**
+     * Create a new instance of this {@link Compaction} with an additional (or different) threshold.
+     *
+     * @param resolution to compact to. Must not be the finest resolution.
+     * @param olderThan  age of the instants at the given resolution that get compacted.
+     * @return new instance.
+     */
+    public Compaction with(Resolution resolution, Period olderThan) {
+        if (resolution == null || olderThan == null) {
+            throw new IllegalArgumentException("Compaction resolution and threshold must not be null");
+        }
+
+        if (resolution.equals(Resolution.MILLISECOND)) {
+            throw new IllegalArgumentException("Cannot compact to " + resolution + ", it has no finer resolution");
+        }
+
+        Map<Resolution, Period> newThresholds = new EnumMap<>(Resolution.class);
+        newThresholds.putAll(thresholds);
+        newThresholds.put(resolution, olderThan);
+
+        return new Compaction(newThresholds, instantsPerRun, interval);
+    }
+
+    /**
+     * Create a new instance of this {@link Compaction} with different number of instants visited per run.
+     *
+     * @param instantsPerRun maximum number of instants visited per tree and threshold in one run.
+     * @return new instance.
+     */
+    public Compaction withInstantsPerRun(int instantsPerRun) {
+        return new Compaction(thresholds, instantsPerRun, interval);
+    }
+
+    /**
+     * Create a new instance of this {@link Compaction} with different interval.
+     *
+     * @param interval between two runs in ms.
+     * @return new instance.
+     */
+    public Compaction withInterval(long interval) {
+        return new Compaction(thresholds, instantsPerRun, interval);
+    }
+
+    /**
+     * @return thresholds, i.e. the age after which instants at a resolution get compacted, ordered by resolution.
+     */
+    public Map<Resolution, Period> getThresholds() {
+        return Collections.unmodifiableMap(thresholds);
+    }
+
+    public int getInstantsPerRun() {
+        return instantsPerRun;
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        Compaction that = (Compaction) o;
+
+        if (instantsPerRun != that.instantsPerRun) return false;
+        if (interval != that.interval) return false;
+        if (!thresholds.equals(that.thresholds)) return false;
+
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        int result = thresholds.hashCode();
+        result = 31 * result + instantsPerRun;
+        result = 31 * result + (int) (interval ^ (interval >>> 32));
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "Compaction{thresholds=" + thresholds + ", instantsPerRun=" + instantsPerRun + ", interval=" + interval + "}";
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree.module;
+
+import com.graphaware.module.timetree.SingleTimeTree;
+import com.graphaware.module.timetree.domain.Resolution;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Period;
+import org.joda.time.chrono.ISOChronology;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.graphaware.module.timetree.domain.Resolution.findForNode;
+import static com.graphaware.module.timetree.domain.TimeTreeRelationshipTypes.CHILD;
+import static com.graphaware.module.timetree.domain.TimeTreeRelationshipTypes.FIRST;
+import static com.graphaware.module.timetree.domain.TimeTreeRelationshipTypes.NEXT;
+import static org.neo4j.graphdb.Direction.OUTGOING;
+
+/**
+ * Background job of the {@link TimeTreeModule} that compacts time instants older than the {@link Compaction} thresholds
+ * in all trees in the database. See {@link Compaction} for details.
+ * <p/>
+ * The job remembers, per tree and threshold, where the previous run stopped, so that every instant is only visited
+ * once. Thresholds are processed from the coarsest resolution to the finest one.
+ */
+public class CompactionJob implements Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CompactionJob.class);
+
+    private final GraphDatabaseService database;
+    private final TimeTreeConfiguration configuration;
+    private final TimeTreeRoots roots;
+    private final ConcurrentMap<String, Long> cursors = new ConcurrentHashMap<>();
+
+    /**
+     * Create a new job.
+     *
+     * @param database      to compact.
+     * @param configuration of the module, must have a {@link Compaction}.
+     * @param roots         of all trees in the database.
+     */
+    public CompactionJob(GraphDatabaseService database, TimeTreeConfiguration configuration, TimeTreeRoots roots) {
+        if (configuration.getCompaction() == null) {
+            throw new IllegalArgumentException("Configuration has no compaction policy");
+        }
+
+        this.database = database;
+        this.configuration = configuration;
+        this.roots = roots;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void run() {
+        try {
+            compact(System.currentTimeMillis());
+        } catch (Exception e) {
+            LOG.warn("Time tree compaction run failed, will retry in " + configuration.getCompaction().getInterval() + " ms", e);
+        }
+    }
+
+    /**
+     * Perform a single run, i.e. visit at most {@link Compaction#getInstantsPerRun()} instants per tree and threshold
+     * and compact those older than the threshold.
+     *
+     * @param now current time in UTC millis.
+     * @return number of removed time tree nodes.
+     */
+    public long compact(long now) {
+        Compaction compaction = configuration.getCompaction();
+        DateTimeZone timezone = configuration.getTimeZone();
+
+        long removed = 0;
+
+        for (Map.Entry<Resolution, Period> threshold : compaction.getThresholds().entrySet()) {
+            Resolution resolution = threshold.getKey();
+
+            //start of the oldest instant that is not compacted
+            long horizon = resolution.getDateTimeField(timezone).roundFloor(ISOChronology.getInstance(timezone).add(threshold.getValue(), now, -1));
+
+            for (Node root : findRoots()) {
+                removed += compact(root, resolution, horizon, compaction.getInstantsPerRun());
+            }
+        }
+
+        if (removed > 0) {
+            LOG.info("Compaction removed " + removed + " time tree nodes");
+        }
+
+        return removed;
+    }
+
+    private long compact(Node root, Resolution resolution, long horizon, int instantsPerRun) {
+        String cursorKey = root.getId() + "/" + resolution;
+        List<Node> toCompact = new ArrayList<>();
+        Long next;
+
+        try (Transaction tx = database.beginTx()) {
+            Node instant = resume(root, resolution, cursors.get(cursorKey));
+
+            int visited = 0;
+            while (instant != null && visited < instantsPerRun
+                    && SingleTimeTree.getTimeInstant(instant, configuration.getTimeZone()).getTime() < horizon) {
+
+                if (instant.hasRelationship(CHILD, OUTGOING)) {
+                    toCompact.add(instant);
+                }
+
+                instant = next(instant);
+                visited++;
+            }
+
+            //the next instant at the same resolution is never removed by compacting the previous ones
+            next = instant == null ? null : instant.getId();
+            tx.success();
+        } catch (NotFoundException e) {
+            //the tree has been removed in the meantime
+            cursors.remove(cursorKey);
+            return 0;
+        }
+
+        long removed = 0;
+        for (Node instant : toCompact) {
+            removed += roots.getTree(root).compactInstant(instant);
+        }
+
+        if (next == null) {
+            cursors.remove(cursorKey);
+        } else {
+            cursors.put(cursorKey, next);
+        }
+
+        return removed;
+    }
+
+    /**
+     * Find the instant to continue compacting from.
+     *
+     * @param root       of the tree.
+     * @param resolution of the instant.
+     * @param cursor     ID of the instant the previous run stopped at, null if there was no previous run.
+     * @return instant at the given resolution, null if there is none.
+     */
+    private Node resume(Node root, Resolution resolution, Long cursor) {
+        if (cursor != null) {
+            try {
+                return database.getNodeById(cursor);
+            } catch (NotFoundException e) {
+                //removed in the meantime, e.g. by retention, start over
+            }
+        }
+
+        Node instant = roots.findOldest(database.getNodeById(root.getId()), resolution);
+
+        //oldest branch may have already been compacted to a coarser resolution
+        while (instant != null && !findForNode(instant).equals(resolution)) {
+            Relationship first = instant.getSingleRelationship(FIRST, OUTGOING);
+            instant = first != null ? first.getEndNode() : next(instant);
+        }
+
+        return instant;
+    }
+
+    private Node next(Node instant) {
+        Relationship next = instant.getSingleRelationship(NEXT, OUTGOING);
+        return next == null ? null : next.getEndNode();
+    }
+
+    private List<Node> findRoots() {
+        try (Transaction tx = database.beginTx()) {
+            List<Node> result = new ArrayList<>(roots.findRoots());
+            tx.success();
+            return result;
+        }
+    }
+}
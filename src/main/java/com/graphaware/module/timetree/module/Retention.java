@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree.module;
+
+import org.joda.time.Period;
+
+/**
+ * Retention policy of the {@link TimeTreeModule}. Time instants (at the configured resolution) older than the horizon
+ * are periodically removed from all trees in the database, together with parents left without children, and
+ * optionally with the events attached to them.
+ * <p/>
+ * The removal is rate-limited: every run removes at most {@link #getInstantsPerRun()} instants per tree, in
+ * transactions of at most {@link #getBatchSize()} removed nodes and relationships.
+ */
+public final class Retention {
+
+    private static final boolean DEFAULT_DELETE_EVENTS = false;
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+    private static final int DEFAULT_INSTANTS_PER_RUN = 1000;
+    private static final long DEFAULT_INTERVAL = 60 * 1000;
+
+    private final Period horizon;
+    private final boolean deleteEvents;
+    private final int batchSize;
+    private final int instantsPerRun;
+    private final long interval;
+
+    /**
+     * Create a retention policy with the given horizon and default settings, i.e. events are only detached, 1000 nodes
+     * and relationships are removed per transaction, 1000 instants per tree per run, and it runs every minute.
+     * <p/>
+     * Change the policy by using the fluent with* methods.
+     *
+     * @param horizon how long data is kept, e.g. <code>Period.days(90)</code>.
+     * @return policy.
+     */
+    public static Retention of(Period horizon) {
+        return new Retention(horizon, DEFAULT_DELETE_EVENTS, DEFAULT_BATCH_SIZE, DEFAULT_INSTANTS_PER_RUN, DEFAULT_INTERVAL);
+    }
+
+    private Retention(Period horizon, boolean deleteEvents, int batchSize, int instantsPerRun, long interval) {
+        if (horizon == null) {
+            throw new IllegalArgumentException("Retention horizon must not be null");
+        }
+
+        if (batchSize < 1 || instantsPerRun < 1 || interval < 1) {
+            throw new IllegalArgumentException("Retention batch size, instants per run, and interval must be positive");
+        }
+
+        this.horizon = horizon;
+        this.deleteEvents = deleteEvents;
+        this.batchSize = batchSize;
+        this.instantsPerRun = instantsPerRun;
+        this.interval = interval;
+    }
+
+    /**
+     * Create a new instance of this {@link Retention} with different setting for deleting events.
+     *
+     * @param deleteEvents true to delete events attached to removed instants, false to only detach them.
+     * @return new instance.
+     */
+    public Retention withDeleteEvents(boolean deleteEvents) {
+        return new Retention(horizon, deleteEvents, batchSize, instantsPerRun, interval);
+    }
+
+    /**
+     * Create a new instance of this {@link Retention} with different batch size.
+     *
+     * @param batchSize maximum number of nodes and relationships removed in a single transaction.
+     * @return new instance.
+     */
+    public Retention withBatchSize(int batchSize) {
+        return new Retention(horizon, deleteEvents, batchSize, instantsPerRun, interval);
+    }
+
+    /**
+     * Create a new instance of this {@link Retention} with different number of instants removed per run.
+     *
+     * @param instantsPerRun maximum number of instants (at the configured resolution) removed from a tree in one run.
+     * @return new instance.
+     */
+    public Retention withInstantsPerRun(int instantsPerRun) {
+        return new Retention(horizon, deleteEvents, batchSize, instantsPerRun, interval);
+    }
+
+    /**
+     * Create a new instance of this {@link Retention} with different interval.
+     *
+     * @param interval between two runs in ms.
+     * @return new instance.
+     */
+    public Retention withInterval(long interval) {
+        return new Retention(horizon, deleteEvents, batchSize, instantsPerRun, interval);
+    }
+
+    public Period getHorizon() {
+        return horizon;
+    }
+
+    public boolean isDeleteEvents() {
+        return deleteEvents;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public int getInstantsPerRun() {
+        return instantsPerRun;
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        Retention that = (Retention) o;
+
+        if (deleteEvents != that.deleteEvents) return false;
+        if (batchSize != that.batchSize) return false;
+        if (instantsPerRun != that.instantsPerRun) return false;
+        if (interval != that.interval) return false;
+        if (!horizon.equals(that.horizon)) return false;
+
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        int result = horizon.hashCode();
+        result = 31 * result + (deleteEvents ? 1 : 0);
+        result = 31 * result + batchSize;
+        result = 31 * result + instantsPerRun;
+        result = 31 * result + (int) (interval ^ (interval >>> 32));
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "Retention{horizon=" + horizon + ", deleteEvents=" + deleteEvents + ", batchSize=" + batchSize
+                + ", instantsPerRun=" + instantsPerRun + ", interval=" + interval + "}";
+    }
+}
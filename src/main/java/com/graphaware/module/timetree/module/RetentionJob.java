@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree.module;
+
+import com.graphaware.module.timetree.SingleTimeTree;
+import com.graphaware.module.timetree.domain.Resolution;
+import com.graphaware.module.timetree.domain.TimeInstant;
+import com.graphaware.module.timetree.metrics.TimeTreeMetrics;
+import org.joda.time.DateTimeField;
+import org.joda.time.DateTimeZone;
+import org.joda.time.chrono.ISOChronology;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Background job of the {@link TimeTreeModule} that removes time instants older than the {@link Retention} horizon
+ * from all trees in the database. See {@link Retention} for details.
+ */
+public class RetentionJob implements Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RetentionJob.class);
+
+    private final GraphDatabaseService database;
+    private final TimeTreeConfiguration configuration;
+    private final TimeTreeRoots roots;
+    private final TimeTreeMetrics metrics = TimeTreeMetrics.getInstance();
+
+    /**
+     * Create a new job.
+     *
+     * @param database      to purge.
+     * @param configuration of the module, must have a {@link Retention}.
+     * @param roots         of all trees in the database.
+     */
+    public RetentionJob(GraphDatabaseService database, TimeTreeConfiguration configuration, TimeTreeRoots roots) {
+        if (configuration.getRetention() == null) {
+            throw new IllegalArgumentException("Configuration has no retention policy");
+        }
+
+        this.database = database;
+        this.configuration = configuration;
+        this.roots = roots;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void run() {
+        try {
+            purge(System.currentTimeMillis());
+        } catch (Exception e) {
+            LOG.warn("Time tree retention run failed, will retry in " + configuration.getRetention().getInterval() + " ms", e);
+        }
+    }
+
+    /**
+     * Perform a single run, i.e. remove at most {@link Retention#getInstantsPerRun()} expired instants from each tree.
+     *
+     * @param now current time in UTC millis.
+     * @return number of removed time tree nodes.
+     */
+    public long purge(long now) {
+        Retention retention = configuration.getRetention();
+        Resolution resolution = configuration.getResolution();
+        DateTimeZone timezone = configuration.getTimeZone();
+        DateTimeField field = resolution.getDateTimeField(timezone);
+
+        //start of the oldest instant that is kept
+        long horizon = field.roundFloor(ISOChronology.getInstance(timezone).add(retention.getHorizon(), now, -1));
+
+        long removed = 0;
+        long lag = 0;
+
+        for (Node root : findRoots()) {
+            Long oldest = oldestInstant(root);
+
+            if (oldest != null && oldest < horizon) {
+                long end = Math.min(horizon, field.add(oldest, retention.getInstantsPerRun())) - 1;
+
+                removed += roots.getTree(root).removeInstants(
+                        TimeInstant.instant(oldest).with(resolution).with(timezone),
+                        TimeInstant.instant(end).with(resolution).with(timezone),
+                        retention.isDeleteEvents(),
+                        retention.getBatchSize());
+
+                oldest = oldestInstant(root);
+            }
+
+            if (oldest != null && oldest < horizon) {
+                lag = Math.max(lag, horizon - oldest);
+            }
+        }
+
+        metrics.retentionPurged().increment(removed);
+        metrics.retentionLag().set(lag);
+
+        if (removed > 0) {
+            LOG.info("Retention removed " + removed + " time tree nodes, lagging " + lag + " ms behind the horizon");
+        }
+
+        return removed;
+    }
+
+    private List<Node> findRoots() {
+        try (Transaction tx = database.beginTx()) {
+            List<Node> result = new ArrayList<>(roots.findRoots());
+            tx.success();
+            return result;
+        }
+    }
+
+    /**
+     * Find the start of the oldest instant in a tree.
+     *
+     * @param root of the tree.
+     * @return start of the oldest instant in UTC millis, null if the tree is empty or no longer exists.
+     */
+    private Long oldestInstant(Node root) {
+        try (Transaction tx = database.beginTx()) {
+            Node oldest = roots.findOldest(database.getNodeById(root.getId()), configuration.getResolution());
+            if (oldest == null) {
+                return null;
+            }
+
+            long result = SingleTimeTree.getTimeInstant(oldest, configuration.getTimeZone()).getTime();
+            tx.success();
+            return result;
+        } catch (NotFoundException e) {
+            return null;
+        }
+    }
+}
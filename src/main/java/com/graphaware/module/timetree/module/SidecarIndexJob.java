@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree.module;
+
+import com.graphaware.module.timetree.BucketKeys;
+import com.graphaware.module.timetree.SidecarIndex;
+import com.graphaware.module.timetree.domain.Resolution;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import static com.graphaware.module.timetree.domain.TimeTreeLabels.TimeTreeRoot;
+import static com.graphaware.module.timetree.domain.TimeTreeRelationshipTypes.CHILD;
+import static org.neo4j.graphdb.Direction.OUTGOING;
+
+/**
+ * Background job of the {@link TimeTreeModule} that rebuilds a stale {@link SidecarIndex} by putting all time instants
+ * of all trees in the database into it. Until then, instants are put into the index when they are looked up.
+ * <p/>
+ * The job is scheduled repeatedly, so that it is retried if it fails (e.g. because the database hasn't started yet),
+ * but only does its work until the first successful run.
+ */
+public class SidecarIndexJob implements Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SidecarIndexJob.class);
+
+    static final long RETRY_INTERVAL = 10 * 1000;
+
+    private final GraphDatabaseService database;
+    private final TimeTreeRoots roots;
+    private final SidecarIndex sidecarIndex;
+    private volatile boolean done = false;
+
+    /**
+     * Create a new job.
+     *
+     * @param database     containing the trees.
+     * @param roots        of all trees in the database.
+     * @param sidecarIndex to rebuild.
+     */
+    public SidecarIndexJob(GraphDatabaseService database, TimeTreeRoots roots, SidecarIndex sidecarIndex) {
+        this.database = database;
+        this.roots = roots;
+        this.sidecarIndex = sidecarIndex;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void run() {
+        if (done) {
+            return;
+        }
+
+        try {
+            rebuild();
+        } catch (Exception e) {
+            LOG.warn("Time tree sidecar index rebuild failed, will retry in " + RETRY_INTERVAL + " ms", e);
+        }
+    }
+
+    /**
+     * Put all time instants of all trees into the index, each tree in a separate transaction.
+     *
+     * @return number of indexed time instants.
+     */
+    public long rebuild() {
+        long indexed = 0;
+
+        List<Node> rootNodes;
+        try (Transaction tx = database.beginTx()) {
+            rootNodes = new ArrayList<>(roots.findRoots());
+            tx.success();
+        }
+
+        for (Node root : rootNodes) {
+            try (Transaction tx = database.beginTx()) {
+                indexed += index(database.getNodeById(root.getId()));
+                tx.success();
+            }
+        }
+
+        done = true;
+        LOG.info("Rebuilt time tree sidecar index with " + indexed + " time instants");
+
+        return indexed;
+    }
+
+    private long index(Node root) {
+        long rootKey = root.hasLabel(TimeTreeRoot) ? SidecarIndex.DEFAULT_TREE : root.getId();
+        long indexed = 0;
+
+        Deque<Node> toVisit = new ArrayDeque<>();
+        toVisit.push(root);
+
+        while (!toVisit.isEmpty()) {
+            Node node = toVisit.pop();
+
+            for (Relationship child : node.getRelationships(CHILD, OUTGOING)) {
+                Node instant = child.getEndNode();
+                sidecarIndex.put(rootKey, Resolution.findForNode(instant), BucketKeys.of(instant), instant.getId());
+                indexed++;
+                toVisit.push(instant);
+            }
+        }
+
+        return indexed;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree.module;
+
+import com.graphaware.module.timetree.TimeTreeStats;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Background job of the {@link TimeTreeModule} that periodically stores the incrementally maintained {@link TimeTreeStats}
+ * in the database and, if configured, replaces them by exact ones computed by a traversal of every tree.
+ * <p/>
+ * The first exact recompute happens in the first run, so that trees created before the statistics were maintained
+ * are accounted for.
+ */
+public class StatsJob implements Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StatsJob.class);
+
+    private final GraphDatabaseService database;
+    private final TimeTreeRoots roots;
+    private final long flushInterval;
+    private final long recomputeInterval;
+    private final TimeTreeStats stats;
+    private long lastRecompute = 0;
+
+    /**
+     * Create a new job.
+     *
+     * @param database          containing the trees.
+     * @param roots             of all trees in the database.
+     * @param flushInterval     interval in ms between runs of the job, used for logging only.
+     * @param recomputeInterval interval in ms between exact recomputes, 0 to never recompute the statistics.
+     */
+    public StatsJob(GraphDatabaseService database, TimeTreeRoots roots, long flushInterval, long recomputeInterval) {
+        if (recomputeInterval < 0) {
+            throw new IllegalArgumentException("Statistics recompute interval must not be negative");
+        }
+
+        this.database = database;
+        this.roots = roots;
+        this.flushInterval = flushInterval;
+        this.recomputeInterval = recomputeInterval;
+        this.stats = TimeTreeStats.getInstance(database);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void run() {
+        try {
+            long now = System.currentTimeMillis();
+
+            if (recomputeInterval > 0 && now - lastRecompute >= recomputeInterval) {
+                recompute();
+                lastRecompute = now;
+            }
+
+            stats.flush(database);
+        } catch (Exception e) {
+            LOG.warn("Time tree statistics run failed, will retry in " + flushInterval + " ms", e);
+        }
+    }
+
+    /**
+     * Replace the statistics of all trees by exact ones, each tree in separate transactions.
+     *
+     * @return number of time instants in all trees.
+     */
+    public long recompute() {
+        long instants = 0;
+
+        for (Node root : findRoots()) {
+            try {
+                instants += stats.recompute(database, root.getId());
+            } catch (NotFoundException e) {
+                //the tree has been removed in the meantime
+            }
+        }
+
+        LOG.info("Recomputed time tree statistics of " + instants + " time instants");
+
+        return instants;
+    }
+
+    private List<Node> findRoots() {
+        try (Transaction tx = database.beginTx()) {
+            List<Node> result = new ArrayList<>(roots.findRoots());
+            tx.success();
+            return result;
+        }
+    }
+}
@@ -18,6 +18,8 @@ package com.graphaware.module.timetree.module;
 import com.graphaware.common.policy.InclusionPolicies;
 import com.graphaware.common.policy.fluent.IncludeNodes;
 import com.graphaware.common.policy.fluent.IncludeRelationships;
+import com.graphaware.module.timetree.SidecarIndex;
+import com.graphaware.module.timetree.TimeTreeOptions;
 import com.graphaware.module.timetree.domain.Resolution;
 import com.graphaware.runtime.config.BaseTxDrivenModuleConfiguration;
 import com.graphaware.runtime.policy.InclusionPoliciesFactory;
@@ -43,6 +45,11 @@ public class TimeTreeConfiguration extends BaseTxDrivenModuleConfiguration<TimeT
     private static final RelationshipType DEFAULT_RELATIONSHIP_TYPE = DynamicRelationshipType.withName("AT_TIME");
     private static final Direction DEFAULT_DIRECTION = Direction.INCOMING;
     private static final boolean DEFAULT_AUTO_ATTACH = false;
+    private static final int DEFAULT_SPLIT_THRESHOLD = 0;
+    private static final boolean DEFAULT_BUCKET_KEYS = false;
+    private static final boolean DEFAULT_EVENT_PRESENCE = false;
+    private static final long DEFAULT_STATS_RECOMPUTE = 0;
+    private static final long DEFAULT_STATS_FLUSH = 0;
 
     private static final InclusionPolicies DEFAULT_INCLUSION_POLICIES =
             InclusionPoliciesFactory.allBusiness()
@@ -56,6 +63,15 @@ public class TimeTreeConfiguration extends BaseTxDrivenModuleConfiguration<TimeT
     private RelationshipType relationshipType;
     private Direction direction;
     private boolean autoAttach;
+    private int splitThreshold;
+    private Retention retention;
+    private Compaction compaction;
+    private WarmAhead warmAhead;
+    private boolean bucketKeys;
+    private String sidecarIndex;
+    private boolean eventPresence;
+    private long statsRecompute;
+    private long statsFlush;
 
     /**
      * Create a new configuration.
@@ -71,8 +87,24 @@ public class TimeTreeConfiguration extends BaseTxDrivenModuleConfiguration<TimeT
      * @param relationshipType           with which the events are attached to the tree.
      * @param direction                  with which the events are attached to the tree (from the tree's point of view).
      * @param autoAttach                 <code>true</code> iff events should be automatically attached upon first module run and when config changes.
+     * @param splitThreshold             number of events attached to a single time instant, after which new events are
+     *                                   attached to its children at the next finer resolution. 0 for no limit.
+     * @param retention                  retention policy, <code>null</code> to keep all data forever.
+     * @param compaction                 compaction policy, <code>null</code> to never compact the tree.
+     * @param warmAhead                  warm-ahead policy, <code>null</code> to only create instants when needed.
+     * @param bucketKeys                 <code>true</code> iff time instants should be looked up by indexed bucket keys,
+     *                                   see {@link com.graphaware.module.timetree.BucketKeys}.
+     * @param sidecarIndex               path to the file of the persistent index of time instants, <code>null</code> for none, see
+     *                                   {@link com.graphaware.module.timetree.SidecarIndex}.
+     * @param eventPresence              <code>true</code> iff time instants should maintain a bitmap of their children
+     *                                   with events, see {@link com.graphaware.module.timetree.EventPresence}.
+     * @param statsRecompute             interval in ms between exact recomputes of the statistics of all trees, 0 to
+     *                                   never recompute them, see {@link com.graphaware.module.timetree.TimeTreeStats}.
+     *                                   Only takes effect when <code>statsFlush</code> is positive.
+     * @param statsFlush                 interval in ms between storing the statistics of all trees in the database, 0
+     *                                   to never store them.
      */
-    protected TimeTreeConfiguration(InclusionPolicies inclusionPolicies, String timestampProperty, String customTimeTreeRootProperty, Resolution resolution, DateTimeZone timeZone, RelationshipType relationshipType, Direction direction, boolean autoAttach) {
+    protected TimeTreeConfiguration(InclusionPolicies inclusionPolicies, String timestampProperty, String customTimeTreeRootProperty, Resolution resolution, DateTimeZone timeZone, RelationshipType relationshipType, Direction direction, boolean autoAttach, int splitThreshold, Retention retention, Compaction compaction, WarmAhead warmAhead, boolean bucketKeys, String sidecarIndex, boolean eventPresence, long statsRecompute, long statsFlush) {
         super(inclusionPolicies);
         this.timestampProperty = timestampProperty;
         this.customTimeTreeRootProperty = customTimeTreeRootProperty;
@@ -81,6 +113,15 @@ public class TimeTreeConfiguration extends BaseTxDrivenModuleConfiguration<TimeT
         this.relationshipType = relationshipType;
         this.direction = direction;
         this.autoAttach = autoAttach;
+        this.splitThreshold = splitThreshold;
+        this.retention = retention;
+        this.compaction = compaction;
+        this.warmAhead = warmAhead;
+        this.bucketKeys = bucketKeys;
+        this.sidecarIndex = sidecarIndex;
+        this.eventPresence = eventPresence;
+        this.statsRecompute = statsRecompute;
+        this.statsFlush = statsFlush;
     }
 
     /**
@@ -89,15 +130,24 @@ public class TimeTreeConfiguration extends BaseTxDrivenModuleConfiguration<TimeT
      * default timestamp property = {@link #DEFAULT_TIMESTAMP_PROPERTY},
      * default customTimeTree root property = {@link #DEFAULT_CUSTOM_TIMETREE_ROOT_PROPERTY},
      * default resolution = {@link #DEFAULT_RESOLUTION},
-     * default time zone = {@link #DEFAULT_TIME_ZONE}, and
-     * default relationship type = {@link #DEFAULT_RELATIONSHIP_TYPE}
+     * default time zone = {@link #DEFAULT_TIME_ZONE},
+     * default relationship type = {@link #DEFAULT_RELATIONSHIP_TYPE},
+     * no limit on the number of events attached to a single time instant,
+     * no retention policy,
+     * no compaction policy,
+     * no warm-ahead policy,
+     * no bucket keys,
+     * no sidecar index,
+     * no event presence,
+     * no recompute of statistics, and
+     * no storing of statistics
      * <p/>
      * Change the configuration by using the fluent with* methods.
      *
      * @return default config.
      */
     public static TimeTreeConfiguration defaultConfiguration() {
-        return new TimeTreeConfiguration(DEFAULT_INCLUSION_POLICIES, DEFAULT_TIMESTAMP_PROPERTY, DEFAULT_CUSTOM_TIMETREE_ROOT_PROPERTY, DEFAULT_RESOLUTION, DEFAULT_TIME_ZONE, DEFAULT_RELATIONSHIP_TYPE, DEFAULT_DIRECTION, DEFAULT_AUTO_ATTACH);
+        return new TimeTreeConfiguration(DEFAULT_INCLUSION_POLICIES, DEFAULT_TIMESTAMP_PROPERTY, DEFAULT_CUSTOM_TIMETREE_ROOT_PROPERTY, DEFAULT_RESOLUTION, DEFAULT_TIME_ZONE, DEFAULT_RELATIONSHIP_TYPE, DEFAULT_DIRECTION, DEFAULT_AUTO_ATTACH, DEFAULT_SPLIT_THRESHOLD, null, null, null, DEFAULT_BUCKET_KEYS, null, DEFAULT_EVENT_PRESENCE, DEFAULT_STATS_RECOMPUTE, DEFAULT_STATS_FLUSH);
     }
 
     /**
@@ -107,7 +157,7 @@ public class TimeTreeConfiguration extends BaseTxDrivenModuleConfiguration<TimeT
      * @return new instance.
      */
     public TimeTreeConfiguration withTimestampProperty(final String timestampProperty) {
-        return new TimeTreeConfiguration(getInclusionPolicies(), timestampProperty, getCustomTimeTreeRootProperty(), getResolution(), getTimeZone(), getRelationshipType(), getDirection(), isAutoAttach());
+        return new TimeTreeConfiguration(getInclusionPolicies(), timestampProperty, getCustomTimeTreeRootProperty(), getResolution(), getTimeZone(), getRelationshipType(), getDirection(), isAutoAttach(), getSplitThreshold(), getRetention(), getCompaction(), getWarmAhead(), isBucketKeys(), getSidecarIndex(), isEventPresence(), getStatsRecompute(), getStatsFlush());
     }
 
     /**
@@ -117,7 +167,7 @@ public class TimeTreeConfiguration extends BaseTxDrivenModuleConfiguration<TimeT
      * @return new instance
      */
     public TimeTreeConfiguration withCustomTimeTreeRootProperty(final String customTimeTreeRootProperty) {
-        return new TimeTreeConfiguration(getInclusionPolicies(), getTimestampProperty(), customTimeTreeRootProperty, getResolution(), getTimeZone(), getRelationshipType(), getDirection(), isAutoAttach());
+        return new TimeTreeConfiguration(getInclusionPolicies(), getTimestampProperty(), customTimeTreeRootProperty, getResolution(), getTimeZone(), getRelationshipType(), getDirection(), isAutoAttach(), getSplitThreshold(), getRetention(), getCompaction(), getWarmAhead(), isBucketKeys(), getSidecarIndex(), isEventPresence(), getStatsRecompute(), getStatsFlush());
     }
 
     /**
@@ -127,7 +177,7 @@ public class TimeTreeConfiguration extends BaseTxDrivenModuleConfiguration<TimeT
      * @return new instance.
      */
     public TimeTreeConfiguration withResolution(Resolution resolution) {
-        return new TimeTreeConfiguration(getInclusionPolicies(), getTimestampProperty(), getCustomTimeTreeRootProperty(), resolution, getTimeZone(), getRelationshipType(), getDirection(), isAutoAttach());
+        return new TimeTreeConfiguration(getInclusionPolicies(), getTimestampProperty(), getCustomTimeTreeRootProperty(), resolution, getTimeZone(), getRelationshipType(), getDirection(), isAutoAttach(), getSplitThreshold(), getRetention(), getCompaction(), getWarmAhead(), isBucketKeys(), getSidecarIndex(), isEventPresence(), getStatsRecompute(), getStatsFlush());
     }
 
     /**
@@ -137,7 +187,7 @@ public class TimeTreeConfiguration extends BaseTxDrivenModuleConfiguration<TimeT
      * @return new instance.
      */
     public TimeTreeConfiguration withTimeZone(DateTimeZone timeZone) {
-        return new TimeTreeConfiguration(getInclusionPolicies(), getTimestampProperty(), getCustomTimeTreeRootProperty(), getResolution(), timeZone, getRelationshipType(), getDirection(), isAutoAttach());
+        return new TimeTreeConfiguration(getInclusionPolicies(), getTimestampProperty(), getCustomTimeTreeRootProperty(), getResolution(), timeZone, getRelationshipType(), getDirection(), isAutoAttach(), getSplitThreshold(), getRetention(), getCompaction(), getWarmAhead(), isBucketKeys(), getSidecarIndex(), isEventPresence(), getStatsRecompute(), getStatsFlush());
     }
 
     /**
@@ -147,7 +197,7 @@ public class TimeTreeConfiguration extends BaseTxDrivenModuleConfiguration<TimeT
      * @return new instance.
      */
     public TimeTreeConfiguration withRelationshipType(final RelationshipType relationshipType) {
-        return new TimeTreeConfiguration(getInclusionPolicies().with(IncludeRelationships.all().with(relationshipType)), getTimestampProperty(), getCustomTimeTreeRootProperty(), getResolution(), getTimeZone(), relationshipType, getDirection(), isAutoAttach());
+        return new TimeTreeConfiguration(getInclusionPolicies().with(IncludeRelationships.all().with(relationshipType)), getTimestampProperty(), getCustomTimeTreeRootProperty(), getResolution(), getTimeZone(), relationshipType, getDirection(), isAutoAttach(), getSplitThreshold(), getRetention(), getCompaction(), getWarmAhead(), isBucketKeys(), getSidecarIndex(), isEventPresence(), getStatsRecompute(), getStatsFlush());
     }
 
     /**
@@ -160,7 +210,7 @@ public class TimeTreeConfiguration extends BaseTxDrivenModuleConfiguration<TimeT
         if (!Direction.INCOMING.equals(direction) && !Direction.OUTGOING.equals(direction)) {
             throw new IllegalArgumentException("Direction must be INCOMING or OUTGOING!");
         }
-        return new TimeTreeConfiguration(getInclusionPolicies().with(IncludeRelationships.all().with(relationshipType)), getTimestampProperty(), getCustomTimeTreeRootProperty(), getResolution(), getTimeZone(), getRelationshipType(), direction, isAutoAttach());
+        return new TimeTreeConfiguration(getInclusionPolicies().with(IncludeRelationships.all().with(relationshipType)), getTimestampProperty(), getCustomTimeTreeRootProperty(), getResolution(), getTimeZone(), getRelationshipType(), direction, isAutoAttach(), getSplitThreshold(), getRetention(), getCompaction(), getWarmAhead(), isBucketKeys(), getSidecarIndex(), isEventPresence(), getStatsRecompute(), getStatsFlush());
     }
 
     /**
@@ -170,7 +220,112 @@ public class TimeTreeConfiguration extends BaseTxDrivenModuleConfiguration<TimeT
      * @return new instance.
      */
     public TimeTreeConfiguration withAutoAttach(final boolean autoAttach) {
-        return new TimeTreeConfiguration(getInclusionPolicies(), getTimestampProperty(), getCustomTimeTreeRootProperty(), getResolution(), getTimeZone(), getRelationshipType(), getDirection(), autoAttach);
+        return new TimeTreeConfiguration(getInclusionPolicies(), getTimestampProperty(), getCustomTimeTreeRootProperty(), getResolution(), getTimeZone(), getRelationshipType(), getDirection(), autoAttach, getSplitThreshold(), getRetention(), getCompaction(), getWarmAhead(), isBucketKeys(), getSidecarIndex(), isEventPresence(), getStatsRecompute(), getStatsFlush());
+    }
+
+    /**
+     * Create a new instance of this {@link TimeTreeConfiguration} with different split threshold.
+     *
+     * @param splitThreshold number of events attached to a single time instant, after which new events are attached to
+     *                       its children at the next finer resolution. 0 for no limit.
+     * @return new instance.
+     */
+    public TimeTreeConfiguration withSplitThreshold(final int splitThreshold) {
+        if (splitThreshold < 0) {
+            throw new IllegalArgumentException("Split threshold must not be negative");
+        }
+
+        return new TimeTreeConfiguration(getInclusionPolicies(), getTimestampProperty(), getCustomTimeTreeRootProperty(), getResolution(), getTimeZone(), getRelationshipType(), getDirection(), isAutoAttach(), splitThreshold, getRetention(), getCompaction(), getWarmAhead(), isBucketKeys(), getSidecarIndex(), isEventPresence(), getStatsRecompute(), getStatsFlush());
+    }
+
+    /**
+     * Create a new instance of this {@link TimeTreeConfiguration} with different retention policy.
+     *
+     * @param retention of the new instance, <code>null</code> to keep all data forever.
+     * @return new instance.
+     */
+    public TimeTreeConfiguration withRetention(final Retention retention) {
+        return new TimeTreeConfiguration(getInclusionPolicies(), getTimestampProperty(), getCustomTimeTreeRootProperty(), getResolution(), getTimeZone(), getRelationshipType(), getDirection(), isAutoAttach(), getSplitThreshold(), retention, getCompaction(), getWarmAhead(), isBucketKeys(), getSidecarIndex(), isEventPresence(), getStatsRecompute(), getStatsFlush());
+    }
+
+    /**
+     * Create a new instance of this {@link TimeTreeConfiguration} with different compaction policy.
+     *
+     * @param compaction of the new instance, <code>null</code> to never compact the tree.
+     * @return new instance.
+     */
+    public TimeTreeConfiguration withCompaction(final Compaction compaction) {
+        return new TimeTreeConfiguration(getInclusionPolicies(), getTimestampProperty(), getCustomTimeTreeRootProperty(), getResolution(), getTimeZone(), getRelationshipType(), getDirection(), isAutoAttach(), getSplitThreshold(), getRetention(), compaction, getWarmAhead(), isBucketKeys(), getSidecarIndex(), isEventPresence(), getStatsRecompute(), getStatsFlush());
+    }
+
+    /**
+     * Create a new instance of this {@link TimeTreeConfiguration} with different warm-ahead policy.
+     *
+     * @param warmAhead of the new instance, <code>null</code> to only create instants when needed.
+     * @return new instance.
+     */
+    public TimeTreeConfiguration withWarmAhead(final WarmAhead warmAhead) {
+        return new TimeTreeConfiguration(getInclusionPolicies(), getTimestampProperty(), getCustomTimeTreeRootProperty(), getResolution(), getTimeZone(), getRelationshipType(), getDirection(), isAutoAttach(), getSplitThreshold(), getRetention(), getCompaction(), warmAhead, isBucketKeys(), getSidecarIndex(), isEventPresence(), getStatsRecompute(), getStatsFlush());
+    }
+
+    /**
+     * Create a new instance of this {@link TimeTreeConfiguration} with bucket keys enabled or disabled.
+     *
+     * @param bucketKeys of the new instance, <code>true</code> to look up time instants by indexed bucket keys.
+     * @return new instance.
+     */
+    public TimeTreeConfiguration withBucketKeys(final boolean bucketKeys) {
+        return new TimeTreeConfiguration(getInclusionPolicies(), getTimestampProperty(), getCustomTimeTreeRootProperty(), getResolution(), getTimeZone(), getRelationshipType(), getDirection(), isAutoAttach(), getSplitThreshold(), getRetention(), getCompaction(), getWarmAhead(), bucketKeys, getSidecarIndex(), isEventPresence(), getStatsRecompute(), getStatsFlush());
+    }
+
+    /**
+     * Create a new instance of this {@link TimeTreeConfiguration} with different sidecar index.
+     *
+     * @param sidecarIndex of the new instance, path to the file of the persistent index of time instants, <code>null</code> for none.
+     * @return new instance.
+     */
+    public TimeTreeConfiguration withSidecarIndex(final String sidecarIndex) {
+        return new TimeTreeConfiguration(getInclusionPolicies(), getTimestampProperty(), getCustomTimeTreeRootProperty(), getResolution(), getTimeZone(), getRelationshipType(), getDirection(), isAutoAttach(), getSplitThreshold(), getRetention(), getCompaction(), getWarmAhead(), isBucketKeys(), sidecarIndex, isEventPresence(), getStatsRecompute(), getStatsFlush());
+    }
+
+    /**
+     * Create a new instance of this {@link TimeTreeConfiguration} with event presence enabled or disabled.
+     *
+     * @param eventPresence of the new instance, <code>true</code> to let queries skip time instants without events.
+     * @return new instance.
+     */
+    public TimeTreeConfiguration withEventPresence(final boolean eventPresence) {
+        return new TimeTreeConfiguration(getInclusionPolicies(), getTimestampProperty(), getCustomTimeTreeRootProperty(), getResolution(), getTimeZone(), getRelationshipType(), getDirection(), isAutoAttach(), getSplitThreshold(), getRetention(), getCompaction(), getWarmAhead(), isBucketKeys(), getSidecarIndex(), eventPresence, getStatsRecompute(), getStatsFlush());
+    }
+
+    /**
+     * Create a new instance of this {@link TimeTreeConfiguration} with different interval of exact recomputes of
+     * statistics.
+     *
+     * @param statsRecompute of the new instance, interval in ms between recomputes, 0 to never recompute statistics.
+     * @return new instance.
+     */
+    public TimeTreeConfiguration withStatsRecompute(final long statsRecompute) {
+        if (statsRecompute < 0) {
+            throw new IllegalArgumentException("Statistics recompute interval must not be negative");
+        }
+
+        return new TimeTreeConfiguration(getInclusionPolicies(), getTimestampProperty(), getCustomTimeTreeRootProperty(), getResolution(), getTimeZone(), getRelationshipType(), getDirection(), isAutoAttach(), getSplitThreshold(), getRetention(), getCompaction(), getWarmAhead(), isBucketKeys(), getSidecarIndex(), isEventPresence(), statsRecompute, getStatsFlush());
+    }
+
+    /**
+     * Create a new instance of this {@link TimeTreeConfiguration} with different interval of storing statistics in the
+     * database.
+     *
+     * @param statsFlush of the new instance, interval in ms between storing statistics, 0 to never store statistics.
+     * @return new instance.
+     */
+    public TimeTreeConfiguration withStatsFlush(final long statsFlush) {
+        if (statsFlush < 0) {
+            throw new IllegalArgumentException("Statistics flush interval must not be negative");
+        }
+
+        return new TimeTreeConfiguration(getInclusionPolicies(), getTimestampProperty(), getCustomTimeTreeRootProperty(), getResolution(), getTimeZone(), getRelationshipType(), getDirection(), isAutoAttach(), getSplitThreshold(), getRetention(), getCompaction(), getWarmAhead(), isBucketKeys(), getSidecarIndex(), isEventPresence(), getStatsRecompute(), statsFlush);
     }
 
     /**
@@ -180,7 +335,7 @@ public class TimeTreeConfiguration extends BaseTxDrivenModuleConfiguration<TimeT
     protected TimeTreeConfiguration newInstance(InclusionPolicies inclusionPolicies) {
         return new TimeTreeConfiguration(inclusionPolicies
                 .with(IncludeRelationships.all().with(getRelationshipType())),
-                getTimestampProperty(), getCustomTimeTreeRootProperty(), getResolution(), getTimeZone(), getRelationshipType(), getDirection(), isAutoAttach());
+                getTimestampProperty(), getCustomTimeTreeRootProperty(), getResolution(), getTimeZone(), getRelationshipType(), getDirection(), isAutoAttach(), getSplitThreshold(), getRetention(), getCompaction(), getWarmAhead(), isBucketKeys(), getSidecarIndex(), isEventPresence(), getStatsRecompute(), getStatsFlush());
     }
 
     public String getTimestampProperty() {
@@ -211,8 +366,60 @@ public class TimeTreeConfiguration extends BaseTxDrivenModuleConfiguration<TimeT
         return autoAttach;
     }
 
+    public int getSplitThreshold() {
+        return splitThreshold;
+    }
+
+    public Retention getRetention() {
+        return retention;
+    }
+
+    public Compaction getCompaction() {
+        return compaction;
+    }
+
+    public WarmAhead getWarmAhead() {
+        return warmAhead;
+    }
+
+    public boolean isBucketKeys() {
+        return bucketKeys;
+    }
+
+    public String getSidecarIndex() {
+        return sidecarIndex;
+    }
+
+    public boolean isEventPresence() {
+        return eventPresence;
+    }
+
+    public long getStatsRecompute() {
+        return statsRecompute;
+    }
+
+    public long getStatsFlush() {
+        return statsFlush;
+    }
+
+    /**
+     * Get the options of the time trees of the module.
+     *
+     * @param sidecarIndex opened from the file at {@link #getSidecarIndex()}, <code>null</code> for none.
+     * @return options.
+     */
+    public TimeTreeOptions getTreeOptions(SidecarIndex sidecarIndex) {
+        return TimeTreeOptions.defaults()
+                .withBucketKeys(isBucketKeys())
+                .withSidecarIndex(sidecarIndex)
+                .withEventPresence(isEventPresence());
+    }
+
     /**
      * {@inheritDoc}
+     * <p/>
+     * Operational settings, such as the split threshold, retention, compaction and warm-ahead policies, bucket keys, the sidecar index, event presence and the statistics recompute and flush intervals, are not taken into account, so that
+     * changing them does not cause events to be re-attached to the tree.
      */
     @Override
     public boolean equals(Object o) {
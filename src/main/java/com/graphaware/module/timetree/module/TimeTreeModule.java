@@ -17,12 +17,14 @@
 package com.graphaware.module.timetree.module;
 
 import com.graphaware.common.util.Change;
-import com.graphaware.module.timetree.CustomRootTimeTree;
+import com.graphaware.module.timetree.EventPresence;
+import com.graphaware.module.timetree.SidecarIndex;
 import com.graphaware.module.timetree.SingleTimeTree;
 import com.graphaware.module.timetree.TimeTreeBackedEvents;
+import com.graphaware.module.timetree.TimeTreeOptions;
+import com.graphaware.module.timetree.TimeTreeStats;
 import com.graphaware.module.timetree.TimedEvents;
 import com.graphaware.module.timetree.domain.TimeInstant;
-import com.graphaware.runtime.config.TxDrivenModuleConfiguration;
 import com.graphaware.runtime.module.BaseTxDrivenModule;
 import com.graphaware.runtime.module.DeliberateTransactionRollbackException;
 import com.graphaware.tx.event.improved.api.ImprovedTransactionData;
@@ -33,11 +35,24 @@ import com.graphaware.tx.executor.single.TransactionCallback;
 import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
 import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
 import static com.graphaware.common.util.PropertyContainerUtils.getLong;
+import static com.graphaware.module.timetree.domain.TimeTreeRelationshipTypes.CHILD;
+import static com.graphaware.module.timetree.domain.TimeTreeRelationshipTypes.getTimeTreeRelationshipNames;
 
 /**
  * A {@link com.graphaware.runtime.module.TxDrivenModule} that automatically attaches events to a {@link com.graphaware.module.timetree.TimeTree}.
@@ -45,21 +60,173 @@ import static com.graphaware.common.util.PropertyContainerUtils.getLong;
 public class TimeTreeModule extends BaseTxDrivenModule<Void> {
 
     private static final Logger LOG = LoggerFactory.getLogger(TimeTreeModule.class);
+    private static final List<String> timeTreeRelationships = getTimeTreeRelationshipNames();
 
     private final TimeTreeConfiguration configuration;
+    private final GraphDatabaseService database;
     private final TimedEvents timedEvents;
+    private final TimeTreeRoots roots;
+    private final SidecarIndex sidecarIndex;
+    private final TransactionEventHandler<Void> eventPresenceHandler;
+    private ScheduledExecutorService scheduler;
 
     public TimeTreeModule(String moduleId, TimeTreeConfiguration configuration, GraphDatabaseService database) {
         super(moduleId);
         this.configuration = configuration;
-        this.timedEvents = new TimeTreeBackedEvents(new SingleTimeTree(database));
+        this.database = database;
+
+        this.sidecarIndex = openSidecarIndex(configuration.getSidecarIndex());
+
+        TimeTreeOptions options = configuration.getTreeOptions(sidecarIndex);
+        SingleTimeTree timeTree = new SingleTimeTree(database, options);
+        this.timedEvents = new TimeTreeBackedEvents(timeTree, configuration.getTimestampProperty(), configuration.getSplitThreshold());
+        this.roots = new TimeTreeRoots(database, timeTree, options);
+
+        //unlike the module, sees relationships of all types, not only those included by the configuration
+        this.eventPresenceHandler = new TransactionEventHandler.Adapter<Void>() {
+            @Override
+            public Void beforeCommit(TransactionData data) throws Exception {
+                updateEventPresence(data);
+                return null;
+            }
+        };
     }
 
     /**
      * {@inheritDoc}
+     * <p/>
+     * Schedules the configured background jobs. The runtime starts the module once the database is available, so the jobs
+     * can use it from their first run.
      */
     @Override
-    public TxDrivenModuleConfiguration getConfiguration() {
+    public void start(GraphDatabaseService database) {
+        super.start(database);
+
+        database.registerTransactionEventHandler(eventPresenceHandler);
+
+        if (configuration.getRetention() != null) {
+            LOG.info("Scheduling time tree retention job with " + configuration.getRetention());
+            schedule(new RetentionJob(database, configuration, roots), configuration.getRetention().getInterval());
+        }
+
+        if (configuration.getCompaction() != null) {
+            LOG.info("Scheduling time tree compaction job with " + configuration.getCompaction());
+            schedule(new CompactionJob(database, configuration, roots), configuration.getCompaction().getInterval());
+        }
+
+        if (configuration.getWarmAhead() != null) {
+            LOG.info("Scheduling time tree warm-ahead job with " + configuration.getWarmAhead());
+            schedule(new WarmAheadJob(database, configuration, roots), configuration.getWarmAhead().getInterval());
+        }
+
+        if (configuration.isBucketKeys()) {
+            LOG.info("Scheduling time tree bucket key indexing job");
+            schedule(new BucketKeysJob(database), BucketKeysJob.RETRY_INTERVAL);
+        }
+
+        if (sidecarIndex != null && sidecarIndex.isStale()) {
+            LOG.info("Scheduling time tree sidecar index rebuild");
+            schedule(new SidecarIndexJob(database, roots, sidecarIndex), SidecarIndexJob.RETRY_INTERVAL);
+        }
+
+        if (configuration.getStatsFlush() > 0) {
+            LOG.info("Scheduling time tree statistics job every " + configuration.getStatsFlush() + " ms" + (configuration.getStatsRecompute() > 0 ? " with exact recompute every " + configuration.getStatsRecompute() + " ms" : ""));
+            schedule(new StatsJob(database, roots, configuration.getStatsFlush(), configuration.getStatsRecompute()), configuration.getStatsFlush());
+        }
+    }
+
+    /**
+     * Open the sidecar index. The index is only a cache, so the module runs without it if it cannot be opened.
+     *
+     * @param path to the file of the index, can be null.
+     * @return index, null if no path is given or the index cannot be opened.
+     */
+    private static SidecarIndex openSidecarIndex(String path) {
+        if (path == null) {
+            return null;
+        }
+
+        try {
+            return SidecarIndex.open(new File(path));
+        } catch (IOException e) {
+            LOG.error("Could not open time tree sidecar index " + path + ", continuing without it", e);
+            return null;
+        }
+    }
+
+    /**
+     * Schedule a background job with a fixed delay between runs. The first run happens after the delay.
+     *
+     * @param job   to schedule.
+     * @param delay between the end of a run and the start of the next one in ms.
+     */
+    private synchronized void schedule(Runnable job, long delay) {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "TimeTree-" + getId());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        scheduler.scheduleWithFixedDelay(job, delay, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void shutdown() {
+        try {
+            database.unregisterTransactionEventHandler(eventPresenceHandler);
+        } catch (IllegalStateException e) {
+            //never started
+        }
+
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            try {
+                if (!scheduler.awaitTermination(10, TimeUnit.SECONDS)) {
+                    LOG.warn("Time tree background jobs did not terminate in time");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            scheduler = null;
+        }
+
+        if (configuration.getStatsFlush() > 0) {
+            try {
+                TimeTreeStats.getInstance(database).flush(database);
+            } catch (Exception e) {
+                LOG.warn("Could not store time tree statistics on shutdown", e);
+            }
+        }
+
+        if (sidecarIndex != null) {
+            sidecarIndex.close();
+        }
+
+        super.shutdown();
+    }
+
+    /**
+     * Get all time trees in the database, with the options of this module.
+     *
+     * @return roots.
+     */
+    public TimeTreeRoots getRoots() {
+        return roots;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public TimeTreeConfiguration getConfiguration() {
         return configuration;
     }
 
@@ -82,6 +249,56 @@ public class TimeTreeModule extends BaseTxDrivenModule<Void> {
         return null;
     }
 
+    /**
+     * Update the {@link EventPresence} (bitmaps and timestamp bounds) of time instants, to which events have been
+     * attached or from which they have been detached in the transaction by other means than this module, e.g. by Cypher,
+     * with relationships of any type. Queries may ask for events of any type, so no bit may be missing for any of them.
+     *
+     * @param transactionData of the transaction, not filtered by the configured inclusion policies.
+     */
+    private void updateEventPresence(TransactionData transactionData) {
+        for (Relationship created : transactionData.createdRelationships()) {
+            if (timeTreeRelationships.contains(created.getType().name())) {
+                continue;
+            }
+
+            for (Node node : created.getNodes()) {
+                if (isInstant(node)) {
+                    EventPresence.attached(node, getTimestamp(created.getOtherNode(node)));
+                }
+            }
+        }
+
+        for (Relationship deleted : transactionData.deletedRelationships()) {
+            if (timeTreeRelationships.contains(deleted.getType().name())) {
+                continue;
+            }
+
+            for (Node node : deleted.getNodes()) {
+                Node instant;
+                try {
+                    instant = database.getNodeById(node.getId());
+                } catch (NotFoundException e) {
+                    //deleted in this transaction
+                    continue;
+                }
+
+                if (isInstant(instant)) {
+                    EventPresence.detached(instant, configuration.getTimestampProperty(), null);
+                }
+            }
+        }
+    }
+
+    private boolean isInstant(Node node) {
+        return node.hasRelationship(CHILD, Direction.INCOMING);
+    }
+
+    private Long getTimestamp(Node event) {
+        Object timestamp = event.getProperty(configuration.getTimestampProperty(), null);
+        return timestamp instanceof Number ? ((Number) timestamp).longValue() : null;
+    }
+
     private boolean shouldReattach(ImprovedTransactionData transactionData, Change<Node> change) {
         return transactionData.hasPropertyBeenCreated(change.getCurrent(), configuration.getTimestampProperty())
                 || transactionData.hasPropertyBeenCreated(change.getCurrent(), configuration.getCustomTimeTreeRootProperty())
@@ -137,7 +354,7 @@ public class TimeTreeModule extends BaseTxDrivenModule<Void> {
 
         TimedEvents timedEventsToUse;
         if (configuration.getCustomTimeTreeRootProperty() != null && created.hasProperty(configuration.getCustomTimeTreeRootProperty())) {
-            timedEventsToUse = new TimeTreeBackedEvents(new CustomRootTimeTree(created.getGraphDatabase().getNodeById(getLong(created, configuration.getCustomTimeTreeRootProperty()))));
+            timedEventsToUse = new TimeTreeBackedEvents(roots.getTree(created.getGraphDatabase().getNodeById(getLong(created, configuration.getCustomTimeTreeRootProperty()))), configuration.getTimestampProperty(), configuration.getSplitThreshold());
         } else {
             timedEventsToUse = timedEvents;
         }
@@ -147,7 +364,9 @@ public class TimeTreeModule extends BaseTxDrivenModule<Void> {
 
     private void deleteTimeTreeRelationship(Node changed) {
         for (Relationship r : changed.getRelationships(Direction.OUTGOING, configuration.getRelationshipType())) {
+            Node instant = r.getEndNode();
             r.delete();
+            EventPresence.detached(instant, configuration.getTimestampProperty(), null);
         }
     }
 }
@@ -18,10 +18,13 @@ package com.graphaware.module.timetree.module;
 
 import com.graphaware.common.policy.NodeInclusionPolicy;
 import com.graphaware.module.timetree.domain.Resolution;
+import com.graphaware.module.timetree.domain.TimeZones;
+import com.graphaware.module.timetree.metrics.TimeTreeMetrics;
 import com.graphaware.runtime.config.function.StringToNodeInclusionPolicy;
 import com.graphaware.runtime.module.RuntimeModule;
 import com.graphaware.runtime.module.RuntimeModuleBootstrapper;
 import org.joda.time.DateTimeZone;
+import org.joda.time.Period;
 import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.DynamicRelationshipType;
 import org.neo4j.graphdb.GraphDatabaseService;
@@ -30,7 +33,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Map;
-import java.util.TimeZone;
 
 /**
  * Bootstraps the {@link com.graphaware.module.timetree.module.TimeTreeModule} in server mode.
@@ -47,6 +49,24 @@ public class TimeTreeModuleBootstrapper implements RuntimeModuleBootstrapper {
     private static final String RELATIONSHIP = "relationship";
     private static final String DIRECTION = "direction";
     private static final String AUTO_ATTACH = "autoAttach";
+    private static final String SPLIT_THRESHOLD = "splitThreshold";
+    private static final String METRICS = "metrics";
+    private static final String RETENTION = "retention";
+    private static final String RETENTION_DELETE_EVENTS = "retentionDeleteEvents";
+    private static final String RETENTION_BATCH_SIZE = "retentionBatchSize";
+    private static final String RETENTION_INSTANTS_PER_RUN = "retentionInstantsPerRun";
+    private static final String RETENTION_INTERVAL = "retentionInterval";
+    private static final String COMPACTION = "compaction";
+    private static final String COMPACTION_INSTANTS_PER_RUN = "compactionInstantsPerRun";
+    private static final String COMPACTION_INTERVAL = "compactionInterval";
+    private static final String WARM_AHEAD = "warmAhead";
+    private static final String WARM_AHEAD_DEPTH = "warmAheadDepth";
+    private static final String WARM_AHEAD_INTERVAL = "warmAheadInterval";
+    private static final String BUCKET_KEYS = "bucketKeys";
+    private static final String SIDECAR_INDEX = "sidecarIndex";
+    private static final String EVENT_PRESENCE = "eventPresence";
+    private static final String STATS_RECOMPUTE = "statsRecompute";
+    private static final String STATS_FLUSH = "statsFlush";
 
     /**
      * {@inheritDoc}
@@ -80,7 +100,7 @@ public class TimeTreeModuleBootstrapper implements RuntimeModuleBootstrapper {
         }
 
         if (config.get(TIME_ZONE) != null) {
-            DateTimeZone timeZone = DateTimeZone.forTimeZone(TimeZone.getTimeZone(config.get(TIME_ZONE)));
+            DateTimeZone timeZone = TimeZones.forId(config.get(TIME_ZONE));
             LOG.info("Time zone set to {}", timeZone);
             configuration = configuration.withTimeZone(timeZone);
         }
@@ -103,6 +123,113 @@ public class TimeTreeModuleBootstrapper implements RuntimeModuleBootstrapper {
             configuration = configuration.withAutoAttach(autoAttach);
         }
 
+        if (config.get(SPLIT_THRESHOLD) != null) {
+            int splitThreshold = Integer.valueOf(config.get(SPLIT_THRESHOLD));
+            LOG.info("Split threshold set to {}", splitThreshold);
+            configuration = configuration.withSplitThreshold(splitThreshold);
+        }
+
+        if (config.get(METRICS) != null) {
+            boolean metrics = Boolean.valueOf(config.get(METRICS));
+            LOG.info("Metrics set to {}", metrics);
+            TimeTreeMetrics.getInstance().setEnabled(metrics);
+        }
+
+        if (config.get(RETENTION) != null) {
+            Retention retention = Retention.of(Period.parse(config.get(RETENTION)));
+
+            if (config.get(RETENTION_DELETE_EVENTS) != null) {
+                retention = retention.withDeleteEvents(Boolean.valueOf(config.get(RETENTION_DELETE_EVENTS)));
+            }
+
+            if (config.get(RETENTION_BATCH_SIZE) != null) {
+                retention = retention.withBatchSize(Integer.valueOf(config.get(RETENTION_BATCH_SIZE)));
+            }
+
+            if (config.get(RETENTION_INSTANTS_PER_RUN) != null) {
+                retention = retention.withInstantsPerRun(Integer.valueOf(config.get(RETENTION_INSTANTS_PER_RUN)));
+            }
+
+            if (config.get(RETENTION_INTERVAL) != null) {
+                retention = retention.withInterval(Long.valueOf(config.get(RETENTION_INTERVAL)));
+            }
+
+            LOG.info("Retention set to {}", retention);
+            configuration = configuration.withRetention(retention);
+        }
+
+        if (config.get(COMPACTION) != null) {
+            Compaction compaction = null;
+
+            //e.g. DAY:P30D,HOUR:P1D
+            for (String threshold : config.get(COMPACTION).split(",")) {
+                String[] parts = threshold.trim().split(":");
+                if (parts.length != 2) {
+                    throw new IllegalArgumentException("Invalid compaction threshold " + threshold + ", expected e.g. DAY:P30D");
+                }
+
+                Resolution resolution = Resolution.valueOf(parts[0].trim().toUpperCase());
+                Period olderThan = Period.parse(parts[1].trim());
+                compaction = compaction == null ? Compaction.of(resolution, olderThan) : compaction.with(resolution, olderThan);
+            }
+
+            if (config.get(COMPACTION_INSTANTS_PER_RUN) != null) {
+                compaction = compaction.withInstantsPerRun(Integer.valueOf(config.get(COMPACTION_INSTANTS_PER_RUN)));
+            }
+
+            if (config.get(COMPACTION_INTERVAL) != null) {
+                compaction = compaction.withInterval(Long.valueOf(config.get(COMPACTION_INTERVAL)));
+            }
+
+            LOG.info("Compaction set to {}", compaction);
+            configuration = configuration.withCompaction(compaction);
+        }
+
+        if (config.get(WARM_AHEAD) != null) {
+            WarmAhead warmAhead = WarmAhead.of(Period.parse(config.get(WARM_AHEAD)));
+
+            if (config.get(WARM_AHEAD_DEPTH) != null) {
+                warmAhead = warmAhead.withDepth(Resolution.valueOf(config.get(WARM_AHEAD_DEPTH).toUpperCase()));
+            }
+
+            if (config.get(WARM_AHEAD_INTERVAL) != null) {
+                warmAhead = warmAhead.withInterval(Long.valueOf(config.get(WARM_AHEAD_INTERVAL)));
+            }
+
+            LOG.info("Warm-ahead set to {}", warmAhead);
+            configuration = configuration.withWarmAhead(warmAhead);
+        }
+
+        if (config.get(BUCKET_KEYS) != null) {
+            boolean bucketKeys = Boolean.valueOf(config.get(BUCKET_KEYS));
+            LOG.info("Bucket keys set to {}", bucketKeys);
+            configuration = configuration.withBucketKeys(bucketKeys);
+        }
+
+        if (config.get(SIDECAR_INDEX) != null) {
+            String sidecarIndex = config.get(SIDECAR_INDEX);
+            LOG.info("Sidecar index set to {}", sidecarIndex);
+            configuration = configuration.withSidecarIndex(sidecarIndex);
+        }
+
+        if (config.get(EVENT_PRESENCE) != null) {
+            boolean eventPresence = Boolean.valueOf(config.get(EVENT_PRESENCE));
+            LOG.info("Event presence set to {}", eventPresence);
+            configuration = configuration.withEventPresence(eventPresence);
+        }
+
+        if (config.get(STATS_RECOMPUTE) != null) {
+            long statsRecompute = Long.valueOf(config.get(STATS_RECOMPUTE));
+            LOG.info("Statistics recompute interval set to {} ms", statsRecompute);
+            configuration = configuration.withStatsRecompute(statsRecompute);
+        }
+
+        if (config.get(STATS_FLUSH) != null) {
+            long statsFlush = Long.valueOf(config.get(STATS_FLUSH));
+            LOG.info("Statistics flush interval set to {} ms", statsFlush);
+            configuration = configuration.withStatsFlush(statsFlush);
+        }
+
         return new TimeTreeModule(moduleId, configuration, database);
     }
 }
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree.module;
+
+import com.graphaware.module.timetree.CustomRootTimeTree;
+import com.graphaware.module.timetree.SingleTimeTree;
+import com.graphaware.module.timetree.TimeTree;
+import com.graphaware.module.timetree.TimeTreeOptions;
+import com.graphaware.module.timetree.domain.Resolution;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.ResourceIterator;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.graphaware.module.timetree.domain.Resolution.findForNode;
+import static com.graphaware.module.timetree.domain.TimeTreeLabels.TimeTreeRoot;
+import static com.graphaware.module.timetree.domain.TimeTreeLabels.Year;
+import static com.graphaware.module.timetree.domain.TimeTreeRelationshipTypes.CHILD;
+import static com.graphaware.module.timetree.domain.TimeTreeRelationshipTypes.FIRST;
+import static org.neo4j.graphdb.Direction.INCOMING;
+import static org.neo4j.graphdb.Direction.OUTGOING;
+
+/**
+ * All time trees in a database, i.e. the default tree with a {@link com.graphaware.module.timetree.domain.TimeTreeLabels#TimeTreeRoot}
+ * and trees with custom roots, used by the {@link TimeTreeModule}'s background jobs.
+ * <p/>
+ * {@link TimeTree}s for custom roots are created once and cached, with the same {@link TimeTreeOptions} as the default
+ * tree, until {@link #findRoots()} finds that their root has been deleted.
+ */
+public class TimeTreeRoots {
+
+    private final GraphDatabaseService database;
+    private final TimeTree defaultTree;
+    private final TimeTreeOptions options;
+    private final ConcurrentMap<Long, TimeTree> customTrees = new ConcurrentHashMap<>();
+
+    /**
+     * Create a new instance.
+     *
+     * @param database    containing the trees.
+     * @param defaultTree tree with the default root.
+     */
+    public TimeTreeRoots(GraphDatabaseService database, TimeTree defaultTree) {
+        this(database, defaultTree, TimeTreeOptions.defaults());
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param database    containing the trees.
+     * @param defaultTree tree with the default root.
+     * @param options     of trees with custom roots, should be the same as those of the default tree.
+     */
+    public TimeTreeRoots(GraphDatabaseService database, TimeTree defaultTree, TimeTreeOptions options) {
+        this.database = database;
+        this.defaultTree = defaultTree;
+        this.options = options;
+    }
+
+    /**
+     * Find the roots of all non-empty trees in the database, i.e. all parents of year nodes. Must be called within a
+     * transaction. Cached trees, whose roots have been deleted, are evicted. Trees whose roots merely have no years (yet)
+     * are kept, since they may be in use.
+     *
+     * @return roots.
+     */
+    public Set<Node> findRoots() {
+        Set<Node> roots = new LinkedHashSet<>();
+
+        try (ResourceIterator<Node> years = database.findNodes(Year)) {
+            while (years.hasNext()) {
+                Relationship toParent = years.next().getSingleRelationship(CHILD, INCOMING);
+                if (toParent != null) {
+                    roots.add(toParent.getStartNode());
+                }
+            }
+        }
+
+        //trees whose roots have been deleted in the meantime
+        for (Long rootNodeId : customTrees.keySet()) {
+            if (isDeleted(rootNodeId)) {
+                evict(rootNodeId);
+            }
+        }
+
+        return roots;
+    }
+
+    private boolean isDeleted(long rootNodeId) {
+        try {
+            database.getNodeById(rootNodeId);
+            return false;
+        } catch (NotFoundException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Forget the cached tree with a custom root, e.g. because it has been removed.
+     *
+     * @param rootNodeId ID of the root of the tree.
+     */
+    public void evict(long rootNodeId) {
+        TimeTree tree = customTrees.remove(rootNodeId);
+        if (tree instanceof SingleTimeTree) {
+            ((SingleTimeTree) tree).shutdown();
+        }
+    }
+
+    /**
+     * Get the tree with the default root.
+     *
+     * @return tree.
+     */
+    public TimeTree getDefaultTree() {
+        return defaultTree;
+    }
+
+    /**
+     * Find the oldest node of a tree at the given resolution, or at a coarser one if the tree has no nodes at the given
+     * resolution under its oldest branch. Must be called within a transaction.
+     *
+     * @param root       of the tree.
+     * @param resolution to find the oldest node at.
+     * @return oldest node, null if the tree is empty.
+     */
+    public Node findOldest(Node root, Resolution resolution) {
+        Relationship first = root.getSingleRelationship(FIRST, OUTGOING);
+        if (first == null) {
+            return null;
+        }
+
+        Node oldest = first.getEndNode();
+        while (!findForNode(oldest).equals(resolution) && oldest.hasRelationship(FIRST, OUTGOING)) {
+            oldest = oldest.getSingleRelationship(FIRST, OUTGOING).getEndNode();
+        }
+
+        return oldest;
+    }
+
+    /**
+     * Get the time tree with the given root. Must be called within a transaction.
+     *
+     * @param root of the tree.
+     * @return tree.
+     */
+    public TimeTree getTree(Node root) {
+        if (root.hasLabel(TimeTreeRoot)) {
+            return defaultTree;
+        }
+
+        TimeTree tree = customTrees.get(root.getId());
+        if (tree == null) {
+            tree = new CustomRootTimeTree(root, options);
+            TimeTree existing = customTrees.putIfAbsent(root.getId(), tree);
+            if (existing != null) {
+                tree = existing;
+            }
+        }
+
+        return tree;
+    }
+}
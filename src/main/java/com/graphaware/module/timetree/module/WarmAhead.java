@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree.module;
+
+import com.graphaware.module.timetree.domain.Resolution;
+import org.joda.time.Period;
+
+/**
+ * Warm-ahead policy of the {@link TimeTreeModule}. Time instants (at the configured resolution) starting within the
+ * lead time from now are periodically pre-created in all trees in the database, so that the first events of a new
+ * period find their instant already in place and don't have to create it under the tree's write lock.
+ * <p/>
+ * Optionally, the children of the pre-created instants are pre-created as well, down to a finer resolution (depth),
+ * which is useful when events of busy instants are attached at a finer resolution (see
+ * {@link TimeTreeConfiguration#withSplitThreshold(int)}).
+ */
+public final class WarmAhead {
+
+    private static final long DEFAULT_INTERVAL = 60 * 1000;
+
+    private final Period leadTime;
+    private final Resolution depth;
+    private final long interval;
+
+    /**
+     * Create a warm-ahead policy with the given lead time and default settings, i.e. instants are only pre-created at
+     * the resolution of the module and it runs every minute.
+     * <p/>
+     * Change the policy by using the fluent with* methods.
+     *
+     * @param leadTime how far ahead instants are pre-created, e.g. <code>Period.hours(1)</code>.
+     * @return policy.
+     */
+    public static WarmAhead of(Period leadTime) {
+        return new WarmAhead(leadTime, null, DEFAULT_INTERVAL);
+    }
+
+    private WarmAhead(Period leadTime, Resolution depth, long interval) {
+        if (leadTime == null) {
+            throw new IllegalArgumentException("Warm-ahead lead time must not be null");
+        }
+
+        if (interval < 1) {
+            throw new IllegalArgumentException("Warm-ahead interval must be positive");
+        }
+
+        this.leadTime = leadTime;
+        this.depth = depth;
+        this.interval = interval;
+    }
+
+    /**
+     * Create a new instance of this {@link WarmAhead} with different depth.
+     *
+     * @param depth finest resolution of pre-created instants, must not be coarser than the resolution of the module.
+     *              <code>null</code> for the resolution of the module.
+     * @return new instance.
+     */
+    public WarmAhead withDepth(Resolution depth) {
+        return new WarmAhead(leadTime, depth, interval);
+    }
+
+    /**
+     * Create a new instance of this {@link WarmAhead} with different interval.
+     *
+     * @param interval between two runs in ms. Should be shorter than the lead time.
+     * @return new instance.
+     */
+    public WarmAhead withInterval(long interval) {
+        return new WarmAhead(leadTime, depth, interval);
+    }
+
+    public Period getLeadTime() {
+        return leadTime;
+    }
+
+    public Resolution getDepth() {
+        return depth;
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        WarmAhead that = (WarmAhead) o;
+
+        if (interval != that.interval) return false;
+        if (depth != that.depth) return false;
+        if (!leadTime.equals(that.leadTime)) return false;
+
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        int result = leadTime.hashCode();
+        result = 31 * result + (depth != null ? depth.hashCode() : 0);
+        result = 31 * result + (int) (interval ^ (interval >>> 32));
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "WarmAhead{leadTime=" + leadTime + ", depth=" + depth + ", interval=" + interval + "}";
+    }
+}
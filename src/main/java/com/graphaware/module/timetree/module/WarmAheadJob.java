@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree.module;
+
+import com.graphaware.module.timetree.TimeTree;
+import com.graphaware.module.timetree.domain.Resolution;
+import com.graphaware.module.timetree.domain.TimeInstant;
+import org.joda.time.DateTimeField;
+import org.joda.time.DateTimeZone;
+import org.joda.time.chrono.ISOChronology;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Background job of the {@link TimeTreeModule} that pre-creates time instants starting within the {@link WarmAhead}
+ * lead time in all trees in the database. See {@link WarmAhead} for details.
+ * <p/>
+ * Trees whose upcoming instants all exist are only read, so that a run that has caught up holds each tree's root lock
+ * only for a short lookup and writes nothing.
+ */
+public class WarmAheadJob implements Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WarmAheadJob.class);
+
+    private final GraphDatabaseService database;
+    private final TimeTreeConfiguration configuration;
+    private final TimeTreeRoots roots;
+    private final Resolution depth;
+
+    /**
+     * Create a new job.
+     *
+     * @param database      to pre-create instants in.
+     * @param configuration of the module, must have a {@link WarmAhead}.
+     * @param roots         of all trees in the database.
+     */
+    public WarmAheadJob(GraphDatabaseService database, TimeTreeConfiguration configuration, TimeTreeRoots roots) {
+        WarmAhead warmAhead = configuration.getWarmAhead();
+
+        if (warmAhead == null) {
+            throw new IllegalArgumentException("Configuration has no warm-ahead policy");
+        }
+
+        if (warmAhead.getDepth() != null && warmAhead.getDepth().compareTo(configuration.getResolution()) < 0) {
+            throw new IllegalArgumentException("Warm-ahead depth " + warmAhead.getDepth() + " must not be coarser than the resolution " + configuration.getResolution());
+        }
+
+        this.database = database;
+        this.configuration = configuration;
+        this.roots = roots;
+        this.depth = warmAhead.getDepth() != null ? warmAhead.getDepth() : configuration.getResolution();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void run() {
+        try {
+            warmUp(System.currentTimeMillis());
+        } catch (Exception e) {
+            LOG.warn("Time tree warm-ahead run failed, will retry in " + configuration.getWarmAhead().getInterval() + " ms", e);
+        }
+    }
+
+    /**
+     * Perform a single run, i.e. make sure that all instants from the current one to the one containing
+     * <code>now + lead time</code> (at the configured resolution), and their children down to the configured depth,
+     * exist in every tree.
+     *
+     * @param now current time in UTC millis.
+     * @return number of trees, in which instants have been created.
+     */
+    public int warmUp(long now) {
+        DateTimeZone timezone = configuration.getTimeZone();
+        DateTimeField field = configuration.getResolution().getDateTimeField(timezone);
+
+        long from = field.roundFloor(now);
+        long to = field.add(field.roundFloor(ISOChronology.getInstance(timezone).add(configuration.getWarmAhead().getLeadTime(), now, 1)), 1) - 1;
+
+        TimeInstant start = TimeInstant.instant(from).with(depth).with(timezone);
+        TimeInstant end = TimeInstant.instant(to).with(depth).with(timezone);
+        int expected = count(from, to, depth.getDateTimeField(timezone));
+
+        int warmed = 0;
+        for (Node root : findRoots()) {
+            try {
+                if (warmUp(root, start, end, expected)) {
+                    warmed++;
+                }
+            } catch (NotFoundException e) {
+                //the tree has been removed in the meantime
+            }
+        }
+
+        if (warmed > 0) {
+            LOG.debug("Warm-ahead pre-created instants up to " + end + " in " + warmed + " trees");
+        }
+
+        return warmed;
+    }
+
+    private boolean warmUp(Node root, TimeInstant start, TimeInstant end, int expected) {
+        try (Transaction tx = database.beginTx()) {
+            TimeTree tree = roots.getTree(database.getNodeById(root.getId()));
+
+            if (tree.getInstants(start, end).size() >= expected) {
+                tx.success();
+                return false;
+            }
+
+            tree.getOrCreateInstants(start, end);
+            tx.success();
+            return true;
+        }
+    }
+
+    private int count(long from, long to, DateTimeField field) {
+        int result = 0;
+        for (long instant = from; instant <= to; instant = field.add(instant, 1)) {
+            result++;
+        }
+        return result;
+    }
+
+    private List<Node> findRoots() {
+        try (Transaction tx = database.beginTx()) {
+            List<Node> result = new ArrayList<>(roots.findRoots());
+            tx.success();
+            return result;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree;
+
+import com.graphaware.module.timetree.domain.TimeInstant;
+import com.graphaware.module.timetree.module.BucketKeysJob;
+import com.graphaware.test.integration.DatabaseIntegrationTest;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.helpers.collection.IteratorUtil;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.graphaware.module.timetree.BucketKeys.BUCKET_PROPERTY;
+import static com.graphaware.module.timetree.domain.Resolution.DAY;
+import static com.graphaware.module.timetree.domain.Resolution.HOUR;
+import static com.graphaware.module.timetree.domain.TimeTreeLabels.Day;
+import static com.graphaware.module.timetree.domain.TimeTreeLabels.Hour;
+import static org.junit.Assert.*;
+
+/**
+ * Test for {@link BucketKeys} and their use by {@link SingleTimeTree}.
+ */
+public class BucketKeysTest extends DatabaseIntegrationTest {
+
+    private static final DateTimeZone PRAGUE = DateTimeZone.forID("Europe/Prague");
+
+    private final long time = new DateTime(2015, 4, 5, 10, 30, DateTimeZone.UTC).getMillis();
+    private final long localKey = new DateTime(2015, 4, 5, 12, 0, DateTimeZone.UTC).getMillis();
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+
+        BucketKeys.createIndexes(getDatabase());
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            getDatabase().schema().awaitIndexesOnline(10, TimeUnit.SECONDS);
+            tx.success();
+        }
+    }
+
+    @Test
+    public void instantsShouldBeFoundByBucketKeysInTheirOwnTree() {
+        TimeTree timeTree = new SingleTimeTree(getDatabase(), TimeTreeOptions.defaults().withBucketKeys(true));
+        TimeInstant timeInstant = TimeInstant.instant(time).with(HOUR).with(PRAGUE);
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            TimeTree customTree = new CustomRootTimeTree(getDatabase().createNode(), TimeTreeOptions.defaults().withBucketKeys(true));
+
+            Node instant = timeTree.getOrCreateInstant(timeInstant);
+            Node customInstant = customTree.getOrCreateInstant(timeInstant);
+
+            //12:00 local time in Prague (CEST)
+            assertEquals(localKey, instant.getProperty(BUCKET_PROPERTY));
+            assertEquals(localKey, customInstant.getProperty(BUCKET_PROPERTY));
+            assertEquals(2, IteratorUtil.count(getDatabase().findNodes(Hour, BUCKET_PROPERTY, localKey)));
+
+            assertEquals(instant, timeTree.getInstant(timeInstant));
+            assertEquals(customInstant, customTree.getInstant(timeInstant));
+            assertNull(timeTree.getInstant(timeInstant.with(DateTimeZone.UTC)));
+
+            tx.success();
+        }
+    }
+
+    @Test
+    public void existingInstantsShouldBeFoundAndGetBucketKeys() {
+        TimeInstant timeInstant = TimeInstant.instant(time).with(DAY);
+
+        Node instant;
+        try (Transaction tx = getDatabase().beginTx()) {
+            instant = new SingleTimeTree(getDatabase()).getOrCreateInstant(timeInstant);
+            assertFalse(instant.hasProperty(BUCKET_PROPERTY));
+            tx.success();
+        }
+
+        TimeTree timeTree = new SingleTimeTree(getDatabase(), TimeTreeOptions.defaults().withBucketKeys(true));
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            assertEquals(instant, timeTree.getInstant(timeInstant));
+            tx.success();
+        }
+
+        //year, month and day
+        assertEquals(3, new BucketKeysJob(getDatabase()).index());
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            assertEquals(new DateTime(2015, 4, 5, 0, 0, DateTimeZone.UTC).getMillis(), instant.getProperty(BUCKET_PROPERTY));
+            assertEquals(instant, getDatabase().findNodes(Day, BUCKET_PROPERTY, instant.getProperty(BUCKET_PROPERTY)).next());
+            assertEquals(instant, timeTree.getInstant(timeInstant));
+            tx.success();
+        }
+    }
+}
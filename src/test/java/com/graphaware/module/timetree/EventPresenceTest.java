@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree;
+
+import com.graphaware.module.timetree.domain.Event;
+import com.graphaware.module.timetree.domain.QueryOptions;
+import com.graphaware.module.timetree.domain.TimeInstant;
+import com.graphaware.module.timetree.module.TimeTreeConfiguration;
+import com.graphaware.module.timetree.module.TimeTreeModule;
+import com.graphaware.runtime.GraphAwareRuntime;
+import com.graphaware.runtime.GraphAwareRuntimeFactory;
+import com.graphaware.test.integration.DatabaseIntegrationTest;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.Collections;
+import java.util.List;
+
+import static com.graphaware.module.timetree.EventPresence.getBitmap;
+import static com.graphaware.module.timetree.SingleTimeTree.parent;
+import static com.graphaware.module.timetree.domain.Resolution.HOUR;
+import static com.graphaware.module.timetree.domain.Resolution.MINUTE;
+import static org.junit.Assert.*;
+import static org.neo4j.graphdb.Direction.INCOMING;
+import static org.neo4j.graphdb.Direction.OUTGOING;
+
+/**
+ * Test for {@link EventPresence} and its use by {@link TimeTreeBackedEvents}.
+ */
+public class EventPresenceTest extends DatabaseIntegrationTest {
+
+    private static final RelationshipType AT_TIME = DynamicRelationshipType.withName("AT_TIME");
+    private static final String TIMESTAMP = "timestamp";
+
+    private TimeTree timeTree;
+    private TimedEvents timedEvents;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+
+        timeTree = new SingleTimeTree(getDatabase(), TimeTreeOptions.defaults().withEventPresence(true));
+        timedEvents = new TimeTreeBackedEvents(timeTree);
+    }
+
+    @Test
+    public void bitmapsShouldBeMaintainedOnAttachAndDetach() {
+        Node first, second;
+        try (Transaction tx = getDatabase().beginTx()) {
+            first = attach(10, 5);
+            second = attach(10, 45);
+            timeTree.getOrCreateInstant(minute(10, 30));
+            tx.success();
+        }
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node hour = parent(timeTree.getInstant(minute(10, 5)));
+
+            assertTrue(EventPresence.contains(getBitmap(hour), 5));
+            assertTrue(EventPresence.contains(getBitmap(hour), 45));
+            assertFalse(EventPresence.contains(getBitmap(hour), 30));
+            assertTrue(EventPresence.contains(getBitmap(parent(hour)), 10));
+            assertEquals(2, timedEvents.getEvents(minute(10, 0), minute(10, 59)).size());
+
+            detach(first);
+            tx.success();
+        }
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node hour = parent(timeTree.getInstant(minute(10, 5)));
+
+            assertFalse(EventPresence.contains(getBitmap(hour), 5));
+            assertTrue(EventPresence.contains(getBitmap(hour), 45));
+            assertTrue(EventPresence.contains(getBitmap(parent(hour)), 10));
+
+            detach(second);
+            tx.success();
+        }
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node hour = parent(timeTree.getInstant(minute(10, 5)));
+            Node year = parent(parent(parent(hour)));
+
+            assertFalse(EventPresence.contains(getBitmap(hour), 45));
+            assertFalse(EventPresence.contains(getBitmap(parent(hour)), 10));
+            assertFalse(EventPresence.contains(getBitmap(year), 4));
+            assertTrue(timedEvents.getEvents(minute(10, 0), minute(10, 59)).isEmpty());
+            tx.success();
+        }
+    }
+
+    @Test
+    public void childrenWithoutEventsShouldBeSkipped() {
+        TimeTree customTree;
+        try (Transaction tx = getDatabase().beginTx()) {
+            attach(10, 5);
+
+            //bypasses event presence, so the instant looks empty
+            getDatabase().createNode().createRelationshipTo(timeTree.getOrCreateInstant(minute(10, 30)), AT_TIME);
+
+            customTree = new CustomRootTimeTree(getDatabase().createNode());
+            getDatabase().createNode().createRelationshipTo(customTree.getOrCreateInstant(minute(10, 30)), AT_TIME);
+            tx.success();
+        }
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            assertEquals(1, timedEvents.getEvents(minute(10, 0), minute(10, 59)).size());
+            assertEquals(1, timedEvents.getEvents(minute(10, 30).with(HOUR)).size());
+
+            //instants without bitmaps have all their children visited
+            assertNull(getBitmap(parent(customTree.getInstant(minute(10, 30)))));
+            assertEquals(1, new TimeTreeBackedEvents(customTree).getEvents(minute(10, 30).with(HOUR)).size());
+            tx.success();
+        }
+    }
+
+    @Test
+    public void eventsAttachedWithAnyTypeShouldBeAccountedForWhileModuleRuns() {
+        GraphAwareRuntime runtime = GraphAwareRuntimeFactory.createRuntime(getDatabase());
+        runtime.registerModule(new TimeTreeModule("timetree", TimeTreeConfiguration.defaultConfiguration().withEventPresence(true), getDatabase()));
+        runtime.start();
+
+        RelationshipType happenedAt = DynamicRelationshipType.withName("HAPPENED_AT");
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            timeTree.getOrCreateInstants(minute(10, 0), minute(10, 59));
+            tx.success();
+        }
+
+        //bypasses TimeTreeBackedEvents, with a type the module isn't configured with
+        try (Transaction tx = getDatabase().beginTx()) {
+            getDatabase().createNode().createRelationshipTo(timeTree.getInstant(minute(10, 30)), happenedAt);
+            tx.success();
+        }
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            assertTrue(EventPresence.contains(getBitmap(parent(timeTree.getInstant(minute(10, 30)))), 30));
+            assertEquals(1, timedEvents.getEvents(minute(10, 0), minute(10, 59), Collections.singleton(happenedAt)).size());
+            tx.success();
+        }
+    }
+
+    @Test
+    public void boundsShouldBeMaintainedAndUsedByQueries() {
+        Node earliest;
+        try (Transaction tx = getDatabase().beginTx()) {
+            earliest = attach(10, 5, 10);
+            attach(10, 5, 50);
+            attach(10, 45, 0);
+            tx.success();
+        }
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node minute = timeTree.getInstant(minute(10, 5));
+            Node hour = parent(minute);
+
+            assertEquals(millis(10, 5, 10), (long) EventPresence.getMinTimestamp(minute));
+            assertEquals(millis(10, 5, 50), (long) EventPresence.getMaxTimestamp(minute));
+            assertEquals(millis(10, 5, 10), (long) EventPresence.getMinTimestamp(hour));
+            assertEquals(millis(10, 45, 0), (long) EventPresence.getMaxTimestamp(hour));
+            assertNull(EventPresence.getMinTimestamp(timeTree.getOrCreateInstant(minute(10, 30))));
+
+            QueryOptions exact = QueryOptions.defaultOptions().withExactBoundaries(true);
+            assertEquals(2, timedEvents.getEvents(TimeInstant.instant(millis(10, 5, 30)).with(MINUTE), TimeInstant.instant(millis(10, 50, 0)).with(MINUTE), null, INCOMING, exact).size());
+            assertEquals(3, timedEvents.getEvents(TimeInstant.instant(millis(10, 5, 0)).with(MINUTE), TimeInstant.instant(millis(10, 50, 0)).with(MINUTE), null, INCOMING, exact).size());
+
+            List<Event> latest = timedEvents.getLatestEvents(2, TimeInstant.instant(millis(10, 40, 0)).with(MINUTE), null);
+            assertEquals(2, latest.size());
+            assertEquals(millis(10, 5, 50), latest.get(0).getNode().getProperty(TIMESTAMP));
+            assertEquals(millis(10, 5, 10), latest.get(1).getNode().getProperty(TIMESTAMP));
+
+            detach(earliest);
+            tx.success();
+        }
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node minute = timeTree.getInstant(minute(10, 5));
+
+            assertEquals(millis(10, 5, 50), (long) EventPresence.getMinTimestamp(minute));
+            assertEquals(millis(10, 5, 50), (long) EventPresence.getMinTimestamp(parent(minute)));
+            assertEquals(millis(10, 45, 0), (long) EventPresence.getMaxTimestamp(parent(minute)));
+            tx.success();
+        }
+    }
+
+    private Node attach(int hour, int minute) {
+        return attach(hour, minute, 0);
+    }
+
+    private Node attach(int hour, int minute, int second) {
+        Node event = getDatabase().createNode();
+        event.setProperty(TIMESTAMP, millis(hour, minute, second));
+        timedEvents.attachEvent(event, AT_TIME, minute(hour, minute));
+        return event;
+    }
+
+    private void detach(Node event) {
+        Relationship relationship = event.getSingleRelationship(AT_TIME, OUTGOING);
+        Node instant = relationship.getEndNode();
+        relationship.delete();
+        EventPresence.detached(instant, TIMESTAMP, (Long) event.getProperty(TIMESTAMP));
+    }
+
+    private static TimeInstant minute(int hour, int minute) {
+        return TimeInstant.instant(millis(hour, minute, 0)).with(MINUTE);
+    }
+
+    private static long millis(int hour, int minute, int second) {
+        return new DateTime(2015, 4, 5, hour, minute, second, DateTimeZone.UTC).getMillis();
+    }
+}
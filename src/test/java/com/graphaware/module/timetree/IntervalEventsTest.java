@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree;
+
+import com.graphaware.module.timetree.domain.Event;
+import com.graphaware.module.timetree.domain.Resolution;
+import com.graphaware.module.timetree.domain.TimeInstant;
+import com.graphaware.module.timetree.domain.TimeTreeLabels;
+import com.graphaware.test.integration.DatabaseIntegrationTest;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.List;
+
+import static com.graphaware.module.timetree.domain.Resolution.*;
+import static org.junit.Assert.*;
+import static org.neo4j.graphdb.Direction.INCOMING;
+
+/**
+ * Test for interval events, i.e. {@link TimedEvents#attachInterval(Node, RelationshipType, TimeInstant, TimeInstant)}
+ * and {@link TimedEvents#getOverlappingEvents(TimeInstant, TimeInstant, java.util.Set)}.
+ */
+public class IntervalEventsTest extends DatabaseIntegrationTest {
+
+    private static final RelationshipType DURING = DynamicRelationshipType.withName("DURING");
+
+    private TimeTree timeTree;
+    private TimedEvents timedEvents;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+
+        timeTree = new SingleTimeTree(getDatabase());
+        timedEvents = new TimeTreeBackedEvents(timeTree);
+    }
+
+    @Test
+    public void periodShouldBeCoveredByMinimalSetOfInstants() {
+        List<TimeInstant> covering = TimeInstant.getCoveringInstants(instant(2015, 1, 30, 22, 0, HOUR), instant(2015, 3, 1, 1, 0, HOUR));
+
+        assertEquals(6, covering.size());
+        assertCovering(covering.get(0), instant(2015, 1, 30, 22, 0, HOUR));
+        assertCovering(covering.get(1), instant(2015, 1, 30, 23, 0, HOUR));
+        assertCovering(covering.get(2), instant(2015, 1, 31, 0, 0, DAY));
+        assertCovering(covering.get(3), instant(2015, 2, 1, 0, 0, MONTH));
+        assertCovering(covering.get(4), instant(2015, 3, 1, 0, 0, HOUR));
+        assertCovering(covering.get(5), instant(2015, 3, 1, 1, 0, HOUR));
+
+        //whole years and a single instant
+        covering = TimeInstant.getCoveringInstants(instant(2014, 1, 1, 0, 0, DAY), instant(2015, 12, 31, 0, 0, DAY));
+        assertEquals(2, covering.size());
+        assertCovering(covering.get(0), instant(2014, 1, 1, 0, 0, YEAR));
+        assertCovering(covering.get(1), instant(2015, 1, 1, 0, 0, YEAR));
+
+        covering = TimeInstant.getCoveringInstants(instant(2015, 1, 30, 22, 15, MINUTE), instant(2015, 1, 30, 22, 15, MINUTE));
+        assertEquals(1, covering.size());
+        assertCovering(covering.get(0), instant(2015, 1, 30, 22, 15, MINUTE));
+    }
+
+    @Test
+    public void intervalShouldBeAttachedToCoveringInstants() {
+        Node session;
+        try (Transaction tx = getDatabase().beginTx()) {
+            session = getDatabase().createNode();
+            assertTrue(timedEvents.attachInterval(session, DURING, instant(2015, 1, 30, 22, 0, HOUR), instant(2015, 3, 1, 1, 0, HOUR)));
+            assertFalse(timedEvents.attachInterval(session, DURING, INCOMING, instant(2015, 1, 30, 22, 0, HOUR), instant(2015, 3, 1, 1, 0, HOUR)));
+            tx.success();
+        }
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            assertEquals(6, session.getDegree(DURING));
+            assertNotNull(timeTree.getInstant(instant(2015, 2, 1, 0, 0, MONTH)));
+            assertNull(timeTree.getInstant(instant(2015, 2, 1, 0, 0, DAY)));
+
+            TimeTreeInvariants.assertConsistent(getDatabase().findNodes(TimeTreeLabels.TimeTreeRoot).next());
+            tx.success();
+        }
+    }
+
+    @Test
+    public void overlappingEventsShouldBeFoundInAncestorsAndDescendants() {
+        Node session, point;
+        try (Transaction tx = getDatabase().beginTx()) {
+            session = getDatabase().createNode();
+            timedEvents.attachInterval(session, DURING, instant(2015, 1, 30, 22, 0, HOUR), instant(2015, 3, 1, 1, 0, HOUR));
+
+            point = getDatabase().createNode();
+            timedEvents.attachEvent(point, DURING, instant(2015, 2, 10, 10, 15, MINUTE));
+            tx.success();
+        }
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            //no instants exist within the range, the session is found via the month it is attached to
+            assertEvents(timedEvents.getOverlappingEvents(instant(2015, 2, 10, 10, 0, MINUTE), instant(2015, 2, 10, 10, 10, MINUTE), null), session);
+            assertEvents(timedEvents.getOverlappingEvents(instant(2015, 2, 10, 10, 0, MINUTE), instant(2015, 2, 10, 10, 30, MINUTE), null), session, point);
+
+            //the session is attached to several instants within the range, but returned once
+            assertEvents(timedEvents.getOverlappingEvents(instant(2015, 1, 1, 0, 0, YEAR), instant(2015, 1, 1, 0, 0, YEAR), null), session, point);
+            assertEvents(timedEvents.getOverlappingEvents(instant(2015, 1, 31, 0, 0, DAY), instant(2015, 3, 31, 0, 0, DAY), null), session, point);
+
+            //edges of the interval
+            assertEvents(timedEvents.getOverlappingEvents(instant(2015, 1, 30, 21, 0, HOUR), instant(2015, 1, 30, 22, 0, HOUR), null), session);
+            assertEvents(timedEvents.getOverlappingEvents(instant(2015, 1, 30, 20, 0, HOUR), instant(2015, 1, 30, 21, 0, HOUR), null));
+            assertEvents(timedEvents.getOverlappingEvents(instant(2015, 3, 1, 1, 59, MINUTE), instant(2015, 3, 1, 2, 0, MINUTE), null), session);
+            assertEvents(timedEvents.getOverlappingEvents(instant(2015, 3, 1, 2, 0, MINUTE), instant(2015, 3, 5, 0, 0, MINUTE), null));
+
+            //plain range queries only see events attached within the range
+            assertTrue(timedEvents.getEvents(instant(2015, 2, 10, 10, 0, MINUTE), instant(2015, 2, 10, 10, 10, MINUTE)).isEmpty());
+            tx.success();
+        }
+    }
+
+    private void assertEvents(List<Event> events, Node... expected) {
+        assertEquals(expected.length, events.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], events.get(i).getNode());
+        }
+    }
+
+    private void assertCovering(TimeInstant actual, TimeInstant expected) {
+        assertEquals(expected.getTime(), actual.getTime());
+        assertEquals(expected.getResolution(), actual.getResolution());
+    }
+
+    private static TimeInstant instant(int year, int month, int day, int hour, int minute, Resolution resolution) {
+        return TimeInstant.instant(new DateTime(year, month, day, hour, minute, DateTimeZone.UTC).getMillis()).with(resolution);
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree;
+
+import com.graphaware.module.timetree.domain.Event;
+import com.graphaware.module.timetree.domain.QueryOptions;
+import com.graphaware.module.timetree.domain.TimeInstant;
+import com.graphaware.test.integration.DatabaseIntegrationTest;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.neo4j.graphdb.Direction.INCOMING;
+import static org.neo4j.graphdb.DynamicRelationshipType.withName;
+
+/**
+ * Test for {@link MultiRootEvents}.
+ */
+public class MultiRootEventsTest extends DatabaseIntegrationTest {
+
+    private static final RelationshipType AT_TIME = withName("AT_TIME");
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    private MultiRootEvents multiRootEvents;
+    private final List<Long> roots = new ArrayList<>();
+    private long day1, day2, day3;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+
+        multiRootEvents = new MultiRootEvents(getDatabase(), "timestamp", 2);
+
+        day1 = new DateTime(2015, 4, 5, 0, 0, DateTimeZone.UTC).getMillis();
+        day2 = new DateTime(2015, 4, 6, 0, 0, DateTimeZone.UTC).getMillis();
+        day3 = new DateTime(2015, 4, 8, 0, 0, DateTimeZone.UTC).getMillis();
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            TimedEvents first = events();
+            TimedEvents second = events();
+            TimedEvents third = events();
+
+            attachWithTimestamp(first, "a", day1 + 8 * HOUR);
+            attachWithTimestamp(second, "b", day1 + 9 * HOUR);
+            attachWithTimestamp(first, "c", day1 + 10 * HOUR);
+            attachWithTimestamp(third, "d", day2 + 7 * HOUR);
+            attachWithTimestamp(second, "e", day2 + 20 * HOUR);
+            attachWithTimestamp(first, "f", day3 + 6 * HOUR);
+            attachWithTimestamp(third, "g", day3 + 12 * HOUR);
+
+            tx.success();
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        multiRootEvents.shutdown();
+        super.tearDown();
+    }
+
+    @Test
+    public void eventsOfAllTreesShouldBeMergedInChronologicalOrder() {
+        try (Transaction tx = getDatabase().beginTx()) {
+            assertEquals(Arrays.asList("a", "b", "c", "d", "e", "f", "g"), query(QueryOptions.defaultOptions()));
+            assertEquals(Arrays.asList("a", "b", "c"), query(QueryOptions.defaultOptions().withLimit(3)));
+            assertEquals(Arrays.asList("g", "f", "e", "d"), query(QueryOptions.defaultOptions().withDescending(true).withLimit(4)));
+            assertEquals(Arrays.asList("b", "c", "d", "e"), names(multiRootEvents.getEvents(roots,
+                    TimeInstant.instant(day1 + 9 * HOUR), TimeInstant.instant(day2 + 23 * HOUR), null, INCOMING,
+                    QueryOptions.defaultOptions().withExactBoundaries(true))));
+            assertEquals(Arrays.asList("a", "c", "f"), names(multiRootEvents.getEvents(roots.subList(0, 1),
+                    TimeInstant.instant(day1), TimeInstant.instant(day3), null, INCOMING, QueryOptions.defaultOptions())));
+            tx.success();
+        }
+    }
+
+    @Test
+    public void parallelQueryShouldReturnSameEventsAsSequentialOne() {
+        try (Transaction tx = getDatabase().beginTx()) {
+            assertEquals(Arrays.asList("a", "b", "c", "d", "e", "f", "g"), query(QueryOptions.defaultOptions().withParallel(true)));
+            assertEquals(Arrays.asList("a", "b", "c", "d"), query(QueryOptions.defaultOptions().withParallel(true).withLimit(4)));
+            assertEquals(Arrays.asList("g", "f", "e"), query(QueryOptions.defaultOptions().withParallel(true).withDescending(true).withLimit(3)));
+            tx.success();
+        }
+    }
+
+    private List<String> query(QueryOptions options) {
+        return names(multiRootEvents.getEvents(roots, TimeInstant.instant(day1), TimeInstant.instant(day3), Collections.singleton(AT_TIME), INCOMING, options));
+    }
+
+    private TimedEvents events() {
+        Node root = getDatabase().createNode();
+        roots.add(root.getId());
+        return new TimeTreeBackedEvents(new CustomRootTimeTree(root));
+    }
+
+    private void attachWithTimestamp(TimedEvents timedEvents, String name, long timestamp) {
+        Node event = getDatabase().createNode();
+        event.setProperty("name", name);
+        event.setProperty("timestamp", timestamp);
+        timedEvents.attachEvent(event, AT_TIME, TimeInstant.instant(timestamp));
+    }
+
+    private List<String> names(List<Event> events) {
+        List<String> result = new ArrayList<>();
+        for (Event event : events) {
+            result.add((String) event.getNode().getProperty("name"));
+        }
+        return result;
+    }
+}
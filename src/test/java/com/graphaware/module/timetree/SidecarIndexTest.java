@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree;
+
+import com.graphaware.module.timetree.domain.TimeInstant;
+import com.graphaware.module.timetree.module.SidecarIndexJob;
+import com.graphaware.module.timetree.module.TimeTreeRoots;
+import com.graphaware.test.integration.DatabaseIntegrationTest;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+
+import java.io.File;
+import java.io.IOException;
+
+import static com.graphaware.module.timetree.SidecarIndex.DEFAULT_TREE;
+import static com.graphaware.module.timetree.domain.Resolution.DAY;
+import static com.graphaware.module.timetree.domain.Resolution.HOUR;
+import static org.junit.Assert.*;
+
+/**
+ * Test for {@link SidecarIndex} and its use by {@link SingleTimeTree}.
+ */
+public class SidecarIndexTest extends DatabaseIntegrationTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final long time = new DateTime(2015, 4, 5, 10, 30, DateTimeZone.UTC).getMillis();
+
+    @Test
+    public void entriesShouldSurviveCleanCloseAndGrowth() throws IOException {
+        File file = new File(temporaryFolder.getRoot(), "timetree.idx");
+
+        SidecarIndex index = SidecarIndex.open(file);
+        assertTrue(index.isStale());
+
+        //more than the initial capacity
+        for (int i = 0; i < 100000; i++) {
+            index.put(i % 2 == 0 ? DEFAULT_TREE : 7, HOUR, i * 3600000L, i);
+        }
+        index.remove(DEFAULT_TREE, HOUR, 0);
+        index.removeRange(7, 3600000L, 3 * 3600000L + 1);
+        index.close();
+
+        index = SidecarIndex.open(file);
+        assertFalse(index.isStale());
+        assertEquals(100000 - 3, index.size());
+        assertEquals(-1, index.get(DEFAULT_TREE, HOUR, 0));
+        assertEquals(-1, index.get(7, HOUR, 3600000L));
+        assertEquals(-1, index.get(7, HOUR, 3 * 3600000L));
+        assertEquals(2, index.get(DEFAULT_TREE, HOUR, 2 * 3600000L));
+        assertEquals(99999, index.get(7, HOUR, 99999 * 3600000L));
+        assertEquals(-1, index.get(7, DAY, 99999 * 3600000L));
+
+        //not closed, i.e. possibly out of date
+        index = SidecarIndex.open(file);
+        assertTrue(index.isStale());
+        assertEquals(0, index.size());
+        index.close();
+    }
+
+    @Test
+    public void treeShouldMaintainIndexAndIgnoreInvalidEntries() throws IOException {
+        SidecarIndex index = SidecarIndex.open(new File(temporaryFolder.getRoot(), "timetree.idx"));
+        TimeTree timeTree = new SingleTimeTree(getDatabase(), TimeTreeOptions.defaults().withSidecarIndex(index));
+        TimeInstant timeInstant = TimeInstant.instant(time).with(HOUR);
+        long bucket = new DateTime(2015, 4, 5, 10, 0, DateTimeZone.UTC).getMillis();
+
+        Node instant;
+        Node other;
+        try (Transaction tx = getDatabase().beginTx()) {
+            instant = timeTree.getOrCreateInstant(timeInstant);
+            other = timeTree.getOrCreateInstant(timeInstant.with(DAY));
+            tx.success();
+        }
+
+        assertEquals(instant.getId(), index.get(DEFAULT_TREE, HOUR, bucket));
+
+        //entry pointing to a wrong node is replaced
+        index.put(DEFAULT_TREE, HOUR, bucket, other.getId());
+        try (Transaction tx = getDatabase().beginTx()) {
+            assertEquals(instant, timeTree.getInstant(timeInstant));
+            tx.success();
+        }
+        assertEquals(instant.getId(), index.get(DEFAULT_TREE, HOUR, bucket));
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            timeTree.removeInstant(instant);
+            tx.success();
+        }
+        assertEquals(-1, index.get(DEFAULT_TREE, HOUR, bucket));
+
+        //a custom tree representing the same period has its own entries
+        Node customRoot;
+        try (Transaction tx = getDatabase().beginTx()) {
+            customRoot = getDatabase().createNode();
+            new CustomRootTimeTree(customRoot).getOrCreateInstant(timeInstant);
+            tx.success();
+        }
+
+        SidecarIndexJob job = new SidecarIndexJob(getDatabase(), new TimeTreeRoots(getDatabase(), timeTree), index);
+        //the default tree has been emptied by removing its only hour, the custom one has a year, month, day and hour
+        assertEquals(4, job.rebuild());
+        assertTrue(index.get(customRoot.getId(), HOUR, bucket) >= 0);
+        assertEquals(-1, index.get(DEFAULT_TREE, HOUR, bucket));
+
+        index.close();
+    }
+}
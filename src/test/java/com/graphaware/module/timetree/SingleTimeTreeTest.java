@@ -16,6 +16,7 @@
 
 package com.graphaware.module.timetree;
 
+import com.graphaware.common.util.IterableUtils;
 import com.graphaware.common.util.PropertyContainerUtils;
 import com.graphaware.module.timetree.domain.TimeInstant;
 import com.graphaware.module.timetree.domain.TimeTreeLabels;
@@ -25,7 +26,11 @@ import org.joda.time.DateTimeZone;
 import org.junit.Before;
 import org.junit.Test;
 import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
 import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
+import org.neo4j.helpers.collection.IteratorUtil;
 import org.neo4j.tooling.GlobalGraphOperations;
 
 import java.util.List;
@@ -1180,6 +1185,162 @@ public class SingleTimeTreeTest extends DatabaseIntegrationTest {
                 "({ev:2})");
     }
 
+    @Test
+    public void shouldRemoveAllInBatches() {
+        try (Transaction tx = getDatabase().beginTx()) {
+            List<Node> days = timeTree.getOrCreateInstants(TimeInstant.instant(dateToMillis(2000, 1, 1)), TimeInstant.instant(dateToMillis(2000, 3, 10)));
+
+            Node ev1 = getDatabase().createNode();
+            ev1.setProperty("ev", 1);
+            Node ev2 = getDatabase().createNode();
+            ev2.setProperty("ev", 2);
+
+            days.get(0).createRelationshipTo(ev1, withName("VALUE"));
+            ev2.createRelationshipTo(days.get(40), withName("AT_TIME"));
+            tx.success();
+        }
+
+        //70 days, 3 months, 1 year and the root
+        assertEquals(75, timeTree.removeAll(7));
+
+        assertSameGraph(getDatabase(), "create " +
+                "({ev:1})," +
+                "({ev:2})");
+    }
+
+    @Test
+    public void shouldRemoveRangeOfInstantsAndEmptyParents() {
+        Node event;
+        try (Transaction tx = getDatabase().beginTx()) {
+            List<Node> days = timeTree.getOrCreateInstants(TimeInstant.instant(dateToMillis(2000, 1, 25)), TimeInstant.instant(dateToMillis(2000, 3, 5)));
+
+            event = getDatabase().createNode();
+            days.get(16).createRelationshipTo(event, withName("AT_TIME"));
+            tx.success();
+        }
+
+        //30th and 31st January, the whole of February (29 days and the month itself), 1st and 2nd March
+        assertEquals(34, timeTree.removeInstants(TimeInstant.instant(dateToMillis(2000, 1, 30)), TimeInstant.instant(dateToMillis(2000, 3, 2)), false));
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            TimeTreeInvariants.assertConsistent(IterableUtils.getSingleOrNull(getDatabase().findNodes(TimeTreeLabels.TimeTreeRoot)));
+
+            assertEquals(2, IteratorUtil.count(getDatabase().findNodes(TimeTreeLabels.Month)));
+            assertEquals(8, IteratorUtil.count(getDatabase().findNodes(TimeTreeLabels.Day)));
+            assertNull(timeTree.getInstant(TimeInstant.instant(dateToMillis(2000, 2, 10))));
+
+            assertEquals(0, getDatabase().getNodeById(event.getId()).getDegree());
+            tx.success();
+        }
+    }
+
+    @Test
+    public void shouldRemoveRangeOfInstantsWithChildrenAndDeleteEvents() {
+        Node event;
+        try (Transaction tx = getDatabase().beginTx()) {
+            timeTree.getOrCreateInstants(TimeInstant.instant(dateToMillis(2000, 1, 1)), TimeInstant.instant(dateToMillis(2000, 1, 10)));
+            timeTree.getOrCreateInstant(TimeInstant.instant(dateToMillis(2000, 1, 2) + 3600 * 1000).with(HOUR));
+            timeTree.getOrCreateInstant(TimeInstant.instant(dateToMillis(2000, 1, 5) + 3600 * 1000).with(HOUR));
+            Node hour = timeTree.getOrCreateInstant(TimeInstant.instant(dateToMillis(2000, 1, 5) + 2 * 3600 * 1000).with(HOUR));
+            timeTree.getOrCreateInstant(TimeInstant.instant(dateToMillis(2000, 1, 9) + 3600 * 1000).with(HOUR));
+
+            event = getDatabase().createNode();
+            event.createRelationshipTo(hour, withName("AT_TIME"));
+            tx.success();
+        }
+
+        //4th, 5th, 6th January and two hours of the 5th
+        assertEquals(5, timeTree.removeInstants(TimeInstant.instant(dateToMillis(2000, 1, 4)), TimeInstant.instant(dateToMillis(2000, 1, 6)), true, 2));
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            TimeTreeInvariants.assertConsistent(IterableUtils.getSingleOrNull(getDatabase().findNodes(TimeTreeLabels.TimeTreeRoot)));
+
+            assertEquals(7, IteratorUtil.count(getDatabase().findNodes(TimeTreeLabels.Day)));
+            assertEquals(2, IteratorUtil.count(getDatabase().findNodes(TimeTreeLabels.Hour)));
+
+            try {
+                getDatabase().getNodeById(event.getId());
+                fail();
+            } catch (NotFoundException e) {
+                //ok
+            }
+            tx.success();
+        }
+    }
+
+    @Test
+    public void rangeShouldBeDetachedBeforeFirstBatchIsCommitted() {
+        try (Transaction tx = getDatabase().beginTx()) {
+            timeTree.getOrCreateInstants(TimeInstant.instant(dateToMillis(2000, 1, 1)), TimeInstant.instant(dateToMillis(2000, 1, 10)));
+            tx.success();
+        }
+
+        //interrupt the removal after its first batch
+        TransactionEventHandler<Void> interruption = new TransactionEventHandler.Adapter<Void>() {
+            private int commits = 0;
+
+            @Override
+            public Void beforeCommit(TransactionData data) throws Exception {
+                if (++commits > 1) {
+                    throw new IllegalStateException("Interrupted");
+                }
+                return null;
+            }
+        };
+
+        getDatabase().registerTransactionEventHandler(interruption);
+        try {
+            timeTree.removeInstants(TimeInstant.instant(dateToMillis(2000, 1, 3)), TimeInstant.instant(dateToMillis(2000, 1, 8)), false, 2);
+            fail();
+        } catch (RuntimeException e) {
+            //ok
+        } finally {
+            getDatabase().unregisterTransactionEventHandler(interruption);
+        }
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node root = IterableUtils.getSingleOrNull(getDatabase().findNodes(TimeTreeLabels.TimeTreeRoot));
+            TimeTreeInvariants.assertConsistent(root);
+
+            assertNull(timeTree.getInstant(TimeInstant.instant(dateToMillis(2000, 1, 5))));
+            assertEquals(4, timeTree.getInstants(TimeInstant.instant(dateToMillis(2000, 1, 1)), TimeInstant.instant(dateToMillis(2000, 1, 10))).size());
+
+            timeTree.getOrCreateInstant(TimeInstant.instant(dateToMillis(2000, 1, 5)));
+            TimeTreeInvariants.assertConsistent(root);
+            assertEquals(5, timeTree.getInstants(TimeInstant.instant(dateToMillis(2000, 1, 1)), TimeInstant.instant(dateToMillis(2000, 1, 10))).size());
+            tx.success();
+        }
+    }
+
+    @Test
+    public void removingEmptyRangeShouldDoNothing() {
+        try (Transaction tx = getDatabase().beginTx()) {
+            timeTree.getOrCreateInstant(TimeInstant.instant(dateToMillis(2000, 1, 1)));
+            timeTree.getOrCreateInstant(TimeInstant.instant(dateToMillis(2000, 1, 10)));
+            tx.success();
+        }
+
+        assertEquals(0, timeTree.removeInstants(TimeInstant.instant(dateToMillis(2000, 1, 2)), TimeInstant.instant(dateToMillis(2000, 1, 9)), true));
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            assertEquals(2, IteratorUtil.count(getDatabase().findNodes(TimeTreeLabels.Day)));
+            tx.success();
+        }
+    }
+
+    @Test
+    public void removingWholeTreeRangeShouldLeaveOnlyRoot() {
+        try (Transaction tx = getDatabase().beginTx()) {
+            timeTree.getOrCreateInstant(TimeInstant.instant(dateToMillis(2000, 1, 1)));
+            timeTree.getOrCreateInstant(TimeInstant.instant(dateToMillis(2001, 6, 10)));
+            tx.success();
+        }
+
+        assertEquals(6, timeTree.removeInstants(TimeInstant.instant(dateToMillis(1999, 1, 1)), TimeInstant.instant(dateToMillis(2002, 1, 1)), true));
+
+        assertSameGraph(getDatabase(), "CREATE (root:TimeTreeRoot)");
+    }
+
     @Test
     public void shouldSupportDatesBefore1970() {
         //Given
@@ -1309,6 +1470,39 @@ public class SingleTimeTreeTest extends DatabaseIntegrationTest {
                 "(h23)-[:NEXT]->(h0)");
     }
 
+    @Test
+    public void currentInstantShouldBeReusedAndSurviveRollback() {
+        try (Transaction tx = getDatabase().beginTx()) {
+            timeTree.getOrCreateInstant(TimeInstant.now());
+            tx.failure();
+        }
+
+        Node now;
+        try (Transaction tx = getDatabase().beginTx()) {
+            now = timeTree.getOrCreateInstant(TimeInstant.now());
+            assertEquals(now, timeTree.getOrCreateInstant(TimeInstant.now()));
+            assertEquals(now, timeTree.getOrCreateInstant(TimeInstant.now().with(DAY)));
+            tx.success();
+        }
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            assertEquals(now, timeTree.getInstant(TimeInstant.now()));
+            assertEquals(now, timeTree.getOrCreateInstant(TimeInstant.now()));
+            assertEquals(1, IteratorUtil.count(getDatabase().findNodes(TimeTreeLabels.Day)));
+            tx.success();
+        }
+
+        //removed by another tree instance
+        new SingleTimeTree(getDatabase()).removeAll();
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node recreated = timeTree.getOrCreateInstant(TimeInstant.now());
+            assertEquals(recreated, timeTree.getInstant(TimeInstant.now()));
+            assertEquals(1, IteratorUtil.count(getDatabase().findNodes(TimeTreeLabels.Day)));
+            tx.success();
+        }
+    }
+
     private long dateToMillis(int year, int month, int day) {
         return dateToDateTime(year, month, day).getMillis();
     }
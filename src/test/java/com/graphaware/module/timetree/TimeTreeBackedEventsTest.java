@@ -17,6 +17,7 @@
 package com.graphaware.module.timetree;
 
 import com.graphaware.module.timetree.domain.Event;
+import com.graphaware.module.timetree.domain.QueryOptions;
 import com.graphaware.module.timetree.domain.Resolution;
 import com.graphaware.module.timetree.domain.TimeInstant;
 import com.graphaware.test.integration.DatabaseIntegrationTest;
@@ -774,6 +775,227 @@ public class TimeTreeBackedEventsTest extends DatabaseIntegrationTest {
         }
     }
 
+    @Test
+    public void eventsOfBusyInstantsShouldBeAttachedToFinerResolution() {
+        TimedEvents splittingEvents = new TimeTreeBackedEvents(new SingleTimeTree(getDatabase()), 2);
+        long noon = dateToMillis(2015, 7, 15) + 12 * 3600 * 1000L;
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node event = null;
+            for (int i = 0; i < 5; i++) {
+                event = getDatabase().createNode();
+                event.setProperty("name", "event" + i);
+                assertTrue(splittingEvents.attachEvent(event, AT_TIME, TimeInstant.instant(noon + i * 1000)));
+            }
+
+            assertFalse(splittingEvents.attachEvent(event, AT_TIME, TimeInstant.instant(noon + 4000)));
+
+            tx.success();
+        }
+
+        assertSameGraph(getDatabase(), "CREATE" +
+                "(root:TimeTreeRoot)," +
+                "(root)-[:FIRST]->(year:Year {value:2015})," +
+                "(root)-[:CHILD]->(year)," +
+                "(root)-[:LAST]->(year)," +
+                "(year)-[:FIRST]->(month:Month {value:7})," +
+                "(year)-[:CHILD]->(month)," +
+                "(year)-[:LAST]->(month)," +
+                "(month)-[:FIRST]->(day:Day {value:15})," +
+                "(month)-[:CHILD]->(day)," +
+                "(month)-[:LAST]->(day)," +
+                "(day)-[:FIRST]->(hour:Hour {value:12})," +
+                "(day)-[:CHILD]->(hour)," +
+                "(day)-[:LAST]->(hour)," +
+                "(hour)-[:FIRST]->(minute:Minute {value:0})," +
+                "(hour)-[:CHILD]->(minute)," +
+                "(hour)-[:LAST]->(minute)," +
+                "(day)<-[:AT_TIME]-({name:'event0'})," +
+                "(day)<-[:AT_TIME]-({name:'event1'})," +
+                "(hour)<-[:AT_TIME]-({name:'event2'})," +
+                "(hour)<-[:AT_TIME]-({name:'event3'})," +
+                "(minute)<-[:AT_TIME]-({name:'event4'})");
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            assertEquals(5, splittingEvents.getEvents(TimeInstant.instant(noon)).size());
+            assertEquals(5, splittingEvents.getEvents(TimeInstant.instant(dateToMillis(2015, 7, 14)), TimeInstant.instant(dateToMillis(2015, 7, 16))).size());
+            tx.success();
+        }
+    }
+
+    @Test
+    public void eventAttachedToFinerResolutionShouldNotBeAttachedAgainAfterDetach() {
+        TimedEvents splittingEvents = new TimeTreeBackedEvents(new SingleTimeTree(getDatabase()), 2);
+        long noon = dateToMillis(2015, 7, 15) + 12 * 3600 * 1000L;
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node first = getDatabase().createNode();
+            assertTrue(splittingEvents.attachEvent(first, AT_TIME, TimeInstant.instant(noon)));
+            assertTrue(splittingEvents.attachEvent(getDatabase().createNode(), AT_TIME, TimeInstant.instant(noon)));
+
+            Node event = getDatabase().createNode();
+            assertTrue(splittingEvents.attachEvent(event, AT_TIME, TimeInstant.instant(noon)));
+
+            //the day is no longer full
+            first.getSingleRelationship(AT_TIME, OUTGOING).delete();
+
+            assertFalse(splittingEvents.attachEvent(event, AT_TIME, TimeInstant.instant(noon)));
+            assertEquals(1, event.getDegree(AT_TIME));
+
+            tx.success();
+        }
+    }
+
+    @Test
+    public void latestAndEarliestEventsShouldBeOrderedByTimestampAndLimited() {
+        long day1 = dateToMillis(2015, 7, 15);
+        long day2 = dateToMillis(2015, 7, 16);
+        long hour = 3600 * 1000L;
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            //attached in a different order than they happened
+            attachWithTimestamp("b", day1 + 12 * hour);
+            attachWithTimestamp("a", day1 + 10 * hour);
+            attachWithTimestamp("d", day2 + 15 * hour);
+            attachWithTimestamp("c", day2 + 9 * hour);
+            tx.success();
+        }
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            assertEquals(Arrays.asList("d", "c", "b"), names(timedEvents.getLatestEvents(3, TimeInstant.instant(day2 + 23 * hour), null)));
+            assertEquals(Arrays.asList("c", "b", "a"), names(timedEvents.getLatestEvents(10, TimeInstant.instant(day2 + 12 * hour), null)));
+            assertEquals(Arrays.asList("b", "c"), names(timedEvents.getEarliestEvents(2, TimeInstant.instant(day1 + 11 * hour), Collections.singleton(AT_TIME))));
+            assertEquals(Collections.<String>emptyList(), names(timedEvents.getEarliestEvents(2, TimeInstant.instant(day1 + 11 * hour), Collections.singleton(AT_OTHER_TIME))));
+            assertEquals(Collections.<String>emptyList(), names(timedEvents.getLatestEvents(2, TimeInstant.instant(day1 - 1), null)));
+            tx.success();
+        }
+    }
+
+    @Test
+    public void exactBoundariesShouldOnlyFilterPartiallyCoveredInstants() {
+        long day1 = dateToMillis(2015, 7, 15);
+        long day2 = dateToMillis(2015, 7, 16);
+        long day3 = dateToMillis(2015, 7, 17);
+        long hour = 3600 * 1000L;
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            attachWithTimestamp("a", day1 + 10 * hour);
+            attachWithTimestamp("b", day1 + 12 * hour);
+            attachWithTimestamp("c", day2 + 9 * hour);
+            attachWithTimestamp("d", day3 + 8 * hour);
+            attachWithTimestamp("e", day3 + 15 * hour);
+
+            Node noTimestamp = getDatabase().createNode();
+            noTimestamp.setProperty("name", "f");
+            timedEvents.attachEvent(noTimestamp, AT_TIME, TimeInstant.instant(day3));
+
+            tx.success();
+        }
+
+        QueryOptions exact = QueryOptions.defaultOptions().withExactBoundaries(true);
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            //order of events attached to the same instant is not defined
+            assertEquals(new HashSet<>(Arrays.asList("a", "b", "c", "d", "e", "f")), new HashSet<>(names(timedEvents.getEvents(TimeInstant.instant(day1 + 11 * hour), TimeInstant.instant(day3 + 9 * hour), null, INCOMING))));
+            assertEquals(new HashSet<>(Arrays.asList("b", "c", "d", "f")), new HashSet<>(names(timedEvents.getEvents(TimeInstant.instant(day1 + 11 * hour), TimeInstant.instant(day3 + 9 * hour), null, INCOMING, exact))));
+            assertEquals(Collections.singletonList("b"), names(timedEvents.getEvents(TimeInstant.instant(day1 + 11 * hour), TimeInstant.instant(day1 + 13 * hour), null, INCOMING, exact)));
+            assertEquals(new HashSet<>(Arrays.asList("a", "b", "c")), new HashSet<>(names(timedEvents.getEvents(TimeInstant.instant(day1), TimeInstant.instant(day3 - 1), null, INCOMING, exact))));
+            tx.success();
+        }
+    }
+
+    @Test
+    public void rangeShouldBeTraversableInBothDirectionsWithLimit() {
+        long hour = 3600 * 1000L;
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            attachWithTimestamp("a", dateToMillis(2015, 7, 15));
+            attachWithTimestamp("b", dateToMillis(2015, 7, 16));
+            attachWithTimestamp("c", dateToMillis(2015, 7, 17));
+            attachWithTimestamp("f", dateToMillis(2015, 7, 25));
+
+            for (String name : Arrays.asList("d", "e")) {
+                Node event = getDatabase().createNode();
+                event.setProperty("name", name);
+                timedEvents.attachEvent(event, AT_TIME, TimeInstant.instant(dateToMillis(2015, 7, 17) + ("d".equals(name) ? 10 : 11) * hour).with(Resolution.HOUR));
+            }
+
+            tx.success();
+        }
+
+        TimeInstant start = TimeInstant.instant(dateToMillis(2015, 7, 15));
+        TimeInstant end = TimeInstant.instant(dateToMillis(2015, 7, 17));
+        QueryOptions descending = QueryOptions.defaultOptions().withDescending(true);
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            assertEquals(Arrays.asList("a", "b", "d", "e", "c"), names(timedEvents.getEvents(start, end, null, INCOMING)));
+            assertEquals(Arrays.asList("c", "e", "d", "b", "a"), names(timedEvents.getEvents(start, end, null, INCOMING, descending)));
+            assertEquals(Arrays.asList("c", "e"), names(timedEvents.getEvents(start, end, null, INCOMING, descending.withLimit(2))));
+            assertEquals(Arrays.asList("a", "b", "d"), names(timedEvents.getEvents(start, end, null, INCOMING, QueryOptions.defaultOptions().withLimit(3))));
+
+            //no instants between 17th and 25th
+            assertEquals(Collections.<String>emptyList(), names(timedEvents.getEvents(TimeInstant.instant(dateToMillis(2015, 7, 20)), TimeInstant.instant(dateToMillis(2015, 7, 21)), null, INCOMING)));
+            assertEquals(Collections.<String>emptyList(), names(timedEvents.getEvents(TimeInstant.instant(dateToMillis(2015, 7, 20)), TimeInstant.instant(dateToMillis(2015, 7, 21)), null, INCOMING, descending)));
+            tx.success();
+        }
+    }
+
+    @Test
+    public void parallelRangeQueryShouldReturnSameEventsAsSequentialOne() {
+        try (Transaction tx = getDatabase().beginTx()) {
+            attachWithTimestamp("z", dateToMillis(2014, 12, 19));
+            attachWithTimestamp("a", dateToMillis(2014, 12, 20));
+            attachWithTimestamp("b", dateToMillis(2014, 12, 31));
+            attachWithTimestamp("c", dateToMillis(2015, 1, 1));
+            attachWithTimestamp("e", dateToMillis(2015, 3, 5));
+            attachWithTimestamp("f", dateToMillis(2015, 12, 31));
+            attachWithTimestamp("g", dateToMillis(2016, 1, 10));
+            attachWithTimestamp("h", dateToMillis(2016, 1, 11));
+
+            Node event = getDatabase().createNode();
+            event.setProperty("name", "d");
+            timedEvents.attachEvent(event, AT_TIME, TimeInstant.instant(dateToMillis(2015, 3, 5) + 3600 * 1000L).with(Resolution.HOUR));
+
+            tx.success();
+        }
+
+        TimeInstant start = TimeInstant.instant(dateToMillis(2014, 12, 20));
+        TimeInstant end = TimeInstant.instant(dateToMillis(2016, 1, 10));
+        QueryOptions parallel = QueryOptions.defaultOptions().withParallel(true);
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            assertEquals(Arrays.asList("a", "b", "c", "d", "e", "f", "g"), names(timedEvents.getEvents(start, end, null, INCOMING, parallel)));
+            assertEquals(Arrays.asList("g", "f", "e", "d", "c", "b", "a"), names(timedEvents.getEvents(start, end, null, INCOMING, parallel.withDescending(true))));
+            assertEquals(names(timedEvents.getEvents(start, end, null, INCOMING)), names(timedEvents.getEvents(start, end, null, INCOMING, parallel)));
+            assertEquals(Arrays.asList("c", "d", "e"), names(timedEvents.getEvents(TimeInstant.instant(dateToMillis(2015, 1, 1)), TimeInstant.instant(dateToMillis(2015, 3, 5)), null, INCOMING, parallel)));
+            assertEquals(Collections.<String>emptyList(), names(timedEvents.getEvents(start, end, Collections.singleton(AT_OTHER_TIME), INCOMING, parallel)));
+            tx.success();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void limitMustBePositive() {
+        try (Transaction tx = getDatabase().beginTx()) {
+            timedEvents.getLatestEvents(0, TimeInstant.now(), null);
+            tx.success();
+        }
+    }
+
+    private void attachWithTimestamp(String name, long timestamp) {
+        Node event = getDatabase().createNode();
+        event.setProperty("name", name);
+        event.setProperty("timestamp", timestamp);
+        timedEvents.attachEvent(event, AT_TIME, TimeInstant.instant(timestamp));
+    }
+
+    private List<String> names(List<Event> events) {
+        List<String> result = new ArrayList<>();
+        for (Event event : events) {
+            result.add((String) event.getNode().getProperty("name"));
+        }
+        return result;
+    }
+
     private long dateToMillis(int year, int month, int day) {
         return dateToDateTime(year, month, day).getMillis();
     }
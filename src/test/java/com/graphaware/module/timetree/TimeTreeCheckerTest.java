@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree;
+
+import com.graphaware.module.timetree.domain.TimeInstant;
+import com.graphaware.module.timetree.domain.TimeTreeLabels;
+import com.graphaware.test.integration.DatabaseIntegrationTest;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.helpers.collection.IteratorUtil;
+
+import static com.graphaware.module.timetree.SingleTimeTree.parent;
+import static com.graphaware.module.timetree.domain.TimeTreeRelationshipTypes.*;
+import static org.junit.Assert.*;
+import static org.neo4j.graphdb.Direction.INCOMING;
+import static org.neo4j.graphdb.Direction.OUTGOING;
+
+/**
+ * Test for {@link TimeTreeChecker}.
+ */
+public class TimeTreeCheckerTest extends DatabaseIntegrationTest {
+
+    private TimeTree timeTree;
+    private TimeTreeChecker checker;
+    private long rootId;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+
+        timeTree = new SingleTimeTree(getDatabase());
+        checker = new TimeTreeChecker(getDatabase(), 5, 2);
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            timeTree.getOrCreateInstants(day(2013, 6, 1), day(2013, 6, 3));
+            timeTree.getOrCreateInstants(day(2014, 12, 30), day(2015, 1, 2));
+            timeTree.getOrCreateInstant(day(2015, 3, 10));
+            rootId = getDatabase().findNodes(TimeTreeLabels.TimeTreeRoot).next().getId();
+            tx.success();
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        checker.shutdown();
+        super.tearDown();
+    }
+
+    @Test
+    public void consistentTreeShouldPass() {
+        ConsistencyReport report = checker.check(rootId, false);
+
+        assertTrue(report.isConsistent());
+        assertEquals(0, report.getViolationCount());
+        assertTrue(report.getViolations().isEmpty());
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            long instants = IteratorUtil.count(getDatabase().findNodes(TimeTreeLabels.Year))
+                    + IteratorUtil.count(getDatabase().findNodes(TimeTreeLabels.Month))
+                    + IteratorUtil.count(getDatabase().findNodes(TimeTreeLabels.Day));
+            assertEquals(instants, report.getCheckedInstants());
+            tx.success();
+        }
+    }
+
+    @Test
+    public void brokenRelationshipsShouldBeFoundAndRepaired() {
+        try (Transaction tx = getDatabase().beginTx()) {
+            //chain across years
+            timeTree.getInstant(day(2015, 1, 1)).getSingleRelationship(NEXT, INCOMING).delete();
+
+            //wrong FIRST
+            Node january = parent(timeTree.getInstant(day(2015, 1, 1)));
+            january.getSingleRelationship(FIRST, OUTGOING).delete();
+            january.createRelationshipTo(timeTree.getInstant(day(2015, 1, 2)), FIRST);
+
+            //superfluous LAST
+            Node december = parent(timeTree.getInstant(day(2014, 12, 30)));
+            december.createRelationshipTo(timeTree.getInstant(day(2014, 12, 30)), LAST);
+
+            tx.success();
+        }
+
+        ConsistencyReport report = checker.check(rootId, false);
+        assertFalse(report.isConsistent());
+        assertEquals(3, report.getViolationCount());
+        assertEquals(0, report.getRepairCount());
+        assertEquals(3, report.getViolations().size());
+
+        report = checker.check(rootId, true);
+        assertTrue(report.isConsistent());
+        assertEquals(3, report.getViolationCount());
+        assertEquals(3, report.getRepairCount());
+
+        assertEquals(0, checker.check(rootId, false).getViolationCount());
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            TimeTreeInvariants.assertConsistent(getDatabase().getNodeById(rootId));
+            tx.success();
+        }
+    }
+
+    @Test
+    public void duplicatesShouldOnlyBeReported() {
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node january = parent(timeTree.getInstant(day(2015, 1, 1)));
+
+            Node duplicate = getDatabase().createNode(TimeTreeLabels.Day);
+            duplicate.setProperty("value", 1);
+            january.createRelationshipTo(duplicate, CHILD);
+
+            january.createRelationshipTo(getDatabase().createNode(TimeTreeLabels.Day), CHILD);
+            tx.success();
+        }
+
+        ConsistencyReport report = checker.check(rootId, true);
+
+        assertFalse(report.isConsistent());
+        assertEquals(2, report.getViolationCount());
+        assertEquals(0, report.getRepairCount());
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            assertEquals(timeTree.getInstant(day(2015, 1, 1)), parent(timeTree.getInstant(day(2015, 1, 1))).getSingleRelationship(FIRST, OUTGOING).getEndNode());
+            tx.success();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void batchSizeMustBePositive() {
+        new TimeTreeChecker(getDatabase(), 0, 1);
+    }
+
+    private static TimeInstant day(int year, int month, int day) {
+        return TimeInstant.instant(new DateTime(year, month, day, 0, 0, DateTimeZone.UTC).getMillis());
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+
+import java.util.*;
+
+import static com.graphaware.common.util.PropertyContainerUtils.getInt;
+import static com.graphaware.module.timetree.SingleTimeTree.VALUE_PROPERTY;
+import static com.graphaware.module.timetree.domain.TimeTreeRelationshipTypes.*;
+import static org.junit.Assert.fail;
+import static org.neo4j.graphdb.Direction.INCOMING;
+import static org.neo4j.graphdb.Direction.OUTGOING;
+
+/**
+ * Verifies structural invariants of a time tree. Must be used within a transaction.
+ * <p/>
+ * The invariants are:
+ * <ul>
+ * <li>every parent with children has exactly one FIRST and one LAST relationship, every parent without children has none</li>
+ * <li>FIRST points to the child with the lowest value, LAST to the one with the highest value</li>
+ * <li>no two children of the same parent have the same value</li>
+ * <li>NEXT relationships chain all nodes of each level, in order, with no gaps</li>
+ * </ul>
+ */
+public final class TimeTreeInvariants {
+
+    /**
+     * Verify the invariants of the tree rooted at the given node and fail if any of them is violated.
+     *
+     * @param root of the tree.
+     */
+    public static void assertConsistent(Node root) {
+        List<String> violations = verify(root);
+        if (!violations.isEmpty()) {
+            fail("Time tree rooted at " + root + " is inconsistent: " + violations);
+        }
+    }
+
+    /**
+     * Verify the invariants of the tree rooted at the given node.
+     *
+     * @param root of the tree.
+     * @return violations, empty if there are none.
+     */
+    public static List<String> verify(Node root) {
+        List<String> violations = new LinkedList<>();
+
+        List<Node> level = Collections.singletonList(root);
+        while (!level.isEmpty()) {
+            List<Node> childLevel = new ArrayList<>();
+            for (Node parent : level) {
+                childLevel.addAll(verifyChildren(parent, violations));
+            }
+            verifyChain(childLevel, violations);
+            level = childLevel;
+        }
+
+        return violations;
+    }
+
+    private static List<Node> verifyChildren(Node parent, List<String> violations) {
+        List<Node> children = new ArrayList<>();
+        for (Relationship child : parent.getRelationships(CHILD, OUTGOING)) {
+            children.add(child.getEndNode());
+        }
+
+        int firsts = count(parent, FIRST, OUTGOING);
+        int lasts = count(parent, LAST, OUTGOING);
+
+        if (children.isEmpty()) {
+            if (firsts != 0 || lasts != 0) {
+                violations.add(parent + " has no children but has " + firsts + " FIRST and " + lasts + " LAST relationships");
+            }
+            return children;
+        }
+
+        if (firsts != 1 || lasts != 1) {
+            violations.add(parent + " has " + firsts + " FIRST and " + lasts + " LAST relationships");
+            return sorted(children);
+        }
+
+        children = sorted(children);
+
+        Set<Integer> values = new HashSet<>();
+        for (Node child : children) {
+            if (!values.add(getInt(child, VALUE_PROPERTY))) {
+                violations.add(parent + " has more than one child with value " + getInt(child, VALUE_PROPERTY));
+            }
+            if (count(child, CHILD, INCOMING) != 1) {
+                violations.add(child + " has " + count(child, CHILD, INCOMING) + " parents");
+            }
+        }
+
+        Node first = parent.getSingleRelationship(FIRST, OUTGOING).getEndNode();
+        Node last = parent.getSingleRelationship(LAST, OUTGOING).getEndNode();
+
+        if (!first.equals(children.get(0))) {
+            violations.add(parent + "'s FIRST child " + first + " is not the one with the lowest value");
+        }
+
+        if (!last.equals(children.get(children.size() - 1))) {
+            violations.add(parent + "'s LAST child " + last + " is not the one with the highest value");
+        }
+
+        return children;
+    }
+
+    private static void verifyChain(List<Node> level, List<String> violations) {
+        if (level.isEmpty()) {
+            return;
+        }
+
+        for (Node node : level) {
+            if (count(node, NEXT, OUTGOING) > 1 || count(node, NEXT, INCOMING) > 1) {
+                violations.add(node + " has more than one incoming or outgoing NEXT relationship");
+                return;
+            }
+        }
+
+        if (level.get(0).hasRelationship(NEXT, INCOMING)) {
+            violations.add(level.get(0) + " is the first node of its level but has a previous node");
+        }
+
+        if (level.get(level.size() - 1).hasRelationship(NEXT, OUTGOING)) {
+            violations.add(level.get(level.size() - 1) + " is the last node of its level but has a next node");
+        }
+
+        for (int i = 0; i < level.size() - 1; i++) {
+            Relationship next = level.get(i).getSingleRelationship(NEXT, OUTGOING);
+            if (next == null || !next.getEndNode().equals(level.get(i + 1))) {
+                violations.add(level.get(i) + " is not followed by " + level.get(i + 1) + " in the NEXT chain");
+            }
+        }
+    }
+
+    private static List<Node> sorted(List<Node> children) {
+        Collections.sort(children, new Comparator<Node>() {
+            @Override
+            public int compare(Node o1, Node o2) {
+                return Integer.compare(getInt(o1, VALUE_PROPERTY), getInt(o2, VALUE_PROPERTY));
+            }
+        });
+        return children;
+    }
+
+    private static int count(Node node, RelationshipType type, Direction direction) {
+        int result = 0;
+        for (Relationship ignored : node.getRelationships(type, direction)) {
+            result++;
+        }
+        return result;
+    }
+
+    private TimeTreeInvariants() {
+    }
+}
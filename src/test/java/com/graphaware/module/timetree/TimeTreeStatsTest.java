@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree;
+
+import com.graphaware.module.timetree.domain.Resolution;
+import com.graphaware.module.timetree.domain.TimeInstant;
+import com.graphaware.module.timetree.domain.TimeTreeLabels;
+import com.graphaware.test.integration.DatabaseIntegrationTest;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.DynamicLabel;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.helpers.collection.IteratorUtil;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for {@link TimeTreeStats}.
+ */
+public class TimeTreeStatsTest extends DatabaseIntegrationTest {
+
+    private TimeTree timeTree;
+    private TimedEvents timedEvents;
+    private TimeTreeStats stats;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+
+        timeTree = new SingleTimeTree(getDatabase());
+        timedEvents = new TimeTreeBackedEvents(timeTree);
+        stats = TimeTreeStats.getInstance(getDatabase());
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            timeTree.getOrCreateInstants(day(2014, 12, 30), day(2015, 1, 2));
+
+            for (int i = 0; i < 3; i++) {
+                Node event = getDatabase().createNode(DynamicLabel.label("Event"));
+                event.setProperty("timestamp", day(2015, 1, 1).getTime());
+                timedEvents.attachEvent(event, DynamicRelationshipType.withName("AT_TIME"), day(2015, 1, 1));
+            }
+
+            tx.success();
+        }
+    }
+
+    @Test
+    public void statsShouldBeMaintainedIncrementally() {
+        StatsReport report = stats.getStats(getDatabase(), SidecarIndex.DEFAULT_TREE);
+
+        assertNull(report.getRootNodeId());
+        assertEquals(1, report.getRoots());
+        assertEquals(0, report.getRecomputed());
+        assertEquals(8, report.getInstants());
+
+        assertLevel(report, Resolution.YEAR, 2, 1, 1.0, 0);
+        assertLevel(report, Resolution.MONTH, 2, 2, 2.0, 0);
+        assertLevel(report, Resolution.DAY, 4, 0, 0.0, 3);
+        assertLevel(report, Resolution.HOUR, 0, 0, 0.0, 0);
+    }
+
+    @Test
+    public void statsShouldBeFlushedAndRecomputed() {
+        assertEquals(1, stats.flush(getDatabase()));
+        assertEquals(0, stats.flush(getDatabase()));
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            assertEquals(1, IteratorUtil.count(getDatabase().findNodes(TimeTreeStats.STATS_LABEL)));
+            timeTree.removeInstant(timeTree.getInstant(day(2015, 1, 2)));
+            tx.success();
+        }
+
+        assertLevel(stats.getStats(getDatabase(), SidecarIndex.DEFAULT_TREE), Resolution.DAY, 3, 0, 0.0, 3);
+
+        //rolled back changes aren't counted, not even by the next transaction of the same thread
+        try (Transaction tx = getDatabase().beginTx()) {
+            timeTree.getOrCreateInstant(day(2016, 1, 1));
+            tx.failure();
+        }
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            getDatabase().createNode(DynamicLabel.label("Event"));
+            tx.success();
+        }
+
+        assertEquals(7, stats.getStats(getDatabase(), SidecarIndex.DEFAULT_TREE).getInstants());
+        assertEquals(1, stats.flush(getDatabase()));
+        assertEquals(0, stats.flush(getDatabase()));
+
+        long rootId;
+        try (Transaction tx = getDatabase().beginTx()) {
+            rootId = getDatabase().findNodes(TimeTreeLabels.TimeTreeRoot).next().getId();
+            tx.success();
+        }
+
+        assertEquals(7, stats.recompute(getDatabase(), rootId));
+
+        StatsReport report = stats.getStats(getDatabase(), SidecarIndex.DEFAULT_TREE);
+        assertTrue(report.getRecomputed() > 0);
+        assertEquals(7, report.getInstants());
+        assertLevel(report, Resolution.YEAR, 2, 1, 1.0, 0);
+        assertLevel(report, Resolution.MONTH, 2, 2, 1.5, 0);
+        assertLevel(report, Resolution.DAY, 3, 0, 0.0, 3);
+    }
+
+    @Test
+    public void customRootsShouldHaveSeparateStats() {
+        long rootId;
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node root = getDatabase().createNode(DynamicLabel.label("Root"));
+            rootId = root.getId();
+            new CustomRootTimeTree(root).getOrCreateInstant(day(2015, 1, 1));
+            tx.success();
+        }
+
+        StatsReport report = stats.getStats(getDatabase(), rootId);
+        assertEquals(Long.valueOf(rootId), report.getRootNodeId());
+        assertEquals(2, report.getRoots());
+        assertEquals(3, report.getInstants());
+
+        assertEquals(8, stats.getStats(getDatabase(), SidecarIndex.DEFAULT_TREE).getInstants());
+    }
+
+    private void assertLevel(StatsReport report, Resolution resolution, long instants, long maxFanOut, double averageFanOut, long maxEventDegree) {
+        StatsReport.Level level = report.getLevels().get(resolution.ordinal());
+
+        assertEquals(resolution.name(), level.getResolution());
+        assertEquals(instants, level.getInstants());
+        assertEquals(maxFanOut, level.getMaxFanOut());
+        assertEquals(averageFanOut, level.getAverageFanOut(), 0.001);
+        assertEquals(maxEventDegree, level.getMaxEventDegree());
+    }
+
+    private static TimeInstant day(int year, int month, int day) {
+        return TimeInstant.instant(new DateTime(year, month, day, 0, 0, DateTimeZone.UTC).getMillis());
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree;
+
+import com.graphaware.common.util.IterableUtils;
+import com.graphaware.module.timetree.domain.Resolution;
+import com.graphaware.module.timetree.domain.TimeInstant;
+import com.graphaware.test.integration.DatabaseIntegrationTest;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+import org.neo4j.graphdb.*;
+import org.neo4j.kernel.DeadlockDetectedException;
+import org.neo4j.tooling.GlobalGraphOperations;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.graphaware.module.timetree.TimeTreeInvariants.assertConsistent;
+import static com.graphaware.module.timetree.domain.Resolution.MILLISECOND;
+import static com.graphaware.module.timetree.domain.Resolution.SECOND;
+import static com.graphaware.module.timetree.domain.TimeTreeLabels.TimeTreeRoot;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Multi-threaded stress test of {@link SingleTimeTree} and {@link CustomRootTimeTree}. Many threads attach events
+ * concurrently, after which the structural invariants of the trees are verified.
+ * <p/>
+ * The load can be increased using the <code>timetree.stress.threads</code> and <code>timetree.stress.events</code>
+ * system properties (number of threads and number of events per thread, respectively).
+ */
+public class TimeTreeStressTest extends DatabaseIntegrationTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TimeTreeStressTest.class);
+
+    private static final RelationshipType AT_TIME = DynamicRelationshipType.withName("AT_TIME");
+    private static final Label EVENT = DynamicLabel.label("Event");
+
+    private static final int THREADS = Integer.getInteger("timetree.stress.threads", 8);
+    private static final int EVENTS_PER_THREAD = Integer.getInteger("timetree.stress.events", 250);
+    private static final int MAX_RETRIES = 100;
+
+    private static final long START = new DateTime(2015, 1, 1, 0, 0, DateTimeZone.UTC).getMillis();
+    private static final long SPAN = 3L * 24 * 60 * 60 * 1000;
+
+    @Test
+    public void randomTimestampsShouldProduceConsistentSingleTree() throws InterruptedException {
+        final TimeTree timeTree = new SingleTimeTree(getDatabase());
+
+        StressResult result = stress(new TimestampSource() {
+            @Override
+            public long next(Random random) {
+                return START + (long) (random.nextDouble() * SPAN);
+            }
+        }, new TreeSource() {
+            @Override
+            public TimeTree next(Random random) {
+                return timeTree;
+            }
+        }, SECOND);
+
+        verifySingleRoot(result);
+    }
+
+    @Test
+    public void inOrderTimestampsShouldProduceConsistentSingleTree() throws InterruptedException {
+        final TimeTree timeTree = new SingleTimeTree(getDatabase());
+        final AtomicLong clock = new AtomicLong(START);
+
+        StressResult result = stress(new TimestampSource() {
+            @Override
+            public long next(Random random) {
+                return clock.addAndGet(random.nextInt(10));
+            }
+        }, new TreeSource() {
+            @Override
+            public TimeTree next(Random random) {
+                return timeTree;
+            }
+        }, MILLISECOND);
+
+        verifySingleRoot(result);
+    }
+
+    @Test
+    public void randomTimestampsShouldProduceConsistentCustomRootTrees() throws InterruptedException {
+        final List<TimeTree> timeTrees = new ArrayList<>();
+        final List<Node> roots = new ArrayList<>();
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            for (int i = 0; i < 4; i++) {
+                Node root = getDatabase().createNode();
+                roots.add(root);
+                timeTrees.add(new CustomRootTimeTree(root));
+            }
+            tx.success();
+        }
+
+        StressResult result = stress(new TimestampSource() {
+            @Override
+            public long next(Random random) {
+                return START + (long) (random.nextDouble() * SPAN);
+            }
+        }, new TreeSource() {
+            @Override
+            public TimeTree next(Random random) {
+                return timeTrees.get(random.nextInt(timeTrees.size()));
+            }
+        }, SECOND);
+
+        assertEquals(0, result.failures);
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            for (Node root : roots) {
+                assertConsistent(root);
+            }
+            assertEquals(result.attached, countEvents());
+            tx.success();
+        }
+    }
+
+    private void verifySingleRoot(StressResult result) {
+        assertEquals(0, result.failures);
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node root = IterableUtils.getSingleOrNull(getDatabase().findNodes(TimeTreeRoot));
+            assertNotNull(root);
+            assertConsistent(root);
+            assertEquals(result.attached, countEvents());
+            tx.success();
+        }
+    }
+
+    private StressResult stress(final TimestampSource timestamps, final TreeSource trees, final Resolution resolution) throws InterruptedException {
+        final AtomicInteger attached = new AtomicInteger();
+        final AtomicInteger deadlocks = new AtomicInteger();
+        final AtomicInteger retries = new AtomicInteger();
+        final AtomicInteger failures = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        long start = System.currentTimeMillis();
+
+        for (int t = 0; t < THREADS; t++) {
+            final Random random = new Random(t);
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < EVENTS_PER_THREAD; i++) {
+                        long timestamp = timestamps.next(random);
+                        TimedEvents timedEvents = new TimeTreeBackedEvents(trees.next(random));
+
+                        for (int attempt = 0; ; attempt++) {
+                            try {
+                                attach(timedEvents, timestamp, resolution);
+                                attached.incrementAndGet();
+                                break;
+                            } catch (DeadlockDetectedException e) {
+                                deadlocks.incrementAndGet();
+                            } catch (TransactionFailureException e) {
+                                if (!(e.getCause() instanceof DeadlockDetectedException)) {
+                                    LOG.error("Failed to attach event", e);
+                                    failures.incrementAndGet();
+                                    break;
+                                }
+                                deadlocks.incrementAndGet();
+                            } catch (RuntimeException e) {
+                                LOG.error("Failed to attach event", e);
+                                failures.incrementAndGet();
+                                break;
+                            }
+
+                            if (attempt >= MAX_RETRIES) {
+                                failures.incrementAndGet();
+                                break;
+                            }
+                            retries.incrementAndGet();
+                        }
+                    }
+                }
+            });
+        }
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.MINUTES));
+
+        long duration = Math.max(1, System.currentTimeMillis() - start);
+
+        LOG.info("Attached {} events using {} threads in {} ms ({} events/s), {} deadlocks, {} retries, {} failures",
+                attached.get(), THREADS, duration, attached.get() * 1000L / duration, deadlocks.get(), retries.get(), failures.get());
+
+        return new StressResult(attached.get(), failures.get());
+    }
+
+    private void attach(TimedEvents timedEvents, long timestamp, Resolution resolution) {
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node event = getDatabase().createNode(EVENT);
+            event.setProperty("timestamp", timestamp);
+            timedEvents.attachEvent(event, AT_TIME, TimeInstant.instant(timestamp).with(resolution));
+            tx.success();
+        }
+    }
+
+    private long countEvents() {
+        long result = 0;
+        for (Relationship relationship : GlobalGraphOperations.at(getDatabase()).getAllRelationships()) {
+            if (relationship.isType(AT_TIME)) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    private interface TimestampSource {
+        long next(Random random);
+    }
+
+    private interface TreeSource {
+        TimeTree next(Random random);
+    }
+
+    private static class StressResult {
+        private final long attached;
+        private final int failures;
+
+        private StressResult(long attached, int failures) {
+            this.attached = attached;
+            this.failures = failures;
+        }
+    }
+}
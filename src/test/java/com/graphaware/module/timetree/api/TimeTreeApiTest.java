@@ -22,13 +22,17 @@ import org.apache.http.HttpStatus;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.junit.Test;
+import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.DynamicLabel;
+import org.neo4j.graphdb.DynamicRelationshipType;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Transaction;
+import org.neo4j.helpers.collection.IteratorUtil;
 import org.neo4j.tooling.GlobalGraphOperations;
 
 import static com.graphaware.test.unit.GraphUnit.assertSameGraph;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Integration test for {@link com.graphaware.module.timetree.api.TimeTreeApi}.
@@ -391,6 +395,47 @@ public class TimeTreeApiTest extends GraphAwareApiTest {
         assertEquals("{\"id\":3,\"properties\":{\"value\":5},\"labels\":[\"Day\"]}", result);
     }
 
+    @Test
+    public void treeShouldBeCheckedAndRepaired() {
+        httpClient.get(getUrl() + "check", HttpStatus.SC_NOT_FOUND);
+
+        httpClient.get(getUrl() + "range/" + dateToMillis(2013, 5, 4) + "/" + dateToMillis(2013, 5, 7), HttpStatus.SC_OK);
+
+        String result = httpClient.get(getUrl() + "check", HttpStatus.SC_OK);
+        assertTrue(result.contains("\"checkedInstants\":6"));
+        assertTrue(result.contains("\"consistent\":true"));
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            for (Node day : IteratorUtil.asIterable(getDatabase().findNodes(DynamicLabel.label("Day"), "value", 6))) {
+                day.getSingleRelationship(DynamicRelationshipType.withName("NEXT"), Direction.INCOMING).delete();
+            }
+            tx.success();
+        }
+
+        result = httpClient.get(getUrl() + "check", HttpStatus.SC_OK);
+        assertTrue(result.contains("\"violationCount\":1"));
+        assertTrue(result.contains("\"consistent\":false"));
+
+        result = httpClient.post(getUrl() + "repair", "", HttpStatus.SC_OK);
+        assertTrue(result.contains("\"repairCount\":1"));
+        assertTrue(result.contains("\"consistent\":true"));
+
+        assertTrue(httpClient.get(getUrl() + "check", HttpStatus.SC_OK).contains("\"violationCount\":0"));
+    }
+
+    @Test
+    public void statsShouldBeReturned() {
+        httpClient.get(getUrl() + "range/" + dateToMillis(2013, 5, 4) + "/" + dateToMillis(2013, 5, 7), HttpStatus.SC_OK);
+
+        String result = httpClient.get(getUrl() + "stats", HttpStatus.SC_OK);
+        assertTrue(result.contains("\"instants\":6"));
+        assertTrue(result.contains("\"roots\":1"));
+        assertTrue(result.contains("\"maxFanOut\":4"));
+        assertTrue(result.contains("\"averageFanOut\":4.0"));
+
+        httpClient.get(getUrl() + "123456/stats", HttpStatus.SC_NOT_FOUND);
+    }
+
     private long dateToMillis(int year, int month, int day) {
         return dateToDateTime(year, month, day).getMillis();
     }
@@ -16,6 +16,8 @@
 
 package com.graphaware.module.timetree.api;
 
+import com.graphaware.module.timetree.SingleTimeTree;
+import com.graphaware.module.timetree.TimeTreeBackedEvents;
 import com.graphaware.module.timetree.domain.Resolution;
 import com.graphaware.module.timetree.domain.TimeInstant;
 import com.graphaware.test.integration.GraphAwareApiTest;
@@ -25,6 +27,7 @@ import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.junit.Test;
 import org.neo4j.graphdb.DynamicLabel;
+import org.neo4j.graphdb.DynamicRelationshipType;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Transaction;
 
@@ -725,6 +728,57 @@ public class TimedEventsApiTest extends GraphAwareApiTest {
         assertEquals("[{\"node\":{\"id\":0,\"properties\":{\"name\":\"eventA\"},\"labels\":[\"Event\"]},\"relationshipType\":\"STARTED\",\"direction\":\"INCOMING\"},{\"node\":{\"id\":0,\"properties\":{\"name\":\"eventA\"},\"labels\":[\"Event\"]},\"relationshipType\":\"ENDED\",\"direction\":\"OUTGOING\"}]", getResult);
     }
 
+    @Test
+    public void latestAndEarliestEventsShouldBeReturnedUpToLimit() {
+        long day1 = dateToMillis(2015, 7, 15);
+        long day2 = dateToMillis(2015, 7, 16);
+
+        postEventWithTimestamp(day1 + 10 * 3600 * 1000L);
+        postEventWithTimestamp(day1 + 12 * 3600 * 1000L);
+        postEventWithTimestamp(day2 + 9 * 3600 * 1000L);
+
+        assertEquals("[{\"node\":{\"id\":2,\"properties\":{\"timestamp\":" + (day2 + 9 * 3600 * 1000L) + "},\"labels\":[\"Event\"]},\"relationshipType\":\"AT_TIME\",\"direction\":\"INCOMING\"}," +
+                "{\"node\":{\"id\":1,\"properties\":{\"timestamp\":" + (day1 + 12 * 3600 * 1000L) + "},\"labels\":[\"Event\"]},\"relationshipType\":\"AT_TIME\",\"direction\":\"INCOMING\"}]",
+                httpClient.get(getUrl() + "latest/" + (day2 + 23 * 3600 * 1000L) + "/events?limit=2", HttpStatus.SC_OK));
+
+        assertEquals("[{\"node\":{\"id\":0,\"properties\":{\"timestamp\":" + (day1 + 10 * 3600 * 1000L) + "},\"labels\":[\"Event\"]},\"relationshipType\":\"AT_TIME\",\"direction\":\"INCOMING\"}]",
+                httpClient.get(getUrl() + "earliest/" + day1 + "/events?limit=1", HttpStatus.SC_OK));
+
+        httpClient.get(getUrl() + "latest/" + day2 + "/events?limit=0", HttpStatus.SC_BAD_REQUEST);
+    }
+
+    @Test
+    public void intervalEventsShouldBeReturnedWhenOverlappingRange() {
+        long day1 = dateToMillis(2015, 7, 15);
+        long day2 = dateToMillis(2015, 7, 16);
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node session = getDatabase().createNode(DynamicLabel.label("Session"));
+            new TimeTreeBackedEvents(new SingleTimeTree(getDatabase())).attachInterval(session, DynamicRelationshipType.withName("DURING"),
+                    TimeInstant.instant(day1).with(Resolution.DAY), TimeInstant.instant(day2).with(Resolution.DAY));
+            tx.success();
+        }
+
+        String expected = "[{\"node\":{\"id\":0,\"properties\":{},\"labels\":[\"Session\"]},\"relationshipType\":\"DURING\",\"direction\":\"INCOMING\"}]";
+
+        assertEquals(expected, httpClient.get(getUrl() + "overlap/" + (day2 + 3600 * 1000L) + "/" + (day2 + 2 * 3600 * 1000L) + "/events?resolution=HOUR", HttpStatus.SC_OK));
+        assertEquals(expected, httpClient.get(getUrl() + "overlap/" + day1 + "/" + dateToMillis(2015, 7, 31) + "/events", HttpStatus.SC_OK));
+        assertEquals("[]", httpClient.get(getUrl() + "overlap/" + dateToMillis(2015, 7, 17) + "/" + dateToMillis(2015, 7, 31) + "/events", HttpStatus.SC_OK));
+        assertEquals("[]", httpClient.get(getUrl() + "range/" + (day2 + 3600 * 1000L) + "/" + (day2 + 2 * 3600 * 1000L) + "/events?resolution=HOUR", HttpStatus.SC_OK));
+    }
+
+    private void postEventWithTimestamp(long timestamp) {
+        String eventJson = "{" +
+                "        \"node\": {\"labels\":[\"Event\"], \"properties\":{\"timestamp\":" + timestamp + "}}," +
+                "        \"relationshipType\": \"AT_TIME\"," +
+                "        \"timezone\": \"UTC\"," +
+                "        \"resolution\": \"DAY\"," +
+                "        \"time\": " + timestamp +
+                "    }";
+
+        httpClient.post(getUrl() + "single/event", eventJson, HttpStatus.SC_CREATED);
+    }
+
     private long dateToMillis(int year, int month, int day) {
         return dateToDateTime(year, month, day).getMillis();
     }
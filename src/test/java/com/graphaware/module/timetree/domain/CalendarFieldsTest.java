@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree.domain;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Test for {@link CalendarFields}, verifying it against Joda.
+ */
+public class CalendarFieldsTest {
+
+    private static final String[] ZONES = {"UTC", "GMT+1", "Europe/London", "America/New_York", "Asia/Kolkata", "Australia/Lord_Howe"};
+
+    @Test
+    public void fieldsShouldBeIdenticalToJoda() {
+        Random random = new Random(42);
+
+        for (String zoneId : ZONES) {
+            DateTimeZone zone = TimeZones.forId(zoneId);
+
+            for (int i = 0; i < 20000; i++) {
+                //roughly 1700 to 2240
+                long time = (long) ((random.nextDouble() - 0.5) * 2 * 8500000000000L);
+                verify(time, zone);
+            }
+        }
+    }
+
+    @Test
+    public void fieldsShouldBeIdenticalToJodaAroundInterestingInstants() {
+        long[] times = {
+                0, -1, 1, 999, -999, 1000, -1000,
+                951782400000L, //29/2/2000 UTC
+                951868799999L, //end of 29/2/2000 UTC
+                4107542400000L, //1/3/2100 UTC
+                1414285200000L, //26/10/2014 01:00 UTC, end of DST in London
+                1427590800000L, //29/3/2015 01:00 UTC, start of DST in London
+                -2208988800000L, //1/1/1900 UTC
+        };
+
+        for (String zoneId : ZONES) {
+            DateTimeZone zone = TimeZones.forId(zoneId);
+            for (long time : times) {
+                for (long delta = -2 * CalendarFields.MILLIS_PER_HOUR; delta <= 2 * CalendarFields.MILLIS_PER_HOUR; delta += 15 * CalendarFields.MILLIS_PER_MINUTE) {
+                    verify(time + delta, zone);
+                    verify(time + delta - 1, zone);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void timeZonesShouldBeInterned() {
+        assertSame(TimeZones.forId("Europe/London"), TimeZones.forId("Europe/London"));
+        assertSame(DateTimeZone.UTC, TimeZones.forId("UTC"));
+        assertEquals(0, TimeZones.forId("Unknown/Zone").getOffset(0));
+    }
+
+    private void verify(long time, DateTimeZone zone) {
+        DateTime dateTime = new DateTime(time, zone);
+        long local = CalendarFields.toLocal(time, zone);
+
+        for (Resolution resolution : Resolution.values()) {
+            assertEquals(resolution + " of " + time + " in " + zone, dateTime.get(resolution.getDateTimeFieldType()), CalendarFields.get(local, resolution));
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree.domain;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static com.graphaware.module.timetree.domain.Resolution.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Test for {@link TimeInstantIterator}.
+ */
+public class TimeInstantIteratorTest {
+
+    private static final DateTimeZone LONDON = DateTimeZone.forID("Europe/London");
+
+    @Test
+    public void shouldIterateOverStartsOfInstantsContainingStartAndEnd() {
+        long start = new DateTime(2015, 5, 4, 10, 30, DateTimeZone.UTC).getMillis();
+        long end = new DateTime(2015, 5, 6, 9, 0, DateTimeZone.UTC).getMillis();
+
+        List<Long> times = iterate(TimeInstant.instant(start).with(DAY), TimeInstant.instant(end).with(DAY));
+
+        assertEquals(3, times.size());
+        assertEquals(new DateTime(2015, 5, 4, 0, 0, DateTimeZone.UTC).getMillis(), (long) times.get(0));
+        assertEquals(new DateTime(2015, 5, 5, 0, 0, DateTimeZone.UTC).getMillis(), (long) times.get(1));
+        assertEquals(new DateTime(2015, 5, 6, 0, 0, DateTimeZone.UTC).getMillis(), (long) times.get(2));
+    }
+
+    @Test
+    public void daysShouldBeCorrectAcrossDaylightSavingTime() {
+        long start = new DateTime(2015, 3, 28, 12, 0, LONDON).getMillis();
+        long end = new DateTime(2015, 3, 30, 12, 0, LONDON).getMillis();
+
+        List<Long> times = iterate(TimeInstant.instant(start).with(DAY).with(LONDON), TimeInstant.instant(end).with(DAY).with(LONDON));
+
+        assertEquals(3, times.size());
+        assertEquals(new DateTime(2015, 3, 28, 0, 0, LONDON).getMillis(), (long) times.get(0));
+        assertEquals(new DateTime(2015, 3, 29, 0, 0, LONDON).getMillis(), (long) times.get(1));
+        assertEquals(new DateTime(2015, 3, 30, 0, 0, LONDON).getMillis(), (long) times.get(2));
+        assertEquals(23 * 3600 * 1000, times.get(2) - times.get(1));
+    }
+
+    @Test
+    public void hoursShouldBeCorrectWhenClocksGoBack() {
+        long start = new DateTime(2014, 10, 26, 0, 0, LONDON).getMillis();
+        long end = new DateTime(2014, 10, 26, 23, 0, LONDON).getMillis();
+
+        List<Long> times = iterate(TimeInstant.instant(start).with(HOUR).with(LONDON), TimeInstant.instant(end).with(HOUR).with(LONDON));
+
+        assertEquals(25, times.size());
+        for (int i = 1; i < times.size(); i++) {
+            assertEquals(3600 * 1000, times.get(i) - times.get(i - 1));
+        }
+    }
+
+    @Test
+    public void monthsShouldNotBeSkipped() {
+        long start = new DateTime(2015, 1, 31, 0, 0, DateTimeZone.UTC).getMillis();
+        long end = new DateTime(2015, 4, 30, 0, 0, DateTimeZone.UTC).getMillis();
+
+        List<Long> times = iterate(TimeInstant.instant(start).with(MONTH), TimeInstant.instant(end).with(MONTH));
+
+        assertEquals(4, times.size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(new DateTime(2015, i + 1, 1, 0, 0, DateTimeZone.UTC).getMillis(), (long) times.get(i));
+        }
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void shouldThrowExceptionWhenExhausted() {
+        TimeInstant instant = TimeInstant.instant(0);
+        TimeInstantIterator iterator = new TimeInstantIterator(instant, instant);
+
+        iterator.next();
+        assertFalse(iterator.hasNext());
+        iterator.next();
+    }
+
+    @Test
+    public void nextInstantShouldRespectTimeZone() {
+        long start = new DateTime(2015, 3, 28, 12, 0, LONDON).getMillis();
+
+        assertEquals(new DateTime(2015, 3, 29, 12, 0, LONDON).getMillis(), TimeInstant.instant(start).with(LONDON).next().getTime());
+    }
+
+    private List<Long> iterate(TimeInstant start, TimeInstant end) {
+        List<Long> result = new ArrayList<>();
+
+        TimeInstantIterator iterator = new TimeInstantIterator(start, end);
+        while (iterator.hasNext()) {
+            result.add(iterator.next());
+        }
+
+        return result;
+    }
+}
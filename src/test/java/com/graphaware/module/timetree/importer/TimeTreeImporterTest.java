@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree.importer;
+
+import com.graphaware.module.timetree.CustomRootTimeTree;
+import com.graphaware.module.timetree.SingleTimeTree;
+import com.graphaware.module.timetree.TimeTreeBackedEvents;
+import com.graphaware.module.timetree.TimeTreeInvariants;
+import com.graphaware.module.timetree.TimedEvents;
+import com.graphaware.module.timetree.domain.TimeInstant;
+import com.graphaware.module.timetree.module.TimeTreeConfiguration;
+import com.graphaware.test.integration.DatabaseIntegrationTest;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.neo4j.graphdb.*;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+import org.neo4j.unsafe.batchinsert.BatchInserter;
+import org.neo4j.unsafe.batchinsert.BatchInserters;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.*;
+
+import static com.graphaware.module.timetree.domain.Resolution.MINUTE;
+import static com.graphaware.module.timetree.domain.TimeTreeLabels.TimeTreeRoot;
+import static com.graphaware.module.timetree.domain.TimeTreeRelationshipTypes.CHILD;
+import static org.junit.Assert.*;
+import static org.neo4j.graphdb.Direction.INCOMING;
+import static org.neo4j.graphdb.Direction.OUTGOING;
+import static org.neo4j.graphdb.DynamicRelationshipType.withName;
+
+/**
+ * Test for {@link TimeTreeImporter}.
+ */
+public class TimeTreeImporterTest extends DatabaseIntegrationTest {
+
+    private static final DateTimeZone TIMEZONE = DateTimeZone.forID("Europe/London");
+    private static final Label EVENT = DynamicLabel.label("Event");
+    private static final RelationshipType AT_TIME = withName("AT_TIME");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final long[] timestamps = {
+            millis(2014, 12, 31, 23, 59),
+            millis(2013, 5, 4, 10, 0),
+            millis(2014, 12, 31, 23, 59),
+            millis(2015, 1, 1, 0, 0),
+            millis(2013, 5, 4, 10, 1),
+            millis(2014, 10, 26, 1, 30), //BST
+            millis(2014, 10, 26, 1, 30) + 60 * 60 * 1000, //GMT, same local time
+            millis(2013, 6, 1, 12, 0),
+            millis(2015, 1, 1, 0, 0),
+            millis(2014, 1, 15, 8, 45),
+            millis(2013, 5, 4, 11, 0),
+            millis(2015, 3, 2, 7, 7),
+    };
+
+    @Test
+    public void importedTreesShouldBeSameAsTreesBuiltByAttachingEvents() throws IOException {
+        TimeTreeConfiguration configuration = TimeTreeConfiguration.defaultConfiguration().withResolution(MINUTE).withTimeZone(TIMEZONE);
+
+        File store = temporaryFolder.newFolder();
+        long customRoot;
+
+        BatchInserter inserter = BatchInserters.inserter(store.getAbsolutePath());
+        try {
+            customRoot = inserter.createNode(Collections.<String, Object>emptyMap());
+
+            StringBuilder csv = new StringBuilder("name,timestamp,timeTreeRootId\n");
+            for (int i = 0; i < timestamps.length; i++) {
+                csv.append("\"e").append(i).append("\",").append(timestamps[i]).append(",").append(i % 3 == 0 ? String.valueOf(customRoot) : "").append("\n");
+            }
+
+            //tiny chunks, so that events are spilled and merged
+            long imported = new TimeTreeImporter(inserter, configuration, EVENT, 2, temporaryFolder.newFolder())
+                    .importEvents(new CsvEventReader(new StringReader(csv.toString()), "timestamp", "timeTreeRootId"));
+
+            assertEquals(timestamps.length, imported);
+        } finally {
+            inserter.shutdown();
+        }
+
+        String expectedDefaultTree, expectedCustomTree;
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node referenceCustomRoot = getDatabase().createNode();
+            TimedEvents defaultTree = new TimeTreeBackedEvents(new SingleTimeTree(getDatabase()));
+            TimedEvents customTree = new TimeTreeBackedEvents(new CustomRootTimeTree(referenceCustomRoot));
+
+            for (int i = 0; i < timestamps.length; i++) {
+                Node event = getDatabase().createNode(EVENT);
+                event.setProperty("name", "e" + i);
+                event.setProperty("timestamp", timestamps[i]);
+                if (i % 3 == 0) {
+                    event.setProperty("timeTreeRootId", customRoot);
+                }
+
+                (i % 3 == 0 ? customTree : defaultTree).attachEvent(event, AT_TIME, TimeInstant.instant(timestamps[i]).with(MINUTE).with(TIMEZONE));
+            }
+
+            expectedDefaultTree = describe(getDatabase().findNodes(TimeTreeRoot).next());
+            expectedCustomTree = describe(referenceCustomRoot);
+            tx.success();
+        }
+
+        GraphDatabaseService database = new GraphDatabaseFactory().newEmbeddedDatabase(store.getAbsolutePath());
+        try (Transaction tx = database.beginTx()) {
+            Node root = database.findNodes(TimeTreeRoot).next();
+
+            TimeTreeInvariants.assertConsistent(root);
+            TimeTreeInvariants.assertConsistent(database.getNodeById(customRoot));
+
+            assertEquals(expectedDefaultTree, describe(root));
+            assertEquals(expectedCustomTree, describe(database.getNodeById(customRoot)));
+
+            tx.success();
+        } finally {
+            database.shutdown();
+        }
+    }
+
+    @Test
+    public void ndjsonEventsShouldBeRead() throws IOException {
+        EventReader reader = new NdjsonEventReader(new StringReader(
+                "{\"timestamp\":1000,\"name\":\"a\",\"count\":3,\"ok\":true}\n" +
+                        "\n" +
+                        "{\"timestamp\":2000,\"timeTreeRootId\":5,\"score\":1.5,\"note\":null}\n"),
+                "timestamp", "timeTreeRootId");
+
+        EventRecord first = reader.next();
+        assertEquals(1000, first.getTimestamp());
+        assertNull(first.getRootNodeId());
+        assertEquals(3, first.getProperties().size());
+        assertEquals("a", first.getProperties().get("name"));
+        assertEquals(3, first.getProperties().get("count"));
+        assertEquals(true, first.getProperties().get("ok"));
+
+        EventRecord second = reader.next();
+        assertEquals(2000, second.getTimestamp());
+        assertEquals(5L, (long) second.getRootNodeId());
+        assertEquals(Collections.<String, Object>singletonMap("score", 1.5), second.getProperties());
+
+        assertNull(reader.next());
+    }
+
+    /**
+     * Describe a tree by the values of its instants in order, with the properties of the attached events.
+     */
+    private String describe(Node instant) {
+        StringBuilder result = new StringBuilder();
+
+        for (Label label : instant.getLabels()) {
+            result.append(label.name());
+        }
+        if (instant.hasProperty("value")) {
+            result.append(instant.getProperty("value"));
+        }
+
+        List<String> events = new ArrayList<>();
+        for (Relationship relationship : instant.getRelationships(AT_TIME, INCOMING)) {
+            Node event = relationship.getStartNode();
+            Map<String, Object> properties = new TreeMap<>();
+            for (String key : event.getPropertyKeys()) {
+                properties.put(key, event.getProperty(key));
+            }
+            events.add(properties.toString());
+        }
+        Collections.sort(events);
+        result.append(events);
+
+        SortedMap<Integer, Node> children = new TreeMap<>();
+        for (Relationship relationship : instant.getRelationships(CHILD, OUTGOING)) {
+            Node child = relationship.getEndNode();
+            assertNull(children.put((Integer) child.getProperty("value"), child));
+        }
+
+        result.append("(");
+        for (Node child : children.values()) {
+            result.append(describe(child));
+        }
+        result.append(")");
+
+        return result.toString();
+    }
+
+    private static long millis(int year, int month, int day, int hour, int minute) {
+        return new DateTime(year, month, day, hour, minute, TIMEZONE).getMillis();
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree.metrics;
+
+import com.graphaware.module.timetree.SingleTimeTree;
+import com.graphaware.module.timetree.TimeTreeBackedEvents;
+import com.graphaware.module.timetree.TimedEvents;
+import com.graphaware.module.timetree.domain.TimeInstant;
+import com.graphaware.test.integration.DatabaseIntegrationTest;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static com.graphaware.module.timetree.domain.Resolution.DAY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.neo4j.graphdb.DynamicRelationshipType.withName;
+
+/**
+ * Test for {@link TimeTreeMetrics}.
+ */
+public class TimeTreeMetricsTest extends DatabaseIntegrationTest {
+
+    private final TimeTreeMetrics metrics = TimeTreeMetrics.getInstance();
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        metrics.setEnabled(true);
+        metrics.reset();
+    }
+
+    @Test
+    public void hotPathsShouldBeMeasured() {
+        TimedEvents timedEvents = new TimeTreeBackedEvents(new SingleTimeTree(getDatabase()));
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node event = getDatabase().createNode();
+            timedEvents.attachEvent(event, withName("AT_TIME"), TimeInstant.instant(1436941284000L).with(DAY));
+            timedEvents.getEvents(TimeInstant.instant(1436941284000L).with(DAY));
+            tx.success();
+        }
+
+        assertEquals(1, metrics.attachEvent().getCount());
+        assertEquals(1, metrics.getOrCreateInstant().getCount());
+        assertEquals(1, metrics.getEvents().getCount());
+        assertEquals(3, metrics.nodesCreated().getCount());
+        assertTrue(metrics.rootLockWait().getCount() >= 2);
+    }
+
+    @Test
+    public void nothingShouldBeMeasuredWhenDisabled() {
+        metrics.setEnabled(false);
+
+        TimedEvents timedEvents = new TimeTreeBackedEvents(new SingleTimeTree(getDatabase()));
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node event = getDatabase().createNode();
+            timedEvents.attachEvent(event, withName("AT_TIME"), TimeInstant.instant(1436941284000L).with(DAY));
+            tx.success();
+        } finally {
+            metrics.setEnabled(true);
+        }
+
+        assertEquals(0, metrics.attachEvent().getCount());
+        assertEquals(0, metrics.getOrCreateInstant().getCount());
+        assertEquals(0, metrics.nodesCreated().getCount());
+        assertEquals(0, metrics.nodesVisited().getCount());
+    }
+
+    @Test
+    public void histogramShouldReportApproximatePercentiles() {
+        Histogram histogram = new Histogram(metrics);
+
+        for (int i = 1; i <= 100; i++) {
+            histogram.update(i);
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(100, histogram.getMax());
+        assertEquals(50.5, histogram.getMean(), 0.001);
+        assertEquals(63, histogram.getP50());
+        assertEquals(100, histogram.getP99());
+    }
+
+    @Test
+    public void metricsShouldBeRegisteredWithJmx() throws Exception {
+        assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName("com.graphaware.timetree:type=Metrics,name=GetOrCreateInstant")));
+        assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName("com.graphaware.timetree:type=Metrics,name=Metrics")));
+    }
+}
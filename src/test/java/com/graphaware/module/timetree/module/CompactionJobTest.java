@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree.module;
+
+import com.graphaware.module.timetree.SingleTimeTree;
+import com.graphaware.module.timetree.TimeTreeBackedEvents;
+import com.graphaware.module.timetree.TimeTreeInvariants;
+import com.graphaware.module.timetree.TimedEvents;
+import com.graphaware.module.timetree.domain.TimeInstant;
+import com.graphaware.module.timetree.domain.TimeTreeLabels;
+import com.graphaware.test.integration.DatabaseIntegrationTest;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Period;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.DynamicLabel;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.helpers.collection.IteratorUtil;
+
+import static com.graphaware.module.timetree.domain.Resolution.DAY;
+import static com.graphaware.module.timetree.domain.Resolution.HOUR;
+import static com.graphaware.module.timetree.domain.Resolution.MINUTE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.neo4j.graphdb.DynamicRelationshipType.withName;
+
+/**
+ * Test for {@link CompactionJob}.
+ */
+public class CompactionJobTest extends DatabaseIntegrationTest {
+
+    private static final Label Event = DynamicLabel.label("Event");
+
+    private SingleTimeTree timeTree;
+    private TimedEvents timedEvents;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+
+        timeTree = new SingleTimeTree(getDatabase());
+        timedEvents = new TimeTreeBackedEvents(timeTree);
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            attach(millis(2015, 1, 1, 10, 5));
+            attach(millis(2015, 1, 1, 10, 6));
+            attach(millis(2015, 1, 1, 11, 30));
+            attach(millis(2015, 1, 3, 9, 0));
+            attach(millis(2015, 1, 8, 22, 15));
+            attach(millis(2015, 1, 8, 22, 45));
+            attach(millis(2015, 1, 10, 12, 0));
+            tx.success();
+        }
+    }
+
+    @Test
+    public void oldInstantsShouldBeCompactedToConfiguredResolutions() {
+        CompactionJob job = new CompactionJob(getDatabase(), TimeTreeConfiguration.defaultConfiguration()
+                .withCompaction(Compaction.of(DAY, Period.days(5)).with(HOUR, Period.days(1))),
+                new TimeTreeRoots(getDatabase(), timeTree));
+
+        //1st: 2 hours + 3 minutes, 3rd: 1 hour + 1 minute, 8th 22:00: 2 minutes
+        assertEquals(9, job.compact(millis(2015, 1, 10, 13, 0)));
+        assertEquals(0, job.compact(millis(2015, 1, 10, 13, 0)));
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            assertEquals(4, IteratorUtil.count(getDatabase().findNodes(TimeTreeLabels.Day)));
+            assertEquals(2, IteratorUtil.count(getDatabase().findNodes(TimeTreeLabels.Hour)));
+            assertEquals(1, IteratorUtil.count(getDatabase().findNodes(TimeTreeLabels.Minute)));
+            assertEquals(7, IteratorUtil.count(getDatabase().findNodes(Event)));
+
+            assertEquals(3, timedEvents.getEvents(TimeInstant.instant(millis(2015, 1, 1, 0, 0)).with(DAY)).size());
+            assertEquals(1, timedEvents.getEvents(TimeInstant.instant(millis(2015, 1, 3, 0, 0)).with(DAY)).size());
+            assertEquals(2, timedEvents.getEvents(TimeInstant.instant(millis(2015, 1, 8, 22, 0)).with(HOUR)).size());
+            assertEquals(1, timedEvents.getEvents(TimeInstant.instant(millis(2015, 1, 10, 12, 0)).with(MINUTE)).size());
+
+            TimeTreeInvariants.assertConsistent(getDatabase().findNodes(TimeTreeLabels.TimeTreeRoot).next());
+            tx.success();
+        }
+    }
+
+    @Test
+    public void compactionShouldProceedIncrementally() {
+        CompactionJob job = new CompactionJob(getDatabase(), TimeTreeConfiguration.defaultConfiguration()
+                .withCompaction(Compaction.of(DAY, Period.days(5)).withInstantsPerRun(1)),
+                new TimeTreeRoots(getDatabase(), timeTree));
+
+        long now = millis(2015, 1, 10, 13, 0);
+
+        assertEquals(5, job.compact(now));
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            assertEquals(3, IteratorUtil.count(getDatabase().findNodes(TimeTreeLabels.Hour)));
+            tx.success();
+        }
+
+        assertEquals(2, job.compact(now));
+        assertEquals(0, job.compact(now));
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            assertEquals(2, IteratorUtil.count(getDatabase().findNodes(TimeTreeLabels.Hour)));
+            TimeTreeInvariants.assertConsistent(getDatabase().findNodes(TimeTreeLabels.TimeTreeRoot).next());
+            tx.success();
+        }
+    }
+
+    @Test
+    public void compactedInstantWithoutEventsShouldBeKept() {
+        try (Transaction tx = getDatabase().beginTx()) {
+            timeTree.getOrCreateInstants(TimeInstant.instant(millis(2015, 1, 5, 10, 0)).with(HOUR), TimeInstant.instant(millis(2015, 1, 5, 11, 0)).with(HOUR));
+            tx.success();
+        }
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node day = timeTree.getInstant(TimeInstant.instant(millis(2015, 1, 5, 0, 0)).with(DAY));
+            assertEquals(2, timeTree.compactInstant(day));
+            tx.success();
+        }
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            assertNotNull(timeTree.getInstant(TimeInstant.instant(millis(2015, 1, 5, 0, 0)).with(DAY)));
+            assertNull(timeTree.getInstant(TimeInstant.instant(millis(2015, 1, 5, 10, 0)).with(HOUR)));
+            TimeTreeInvariants.assertConsistent(getDatabase().findNodes(TimeTreeLabels.TimeTreeRoot).next());
+            tx.success();
+        }
+    }
+
+    private void attach(long time) {
+        timedEvents.attachEvent(getDatabase().createNode(Event), withName("AT_TIME"), TimeInstant.instant(time).with(MINUTE));
+    }
+
+    private static long millis(int year, int month, int day, int hour, int minute) {
+        return new DateTime(year, month, day, hour, minute, DateTimeZone.UTC).getMillis();
+    }
+}
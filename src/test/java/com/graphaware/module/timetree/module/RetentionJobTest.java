@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree.module;
+
+import com.graphaware.module.timetree.CustomRootTimeTree;
+import com.graphaware.module.timetree.SingleTimeTree;
+import com.graphaware.module.timetree.TimeTreeBackedEvents;
+import com.graphaware.module.timetree.TimedEvents;
+import com.graphaware.module.timetree.domain.TimeInstant;
+import com.graphaware.module.timetree.domain.TimeTreeLabels;
+import com.graphaware.module.timetree.metrics.TimeTreeMetrics;
+import com.graphaware.test.integration.DatabaseIntegrationTest;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Period;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.DynamicLabel;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.helpers.collection.IteratorUtil;
+
+import static org.junit.Assert.assertEquals;
+import static org.neo4j.graphdb.DynamicRelationshipType.withName;
+
+/**
+ * Test for {@link RetentionJob}.
+ */
+public class RetentionJobTest extends DatabaseIntegrationTest {
+
+    private static final Label Event = DynamicLabel.label("Event");
+    private static final long DAY = 24 * 3600 * 1000L;
+
+    private SingleTimeTree timeTree;
+    private Node customRoot;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+
+        timeTree = new SingleTimeTree(getDatabase());
+        TimedEvents timedEvents = new TimeTreeBackedEvents(timeTree);
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            customRoot = getDatabase().createNode();
+            TimedEvents customEvents = new TimeTreeBackedEvents(new CustomRootTimeTree(customRoot));
+
+            for (long time = millis(2015, 1, 1); time <= millis(2015, 6, 30); time += DAY) {
+                timedEvents.attachEvent(getDatabase().createNode(Event), withName("AT_TIME"), TimeInstant.instant(time));
+            }
+
+            customEvents.attachEvent(getDatabase().createNode(Event), withName("AT_TIME"), TimeInstant.instant(millis(2015, 2, 10)));
+            customEvents.attachEvent(getDatabase().createNode(Event), withName("AT_TIME"), TimeInstant.instant(millis(2015, 5, 5)));
+
+            tx.success();
+        }
+    }
+
+    @Test
+    public void expiredInstantsShouldBeRemovedGradually() {
+        RetentionJob job = new RetentionJob(getDatabase(), TimeTreeConfiguration.defaultConfiguration()
+                .withRetention(Retention.of(Period.days(90)).withInstantsPerRun(30).withBatchSize(10).withDeleteEvents(true)),
+                new TimeTreeRoots(getDatabase(), timeTree));
+
+        long now = millis(2015, 6, 30) + 12 * 3600 * 1000L;
+
+        //1st - 30th January of the default tree, 10th February and February of the custom one
+        assertEquals(32, job.purge(now));
+        assertEquals(60 * DAY, TimeTreeMetrics.getInstance().retentionLag().getValue());
+
+        while (job.purge(now) > 0) {
+            //keep purging
+        }
+
+        assertEquals(0, TimeTreeMetrics.getInstance().retentionLag().getValue());
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            //1st April - 30th June of the default tree, 5th May of the custom one
+            assertEquals(92, IteratorUtil.count(getDatabase().findNodes(TimeTreeLabels.Day)));
+            assertEquals(92, IteratorUtil.count(getDatabase().findNodes(Event)));
+            assertEquals(4, IteratorUtil.count(getDatabase().findNodes(TimeTreeLabels.Month)));
+
+            Node oldest = timeTree.getInstantAtOrAfter(TimeInstant.instant(millis(2015, 1, 1)));
+            assertEquals(millis(2015, 4, 1), SingleTimeTree.getTimeInstant(oldest, DateTimeZone.UTC).getTime());
+            tx.success();
+        }
+    }
+
+    @Test
+    public void eventsShouldOnlyBeDetachedByDefault() {
+        RetentionJob job = new RetentionJob(getDatabase(), TimeTreeConfiguration.defaultConfiguration()
+                .withRetention(Retention.of(Period.days(90))),
+                new TimeTreeRoots(getDatabase(), timeTree));
+
+        job.purge(millis(2015, 6, 30));
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            assertEquals(92, IteratorUtil.count(getDatabase().findNodes(TimeTreeLabels.Day)));
+            assertEquals(183, IteratorUtil.count(getDatabase().findNodes(Event)));
+            tx.success();
+        }
+    }
+
+    private static long millis(int year, int month, int day) {
+        return new DateTime(year, month, day, 0, 0, DateTimeZone.UTC).getMillis();
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.timetree.module;
+
+import com.graphaware.module.timetree.CustomRootTimeTree;
+import com.graphaware.module.timetree.SingleTimeTree;
+import com.graphaware.module.timetree.TimeTreeInvariants;
+import com.graphaware.module.timetree.domain.TimeInstant;
+import com.graphaware.module.timetree.domain.TimeTreeLabels;
+import com.graphaware.test.integration.DatabaseIntegrationTest;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Period;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.helpers.collection.IteratorUtil;
+
+import static com.graphaware.module.timetree.domain.Resolution.DAY;
+import static com.graphaware.module.timetree.domain.Resolution.HOUR;
+import static com.graphaware.module.timetree.domain.Resolution.MINUTE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Test for {@link WarmAheadJob}.
+ */
+public class WarmAheadJobTest extends DatabaseIntegrationTest {
+
+    private SingleTimeTree timeTree;
+    private Node customRoot;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+
+        timeTree = new SingleTimeTree(getDatabase());
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            timeTree.getOrCreateInstant(TimeInstant.instant(millis(2015, 1, 1, 10, 30)).with(HOUR));
+            customRoot = getDatabase().createNode();
+            new CustomRootTimeTree(customRoot).getOrCreateInstant(TimeInstant.instant(millis(2014, 6, 1, 0, 0)).with(HOUR));
+            tx.success();
+        }
+    }
+
+    @Test
+    public void upcomingInstantsShouldBeCreatedInAllTrees() {
+        WarmAheadJob job = new WarmAheadJob(getDatabase(), TimeTreeConfiguration.defaultConfiguration()
+                .withResolution(HOUR)
+                .withWarmAhead(WarmAhead.of(Period.minutes(90))),
+                new TimeTreeRoots(getDatabase(), timeTree));
+
+        assertEquals(2, job.warmUp(millis(2015, 1, 1, 10, 45)));
+        assertEquals(0, job.warmUp(millis(2015, 1, 1, 10, 50)));
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            //10, 11, 12 in the default tree, 2014-06-01 00:00 and 2015-01-01 10, 11, 12 in the custom one
+            assertEquals(7, IteratorUtil.count(getDatabase().findNodes(TimeTreeLabels.Hour)));
+            assertNotNull(timeTree.getInstant(TimeInstant.instant(millis(2015, 1, 1, 12, 0)).with(HOUR)));
+            assertNotNull(new CustomRootTimeTree(customRoot).getInstant(TimeInstant.instant(millis(2015, 1, 1, 12, 0)).with(HOUR)));
+
+            TimeTreeInvariants.assertConsistent(getDatabase().findNodes(TimeTreeLabels.TimeTreeRoot).next());
+            TimeTreeInvariants.assertConsistent(customRoot);
+            tx.success();
+        }
+
+        //rollover
+        assertEquals(2, job.warmUp(millis(2015, 1, 1, 11, 40)));
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            assertEquals(9, IteratorUtil.count(getDatabase().findNodes(TimeTreeLabels.Hour)));
+            tx.success();
+        }
+    }
+
+    @Test
+    public void childrenShouldBeCreatedDownToConfiguredDepth() {
+        WarmAheadJob job = new WarmAheadJob(getDatabase(), TimeTreeConfiguration.defaultConfiguration()
+                .withResolution(HOUR)
+                .withWarmAhead(WarmAhead.of(Period.minutes(30)).withDepth(MINUTE)),
+                new TimeTreeRoots(getDatabase(), timeTree));
+
+        job.warmUp(millis(2015, 1, 1, 10, 45));
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            //10:00 - 11:59 in both trees
+            assertEquals(240, IteratorUtil.count(getDatabase().findNodes(TimeTreeLabels.Minute)));
+            TimeTreeInvariants.assertConsistent(getDatabase().findNodes(TimeTreeLabels.TimeTreeRoot).next());
+            tx.success();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void depthMustNotBeCoarserThanResolution() {
+        new WarmAheadJob(getDatabase(), TimeTreeConfiguration.defaultConfiguration()
+                .withResolution(HOUR)
+                .withWarmAhead(WarmAhead.of(Period.hours(1)).withDepth(DAY)),
+                new TimeTreeRoots(getDatabase(), timeTree));
+    }
+
+    private static long millis(int year, int month, int day, int hour, int minute) {
+        return new DateTime(year, month, day, hour, minute, DateTimeZone.UTC).getMillis();
+    }
+}